@@ -0,0 +1,202 @@
+package com.napolitanoveroni.expirationdate;
+
+import javafx.application.Platform;
+
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.concurrent.*;
+
+/**
+ * Runs {@link UtilsDB} operations away from the JavaFX application thread.
+ * <p>Operations are executed on a dedicated executor, which uses virtual threads when the running JVM supports
+ * them and a bounded pool of daemon threads otherwise. The returned futures are completed on the JavaFX
+ * application thread, so their callbacks can update the user interface directly.</p>
+ * <p>Reads run concurrently, while writes are executed one after the other in submission order, so that a write
+ * never overtakes a previous one issued by the user interface.</p>
+ *
+ * @author SaverioNapolitano, MatteV02
+ * @version 2023.07.10
+ */
+public class AsyncUtilsDB {
+	private static final ExecutorService executor = createExecutor();
+	private static final Executor fxExecutor = Platform::runLater;
+	private static CompletableFuture<?> lastWrite = CompletableFuture.completedFuture(null);
+
+	private AsyncUtilsDB() {
+	}
+
+	/**
+	 * Runs a read operation on the database executor.
+	 * While the database is {@linkplain DatabaseHealth#isOnline() unreachable}, the operation is not run and the
+	 * future fails at once.
+	 *
+	 * @param query the operation to be run.
+	 * @param <T>   the type of the result.
+	 * @return a future completed, on the JavaFX application thread, with the result of the operation.
+	 */
+
+	static <T> CompletableFuture<T> read(SQLCallable<T> query) {
+		if (!DatabaseHealth.isOnline()) {
+			return onFxThread(CompletableFuture.failedFuture(new SQLTransientConnectionException("The database is unreachable")));
+		}
+		return onFxThread(CompletableFuture.supplyAsync(() -> call(query), executor));
+	}
+
+	/**
+	 * Runs a write operation on the database executor, after every write submitted before it.
+	 *
+	 * @param update the operation to be run.
+	 * @param <T>    the type of the result.
+	 * @return a future completed, on the JavaFX application thread, with the result of the operation.
+	 */
+
+	static synchronized <T> CompletableFuture<T> write(SQLCallable<T> update) {
+		CompletableFuture<T> result = lastWrite.handle((ignored, error) -> null).thenApplyAsync(ignored -> call(update), executor);
+		lastWrite = result;
+		return onFxThread(result);
+	}
+
+	/**
+	 * Runs a write operation without result on the database executor, after every write submitted before it.
+	 *
+	 * @param update the operation to be run.
+	 * @return a future completed on the JavaFX application thread when the operation is done.
+	 */
+
+	static CompletableFuture<Void> write(SQLRunnable update) {
+		return write(() -> {
+			update.run();
+			return null;
+		});
+	}
+
+	/**
+	 * Waits until every write submitted so far is done, or until the given timeout expires.
+	 * Used on application shutdown, so that the changes made just before closing reach the database.
+	 *
+	 * @param timeout the maximum number of milliseconds to wait.
+	 */
+
+	static void awaitWrites(long timeout) {
+		CompletableFuture<?> pending;
+		synchronized (AsyncUtilsDB.class) {
+			pending = lastWrite;
+		}
+
+		try {
+			pending.get(timeout, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException | TimeoutException ignored) {
+			// failed writes were already reported to the user interface
+		}
+	}
+
+	/**
+	 * Returns the exception that made an asynchronous operation fail, unwrapping the exceptions added by the
+	 * {@link CompletableFuture} machinery.
+	 *
+	 * @param error the exception a future was completed with.
+	 * @return the original exception.
+	 */
+
+	static Throwable cause(Throwable error) {
+		Throwable cause = error;
+		while ((cause instanceof CompletionException || cause instanceof ExecutionException) && cause.getCause() != null) {
+			cause = cause.getCause();
+		}
+		return cause;
+	}
+
+	/**
+	 * Runs an operation, rethrowing its {@link SQLException} as a {@link CompletionException}.
+	 *
+	 * @param operation the operation to be run.
+	 * @param <T>       the type of the result.
+	 * @return the result of the operation.
+	 */
+
+	private static <T> T call(SQLCallable<T> operation) {
+		try {
+			return operation.call();
+		} catch (SQLException e) {
+			throw new CompletionException(e);
+		}
+	}
+
+	/**
+	 * Returns a future completed on the JavaFX application thread with the outcome of the given one.
+	 *
+	 * @param future the future to be relayed.
+	 * @param <T>    the type of the result.
+	 * @return the relayed future.
+	 */
+
+	private static <T> CompletableFuture<T> onFxThread(CompletableFuture<T> future) {
+		CompletableFuture<T> relayed = new CompletableFuture<>();
+		future.whenCompleteAsync((result, error) -> {
+			if (error != null) {
+				relayed.completeExceptionally(error);
+			} else {
+				relayed.complete(result);
+			}
+		}, fxExecutor);
+		return relayed;
+	}
+
+	/**
+	 * Creates the database executor: a virtual thread per task when the JVM supports it, a bounded pool sized after
+	 * the connection pool otherwise.
+	 *
+	 * @return the database executor.
+	 */
+
+	private static ExecutorService createExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException ignored) {
+			// virtual threads are not available on this JVM
+		}
+
+		ThreadFactory threadFactory = new ThreadFactory() {
+			private int count = 0;
+
+			@Override
+			public synchronized Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "database-" + count++);
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+		return Executors.newFixedThreadPool(ConnectionPool.getMaximumPoolSize(), threadFactory);
+	}
+
+	/**
+	 * A database operation returning a result.
+	 *
+	 * @param <T> the type of the result.
+	 */
+	@FunctionalInterface
+	interface SQLCallable<T> {
+		/**
+		 * Runs the operation.
+		 *
+		 * @return the result of the operation.
+		 * @throws SQLException if a database access error occurs.
+		 */
+		T call() throws SQLException;
+	}
+
+	/**
+	 * A database operation without result.
+	 */
+	@FunctionalInterface
+	interface SQLRunnable {
+		/**
+		 * Runs the operation.
+		 *
+		 * @throws SQLException if a database access error occurs.
+		 */
+		void run() throws SQLException;
+	}
+}
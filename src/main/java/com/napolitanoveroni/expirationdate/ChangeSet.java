@@ -0,0 +1,32 @@
+package com.napolitanoveroni.expirationdate;
+
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The rows changed in the database since a synchronization token, as read by {@link SyncPoller}.
+ * <p>Removed rows that were added again afterwards are reported as changed, not as removed, so the removals can be
+ * applied before the changes.</p>
+ *
+ * @param token           the token of this change set, to be passed to the next read.
+ * @param products        the products added or edited since the previous token.
+ * @param deletedProducts the keys of the products removed since the previous token.
+ * @param recipes         the titles of the recipes added or edited since the previous token.
+ * @param deletedRecipes  the titles of the recipes removed or renamed since the previous token.
+ * @author SaverioNapolitano, MatteV02
+ * @version 2023.07.10
+ */
+public record ChangeSet(Timestamp token, List<Product> products, Set<ProductKey> deletedProducts, Set<String> recipes,
+						Set<String> deletedRecipes) {
+
+	/**
+	 * Checks whether the change set holds no change.
+	 *
+	 * @return {@code true} if nothing changed, {@code false} otherwise.
+	 */
+
+	public boolean isEmpty() {
+		return products.isEmpty() && deletedProducts.isEmpty() && recipes.isEmpty() && deletedRecipes.isEmpty();
+	}
+}
@@ -0,0 +1,255 @@
+package com.napolitanoveroni.expirationdate;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariConfigMXBean;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.pool.HikariPool;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Optional;
+
+/**
+ * Owner of the single connection pool shared by the whole application.
+ * <p>The pool is created lazily on first use, in a thread-safe way, and lives until {@link #close()} is called on
+ * application shutdown. When the pool is started, the database schema is brought to the latest version by
+ * {@link SchemaMigrator}. Pool sizing is read from system properties when the pool is created
+ * (for example {@code -Dexpirationdate.db.maximumPoolSize=8}) and can be changed while the application is running
+ * through the setters of this class.</p>
+ * <p>The database engine is chosen by the {@link StorageBackend} selected with the
+ * {@value StorageBackend#BACKEND_PROPERTY} system property, or set with {@link #setBackend(StorageBackend)} before
+ * the pool is started.</p>
+ *
+ * @author SaverioNapolitano, MatteV02
+ * @version 2023.07.10
+ */
+public class ConnectionPool {
+	/**
+	 * System property holding the maximum number of connections of the pool.
+	 */
+	public static final String MAXIMUM_POOL_SIZE_PROPERTY = "expirationdate.db.maximumPoolSize";
+
+	/**
+	 * System property holding the minimum number of idle connections of the pool.
+	 */
+	public static final String MINIMUM_IDLE_PROPERTY = "expirationdate.db.minimumIdle";
+
+	/**
+	 * System property holding the maximum number of milliseconds to wait for a connection.
+	 */
+	public static final String CONNECTION_TIMEOUT_PROPERTY = "expirationdate.db.connectionTimeout";
+
+	/**
+	 * System property holding the number of milliseconds after which an idle connection is retired.
+	 */
+	public static final String IDLE_TIMEOUT_PROPERTY = "expirationdate.db.idleTimeout";
+
+	private static final Object lock = new Object();
+	private static volatile HikariDataSource dataSource;
+	private static volatile StorageBackend backend;
+
+	private static volatile int maximumPoolSize = Integer.getInteger(MAXIMUM_POOL_SIZE_PROPERTY, 4);
+	private static volatile int minimumIdle = Integer.getInteger(MINIMUM_IDLE_PROPERTY, 1);
+	private static volatile long connectionTimeout = Long.getLong(CONNECTION_TIMEOUT_PROPERTY, 5_000L);
+	private static volatile long idleTimeout = Long.getLong(IDLE_TIMEOUT_PROPERTY, 600_000L);
+
+	private ConnectionPool() {
+	}
+
+	/**
+	 * Returns the application connection pool, creating it on first use.
+	 *
+	 * @return the application connection pool.
+	 * @throws SQLException if the pool could not be started.
+	 */
+
+	static HikariDataSource getDataSource() throws SQLException {
+		HikariDataSource current = dataSource;
+		if (current != null) {
+			return current;
+		}
+
+		synchronized (lock) {
+			if (dataSource == null) {
+				HikariDataSource started;
+				try {
+					started = new HikariDataSource(createHikariConfig());
+				} catch (HikariPool.PoolInitializationException | IllegalArgumentException exception) {
+					throw new SQLException("Could not start the connection pool", exception);
+				}
+
+				try (Connection connection = started.getConnection()) {
+					SchemaMigrator.migrate(connection);
+				} catch (SQLException exception) {
+					started.close();
+					throw exception;
+				}
+
+				dataSource = started;
+			}
+			return dataSource;
+		}
+	}
+
+	/**
+	 * Returns the storage backend of the pool, reading it from the system properties on first use.
+	 *
+	 * @return the storage backend.
+	 */
+
+	static StorageBackend getBackend() {
+		synchronized (lock) {
+			if (backend == null) {
+				backend = StorageBackend.fromSystemProperties();
+			}
+			return backend;
+		}
+	}
+
+	/**
+	 * Sets the storage backend of the pool. It takes effect the next time the pool is started.
+	 *
+	 * @param backend the storage backend.
+	 */
+
+	static void setBackend(StorageBackend backend) {
+		synchronized (lock) {
+			ConnectionPool.backend = backend;
+		}
+	}
+
+	/**
+	 * Builds the connection pool configuration.
+	 * Besides the pool sizing, it holds the connection parameters and the driver properties of the
+	 * {@linkplain #getBackend() storage backend}.
+	 *
+	 * @return the connection pool configuration.
+	 */
+
+	static HikariConfig createHikariConfig() {
+		HikariConfig config = new HikariConfig();
+		config.setPoolName("expirationdate");
+		getBackend().configure(config);
+		config.setLeakDetectionThreshold(2000);
+		config.setMetricsTrackerFactory(DatabaseMetrics.trackerFactory());
+
+		config.setMaximumPoolSize(maximumPoolSize);
+		config.setMinimumIdle(minimumIdle);
+		config.setConnectionTimeout(connectionTimeout);
+		config.setIdleTimeout(idleTimeout);
+
+		return config;
+	}
+
+	/**
+	 * Closes the connection pool, if it was started, releasing its connections and threads, and logs the
+	 * {@linkplain DatabaseMetrics database metrics}. A later call to {@link #getDataSource()} starts a new pool.
+	 */
+
+	static void close() {
+		synchronized (lock) {
+			if (dataSource != null) {
+				dataSource.close();
+				dataSource = null;
+				DatabaseMetrics.logReport();
+			}
+		}
+	}
+
+	/**
+	 * Returns the maximum number of connections of the pool.
+	 *
+	 * @return the maximum number of connections of the pool.
+	 */
+
+	public static int getMaximumPoolSize() {
+		return maximumPoolSize;
+	}
+
+	/**
+	 * Sets the maximum number of connections of the pool, applying it to the running pool if there is one.
+	 *
+	 * @param maximumPoolSize the maximum number of connections of the pool.
+	 */
+
+	public static void setMaximumPoolSize(int maximumPoolSize) {
+		ConnectionPool.maximumPoolSize = maximumPoolSize;
+		runningPoolConfig().ifPresent(config -> config.setMaximumPoolSize(maximumPoolSize));
+	}
+
+	/**
+	 * Returns the minimum number of idle connections of the pool.
+	 *
+	 * @return the minimum number of idle connections of the pool.
+	 */
+
+	public static int getMinimumIdle() {
+		return minimumIdle;
+	}
+
+	/**
+	 * Sets the minimum number of idle connections of the pool, applying it to the running pool if there is one.
+	 *
+	 * @param minimumIdle the minimum number of idle connections of the pool.
+	 */
+
+	public static void setMinimumIdle(int minimumIdle) {
+		ConnectionPool.minimumIdle = minimumIdle;
+		runningPoolConfig().ifPresent(config -> config.setMinimumIdle(minimumIdle));
+	}
+
+	/**
+	 * Returns the maximum number of milliseconds to wait for a connection.
+	 *
+	 * @return the maximum number of milliseconds to wait for a connection.
+	 */
+
+	public static long getConnectionTimeout() {
+		return connectionTimeout;
+	}
+
+	/**
+	 * Sets the maximum number of milliseconds to wait for a connection, applying it to the running pool if there is
+	 * one.
+	 *
+	 * @param connectionTimeout the maximum number of milliseconds to wait for a connection.
+	 */
+
+	public static void setConnectionTimeout(long connectionTimeout) {
+		ConnectionPool.connectionTimeout = connectionTimeout;
+		runningPoolConfig().ifPresent(config -> config.setConnectionTimeout(connectionTimeout));
+	}
+
+	/**
+	 * Returns the number of milliseconds after which an idle connection is retired.
+	 *
+	 * @return the number of milliseconds after which an idle connection is retired.
+	 */
+
+	public static long getIdleTimeout() {
+		return idleTimeout;
+	}
+
+	/**
+	 * Sets the number of milliseconds after which an idle connection is retired, applying it to the running pool if
+	 * there is one.
+	 *
+	 * @param idleTimeout the number of milliseconds after which an idle connection is retired.
+	 */
+
+	public static void setIdleTimeout(long idleTimeout) {
+		ConnectionPool.idleTimeout = idleTimeout;
+		runningPoolConfig().ifPresent(config -> config.setIdleTimeout(idleTimeout));
+	}
+
+	/**
+	 * Returns the runtime configuration of the running pool, if there is one.
+	 *
+	 * @return the runtime configuration of the running pool, or an empty optional if the pool was not started.
+	 */
+
+	private static Optional<HikariConfigMXBean> runningPoolConfig() {
+		HikariDataSource current = dataSource;
+		return current == null ? Optional.empty() : Optional.of(current.getHikariConfigMXBean());
+	}
+}
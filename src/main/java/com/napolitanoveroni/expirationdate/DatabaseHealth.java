@@ -0,0 +1,166 @@
+package com.napolitanoveroni.expirationdate;
+
+import javafx.application.Platform;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransientConnectionException;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+
+/**
+ * Tracks whether the database can be reached.
+ * <p>Every {@link #PROBE_INTERVAL} milliseconds a background probe borrows a connection from the pool and validates
+ * it with a {@link #PROBE_TIMEOUT}-second timeout, so an outage is noticed even when the user is not writing. An
+ * operation failing with a connection error marks the database as unreachable at once. While the database is
+ * unreachable, reads fail immediately and writes are kept in the {@link WriteJournal}, instead of each waiting for the
+ * connection timeout of the pool.</p>
+ *
+ * @author SaverioNapolitano, MatteV02
+ * @version 2023.07.10
+ */
+public class DatabaseHealth {
+	/**
+	 * The number of milliseconds between two probes.
+	 */
+	static final long PROBE_INTERVAL = 5_000L;
+
+	/**
+	 * The number of seconds a probe waits for the database to answer.
+	 */
+	static final int PROBE_TIMEOUT = 1;
+
+	private static final System.Logger logger = System.getLogger(DatabaseHealth.class.getName());
+	private static final List<Consumer<Boolean>> listeners = new CopyOnWriteArrayList<>();
+	private static final ScheduledExecutorService probeScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "database-health");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private static volatile boolean online = true;
+	private static ScheduledFuture<?> probeTask;
+
+	private DatabaseHealth() {
+	}
+
+	/**
+	 * Starts the periodic probe. Does nothing if the probe is already started.
+	 */
+
+	static synchronized void start() {
+		if (probeTask == null) {
+			probeTask = probeScheduler.scheduleWithFixedDelay(DatabaseHealth::probe, 0, PROBE_INTERVAL, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Stops the periodic probe.
+	 */
+
+	static synchronized void stop() {
+		if (probeTask != null) {
+			probeTask.cancel(false);
+			probeTask = null;
+		}
+	}
+
+	/**
+	 * Checks whether the database was reachable at the last probe or operation.
+	 *
+	 * @return {@code true} if the database is reachable, {@code false} otherwise.
+	 */
+
+	static boolean isOnline() {
+		return online;
+	}
+
+	/**
+	 * Registers a listener notified whenever the database becomes reachable or unreachable.
+	 *
+	 * @param listener the listener, called on the JavaFX application thread with {@code true} when the database
+	 *                 becomes reachable and {@code false} when it becomes unreachable.
+	 */
+
+	static void addListener(Consumer<Boolean> listener) {
+		listeners.add(listener);
+	}
+
+	/**
+	 * Unregisters a listener.
+	 *
+	 * @param listener the listener.
+	 */
+
+	static void removeListener(Consumer<Boolean> listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Checks whether an operation failed because the database could not be reached, rather than because of the
+	 * operation itself.
+	 *
+	 * @param error the exception the operation failed with, possibly wrapped.
+	 * @return {@code true} for connection errors, {@code false} otherwise.
+	 */
+
+	static boolean isConnectionFailure(Throwable error) {
+		for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+			if (cause instanceof SQLTransientConnectionException || cause instanceof SQLNonTransientConnectionException || cause instanceof SQLRecoverableException) {
+				return true;
+			}
+			if (cause instanceof SQLException sqlException && sqlException.getSQLState() != null && sqlException.getSQLState().startsWith("08")) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Marks the database as unreachable after an operation failed with a connection error.
+	 * The next probe marks it as reachable again once it answers.
+	 */
+
+	static void markOffline() {
+		setOnline(false);
+	}
+
+	/**
+	 * Validates a pooled connection and records the outcome.
+	 */
+
+	private static void probe() {
+		try (Connection connection = UtilsDB.getConnection()) {
+			setOnline(connection.isValid(PROBE_TIMEOUT));
+		} catch (SQLException e) {
+			if (isConnectionFailure(e)) {
+				setOnline(false);
+			} else {
+				logger.log(System.Logger.Level.WARNING, "Database health probe failed", e);
+			}
+		} catch (RuntimeException e) {
+			logger.log(System.Logger.Level.WARNING, "Database health probe failed", e);
+		}
+	}
+
+	/**
+	 * Records whether the database is reachable, notifying the listeners if it changed.
+	 *
+	 * @param reachable {@code true} if the database is reachable, {@code false} otherwise.
+	 */
+
+	private static void setOnline(boolean reachable) {
+		synchronized (DatabaseHealth.class) {
+			if (online == reachable) {
+				return;
+			}
+			online = reachable;
+		}
+
+		logger.log(System.Logger.Level.INFO, reachable ? "Database reachable again" : "Database unreachable");
+		Platform.runLater(() -> listeners.forEach(listener -> listener.accept(reachable)));
+	}
+}
@@ -0,0 +1,355 @@
+package com.napolitanoveroni.expirationdate;
+
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+
+import java.sql.SQLException;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency and row-count metrics of the database layer.
+ * <p>The {@link UtilsDB} entry points declare the operation they perform, for example {@code mergeDBProduct} or
+ * {@code getRecipeData}, by running their body through {@link #timed(String, AsyncUtilsDB.SQLCallable)}: the whole
+ * operation is timed, from the connection checkout to the last row read, and the rows affected or read by the statements prepared
+ * through {@link SQLStatement#prepare} inside it are counted. Operations nested in another one, such as an entry
+ * point called by a larger write, are part of the outer operation. Statements executed outside any operation are
+ * recorded under the name of their {@link SQLStatement} constant. The connection pool reports, through
+ * {@link #trackerFactory()}, how long the application waits for a connection and how long it holds one.</p>
+ * <p>Operations and statements slower than {@value #SLOW_QUERY_PROPERTY} milliseconds (500 by default, 0 to
+ * disable) are logged; the parameters of a slow statement are logged by type only, as they hold user data. A
+ * summary of all the metrics is logged when the connection pool is closed, and instrumentation can be turned off
+ * with {@code -D}{@value #METRICS_PROPERTY}{@code =false}.</p>
+ *
+ * @author SaverioNapolitano, MatteV02
+ * @version 2023.07.10
+ */
+public class DatabaseMetrics {
+	/**
+	 * System property enabling the instrumentation of the statements.
+	 */
+	public static final String METRICS_PROPERTY = "expirationdate.db.metrics";
+
+	/**
+	 * System property holding the number of milliseconds above which a statement is logged as slow.
+	 */
+	public static final String SLOW_QUERY_PROPERTY = "expirationdate.db.slowQueryMillis";
+
+	private static final System.Logger logger = System.getLogger(DatabaseMetrics.class.getName());
+	private static final Map<String, OperationMetrics> operations = new ConcurrentHashMap<>();
+	private static final LatencyHistogram poolWait = new LatencyHistogram();
+	private static final LatencyHistogram connectionHold = new LatencyHistogram();
+	private static final LongAdder poolTimeouts = new LongAdder();
+	private static final ThreadLocal<Operation> currentOperation = new ThreadLocal<>();
+
+	private static volatile boolean enabled = !"false".equalsIgnoreCase(System.getProperty(METRICS_PROPERTY));
+	private static volatile long slowQueryNanos = TimeUnit.MILLISECONDS.toNanos(Long.getLong(SLOW_QUERY_PROPERTY, 500L));
+
+	private DatabaseMetrics() {
+	}
+
+	/**
+	 * Checks whether the statements are instrumented.
+	 *
+	 * @return {@code true} if the statements are instrumented, {@code false} otherwise.
+	 */
+
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Enables or disables the instrumentation of the statements prepared from now on.
+	 *
+	 * @param enabled {@code true} to instrument the statements, {@code false} otherwise.
+	 */
+
+	public static void setEnabled(boolean enabled) {
+		DatabaseMetrics.enabled = enabled;
+	}
+
+	/**
+	 * Returns the number of milliseconds above which a statement is logged as slow.
+	 *
+	 * @return the slow statement threshold, in milliseconds; 0 if the slow statement log is disabled.
+	 */
+
+	public static long getSlowQueryMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(slowQueryNanos);
+	}
+
+	/**
+	 * Sets the number of milliseconds above which a statement is logged as slow.
+	 *
+	 * @param slowQueryMillis the slow statement threshold, in milliseconds; 0 disables the slow statement log.
+	 */
+
+	public static void setSlowQueryMillis(long slowQueryMillis) {
+		slowQueryNanos = TimeUnit.MILLISECONDS.toNanos(slowQueryMillis);
+	}
+
+	/**
+	 * Runs an operation, timing it and counting the statements executed inside it.
+	 * If the thread is already inside an operation, or the instrumentation is disabled, the operation is just run:
+	 * its statements are counted in the outer operation.
+	 *
+	 * @param name      the name of the operation.
+	 * @param operation the operation to be run.
+	 * @param <T>       the type of the result.
+	 * @return the result of the operation.
+	 * @throws SQLException if the operation fails.
+	 */
+
+	static <T> T timed(String name, AsyncUtilsDB.SQLCallable<T> operation) throws SQLException {
+		Operation scope = operation(name);
+		try {
+			return operation.call();
+		} finally {
+			scope.close();
+		}
+	}
+
+	/**
+	 * Runs an operation without result, timing it and counting the statements executed inside it.
+	 *
+	 * @param name      the name of the operation.
+	 * @param operation the operation to be run.
+	 * @throws SQLException if the operation fails.
+	 * @see #timed(String, AsyncUtilsDB.SQLCallable)
+	 */
+
+	static void timed(String name, AsyncUtilsDB.SQLRunnable operation) throws SQLException {
+		timed(name, () -> {
+			operation.run();
+			return null;
+		});
+	}
+
+	/**
+	 * Opens the scope of an operation on the current thread, to be closed once the operation is done.
+	 * If the thread is already inside an operation, or the instrumentation is disabled, the returned scope does
+	 * nothing: the statements are counted in the outer operation.
+	 *
+	 * @param name the name of the operation.
+	 * @return the scope of the operation.
+	 */
+
+	private static Operation operation(String name) {
+		if (!enabled || currentOperation.get() != null) {
+			return Operation.NESTED;
+		}
+
+		Operation operation = new Operation(name, System.nanoTime());
+		currentOperation.set(operation);
+		return operation;
+	}
+
+	/**
+	 * Records the execution of a statement, logging it if it is slow.
+	 * The statement is counted in the operation open on the current thread or, if there is none, recorded as an
+	 * operation of its own.
+	 *
+	 * @param statement  the statement.
+	 * @param nanos      the execution time, in nanoseconds.
+	 * @param rows       the number of rows read or affected.
+	 * @param batches    the number of parameter sets executed, 1 unless the statement was run as a batch.
+	 * @param parameters the parameters of the statement, or of the first parameter set of a batch.
+	 */
+
+	static void recordStatement(SQLStatement statement, long nanos, long rows, int batches, List<Object> parameters) {
+		Operation operation = currentOperation.get();
+		if (operation != null) {
+			operation.statements++;
+			operation.rows += rows;
+		} else {
+			record(statement.name(), nanos, rows);
+		}
+
+		if (slowQueryNanos > 0 && nanos >= slowQueryNanos) {
+			logger.log(System.Logger.Level.WARNING, "Slow statement {0} in {1}: {2} ms, {3} rows, {4} parameter sets, parameter types {5}",
+				statement, operation == null ? "no operation" : operation.name, String.format("%.1f", nanos / 1e6), rows,
+				batches, redact(parameters));
+		}
+	}
+
+	/**
+	 * Records the completion of an operation, logging it if it is slow.
+	 *
+	 * @param operation the operation.
+	 * @param nanos     the duration of the operation, in nanoseconds.
+	 */
+
+	private static void recordOperation(Operation operation, long nanos) {
+		record(operation.name, nanos, operation.rows);
+
+		if (slowQueryNanos > 0 && nanos >= slowQueryNanos) {
+			logger.log(System.Logger.Level.WARNING, "Slow operation {0}: {1} ms, {2} statements, {3} rows",
+				operation.name, String.format("%.1f", nanos / 1e6), operation.statements, operation.rows);
+		}
+	}
+
+	/**
+	 * Adds a duration and a number of rows to the metrics of an operation.
+	 *
+	 * @param name  the name of the operation.
+	 * @param nanos the duration, in nanoseconds.
+	 * @param rows  the number of rows read or affected.
+	 */
+
+	private static void record(String name, long nanos, long rows) {
+		OperationMetrics metrics = operations.computeIfAbsent(name, ignored -> new OperationMetrics());
+		metrics.latency().record(nanos);
+		metrics.rows().add(rows);
+	}
+
+	/**
+	 * Replaces the values of the parameters of a statement with their types, so that no user data is logged.
+	 *
+	 * @param parameters the parameters of a statement.
+	 * @return the types of the parameters.
+	 */
+
+	static List<String> redact(List<Object> parameters) {
+		return parameters.stream().map(parameter -> parameter == null ? "null" : parameter.getClass().getSimpleName()).toList();
+	}
+
+	/**
+	 * Returns the latency histogram of an operation.
+	 *
+	 * @param operation the name of the operation.
+	 * @return the latency histogram, empty if the operation never ran.
+	 */
+
+	static LatencyHistogram getLatency(String operation) {
+		OperationMetrics metrics = operations.get(operation);
+		return metrics == null ? new LatencyHistogram() : metrics.latency();
+	}
+
+	/**
+	 * Returns the factory of the tracker the connection pool reports its waits and connection usage to.
+	 *
+	 * @return the metrics tracker factory.
+	 */
+
+	static MetricsTrackerFactory trackerFactory() {
+		return (poolName, poolStats) -> new IMetricsTracker() {
+			@Override
+			public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+				poolWait.record(elapsedAcquiredNanos);
+			}
+
+			@Override
+			public void recordConnectionUsageMillis(long elapsedBorrowedMillis) {
+				connectionHold.record(TimeUnit.MILLISECONDS.toNanos(elapsedBorrowedMillis));
+			}
+
+			@Override
+			public void recordConnectionTimeout() {
+				poolTimeouts.increment();
+			}
+		};
+	}
+
+	/**
+	 * Builds a summary of the metrics, one line per operation, by decreasing total time.
+	 *
+	 * @return the summary.
+	 */
+
+	static String report() {
+		StringBuilder report = new StringBuilder("Database metrics (latencies in ms)\n");
+		report.append(String.format("%-28s %8s %8s %8s %8s %8s %10s%n", "operation", "count", "mean", "p50", "p99", "max", "rows"));
+
+		operations.entrySet().stream()
+			.sorted(Comparator.comparingDouble((Map.Entry<String, OperationMetrics> entry) ->
+				entry.getValue().latency().getMeanMillis() * entry.getValue().latency().getCount()).reversed())
+			.forEach(entry -> report.append(format(entry.getKey(), entry.getValue().latency(), entry.getValue().rows().sum())));
+
+		report.append(format("(pool wait)", poolWait, -1));
+		report.append(format("(connection hold)", connectionHold, -1));
+		report.append(String.format("%-28s %8d%n", "(pool timeouts)", poolTimeouts.sum()));
+
+		return report.toString();
+	}
+
+	/**
+	 * Logs the summary of the metrics, if any statement was recorded.
+	 */
+
+	static void logReport() {
+		if (!operations.isEmpty()) {
+			logger.log(System.Logger.Level.INFO, report());
+		}
+	}
+
+	/**
+	 * Formats a line of the summary.
+	 *
+	 * @param name    the name of the line.
+	 * @param latency the latency histogram.
+	 * @param rows    the number of rows, or a negative number if rows are not counted.
+	 * @return the formatted line.
+	 */
+
+	private static String format(String name, LatencyHistogram latency, long rows) {
+		return String.format("%-28s %8d %8.1f %8.1f %8.1f %8.1f %10s%n", name, latency.getCount(), latency.getMeanMillis(),
+			latency.getPercentileMillis(50), latency.getPercentileMillis(99), latency.getMaxMillis(), rows < 0 ? "" : Long.toString(rows));
+	}
+
+	/**
+	 * The scope of an operation open on a thread, counting the statements executed inside it.
+	 */
+	private static final class Operation implements AutoCloseable {
+		private static final Operation NESTED = new Operation(null, 0);
+
+		private final String name;
+		private final long start;
+		private int statements;
+		private long rows;
+
+		/**
+		 * Constructs the scope of an operation.
+		 *
+		 * @param name  the name of the operation, {@code null} for a scope that does nothing.
+		 * @param start the {@link System#nanoTime()} at which the operation started.
+		 */
+
+		private Operation(String name, long start) {
+			this.name = name;
+			this.start = start;
+			this.statements = 0;
+			this.rows = 0;
+		}
+
+		/**
+		 * Closes the scope and records the operation.
+		 */
+
+		@Override
+		public void close() {
+			if (name != null) {
+				currentOperation.remove();
+				recordOperation(this, System.nanoTime() - start);
+			}
+		}
+	}
+
+	/**
+	 * The metrics of an operation.
+	 *
+	 * @param latency the latency histogram.
+	 * @param rows    the number of rows read or affected.
+	 */
+	private record OperationMetrics(LatencyHistogram latency, LongAdder rows) {
+		/**
+		 * Constructs empty metrics.
+		 */
+		OperationMetrics() {
+			this(new LatencyHistogram(), new LongAdder());
+		}
+	}
+}
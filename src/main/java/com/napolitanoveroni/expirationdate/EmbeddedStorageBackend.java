@@ -0,0 +1,78 @@
+package com.napolitanoveroni.expirationdate;
+
+import com.zaxxer.hikari.HikariConfig;
+
+import java.nio.file.Path;
+
+/**
+ * Storage backend using an H2 engine running inside the application and storing its data in a local file.
+ * <p>No server is needed and every statement is executed in-process, without network round trips. The engine runs in
+ * MySQL compatibility mode with case-insensitive comparisons, so it accepts the statements of {@link SQLStatement}
+ * and orders and compares keys like the MySQL backend. The engine locks the database file, so a single process
+ * migrates the schema and no {@linkplain #lockSchema(java.sql.Connection) schema lock} is needed.</p>
+ * <p>The file is {@code ~/.expirationdate/expirationdate.mv.db} unless the {@value #PATH_PROPERTY} system property
+ * names another path (without the {@code .mv.db} extension).</p>
+ *
+ * @author SaverioNapolitano, MatteV02
+ * @version 2023.07.10
+ */
+public class EmbeddedStorageBackend implements StorageBackend {
+	/**
+	 * The name of the backend.
+	 */
+	static final String NAME = "embedded";
+
+	/**
+	 * System property holding the path of the database file, without extension.
+	 */
+	public static final String PATH_PROPERTY = "expirationdate.db.embeddedPath";
+
+	private final Path path;
+
+	/**
+	 * Constructs a backend storing its data in the given file.
+	 *
+	 * @param path the path of the database file, without extension.
+	 */
+
+	EmbeddedStorageBackend(Path path) {
+		this.path = path;
+	}
+
+	/**
+	 * Returns the path of the database file named by the {@value #PATH_PROPERTY} system property, or the default one.
+	 *
+	 * @return the path of the database file, without extension.
+	 */
+
+	static Path defaultPath() {
+		String configured = System.getProperty(PATH_PROPERTY);
+		if (configured != null) {
+			return Path.of(configured);
+		}
+		return Path.of(System.getProperty("user.home"), ".expirationdate", "expirationdate");
+	}
+
+	/**
+	 * Returns the name of the backend.
+	 *
+	 * @return {@value #NAME}.
+	 */
+
+	@Override
+	public String getName() {
+		return NAME;
+	}
+
+	/**
+	 * Sets the H2 driver and the URL of the database file on a pool configuration.
+	 *
+	 * @param config the pool configuration.
+	 */
+
+	@Override
+	public void configure(HikariConfig config) {
+		config.setDriverClassName("org.h2.Driver");
+		config.setJdbcUrl("jdbc:h2:file:" + path.toAbsolutePath() + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;IGNORECASE=TRUE");
+	}
+}
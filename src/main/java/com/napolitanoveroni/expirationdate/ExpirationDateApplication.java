@@ -25,6 +25,8 @@ import java.util.Objects;
  * @version 2023.07.10
  */
 public class ExpirationDateApplication extends Application {
+	private MainWindowController mainWindowController;
+
 	/**
 	 * The main method that launches the Expiration Date application.
 	 *
@@ -45,9 +47,26 @@ public class ExpirationDateApplication extends Application {
 	public void start(Stage stage) throws IOException {
 		FXMLLoader fxmlLoader = new FXMLLoader(ExpirationDateApplication.class.getResource("MainWindow-view.fxml"));
 		Scene scene = new Scene(fxmlLoader.load());
+		mainWindowController = fxmlLoader.getController();
 		stage.setTitle("Expiration Date");
 		stage.setScene(scene);
 		stage.getIcons().add(new Image(Objects.requireNonNull(getClass().getResourceAsStream("icons/app-icon.png"))));
 		stage.show();
 	}
+
+	/**
+	 * The stop method that releases the application resources on shutdown.
+	 * It saves the local pantry snapshot, flushes the queued recipe edits, waits for the pending database writes and closes the connection pool shared by the windows of the application.
+	 */
+	@Override
+	public void stop() {
+		if (mainWindowController != null) {
+			mainWindowController.flushSnapshot();
+		}
+		SyncPoller.stop();
+		DatabaseHealth.stop();
+		RecipeWriteBehind.flushAll();
+		AsyncUtilsDB.awaitWrites(5_000);
+		ConnectionPool.close();
+	}
 }
\ No newline at end of file
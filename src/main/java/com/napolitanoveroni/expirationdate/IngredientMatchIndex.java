@@ -0,0 +1,61 @@
+package com.napolitanoveroni.expirationdate;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Tells which ingredients are available in the pantry, matching names through {@link IngredientNormalizer}, so that
+ * the ingredient "Tomatoes" is found among the products when the pantry holds "tomato".
+ * <p>The product names are normalized once, when the index is built for a state of the pantry. The availability of
+ * an ingredient name is computed on its first lookup and remembered, so every later lookup, such as the ones of the
+ * periodic auto-save of the recipe editor, is a single hash probe. A new index is built whenever the pantry
+ * changes.</p>
+ *
+ * @author SaverioNapolitano, MatteV02
+ * @version 2023.07.10
+ */
+public class IngredientMatchIndex {
+	private final Set<String> products;
+	private final Map<String, Boolean> available;
+
+	/**
+	 * Constructs the index of the given products.
+	 *
+	 * @param productNames the names of the products available in the pantry.
+	 */
+
+	IngredientMatchIndex(Collection<String> productNames) {
+		this.products = new HashSet<>(productNames.size() * 2);
+		for (String productName : productNames) {
+			products.add(IngredientNormalizer.normalize(productName));
+		}
+		this.available = new HashMap<>();
+	}
+
+	/**
+	 * Constructs the index of an empty pantry.
+	 */
+
+	IngredientMatchIndex() {
+		this(Set.of());
+	}
+
+	/**
+	 * Checks whether an ingredient is available in the pantry.
+	 *
+	 * @param ingredientName the name of the ingredient, as written in the recipe.
+	 * @return {@code true} if a product has the same normalized name, {@code false} otherwise.
+	 */
+
+	boolean contains(String ingredientName) {
+		Boolean found = available.get(ingredientName);
+		if (found == null) {
+			found = products.contains(IngredientNormalizer.normalize(ingredientName));
+			available.put(ingredientName, found);
+		}
+		return found;
+	}
+}
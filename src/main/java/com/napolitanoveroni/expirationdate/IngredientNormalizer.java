@@ -0,0 +1,134 @@
+package com.napolitanoveroni.expirationdate;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Reduces ingredient and product names to a canonical form, so that the same food written in different ways has the
+ * same name: "Tomatoes", "tomato" and "TOMATO" all become "tomato".
+ * <p>A name is case-folded, stripped of accents, reduced to its words separated by single spaces, singularised word
+ * by word and finally mapped to its preferred {@linkplain #synonyms synonym}. The rules only need to be consistent:
+ * a name is always compared with another name normalized in the same way.</p>
+ *
+ * @author SaverioNapolitano, MatteV02
+ * @version 2023.07.10
+ */
+public class IngredientNormalizer {
+	/**
+	 * The shortest word that is singularised; shorter words, such as "gas", are left as they are.
+	 */
+	static final int MIN_SINGULAR_LENGTH = 4;
+
+	private static final Pattern accents = Pattern.compile("\\p{M}+");
+	private static final Pattern separators = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+	/**
+	 * Plurals not covered by the suffix rules of {@link #singular(String)}.
+	 */
+	private static final Map<String, String> irregularPlurals = Map.ofEntries(
+		Map.entry("leaves", "leaf"),
+		Map.entry("loaves", "loaf"),
+		Map.entry("halves", "half"),
+		Map.entry("knives", "knife"),
+		Map.entry("cookies", "cookie"),
+		Map.entry("brownies", "brownie"),
+		Map.entry("smoothies", "smoothie"),
+		Map.entry("veggies", "veggie"),
+		Map.entry("geese", "goose"),
+		Map.entry("mice", "mouse"),
+		Map.entry("gases", "gas"),
+		Map.entry("buses", "bus")
+	);
+
+	/**
+	 * Names of the same food, mapped to the preferred one. Keys and values are normalized names.
+	 */
+	private static final Map<String, String> synonyms = Map.ofEntries(
+		Map.entry("aubergine", "eggplant"),
+		Map.entry("courgette", "zucchini"),
+		Map.entry("coriander", "cilantro"),
+		Map.entry("rocket", "arugula"),
+		Map.entry("scallion", "spring onion"),
+		Map.entry("green onion", "spring onion"),
+		Map.entry("garbanzo", "chickpea"),
+		Map.entry("garbanzo bean", "chickpea"),
+		Map.entry("icing sugar", "powdered sugar"),
+		Map.entry("confectioner sugar", "powdered sugar"),
+		Map.entry("caster sugar", "superfine sugar"),
+		Map.entry("minced meat", "ground meat"),
+		Map.entry("mince", "ground meat"),
+		Map.entry("prawn", "shrimp"),
+		Map.entry("capsicum", "bell pepper"),
+		Map.entry("maize", "corn"),
+		Map.entry("beetroot", "beet")
+	);
+
+	private IngredientNormalizer() {
+	}
+
+	/**
+	 * Normalizes an ingredient or product name.
+	 *
+	 * @param name the name.
+	 * @return the canonical form of the name; empty if the name has no letters or digits.
+	 */
+
+	static String normalize(String name) {
+		String canonical = String.join(" ", words(name));
+		return synonyms.getOrDefault(canonical, canonical);
+	}
+
+	/**
+	 * Splits a text into case-folded, accent-free, singular words, without mapping them to synonyms.
+	 *
+	 * @param text the text.
+	 * @return the words, in order; empty if the text has no letters or digits.
+	 */
+
+	static List<String> words(String text) {
+		List<String> words = new ArrayList<>();
+		if (text == null) {
+			return words;
+		}
+
+		String folded = accents.matcher(Normalizer.normalize(text.toLowerCase(Locale.ROOT), Normalizer.Form.NFD)).replaceAll("");
+		for (String word : separators.split(folded)) {
+			if (!word.isEmpty()) {
+				words.add(singular(word));
+			}
+		}
+		return words;
+	}
+
+	/**
+	 * Returns the singular of a lowercase English word, or the word itself if it does not look like a plural.
+	 *
+	 * @param word the word.
+	 * @return the singular of the word.
+	 */
+
+	static String singular(String word) {
+		String irregular = irregularPlurals.get(word);
+		if (irregular != null) {
+			return irregular;
+		}
+		if (word.length() < MIN_SINGULAR_LENGTH) {
+			return word;
+		}
+
+		if (word.endsWith("ies") && word.length() > 4) {
+			return word.substring(0, word.length() - 3) + "y";
+		}
+		if (word.endsWith("oes") || word.endsWith("ches") || word.endsWith("shes") || word.endsWith("sses") || word.endsWith("xes") || word.endsWith("zes")) {
+			return word.substring(0, word.length() - 2);
+		}
+		if (word.endsWith("s") && !word.endsWith("ss") && !word.endsWith("us") && !word.endsWith("is")) {
+			return word.substring(0, word.length() - 1);
+		}
+		return word;
+	}
+}
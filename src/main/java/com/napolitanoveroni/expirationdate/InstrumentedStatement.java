@@ -0,0 +1,252 @@
+package com.napolitanoveroni.expirationdate;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Times the executions of a prepared statement and counts their rows, reporting them to {@link DatabaseMetrics}.
+ * <p>The statement is wrapped in a proxy that remembers the parameters set on it and measures every
+ * {@code execute*} call. Updates are recorded when they return, with their update count; queries are recorded when
+ * their result set is closed (or replaced by the next execution), with the number of rows read and the time spent
+ * executing and fetching them, excluding the time the caller spends between two rows.</p>
+ * <p>Each execution is reported on the thread that runs it, so {@link DatabaseMetrics} counts it in the operation
+ * open on that thread.</p>
+ *
+ * @author SaverioNapolitano, MatteV02
+ * @version 2023.07.10
+ */
+class InstrumentedStatement implements InvocationHandler {
+	private static final Set<String> executeMethods = Set.of("execute", "executeUpdate", "executeLargeUpdate");
+
+	private final PreparedStatement statement;
+	private final SQLStatement sqlStatement;
+	private final List<Object> parameters;
+	private List<Object> batchParameters;
+	private int batches;
+	private QueryHandler openQuery;
+
+	/**
+	 * Constructs the handler of a statement.
+	 *
+	 * @param statement    the statement to be instrumented.
+	 * @param sqlStatement the statement constant the statement was prepared from.
+	 */
+
+	private InstrumentedStatement(PreparedStatement statement, SQLStatement sqlStatement) {
+		this.statement = statement;
+		this.sqlStatement = sqlStatement;
+		this.parameters = new ArrayList<>();
+		this.batchParameters = null;
+		this.batches = 0;
+		this.openQuery = null;
+	}
+
+	/**
+	 * Wraps a prepared statement so that its executions are recorded.
+	 *
+	 * @param sqlStatement the statement constant the statement was prepared from.
+	 * @param statement    the statement to be instrumented.
+	 * @return the instrumented statement.
+	 */
+
+	static PreparedStatement wrap(SQLStatement sqlStatement, PreparedStatement statement) {
+		return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+			new Class<?>[]{PreparedStatement.class}, new InstrumentedStatement(statement, sqlStatement));
+	}
+
+	@Override
+	public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+		String name = method.getName();
+
+		if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer index) {
+			setParameter(index, args[1]);
+		} else if (name.equals("clearParameters")) {
+			parameters.clear();
+		} else if (name.equals("addBatch") && (args == null || args.length == 0)) {
+			if (batchParameters == null) {
+				batchParameters = new ArrayList<>(parameters);
+			}
+			batches++;
+		} else if (name.equals("clearBatch")) {
+			batchParameters = null;
+			batches = 0;
+		} else if (name.equals("executeQuery") && (args == null || args.length == 0)) {
+			recordOpenQuery();
+			long start = System.nanoTime();
+			ResultSet resultSet = (ResultSet) call(method, args);
+			openQuery = new QueryHandler(resultSet, System.nanoTime() - start, List.copyOf(parameters));
+			return Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class<?>[]{ResultSet.class}, openQuery);
+		} else if (executeMethods.contains(name) && (args == null || args.length == 0)) {
+			recordOpenQuery();
+			long start = System.nanoTime();
+			Object result = call(method, args);
+			long nanos = System.nanoTime() - start;
+			long rows = result instanceof Number count ? count.longValue() : Math.max(statement.getUpdateCount(), 0);
+			DatabaseMetrics.recordStatement(sqlStatement, nanos, rows, 1, List.copyOf(parameters));
+			return result;
+		} else if (name.equals("executeBatch") || name.equals("executeLargeBatch")) {
+			recordOpenQuery();
+			long start = System.nanoTime();
+			Object result = call(method, args);
+			long nanos = System.nanoTime() - start;
+			DatabaseMetrics.recordStatement(sqlStatement, nanos, sumUpdateCounts(result), batches,
+				batchParameters == null ? List.of() : batchParameters);
+			batchParameters = null;
+			batches = 0;
+			return result;
+		} else if (name.equals("close")) {
+			recordOpenQuery();
+		}
+
+		return call(method, args);
+	}
+
+	/**
+	 * Remembers the value of a parameter.
+	 *
+	 * @param index the index of the parameter, starting from 1.
+	 * @param value the value of the parameter.
+	 */
+
+	private void setParameter(int index, Object value) {
+		while (parameters.size() < index) {
+			parameters.add(null);
+		}
+		parameters.set(index - 1, value);
+	}
+
+	/**
+	 * Records the query whose result set is still open, if there is one.
+	 */
+
+	private void recordOpenQuery() {
+		if (openQuery != null) {
+			openQuery.record();
+			openQuery = null;
+		}
+	}
+
+	/**
+	 * Calls a method on the statement, unwrapping the exceptions it throws.
+	 *
+	 * @param method the method to be called.
+	 * @param args   the arguments of the call.
+	 * @return the result of the call.
+	 * @throws Throwable the exception thrown by the method.
+	 */
+
+	private Object call(Method method, Object[] args) throws Throwable {
+		return invokeOn(statement, method, args);
+	}
+
+	/**
+	 * Calls a method on a JDBC object, unwrapping the exceptions it throws.
+	 *
+	 * @param target the object the method is called on.
+	 * @param method the method to be called.
+	 * @param args   the arguments of the call.
+	 * @return the result of the call.
+	 * @throws Throwable the exception thrown by the method.
+	 */
+
+	private static Object invokeOn(Object target, Method method, Object[] args) throws Throwable {
+		try {
+			return method.invoke(target, args);
+		} catch (InvocationTargetException e) {
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * Adds up the update counts of a batch, ignoring the counts the driver does not know.
+	 *
+	 * @param result the {@code int[]} or {@code long[]} returned by the batch execution.
+	 * @return the number of rows affected.
+	 */
+
+	private static long sumUpdateCounts(Object result) {
+		long rows = 0;
+		if (result instanceof int[] counts) {
+			for (int count : counts) {
+				rows += Math.max(count, 0);
+			}
+		} else if (result instanceof long[] counts) {
+			for (long count : counts) {
+				rows += Math.max(count, 0);
+			}
+		}
+		return rows;
+	}
+
+	/**
+	 * Counts the rows read from the result set of a query and the time spent fetching them.
+	 */
+	private class QueryHandler implements InvocationHandler {
+		private final ResultSet resultSet;
+		private final List<Object> queryParameters;
+		private long nanos;
+		private long rows;
+		private boolean recorded;
+
+		/**
+		 * Constructs the handler of a result set.
+		 *
+		 * @param resultSet       the result set to be instrumented.
+		 * @param nanos           the time spent executing the query, in nanoseconds.
+		 * @param queryParameters the parameters of the query.
+		 */
+
+		QueryHandler(ResultSet resultSet, long nanos, List<Object> queryParameters) {
+			this.resultSet = resultSet;
+			this.queryParameters = queryParameters;
+			this.nanos = nanos;
+			this.rows = 0;
+			this.recorded = false;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			switch (method.getName()) {
+				case "next" -> {
+					long start = System.nanoTime();
+					Object result = invokeOn(resultSet, method, args);
+					nanos += System.nanoTime() - start;
+					if (Boolean.TRUE.equals(result)) {
+						rows++;
+					}
+					return result;
+				}
+				case "close" -> {
+					record();
+					if (openQuery == this) {
+						openQuery = null;
+					}
+				}
+				case "getStatement" -> {
+					return statement;
+				}
+				default -> {
+				}
+			}
+			return invokeOn(resultSet, method, args);
+		}
+
+		/**
+		 * Records the query, once.
+		 */
+
+		void record() {
+			if (!recorded) {
+				recorded = true;
+				DatabaseMetrics.recordStatement(sqlStatement, nanos, rows, 1, queryParameters);
+			}
+		}
+	}
+}
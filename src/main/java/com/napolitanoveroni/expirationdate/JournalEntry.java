@@ -0,0 +1,324 @@
+package com.napolitanoveroni.expirationdate;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static com.napolitanoveroni.expirationdate.UtilsDB.*;
+
+/**
+ * A write of the pantry or of the recipes, described by its data instead of by code, so that it can be kept in the
+ * {@link WriteJournal} while the database is unreachable and applied once it is back.
+ * <p>Every entry has a random identifier, recorded in the database by the transaction that applies it: an entry is
+ * therefore applied at most once, even if it is replayed again after a failure that hid its commit.</p>
+ *
+ * @param id        the identifier of the entry.
+ * @param operation the operation the entry performs.
+ * @param arguments the arguments of the operation.
+ * @author SaverioNapolitano, MatteV02
+ * @version 2023.07.10
+ */
+public record JournalEntry(String id, Operation operation, ObjectNode arguments) {
+	/**
+	 * The mapper used to convert the arguments and to read and write the journal file.
+	 */
+	static final ObjectMapper mapper = new ObjectMapper().registerModule(new JavaTimeModule());
+
+	/**
+	 * Creates the entry adding a product, or adding its quantity to the stored product with the same name and
+	 * expiration date.
+	 *
+	 * @param product the product to be added.
+	 * @return the entry.
+	 */
+
+	static JournalEntry mergeProduct(Product product) {
+		return create(Operation.MERGE_PRODUCT).with("product", product);
+	}
+
+	/**
+	 * Creates the entry replacing a product with an edited version of it.
+	 *
+	 * @param oldProduct the product to be replaced.
+	 * @param newProduct the edited product.
+	 * @return the entry.
+	 */
+
+	static JournalEntry replaceProduct(Product oldProduct, Product newProduct) {
+		return create(Operation.REPLACE_PRODUCT).with("oldProduct", oldProduct).with("newProduct", newProduct);
+	}
+
+	/**
+	 * Creates the entry removing a product.
+	 *
+	 * @param product the product to be removed.
+	 * @return the entry.
+	 */
+
+	static JournalEntry removeProduct(Product product) {
+		return create(Operation.REMOVE_PRODUCT).with("product", product);
+	}
+
+	/**
+	 * Creates the entry writing field edits of the recipe editor, as queued by {@link RecipeWriteBehind}.
+	 *
+	 * @param edits the statements of the edits with their parameters, in order.
+	 * @return the entry.
+	 */
+
+	static JournalEntry editRecipeFields(List<Map.Entry<SQLStatement, Object[]>> edits) {
+		JournalEntry entry = create(Operation.EDIT_RECIPE_FIELDS);
+		ArrayNode rows = entry.arguments().putArray("edits");
+		for (Map.Entry<SQLStatement, Object[]> edit : edits) {
+			ArrayNode row = rows.addArray().add(edit.getKey().name());
+			for (Object parameter : edit.getValue()) {
+				row.add(mapper.<JsonNode>valueToTree(parameter));
+			}
+		}
+		return entry;
+	}
+
+	/**
+	 * Creates the entry renaming a recipe or, if no recipe has the old title, inserting it.
+	 *
+	 * @param oldTitle the current title of the recipe, blank for a new recipe.
+	 * @param recipe   the recipe, with its new title and the version that was read.
+	 * @return the entry.
+	 */
+
+	static JournalEntry saveRecipe(String oldTitle, Recipe recipe) {
+		return create(Operation.SAVE_RECIPE).with("oldTitle", oldTitle).with("recipe", recipe).with("writer", RecipeVersion.WRITER);
+	}
+
+	/**
+	 * Creates the entry removing a recipe.
+	 *
+	 * @param title the title of the recipe.
+	 * @return the entry.
+	 */
+
+	static JournalEntry removeRecipe(String title) {
+		return create(Operation.REMOVE_RECIPE).with("title", title);
+	}
+
+	/**
+	 * Creates the entry replacing a tag of a recipe; a new tag replaces itself.
+	 *
+	 * @param recipe the recipe, at the version that was read.
+	 * @param oldTag the tag to be replaced.
+	 * @param newTag the new tag.
+	 * @return the entry.
+	 */
+
+	static JournalEntry replaceTag(RecipeVersion recipe, String oldTag, String newTag) {
+		return create(Operation.REPLACE_TAG).with("recipe", recipe).with("oldTag", oldTag).with("newTag", newTag);
+	}
+
+	/**
+	 * Creates the entry removing a tag from a recipe.
+	 *
+	 * @param recipe the recipe, at the version that was read.
+	 * @param tag    the tag to be removed.
+	 * @return the entry.
+	 */
+
+	static JournalEntry removeTag(RecipeVersion recipe, String tag) {
+		return create(Operation.REMOVE_TAG).with("recipe", recipe).with("tag", tag);
+	}
+
+	/**
+	 * Creates the entry replacing an ingredient of a recipe.
+	 *
+	 * @param recipe        the recipe, at the version that was read.
+	 * @param oldIngredient the ingredient to be replaced.
+	 * @param newIngredient the new ingredient.
+	 * @return the entry.
+	 */
+
+	static JournalEntry replaceIngredient(RecipeVersion recipe, Ingredient oldIngredient, Ingredient newIngredient) {
+		return create(Operation.REPLACE_INGREDIENT).with("recipe", recipe).with("oldIngredient", oldIngredient).with("newIngredient", newIngredient);
+	}
+
+	/**
+	 * Creates the entry removing an ingredient from a recipe.
+	 *
+	 * @param recipe     the recipe, at the version that was read.
+	 * @param ingredient the ingredient to be removed.
+	 * @return the entry.
+	 */
+
+	static JournalEntry removeIngredient(RecipeVersion recipe, Ingredient ingredient) {
+		return create(Operation.REMOVE_INGREDIENT).with("recipe", recipe).with("ingredient", ingredient);
+	}
+
+	/**
+	 * Applies the entry using the given connection, inside the transaction of the caller.
+	 * Products written by entries applied before in the same transaction are removed and replaced at the version
+	 * those entries left them at, instead of the version they had when the entry was created: an edit made offline to
+	 * a product added or edited offline does not conflict with the earlier write.
+	 *
+	 * @param connection the connection to be used.
+	 * @param versions   the versions of the products written in the same transaction, updated by this entry.
+	 * @return the resulting product, as stored in the database, for the entries adding or replacing a product;
+	 * {@code null} otherwise.
+	 * @throws OptimisticLockException if a product or a recipe was changed or removed by another client.
+	 * @throws SQLException            if a database access error occurs.
+	 */
+
+	Product apply(Connection connection, Map<ProductKey, Long> versions) throws SQLException {
+		switch (operation) {
+			case MERGE_PRODUCT -> {
+				Product stored = mergeDBProduct(connection, argument("product", Product.class));
+				versions.put(ProductKey.of(stored), stored.getVersion());
+				return stored;
+			}
+			case REPLACE_PRODUCT -> {
+				removeDBProduct(connection, atCurrentVersion(argument("oldProduct", Product.class), versions));
+				Product stored = mergeDBProduct(connection, argument("newProduct", Product.class));
+				versions.put(ProductKey.of(stored), stored.getVersion());
+				return stored;
+			}
+			case REMOVE_PRODUCT -> removeDBProduct(connection, atCurrentVersion(argument("product", Product.class), versions));
+			case EDIT_RECIPE_FIELDS -> {
+				List<Map.Entry<SQLStatement, Object[]>> edits = new ArrayList<>();
+				for (JsonNode row : arguments.path("edits")) {
+					Object[] parameters = new Object[row.size() - 1];
+					for (int i = 1; i < row.size(); i++) {
+						parameters[i - 1] = mapper.convertValue(row.get(i), Object.class);
+					}
+					edits.add(Map.entry(SQLStatement.valueOf(row.get(0).asText()), parameters));
+				}
+				RecipeWriteBehind.executeBatches(connection, edits);
+			}
+			case SAVE_RECIPE -> {
+				Recipe recipe = argument("recipe", Recipe.class);
+				String oldTitle = argument("oldTitle", String.class);
+				String writer = argument("writer", String.class);
+				if (oldTitle.isBlank() || !editDBRecipeTitle(connection, new RecipeVersion(oldTitle, recipe.getVersion(), writer), recipe.getTitle())) {
+					insertDBRecipe(connection, recipe, writer);
+				}
+			}
+			case REMOVE_RECIPE -> removeDBRecipe(connection, argument("title", String.class));
+			case REPLACE_TAG -> {
+				RecipeVersion recipe = argument("recipe", RecipeVersion.class);
+				removeDBTag(connection, recipe, argument("oldTag", String.class));
+				insertDBTag(connection, recipe, argument("newTag", String.class));
+			}
+			case REMOVE_TAG -> removeDBTag(connection, argument("recipe", RecipeVersion.class), argument("tag", String.class));
+			case REPLACE_INGREDIENT -> {
+				RecipeVersion recipe = argument("recipe", RecipeVersion.class);
+				removeDBIngredient(connection, recipe, argument("oldIngredient", Ingredient.class));
+				insertDBIngredient(connection, recipe, argument("newIngredient", Ingredient.class));
+			}
+			case REMOVE_INGREDIENT -> removeDBIngredient(connection, argument("recipe", RecipeVersion.class), argument("ingredient", Ingredient.class));
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the result shown while the entry waits in the journal: the product as it was added or edited, with
+	 * version 0 since it was not read from the database, or {@code null} for the other entries.
+	 *
+	 * @return the provisional result of the entry.
+	 */
+
+	Product provisionalResult() {
+		String field = switch (operation) {
+			case MERGE_PRODUCT -> "product";
+			case REPLACE_PRODUCT -> "newProduct";
+			default -> null;
+		};
+		if (field == null) {
+			return null;
+		}
+
+		Product product = argument(field, Product.class);
+		product.setVersion(0);
+		return product;
+	}
+
+	/**
+	 * Creates an entry with a new identifier and no arguments.
+	 *
+	 * @param operation the operation of the entry.
+	 * @return the entry.
+	 */
+
+	private static JournalEntry create(Operation operation) {
+		return new JournalEntry(UUID.randomUUID().toString(), operation, mapper.createObjectNode());
+	}
+
+	/**
+	 * Adds an argument to the entry.
+	 *
+	 * @param name  the name of the argument.
+	 * @param value the value of the argument, converted to JSON.
+	 * @return this entry.
+	 */
+
+	private JournalEntry with(String name, Object value) {
+		arguments.set(name, mapper.valueToTree(value));
+		return this;
+	}
+
+	/**
+	 * Reads an argument of the entry.
+	 *
+	 * @param name the name of the argument.
+	 * @param type the type of the argument.
+	 * @param <T>  the type of the argument.
+	 * @return a new instance holding the value of the argument.
+	 * @throws IllegalStateException if the argument cannot be converted to the given type.
+	 */
+
+	private <T> T argument(String name, Class<T> type) {
+		try {
+			return mapper.treeToValue(arguments.path(name), type);
+		} catch (JsonProcessingException e) {
+			throw new IllegalStateException("Malformed journal entry " + id + ": " + name, e);
+		}
+	}
+
+	/**
+	 * Sets a product read from the arguments to the version the previous entries of the transaction left it at, if
+	 * they wrote it.
+	 *
+	 * @param product  the product, read from the arguments of the entry.
+	 * @param versions the versions of the products written in the transaction.
+	 * @return the product.
+	 */
+
+	private static Product atCurrentVersion(Product product, Map<ProductKey, Long> versions) {
+		Long version = versions.remove(ProductKey.of(product));
+		if (version != null) {
+			product.setVersion(version);
+		}
+		return product;
+	}
+
+	/**
+	 * The operations an entry can perform.
+	 */
+	enum Operation {
+		MERGE_PRODUCT,
+		REPLACE_PRODUCT,
+		REMOVE_PRODUCT,
+		EDIT_RECIPE_FIELDS,
+		SAVE_RECIPE,
+		REMOVE_RECIPE,
+		REPLACE_TAG,
+		REMOVE_TAG,
+		REPLACE_INGREDIENT,
+		REMOVE_INGREDIENT
+	}
+}
@@ -0,0 +1,106 @@
+package com.napolitanoveroni.expirationdate;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A latency histogram with power-of-two buckets, safe to update from many threads without locking.
+ * <p>Bucket {@code i} counts the samples between 2<sup>i-1</sup> and 2<sup>i</sup> microseconds, so the
+ * percentiles are exact within a factor of two, which is enough to tell a 1 ms query from a 100 ms one while
+ * keeping every update a couple of atomic additions.</p>
+ *
+ * @author SaverioNapolitano, MatteV02
+ * @version 2023.07.10
+ */
+public class LatencyHistogram {
+	private static final int BUCKETS = 40;
+
+	private final LongAdder[] buckets;
+	private final LongAdder count;
+	private final LongAdder totalNanos;
+	private final LongAccumulator maxNanos;
+
+	/**
+	 * Constructs an empty histogram.
+	 */
+
+	LatencyHistogram() {
+		this.buckets = new LongAdder[BUCKETS];
+		for (int i = 0; i < BUCKETS; i++) {
+			buckets[i] = new LongAdder();
+		}
+		this.count = new LongAdder();
+		this.totalNanos = new LongAdder();
+		this.maxNanos = new LongAccumulator(Math::max, 0);
+	}
+
+	/**
+	 * Records a sample.
+	 *
+	 * @param nanos the sample, in nanoseconds.
+	 */
+
+	void record(long nanos) {
+		long micros = Math.max(nanos, 0) / 1_000;
+		int bucket = Math.min(64 - Long.numberOfLeadingZeros(micros), BUCKETS - 1);
+		buckets[bucket].increment();
+		count.increment();
+		totalNanos.add(nanos);
+		maxNanos.accumulate(nanos);
+	}
+
+	/**
+	 * Returns the number of samples.
+	 *
+	 * @return the number of samples.
+	 */
+
+	long getCount() {
+		return count.sum();
+	}
+
+	/**
+	 * Returns the mean of the samples.
+	 *
+	 * @return the mean, in milliseconds, or 0 if there are no samples.
+	 */
+
+	double getMeanMillis() {
+		long samples = count.sum();
+		return samples == 0 ? 0 : totalNanos.sum() / 1e6 / samples;
+	}
+
+	/**
+	 * Returns the largest sample.
+	 *
+	 * @return the largest sample, in milliseconds.
+	 */
+
+	double getMaxMillis() {
+		return maxNanos.get() / 1e6;
+	}
+
+	/**
+	 * Returns an upper bound of the given percentile: the upper limit of the bucket holding it.
+	 *
+	 * @param percentile the percentile, between 0 and 100.
+	 * @return the upper bound of the percentile, in milliseconds, or 0 if there are no samples.
+	 */
+
+	double getPercentileMillis(double percentile) {
+		long samples = count.sum();
+		if (samples == 0) {
+			return 0;
+		}
+
+		long rank = (long) Math.ceil(samples * percentile / 100);
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += buckets[i].sum();
+			if (seen >= rank) {
+				return Math.min((1L << i) / 1e3, getMaxMillis());
+			}
+		}
+		return getMaxMillis();
+	}
+}
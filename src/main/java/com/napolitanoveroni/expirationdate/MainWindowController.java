@@ -21,17 +21,23 @@ import biweekly.property.Status;
 import biweekly.property.Summary;
 import biweekly.property.Trigger;
 import biweekly.util.Duration;
+import javafx.animation.PauseTransition;
+import javafx.application.Platform;
 import javafx.collections.FXCollections;
+import javafx.collections.ListChangeListener;
 import javafx.collections.ObservableList;
+import javafx.collections.transformation.SortedList;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
 import javafx.geometry.Insets;
+import javafx.geometry.Orientation;
 import javafx.geometry.Pos;
 import javafx.scene.Node;
 import javafx.scene.Scene;
 import javafx.scene.control.Button;
 import javafx.scene.control.Dialog;
+import javafx.scene.control.Label;
 import javafx.scene.control.TextField;
 import javafx.scene.control.*;
 import javafx.scene.control.cell.PropertyValueFactory;
@@ -40,6 +46,7 @@ import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 import javafx.scene.layout.GridPane;
 import javafx.scene.layout.VBox;
+import javafx.stage.FileChooser;
 import javafx.stage.Modality;
 import javafx.stage.Stage;
 import javafx.stage.WindowEvent;
@@ -48,11 +55,11 @@ import java.awt.*;
 import java.io.File;
 import java.io.IOException;
 import java.sql.SQLException;
-import java.sql.SQLIntegrityConstraintViolationException;
 import java.time.LocalDate;
 import java.util.List;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 import static com.napolitanoveroni.expirationdate.UtilsDB.*;
 
@@ -64,12 +71,28 @@ import static com.napolitanoveroni.expirationdate.UtilsDB.*;
  */
 public class MainWindowController {
 
-	ObservableList<Product> expirationList;
+	PantryRepository pantry;
+	RecipeCoverageIndex recipeCoverage;
+	boolean recipeCoverageLoaded;
+	private CompletableFuture<Void> recipeCoverageLoad;
+	private List<Consumer<RecipeCoverageIndex>> pendingCoverageUpdates;
+	private Runnable refreshRecipeRanking;
+	SortedList<Product> sortedPantry;
+	ObservableList<Product> searchResults;
+	SortedList<Product> sortedSearchResults;
+	private PantryPager pantryPager;
+	private ScrollBar expirationListScrollBar;
+	private PantrySnapshot pantrySnapshot;
+	private final PauseTransition snapshotDelay = new PauseTransition(javafx.util.Duration.seconds(1));
+	@FXML
+	private Label expirationListCountLabel;
 	@FXML
 	private TableColumn<Product, LocalDate> expirationListExpirationDateColumn;
 	@FXML
 	private TableColumn<Product, String> expirationListProductColumn;
 	@FXML
+	private TextField expirationListSearchTextField;
+	@FXML
 	private TableView<Product> expirationListTableView;
 	@FXML
 	private VBox shoppingListVBox;
@@ -88,24 +111,48 @@ public class MainWindowController {
 	/**
 	 * Initializes the controller and sets up the expiration list view.
 	 * This method is automatically called by the JavaFX framework after loading the associated FXML file.
+	 * The local {@link PantrySnapshot} is shown at once; then the first page of the pantry is loaded, in the
+	 * background, and replaces it; the following pages are loaded until the table is filled, then as it is scrolled.
+	 * The changes made by other clients are then applied as the {@link SyncPoller} reads them. While the database is
+	 * unreachable, the edits are kept in the {@link WriteJournal} and replayed when it is back.
 	 */
 	@FXML
 	public void initialize() {
 		expirationListProductColumn.setCellValueFactory(new PropertyValueFactory<>("productName"));
 		expirationListExpirationDateColumn.setCellValueFactory(new PropertyValueFactory<>("expirationDate"));
 
-		try {
-			dbConnection();
-			expirationList = getProductData();
-		} catch (SQLException e) {
-			expirationList = FXCollections.observableArrayList();
-			AlertDialog.alertError("Database Error: while loading data");
-		}
+		pantry = new PantryRepository();
+		recipeCoverage = new RecipeCoverageIndex(LocalDate.now());
+		pantryPager = new PantryPager(pantry, PantryPager.PAGE_SIZE);
+		pantrySnapshot = new PantrySnapshot(PantrySnapshot.defaultPath());
+		pantryPager.seed(pantrySnapshot.load());
+		snapshotDelay.setOnFinished(event -> pantrySnapshot.save(pantry.getView(), Math.max(pantryPager.getTotalCount(), pantry.size())));
+		pantry.getView().addListener((ListChangeListener<Product>) change -> {
+			saveSnapshot();
+			if (isSearching()) {
+				searchExpirationList();
+			}
+		});
 
-		expirationListTableView.setItems(expirationList);
+		sortedPantry = new SortedList<>(pantry.getView());
+		sortedPantry.comparatorProperty().bind(expirationListTableView.comparatorProperty());
+		searchResults = FXCollections.observableArrayList();
+		sortedSearchResults = new SortedList<>(searchResults);
+		sortedSearchResults.comparatorProperty().bind(expirationListTableView.comparatorProperty());
+		expirationListTableView.setItems(sortedPantry);
+		expirationListSearchTextField.textProperty().addListener((observable, oldValue, newValue) -> searchExpirationList());
 		editableCols();
-
-		sortTableView(expirationListTableView);
+		loadPagesOnScroll();
+		updateCountLabel();
+
+		SyncPoller.addListener(this::applyChanges);
+		SyncPoller.start();
+		DatabaseHealth.addListener(this::onDatabaseHealthChanged);
+		WriteJournal.addListener(this::onJournalReplayed);
+		DatabaseHealth.start();
+		WriteJournal.start();
+		loadNextPage();
+		loadRecipeCoverage();
 
 		new ShoppingListItemUI();
 	}
@@ -122,6 +169,247 @@ public class MainWindowController {
 		expirationListProductColumn.setEditable(true);
 	}
 
+	/**
+	 * Loads the next page of the pantry when the expiration list table is scrolled close to its end, or when its rows
+	 * no longer fill it.
+	 */
+	private void loadPagesOnScroll() {
+		expirationListTableView.skinProperty().addListener((skinObservable, oldSkin, newSkin) -> {
+			for (Node node : expirationListTableView.lookupAll(".scroll-bar")) {
+				if (node instanceof ScrollBar scrollBar && scrollBar.getOrientation() == Orientation.VERTICAL) {
+					expirationListScrollBar = scrollBar;
+					scrollBar.valueProperty().addListener((valueObservable, oldValue, newValue) -> loadPagesUntilFilled());
+					scrollBar.visibleProperty().addListener((visibleObservable, oldValue, newValue) -> loadPagesUntilFilled());
+				}
+			}
+			Platform.runLater(this::loadPagesUntilFilled);
+		});
+	}
+
+	/**
+	 * Loads the next page of the pantry if there is one and the loaded rows do not fill the expiration list table,
+	 * that is its vertical scroll bar is not shown, or the table is scrolled close to its end.
+	 */
+	private void loadPagesUntilFilled() {
+		if (!pantryPager.hasMore() || expirationListScrollBar == null) {
+			return;
+		}
+
+		if (!expirationListScrollBar.isVisible() || expirationListScrollBar.getValue() >= expirationListScrollBar.getMax() * 0.9) {
+			loadNextPage();
+		}
+	}
+
+	/**
+	 * Loads the next page of the pantry into the expiration list; further pages are loaded until the table is
+	 * filled or the pantry is exhausted.
+	 */
+	void loadNextPage() {
+		pantryPager.loadNextPage().whenComplete((loaded, error) -> {
+			if (error != null) {
+				AlertDialog.alertError("Database Error: while loading data");
+				return;
+			}
+
+			updateCountLabel();
+			if (loaded) {
+				expirationListTableView.layout();
+				loadPagesUntilFilled();
+			}
+		});
+	}
+
+	/**
+	 * Applies the changes made by other clients to the expiration list.
+	 * Removed products are dropped, edited products are updated in place if the change is newer than the listed
+	 * version, and new products are added if they fall within the loaded pages; the others are read with their page.
+	 *
+	 * @param changes The changes read from the database.
+	 */
+	void applyChanges(ChangeSet changes) {
+		boolean changed = false;
+
+		for (ProductKey key : changes.deletedProducts()) {
+			updateRecipeCoverage(index -> index.removeLot(key));
+			if (pantry.remove(key) != null) {
+				changed = true;
+			}
+		}
+
+		for (Product product : changes.products()) {
+			updateRecipeCoverage(index -> index.addLot(ProductKey.of(product)));
+			Product current = pantry.get(ProductKey.of(product));
+			if (current == null) {
+				if (pantryPager.isLoaded(product)) {
+					pantry.add(product);
+					changed = true;
+				}
+			} else if (product.getVersion() > current.getVersion()) {
+				pantry.replace(current, product);
+				changed = true;
+			}
+		}
+
+		if (changed) {
+			expirationListTableView.refresh();
+			updateCountLabel();
+			saveSnapshot();
+		}
+
+		if (!changes.deletedRecipes().isEmpty()) {
+			updateRecipeCoverage(index -> changes.deletedRecipes().forEach(index::removeRecipe));
+		}
+		if (!changes.recipes().isEmpty()) {
+			AsyncUtilsDB.read(() -> getRecipeIngredients(changes.recipes())).whenComplete((ingredients, error) -> {
+				if (error == null) {
+					updateRecipeCoverage(index -> ingredients.forEach(index::putRecipe));
+				}
+			});
+		}
+	}
+
+	/**
+	 * Applies a change of the pantry or of the recipes, made by the user or read from another client, to the recipe
+	 * coverage index.
+	 * While the index is being loaded, the change is also kept and applied again once the index is loaded, as the
+	 * lots read from the database may predate it.
+	 *
+	 * @param update The change.
+	 */
+	void updateRecipeCoverage(Consumer<RecipeCoverageIndex> update) {
+		update.accept(recipeCoverage);
+		if (pendingCoverageUpdates != null) {
+			pendingCoverageUpdates.add(update);
+		}
+		if (refreshRecipeRanking != null) {
+			refreshRecipeRanking.run();
+		}
+	}
+
+	/**
+	 * Loads, in the background, the ingredients of every recipe and the non-expired lots of the whole pantry into the
+	 * recipe coverage index. The index is then kept up to date by {@link #updateRecipeCoverage(Consumer)}.
+	 *
+	 * @return a future completed, on the JavaFX application thread, when the index is loaded.
+	 */
+	CompletableFuture<Void> loadRecipeCoverage() {
+		if (recipeCoverageLoad != null) {
+			return recipeCoverageLoad;
+		}
+
+		LocalDate today = LocalDate.now();
+		pendingCoverageUpdates = new ArrayList<>();
+		recipeCoverageLoad = AsyncUtilsDB.read(() -> Map.entry(getRecipeIngredients(), getNotExpiredProductKeys(today))).thenAccept(loaded -> {
+			recipeCoverage.expire(today);
+			recipeCoverage.setRecipes(loaded.getKey());
+			recipeCoverage.setLots(loaded.getValue());
+			pendingCoverageUpdates.forEach(update -> update.accept(recipeCoverage));
+			recipeCoverageLoaded = true;
+		}).whenComplete((ignored, error) -> {
+			pendingCoverageUpdates = null;
+			recipeCoverageLoad = null;
+		});
+		return recipeCoverageLoad;
+	}
+
+	/**
+	 * Schedules the save of the local snapshot of the expiration list one second after the last call, so a burst of
+	 * changes is saved once.
+	 * Changes of the list are saved automatically; this method must be called after a product of the list is edited
+	 * in place.
+	 */
+	void saveSnapshot() {
+		snapshotDelay.playFromStart();
+	}
+
+	/**
+	 * Saves the local snapshot of the expiration list at once.
+	 * Called when the application exits.
+	 */
+	void flushSnapshot() {
+		snapshotDelay.stop();
+		pantrySnapshot.saveNow(pantry.getView(), Math.max(pantryPager.getTotalCount(), pantry.size()));
+	}
+
+	/**
+	 * Reports a failed write of a product.
+	 * If the product was changed by another client, the user is warned and the changes are read at once, so the
+	 * edit can be repeated on the current data.
+	 *
+	 * @param error   The error the write failed with.
+	 * @param message The message shown for any other error.
+	 */
+	void onProductWriteError(Throwable error, String message) {
+		if (AsyncUtilsDB.cause(error) instanceof OptimisticLockException) {
+			AlertDialog.alertWarning("Conflict", "Product changed by another client", "The product was changed or removed on another computer. The list is being updated: please repeat the operation.");
+			SyncPoller.pollNow();
+		} else {
+			AlertDialog.alertError(message);
+		}
+	}
+
+	/**
+	 * Shows how many of the products stored in the database are loaded in the expiration list.
+	 */
+	void updateCountLabel() {
+		expirationListCountLabel.setText(pantry.size() + " of " + Math.max(pantryPager.getTotalCount(), pantry.size()) +
+			(isSearching() ? ", " + searchResults.size() + " found" : "") + (DatabaseHealth.isOnline() ? "" : " (offline)"));
+	}
+
+	/**
+	 * Checks whether the expiration list is filtered by the search box.
+	 *
+	 * @return true if the search box holds a query, false otherwise.
+	 */
+	boolean isSearching() {
+		return expirationListSearchTextField.getText() != null && !expirationListSearchTextField.getText().isBlank();
+	}
+
+	/**
+	 * Shows the products matching the query of the search box, or the whole expiration list if the query is blank.
+	 * Matching products are found through the search index of the pantry, by prefix and with a few typos, so the
+	 * search does not scan the products; only the loaded products are searched.
+	 */
+	void searchExpirationList() {
+		if (isSearching()) {
+			searchResults.setAll(pantry.search(expirationListSearchTextField.getText()));
+			if (expirationListTableView.getItems() != sortedSearchResults) {
+				expirationListTableView.setItems(sortedSearchResults);
+			}
+		} else {
+			searchResults.clear();
+			if (expirationListTableView.getItems() != sortedPantry) {
+				expirationListTableView.setItems(sortedPantry);
+			}
+		}
+		updateCountLabel();
+	}
+
+	/**
+	 * Warns the user when the database becomes unreachable, and updates the count label.
+	 *
+	 * @param online true if the database became reachable, false if it became unreachable.
+	 */
+	void onDatabaseHealthChanged(boolean online) {
+		updateCountLabel();
+		if (!online) {
+			AlertDialog.alertWarning("Offline", "Database unreachable", "Your changes are kept on this computer and will be saved as soon as the database is reachable again.");
+		}
+	}
+
+	/**
+	 * Reports the replay of the write journal: the changes made offline that could not be saved are reported to the
+	 * user, and the list is updated with the stored products.
+	 *
+	 * @param result The outcome of the replay.
+	 */
+	void onJournalReplayed(WriteJournal.ReplayResult result) {
+		if (result.skipped() > 0) {
+			AlertDialog.alertWarning("Conflict", result.skipped() + " offline changes not saved", "The same data was changed or removed on another computer while this one was offline. The list is being updated: please repeat the changes.");
+		}
+		SyncPoller.pollNow();
+	}
+
     /*
 
 
@@ -148,27 +436,34 @@ public class MainWindowController {
 	}
 
 	/**
-	 * Handles the case when there are overlapping products with the same name and expiration date.
+	 * Shows a product as stored in the database after it was added or merged.
+	 * If the expiration list holds a product with the same name and expiration date, its quantity, category, price and
+	 * version are updated; otherwise the stored product is added to the list.
+	 * A product with version 0 was kept in the write journal instead of being stored: its quantity is added to the
+	 * listed one, as the database will do when the journal is replayed.
 	 *
-	 * @param oldProduct        The old product.
-	 * @param newName           The new name.
-	 * @param newExpirationDate The new expiration date.
+	 * @param stored The product as stored in the database, or as journaled.
+	 * @return true if the product was added to the list, false if it was merged into a listed one.
 	 */
-	void onOverlappingProducts(Product oldProduct, String newName, LocalDate newExpirationDate) {
-		final String onSQLExceptionMessage = "Database Error while editing item";
+	boolean showStoredProduct(Product stored) {
+		Product listed = pantry.get(ProductKey.of(stored));
+
+		if (listed != null) {
+			Product updated = new Product(listed);
+			updated.setQuantity(stored.getVersion() == 0 ? listed.getQuantity() + stored.getQuantity() : stored.getQuantity());
+			updated.setCategoryName(stored.getCategoryName());
+			updated.setPrice(stored.getPrice());
+			updated.setVersion(stored.getVersion());
+			pantry.replace(listed, updated);
+			saveSnapshot();
+		} else {
+			pantry.add(stored);
+		}
 
-		// In this case, we renamed a product to an already existing item with the same expiration date
-		expirationList.stream().filter(product -> product.getProductName().equals(newName) && product.getExpirationDate().equals(newExpirationDate)).forEach(product -> {
-			int newQuantity = product.getQuantity() + oldProduct.getQuantity();
-			try {
-				editDBProductQuantity(product, newQuantity);
-				product.setQuantity(newQuantity);
-				removeDBProduct(oldProduct);
-				expirationListTableView.getItems().remove(expirationListTableView.getSelectionModel().getSelectedIndex());
-			} catch (SQLException ex) {
-				AlertDialog.alertError(onSQLExceptionMessage);
-			}
-		});
+		updateRecipeCoverage(index -> index.addLot(ProductKey.of(stored)));
+		updateCountLabel();
+
+		return listed == null;
 	}
 
 	/**
@@ -200,13 +495,18 @@ public class MainWindowController {
 			int selectedIndex = selectedIndex();
 			Product removeProduct = expirationListTableView.getItems().get(selectedIndex);
 
-			deleteCalendarEvent(removeProduct);
-			removeDBProduct(removeProduct);
+			WriteJournal.submit(JournalEntry.removeProduct(removeProduct)).whenComplete((ignored, error) -> {
+				if (error != null) {
+					//UtilsDB.onSQLException("Database Error while removing item");
+					onProductWriteError(error, "Database Error while removing item.");
+					return;
+				}
 
-			expirationListTableView.getItems().remove(selectedIndex);
-		} catch (SQLException e) {
-			//UtilsDB.onSQLException("Database Error while removing item");
-			AlertDialog.alertError("Database Error while removing item.");
+				deleteCalendarEvent(removeProduct);
+				pantry.remove(ProductKey.of(removeProduct));
+				updateRecipeCoverage(index -> index.removeLot(ProductKey.of(removeProduct)));
+				updateCountLabel();
+			});
 		} catch (NoSuchElementException e) {
 			//showNoProductSelectedAlert();
 			AlertDialog.alertWarning("No Selection", "No Product Selected", "Please select a product in the table.");
@@ -282,21 +582,22 @@ public class MainWindowController {
 	void onEditExpirationDateColumn(TableColumn.CellEditEvent<Product, LocalDate> event) {
 		final String onSQLExceptionMessage = "Database Error while editing item";
 
-		int selectedIndex = selectedIndex();
 		Product oldProduct = event.getRowValue();
 		Product editedProduct = actionOnProduct(oldProduct);
 
 		if (!editedProduct.getProductName().equals("") && !editedProduct.equals(oldProduct)) {
-			try {
+			WriteJournal.submit(JournalEntry.replaceProduct(oldProduct, editedProduct)).whenComplete((stored, error) -> {
+				if (error != null) {
+					onProductWriteError(error, onSQLExceptionMessage);
+					return;
+				}
+
 				editCalendarEvent(oldProduct, editedProduct);
-				editDBProductAllField(oldProduct, editedProduct, this);
-				expirationListTableView.getItems().set(selectedIndex, editedProduct);
-			} catch (SQLException e) {
-				AlertDialog.alertError(onSQLExceptionMessage);
-			}
+				pantry.remove(ProductKey.of(oldProduct));
+				updateRecipeCoverage(index -> index.removeLot(ProductKey.of(oldProduct)));
+				showStoredProduct(stored);
+			});
 		}
-
-		sortTableView(expirationListTableView);
 	}
 
 	/**
@@ -313,13 +614,17 @@ public class MainWindowController {
 		Product editedProduct = new Product(oldProduct);
 		editedProduct.setProductName(newName);
 
-		try {
+		WriteJournal.submit(JournalEntry.replaceProduct(oldProduct, editedProduct)).whenComplete((stored, error) -> {
+			if (error != null) {
+				onProductWriteError(error, onSQLExceptionMessage);
+				return;
+			}
+
 			editCalendarEvent(oldProduct, editedProduct);
-			editDBProductName(oldProduct, newName, this);
-			oldProduct.setProductName(newName);
-		} catch (SQLException exception) {
-			AlertDialog.alertError(onSQLExceptionMessage);
-		}
+			pantry.remove(ProductKey.of(oldProduct));
+			updateRecipeCoverage(index -> index.removeLot(ProductKey.of(oldProduct)));
+			showStoredProduct(stored);
+		});
 	}
 
     /*
@@ -334,8 +639,8 @@ public class MainWindowController {
 	 * Handles the event when the "New Expiration List" button is clicked.
 	 * Creates a new product and opens the edit dialog to modify the product details.
 	 * If the product is valid (not empty), it is added to the expiration list and the database.
-	 * If a product with the same name and expiration date already exists in the list, the quantities are updated.
-	 * Finally, the expiration list table is sorted.
+	 * If a product with the same name and expiration date is already stored, the quantities are added together.
+	 * The product is inserted at its position in the expiration order.
 	 *
 	 * @param ignoredEvent The action event (ignored).
 	 */
@@ -343,26 +648,17 @@ public class MainWindowController {
 	void onNewExpirationListButtonClicked(ActionEvent ignoredEvent) {
 		Product edited = actionOnProduct(new Product());
 		if (!edited.getProductName().equals("")) {
-			try {
-				insertDBProduct(edited);
-				addCalendarEvent(edited);
-				expirationList.add(edited);
-			} catch (SQLIntegrityConstraintViolationException e) {
-				expirationList.stream().filter(product -> product.getProductName().equals(edited.getProductName()) && product.getExpirationDate().equals(edited.getExpirationDate())).forEach(product -> {
-					int newQuantity = product.getQuantity() + edited.getQuantity();
-					try {
-						editDBProductQuantity(product, newQuantity);
-						product.setQuantity(newQuantity);
-					} catch (SQLException ex) {
-						new Alert(Alert.AlertType.ERROR, "Database Error while editing item").showAndWait();
-					}
-				});
-			} catch (SQLException e) {
-				new Alert(Alert.AlertType.ERROR, "Database Error: while adding item").showAndWait();
-			}
-		}
+			WriteJournal.submit(JournalEntry.mergeProduct(edited)).whenComplete((stored, error) -> {
+				if (error != null) {
+					new Alert(Alert.AlertType.ERROR, "Database Error: while adding item").showAndWait();
+					return;
+				}
 
-		sortTableView(expirationListTableView);
+				if (showStoredProduct(stored)) {
+					addCalendarEvent(stored);
+				}
+			});
+		}
 	}
 
 	/**
@@ -420,7 +716,31 @@ public class MainWindowController {
 	 * @param product The product for which to create the calendar event.
 	 */
 	void addCalendarEvent(Product product) {
+		addCalendarEvents(List.of(product));
+	}
+
+	/**
+	 * Adds the calendar events for the given products with a single calendar update.
+	 * All the events are stored in one iCalendar object, which is executed once.
+	 *
+	 * @param products The products for which to create the calendar events.
+	 */
+	void addCalendarEvents(Collection<Product> products) {
 		ICalendar iCal = new ICalendar();
+		products.forEach(product -> iCal.addEvent(createCalendarEvent(product)));
+
+		createExecuteICS(iCal);
+	}
+
+	/**
+	 * Creates the calendar event for the given product.
+	 * The event includes the product name, expiration date, and an alarm for one day before the expiration date.
+	 *
+	 * @param product The product for which to create the calendar event.
+	 *
+	 * @return The calendar event.
+	 */
+	VEvent createCalendarEvent(Product product) {
 		VEvent event = new VEvent();
 		Summary summary = event.setSummary(product.getProductName());
 		summary.setLanguage("en-us");
@@ -432,29 +752,19 @@ public class MainWindowController {
 		VAlarm alarm = VAlarm.display(trigger, product.getProductName() + " is expiring.");
 		event.addAlarm(alarm);
 
-		iCal.addEvent(event);
-
 		String uid = product.getProductName() + product.getExpirationDate().toString();
 
 		event.setOrganizer(new Organizer("expirationdate", ""));
 		event.setSequence(1);
 		event.setUid(uid);
 
-		createExecuteICS(iCal);
-	}
-
-	/**
-	 * Sorts the expiration list table based on the expiration dates of the products.
-	 *
-	 * @param expirationListTableView The table view to be sorted.
-	 */
-	void sortTableView(TableView<Product> expirationListTableView) {
-		FXCollections.sort(expirationListTableView.getItems(), Comparator.comparing(Product::getExpirationDate));
+		return event;
 	}
 
 	/**
 	 * Handles the event when the "Recipes" button in the expiration list view is clicked.
 	 * Opens the recipe window and passes the names of the non-expired products to the controller.
+	 * The names are read from the whole pantry in the database, falling back to the loaded products.
 	 *
 	 * @param ignoredEvent The action event (ignored).
 	 *
@@ -470,7 +780,13 @@ public class MainWindowController {
 
 		RecipeWindowController controller = fxmlLoader.getController();
 
-		controller.setNotExpiredProducts(expirationList.stream().filter(product -> product.getExpirationDate().isAfter(LocalDate.now())).map(Product::getProductName).collect(Collectors.toSet()));
+		AsyncUtilsDB.read(() -> getNotExpiredProductNames(LocalDate.now())).whenComplete((notExpiredProducts, error) -> {
+			if (error != null) {
+				controller.setNotExpiredProducts(pantry.getNotExpiredProductNames(LocalDate.now()));
+			} else {
+				controller.setNotExpiredProducts(notExpiredProducts);
+			}
+		});
 
 		stage.setTitle("Recipe");
 		stage.initModality(Modality.APPLICATION_MODAL);
@@ -482,6 +798,157 @@ public class MainWindowController {
 		stage.show();
 	}
 
+	/**
+	 * Handles the event when the "What can I cook?" button in the expiration list view is clicked.
+	 * Shows every recipe ranked by the share of its ingredients available among the non-expired products of the
+	 * pantry, loaded or not.
+	 * The ranking is read from the recipe coverage index, and follows the changes of the pantry while the dialog is
+	 * open.
+	 *
+	 * @param ignoredEvent The action event (ignored).
+	 */
+	@FXML
+	void onCookExpirationListButtonClicked(ActionEvent ignoredEvent) {
+		if (recipeCoverageLoaded) {
+			showRecipeRanking();
+			return;
+		}
+
+		loadRecipeCoverage().whenComplete((ignored, error) -> {
+			if (error != null) {
+				AlertDialog.alertError("Database Error: while loading recipes");
+			} else {
+				showRecipeRanking();
+			}
+		});
+	}
+
+	/**
+	 * Shows the recipes ranked by coverage in a dialog, updating the ranking whenever the pantry changes.
+	 */
+	void showRecipeRanking() {
+		recipeCoverage.expire(LocalDate.now());
+		ObservableList<RecipeCoverageIndex.Coverage> ranking = FXCollections.observableArrayList(recipeCoverage.ranking());
+
+		ListView<RecipeCoverageIndex.Coverage> rankingListView = new ListView<>(ranking);
+		rankingListView.setPlaceholder(new Label("No recipes yet"));
+		rankingListView.setCellFactory(listView -> new ListCell<>() {
+			@Override
+			protected void updateItem(RecipeCoverageIndex.Coverage coverage, boolean empty) {
+				super.updateItem(coverage, empty);
+				if (empty || coverage == null) {
+					setText(null);
+					setGraphic(null);
+				} else {
+					setText(coverage.title() + " (" + coverage.available() + " of " + coverage.total() + " ingredients)");
+					setGraphic(new ProgressBar(coverage.share()));
+				}
+			}
+		});
+
+		Dialog<ButtonType> dialog = new Dialog<>();
+		dialog.setTitle("What can I cook?");
+		dialog.initModality(Modality.APPLICATION_MODAL);
+		dialog.getDialogPane().setContent(rankingListView);
+		dialog.getDialogPane().getButtonTypes().add(ButtonType.CLOSE);
+		dialog.getDialogPane().getStylesheets().add("com/napolitanoveroni/expirationdate" + "/styles/jmetro/dark_theme.css");
+		Stage stage = (Stage) dialog.getDialogPane().getScene().getWindow();
+		stage.getIcons().add(new Image(Objects.requireNonNull(this.getClass().getResource("icons/app-icon.png")).toString()));
+
+		refreshRecipeRanking = () -> {
+			recipeCoverage.expire(LocalDate.now());
+			ranking.setAll(recipeCoverage.ranking());
+		};
+		dialog.showAndWait();
+		refreshRecipeRanking = null;
+	}
+
+	/**
+	 * Handles the event when the "Import" button in the expiration list view is clicked.
+	 * Opens a file chooser dialog and imports the products of the selected CSV or JSON file through a
+	 * {@link PantryImporter}, showing the progress in the count label. The file is read and written away from the
+	 * JavaFX application thread.
+	 * Once the import is done the expiration list is reloaded and a single calendar update is created for all the
+	 * imported products.
+	 *
+	 * @param ignoredEvent The action event (ignored).
+	 */
+	@FXML
+	void onImportExpirationListButtonClicked(ActionEvent ignoredEvent) {
+		FileChooser fileChooser = new FileChooser();
+		fileChooser.getExtensionFilters().addAll(new FileChooser.ExtensionFilter("Pantry files (*.csv, *.json)", "*.csv", "*.json"), new FileChooser.ExtensionFilter("CSV files (*.csv)", "*.csv"), new FileChooser.ExtensionFilter("JSON files (*.json)", "*.json"));
+
+		File file = fileChooser.showOpenDialog(null);
+		if (file == null) {
+			return;
+		}
+
+		PantryImporter.readAsync(file).whenCompleteAsync((importer, error) -> {
+			if (error != null) {
+				AlertDialog.alertError("Could not read " + file.getName() + ": " + AsyncUtilsDB.cause(error).getMessage());
+			} else {
+				importProducts(importer);
+			}
+		}, Platform::runLater);
+	}
+
+	/**
+	 * Writes the products of an import to the database, showing the progress in the count label.
+	 * The products are committed in batches: if a batch fails, the user is asked whether to retry, and the retry
+	 * resumes from the failed batch without adding any quantity twice. Calendar events are created for the products
+	 * committed by each attempt.
+	 *
+	 * @param importer the importer holding the products read from a pantry file.
+	 */
+	void importProducts(PantryImporter importer) {
+		List<Product> imported = importer.getProducts();
+		int first = importer.getWritten();
+		if (first == imported.size()) {
+			return;
+		}
+
+		expirationListCountLabel.setText("Importing " + first + " of " + imported.size());
+		AsyncUtilsDB.write(() -> importer.write((written, total) -> Platform.runLater(() -> expirationListCountLabel.setText("Importing " + written + " of " + total)))).whenComplete((written, error) -> {
+			List<Product> committed = imported.subList(first, importer.getWritten());
+			reloadExpirationList();
+			committed.forEach(product -> updateRecipeCoverage(index -> index.addLot(ProductKey.of(product))));
+			if (!committed.isEmpty()) {
+				addCalendarEvents(committed);
+			}
+
+			if (error != null && confirmImportRetry(importer.getWritten(), imported.size())) {
+				importProducts(importer);
+			}
+		});
+	}
+
+	/**
+	 * Asks the user whether to retry an import that failed.
+	 *
+	 * @param written the number of products already imported.
+	 * @param total   the number of products to be imported.
+	 * @return true if the user chose to retry, false otherwise.
+	 */
+	boolean confirmImportRetry(int written, int total) {
+		Alert alert = new Alert(Alert.AlertType.ERROR);
+		alert.getButtonTypes().remove(ButtonType.OK);
+		alert.getButtonTypes().add(ButtonType.CANCEL);
+		alert.getButtonTypes().add(ButtonType.YES);
+		alert.setTitle("Error");
+		alert.setHeaderText("Database Error: while importing products");
+		alert.setContentText(written + " of " + total + " products were imported: do you want to import the others?");
+		return alert.showAndWait().orElse(ButtonType.CANCEL) == ButtonType.YES;
+	}
+
+	/**
+	 * Discards the loaded pages of the pantry and loads the first one again.
+	 */
+	void reloadExpirationList() {
+		pantry.clear();
+		pantryPager = new PantryPager(pantry, PantryPager.PAGE_SIZE);
+		loadNextPage();
+	}
+
     /*
 
 
@@ -615,24 +1082,25 @@ public class MainWindowController {
 						}
 					}
 
-					try {
-						Product edited = actionOnProduct(new Product(productName));
-						if (!cancelEditProduct && !edited.getProductName().equals("")) {
-							insertDBProduct(edited);
-							addCalendarEvent(edited);
-							expirationList.add(edited);
-						} else {
-							checkBox.setSelected(false);
-							cancelEditProduct = false;
-							productTextField.setDisable(false);
-						}
-					} catch (SQLException e) {
-						AlertDialog.alertError("Database Error: while adding item");
+					Product edited = actionOnProduct(new Product(productName));
+					if (!cancelEditProduct && !edited.getProductName().equals("")) {
+						WriteJournal.submit(JournalEntry.mergeProduct(edited)).whenComplete((stored, error) -> {
+							if (error != null) {
+								AlertDialog.alertError("Database Error: while adding item");
+								return;
+							}
+
+							if (showStoredProduct(stored)) {
+								addCalendarEvent(stored);
+							}
+						});
+					} else {
+						checkBox.setSelected(false);
+						cancelEditProduct = false;
+						productTextField.setDisable(false);
 					}
 				}
 			}
-
-			sortTableView(expirationListTableView);
 		}
 
 		/**
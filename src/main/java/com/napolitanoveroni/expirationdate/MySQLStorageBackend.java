@@ -0,0 +1,112 @@
+package com.napolitanoveroni.expirationdate;
+
+import com.zaxxer.hikari.HikariConfig;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Storage backend using the MySQL server configured in {@code PersonalConfigDB}.
+ * <p>The database must exist on the server; its tables are created by {@link SchemaMigrator}. The driver client-side
+ * and server-side prepared-statement caches are enabled, so that the statements of {@link SQLStatement} are parsed
+ * once per connection, together with the rewriting of JDBC batches into multi-row statements.</p>
+ *
+ * @author SaverioNapolitano, MatteV02
+ * @version 2023.07.10
+ */
+public class MySQLStorageBackend implements StorageBackend {
+	/**
+	 * The name of the backend.
+	 */
+	static final String NAME = "mysql";
+
+	/**
+	 * The number of seconds a client waits for another client to finish migrating the schema.
+	 */
+	static final int SCHEMA_LOCK_TIMEOUT = 60;
+
+	/**
+	 * Returns the name of the backend.
+	 *
+	 * @return {@value #NAME}.
+	 */
+
+	@Override
+	public String getName() {
+		return NAME;
+	}
+
+	/**
+	 * Sets the MySQL driver, URL and driver properties on a pool configuration.
+	 *
+	 * @param config the pool configuration.
+	 */
+
+	@Override
+	public void configure(HikariConfig config) {
+		config.setDriverClassName(PersonalConfigDB.JDBC_Driver);
+		config.setJdbcUrl(PersonalConfigDB.JDBC_URL);
+
+		config.addDataSourceProperty("cachePrepStmts", "true");
+		config.addDataSourceProperty("prepStmtCacheSize", "250");
+		config.addDataSourceProperty("prepStmtCacheSqlLimit", "2048");
+		config.addDataSourceProperty("useServerPrepStmts", "true");
+		config.addDataSourceProperty("rewriteBatchedStatements", "true");
+		config.addDataSourceProperty("cacheResultSetMetadata", "true");
+		config.addDataSourceProperty("cacheServerConfiguration", "true");
+		config.addDataSourceProperty("useLocalSessionState", "true");
+		config.addDataSourceProperty("elideSetAutoCommits", "true");
+		config.addDataSourceProperty("maintainTimeStats", "false");
+	}
+
+	/**
+	 * Acquires the named lock of the schema of the database, waiting at most {@link #SCHEMA_LOCK_TIMEOUT} seconds for
+	 * another client to release it.
+	 *
+	 * @param connection the connection the schema is migrated on, which holds the lock.
+	 * @throws SQLException if the lock was not acquired in time or a database access error occurs.
+	 */
+
+	@Override
+	public void lockSchema(Connection connection) throws SQLException {
+		try (PreparedStatement lock = SQLStatement.LOCK_SCHEMA.prepare(connection)) {
+			lock.setString(1, lockName(connection));
+			lock.setInt(2, SCHEMA_LOCK_TIMEOUT);
+			try (ResultSet rs = lock.executeQuery()) {
+				if (!rs.next() || rs.getInt(1) != 1) {
+					throw new SQLException("Timed out waiting for another client to migrate the database schema");
+				}
+			}
+		}
+	}
+
+	/**
+	 * Releases the named lock of the schema of the database.
+	 *
+	 * @param connection the connection holding the lock.
+	 * @throws SQLException if a database access error occurs.
+	 */
+
+	@Override
+	public void unlockSchema(Connection connection) throws SQLException {
+		try (PreparedStatement unlock = SQLStatement.UNLOCK_SCHEMA.prepare(connection)) {
+			unlock.setString(1, lockName(connection));
+			unlock.executeQuery().close();
+		}
+	}
+
+	/**
+	 * Returns the name of the schema lock, which is scoped to the database so that the databases of a server are
+	 * migrated independently.
+	 *
+	 * @param connection the connection to the database.
+	 * @return the name of the lock.
+	 * @throws SQLException if a database access error occurs.
+	 */
+
+	private static String lockName(Connection connection) throws SQLException {
+		return "expirationdate.schema." + connection.getCatalog();
+	}
+}
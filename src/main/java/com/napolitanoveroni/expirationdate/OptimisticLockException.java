@@ -0,0 +1,26 @@
+package com.napolitanoveroni.expirationdate;
+
+import java.sql.SQLException;
+
+/**
+ * Thrown when a row could not be written because another client changed or removed it after it was read.
+ * <p>Writes that depend on the state the user saw only apply to the row version that was read; if the version
+ * stored in the database is a different one, no row is affected and this exception is thrown, so the conflict is
+ * detected without holding any lock between the read and the write.</p>
+ *
+ * @author SaverioNapolitano, MatteV02
+ * @version 2023.07.10
+ */
+public class OptimisticLockException extends SQLException {
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Constructs an exception with the given detail message.
+	 *
+	 * @param message the detail message.
+	 */
+
+	public OptimisticLockException(String message) {
+		super(message);
+	}
+}
@@ -0,0 +1,349 @@
+package com.napolitanoveroni.expirationdate;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Bulk import of pantry files into the products table.
+ * <p>A file, either CSV with a header row or a JSON array of products, is read one record at a time, and records
+ * with the same name and expiration date are merged in memory by adding their quantities, so each product lot is
+ * sent to the database once. The merged products are then written in batches of {@link #BATCH_SIZE}, each one in its
+ * own transaction, reporting the progress after each batch: keeping the transactions short lets the other clients
+ * see the imported rows, which {@link SyncPoller} only finds if they are committed soon after being written.</p>
+ * <p>Every batch is marked, in the transaction that writes it, with an identifier of its own in the
+ * {@code applied_journal_entries} table, as the entries of the {@link WriteJournal} are. An import that fails
+ * leaves the batches before the failed one committed, and can be retried with the same importer: the retry resumes
+ * from the first batch not known to be committed, and skips a batch whose commit succeeded although its
+ * acknowledgement was lost, so no quantity is added twice.</p>
+ *
+ * @author SaverioNapolitano, MatteV02
+ * @version 2023.07.10
+ */
+public class PantryImporter {
+	/**
+	 * The number of products written in each transaction.
+	 */
+	static final int BATCH_SIZE = 500;
+
+	private static final ExecutorService readExecutor = Executors.newSingleThreadExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "pantry-import");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private final Map<ProductKey, Product> products;
+	private final UUID id;
+	private volatile int written;
+
+	/**
+	 * Constructs an importer without products.
+	 */
+
+	PantryImporter() {
+		this(UUID.randomUUID());
+	}
+
+	/**
+	 * Constructs an importer without products, whose batches are identified from the given identifier.
+	 * Importers with the same identifier write each batch once.
+	 *
+	 * @param id the identifier of the import.
+	 */
+
+	PantryImporter(UUID id) {
+		this.products = new LinkedHashMap<>();
+		this.id = id;
+		this.written = 0;
+	}
+
+	/**
+	 * Reads a pantry file, choosing the format from its extension: {@code .json} files are read as JSON, every
+	 * other file as CSV.
+	 *
+	 * @param file the file to be read.
+	 * @return the importer holding the merged products of the file.
+	 * @throws IOException if the file cannot be read or is malformed.
+	 */
+
+	static PantryImporter read(File file) throws IOException {
+		PantryImporter importer = new PantryImporter();
+		if (file.getName().toLowerCase(Locale.ROOT).endsWith(".json")) {
+			importer.readJson(file);
+		} else {
+			importer.readCsv(file);
+		}
+		return importer;
+	}
+
+	/**
+	 * Reads a pantry file away from the JavaFX application thread, as {@link #read(File)} does.
+	 *
+	 * @param file the file to be read.
+	 * @return a future completed, on the reading thread, with the importer holding the merged products of the file,
+	 * or with the {@link IOException} that made the read fail.
+	 */
+
+	static CompletableFuture<PantryImporter> readAsync(File file) {
+		return CompletableFuture.supplyAsync(() -> {
+			try {
+				return read(file);
+			} catch (IOException e) {
+				throw new CompletionException(e);
+			}
+		}, readExecutor);
+	}
+
+	/**
+	 * Reads a CSV file whose first row names the columns. The {@code productName} and {@code expirationDate}
+	 * columns are required; {@code categoryName}, {@code quantity} and {@code price} are optional. Dates are in ISO
+	 * format ({@code yyyy-MM-dd}).
+	 *
+	 * @param file the file to be read.
+	 * @throws IOException if the file cannot be read or is malformed.
+	 */
+
+	void readCsv(File file) throws IOException {
+		try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+			String header = reader.readLine();
+			if (header == null) {
+				return;
+			}
+
+			Map<String, Integer> columns = new HashMap<>();
+			List<String> names = splitCsvLine(header.replace("\uFEFF", ""));
+			for (int i = 0; i < names.size(); i++) {
+				columns.put(names.get(i).trim().toLowerCase(Locale.ROOT), i);
+			}
+			if (!columns.containsKey("productname") || !columns.containsKey("expirationdate")) {
+				throw new IOException("The header must name the productName and expirationDate columns");
+			}
+
+			String line;
+			int lineNumber = 1;
+			while ((line = reader.readLine()) != null) {
+				lineNumber++;
+				if (line.isBlank()) {
+					continue;
+				}
+
+				List<String> fields = splitCsvLine(line);
+				try {
+					add(new Product(field(fields, columns, "productname", null), LocalDate.parse(field(fields, columns,
+						"expirationdate", null)), field(fields, columns, "categoryname", ""),
+						Integer.parseInt(field(fields, columns, "quantity", "1")),
+						Double.parseDouble(field(fields, columns, "price", "0"))));
+				} catch (DateTimeParseException | IllegalArgumentException e) {
+					throw new IOException("Line " + lineNumber + ": " + e.getMessage(), e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reads a JSON file holding an array of products, with the same fields as the CSV columns.
+	 * The array is read one element at a time through the Jackson streaming parser.
+	 *
+	 * @param file the file to be read.
+	 * @throws IOException if the file cannot be read or is malformed.
+	 */
+
+	void readJson(File file) throws IOException {
+		ObjectMapper mapper = new ObjectMapper();
+		mapper.registerModule(new JavaTimeModule());
+
+		try (JsonParser parser = mapper.getFactory().createParser(file)) {
+			if (parser.nextToken() != JsonToken.START_ARRAY) {
+				throw new IOException("The file must hold an array of products");
+			}
+			parser.nextToken();
+
+			try (MappingIterator<Product> iterator = mapper.readValues(parser, Product.class)) {
+				while (iterator.hasNextValue()) {
+					try {
+						add(iterator.nextValue());
+					} catch (IllegalArgumentException e) {
+						throw new IOException(e.getMessage(), e);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Adds a product to the import, adding its quantity to the product with the same name and expiration date if
+	 * there is one, whose category and price are replaced with the ones of the added product, as the database does.
+	 *
+	 * @param product the product to be added.
+	 * @throws IllegalArgumentException if the product has no name, no expiration date or a negative quantity.
+	 */
+
+	void add(Product product) {
+		if (product.getProductName() == null || product.getProductName().isBlank() || product.getExpirationDate() == null) {
+			throw new IllegalArgumentException("Every product needs a name and an expiration date");
+		}
+		if (product.getQuantity() < 0) {
+			throw new IllegalArgumentException("Negative quantity for " + product.getProductName());
+		}
+
+		Product merged = products.putIfAbsent(ProductKey.of(product), product);
+		if (merged != null) {
+			merged.setQuantity(merged.getQuantity() + product.getQuantity());
+			merged.setCategoryName(product.getCategoryName());
+			merged.setPrice(product.getPrice());
+		}
+	}
+
+	/**
+	 * Returns the merged products of the import, in the order they were first read.
+	 *
+	 * @return the products to be imported.
+	 */
+
+	List<Product> getProducts() {
+		return new ArrayList<>(products.values());
+	}
+
+	/**
+	 * Returns the number of products committed by the previous writes of this importer.
+	 * They are the first ones of {@link #getProducts()}.
+	 *
+	 * @return the number of products written.
+	 */
+
+	int getWritten() {
+		return written;
+	}
+
+	/**
+	 * Writes the products not yet written to the database, in batches of {@link #BATCH_SIZE}, each in its own
+	 * transaction. Products already stored with the same name and expiration date get the imported quantity added.
+	 * If a batch fails, the batches before it stay committed and the next write resumes from the failed one.
+	 *
+	 * @param progress notified, on the calling thread, after each batch is committed.
+	 * @return the number of products written by this call.
+	 * @throws SQLException if a database access error occurs.
+	 */
+
+	int write(ProgressListener progress) throws SQLException {
+		List<Product> pending = getProducts();
+		int first = written;
+
+		DatabaseMetrics.timed("importProducts", () -> {
+			while (written < pending.size()) {
+				List<Product> batch = pending.subList(written, Math.min(written + BATCH_SIZE, pending.size()));
+				try (UnitOfWork work = UtilsDB.beginUnitOfWork()) {
+					if (UtilsDB.markDBJournalEntryApplied(work.getConnection(), batchId(written))) {
+						UtilsDB.mergeDBProducts(work.getConnection(), batch);
+					}
+					work.commit();
+				}
+				written += batch.size();
+				progress.onProgress(written, pending.size());
+			}
+		});
+
+		return written - first;
+	}
+
+	/**
+	 * Returns the identifier a batch is marked with in the {@code applied_journal_entries} table.
+	 *
+	 * @param offset the position of the first product of the batch.
+	 * @return the identifier of the batch, the same for every write of this importer.
+	 */
+
+	private String batchId(int offset) {
+		return UUID.nameUUIDFromBytes((id + "/" + offset).getBytes(StandardCharsets.UTF_8)).toString();
+	}
+
+	/**
+	 * Returns the value of a column of a CSV row.
+	 *
+	 * @param fields       the fields of the row.
+	 * @param columns      the position of each column, by lower-case name.
+	 * @param column       the lower-case name of the column.
+	 * @param defaultValue the value of a missing or empty optional field, {@code null} for required columns.
+	 * @return the trimmed value of the column.
+	 * @throws IllegalArgumentException if a required field is missing or empty.
+	 */
+
+	private static String field(List<String> fields, Map<String, Integer> columns, String column, String defaultValue) {
+		Integer position = columns.get(column);
+		String value = position != null && position < fields.size() ? fields.get(position).trim() : "";
+		if (!value.isEmpty()) {
+			return value;
+		}
+		if (defaultValue == null) {
+			throw new IllegalArgumentException("Missing " + column);
+		}
+		return defaultValue;
+	}
+
+	/**
+	 * Splits a CSV row on commas, honouring double-quoted fields and doubled quotes inside them.
+	 *
+	 * @param line the row to be split.
+	 * @return the fields of the row.
+	 */
+
+	private static List<String> splitCsvLine(String line) {
+		List<String> fields = new ArrayList<>();
+		StringBuilder field = new StringBuilder();
+		boolean quoted = false;
+
+		for (int i = 0; i < line.length(); i++) {
+			char c = line.charAt(i);
+			if (quoted) {
+				if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+					field.append('"');
+					i++;
+				} else if (c == '"') {
+					quoted = false;
+				} else {
+					field.append(c);
+				}
+			} else if (c == '"') {
+				quoted = true;
+			} else if (c == ',') {
+				fields.add(field.toString());
+				field.setLength(0);
+			} else {
+				field.append(c);
+			}
+		}
+		fields.add(field.toString());
+
+		return fields;
+	}
+
+	/**
+	 * Receives the progress of an import.
+	 */
+	@FunctionalInterface
+	interface ProgressListener {
+		/**
+		 * Called after a batch is committed.
+		 *
+		 * @param written the number of products written so far.
+		 * @param total   the number of products to be written.
+		 */
+		void onProgress(int written, int total);
+	}
+}
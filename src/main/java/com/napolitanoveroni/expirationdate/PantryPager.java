@@ -0,0 +1,168 @@
+package com.napolitanoveroni.expirationdate;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Loads the pantry into a {@link PantryRepository} one page at a time, in (expiration date, product name) order.
+ * <p>The pager remembers the last product it read and asks the database for the rows that follow it, so the
+ * cost of a page does not depend on how many pages were already loaded. Pages are read through
+ * {@link AsyncUtilsDB} and appended on the JavaFX application thread. Products already in the repository, such as
+ * those added locally beyond the loaded range, are not added a second time when their page is loaded.</p>
+ * <p>The list can be {@linkplain #seed(PantrySnapshot.Contents) seeded} with a local snapshot before the first page
+ * is read. Snapshot products are provisional: each loaded page replaces the ones it contains and removes the ones
+ * in its range that are no longer stored.</p>
+ *
+ * @author SaverioNapolitano, MatteV02
+ * @version 2023.07.10
+ */
+public class PantryPager {
+	/**
+	 * The default number of products of a page.
+	 */
+	static final int PAGE_SIZE = 100;
+
+	private static final Comparator<Product> keysetOrder =
+		Comparator.comparing(Product::getExpirationDate).thenComparing(Product::getProductName,
+			String.CASE_INSENSITIVE_ORDER);
+
+	private final PantryRepository products;
+	private final int pageSize;
+	private final Map<ProductKey, Product> provisional;
+	private Product cursor;
+	private boolean exhausted;
+	private boolean loading;
+	private int totalCount;
+
+	/**
+	 * Constructs a pager that appends the loaded pages to the given repository.
+	 *
+	 * @param products the repository the products are appended to.
+	 * @param pageSize the number of products of a page.
+	 */
+
+	PantryPager(PantryRepository products, int pageSize) {
+		this.products = products;
+		this.pageSize = pageSize;
+		this.provisional = new HashMap<>();
+		this.cursor = null;
+		this.exhausted = false;
+		this.loading = false;
+		this.totalCount = 0;
+	}
+
+	/**
+	 * Loads the next page of products, if there is one, and refreshes the total product count.
+	 * Nothing is loaded while a previous page is still being read.
+	 *
+	 * @return a future completed with {@code true} if a page was loaded, {@code false} otherwise.
+	 */
+
+	CompletableFuture<Boolean> loadNextPage() {
+		if (exhausted || loading) {
+			return CompletableFuture.completedFuture(false);
+		}
+
+		loading = true;
+		Product after = cursor;
+
+		return AsyncUtilsDB.read(() -> new Page(UtilsDB.getProductPage(after, pageSize), UtilsDB.countProducts())).whenComplete((page, error) -> loading = false).thenApply(this::append);
+	}
+
+	/**
+	 * Shows the products of a snapshot until the pages holding them are loaded.
+	 * Must be called before the first page is loaded.
+	 *
+	 * @param snapshot the snapshot of the pantry.
+	 */
+
+	void seed(PantrySnapshot.Contents snapshot) {
+		for (Product product : snapshot.products()) {
+			if (products.add(product)) {
+				provisional.put(ProductKey.of(product), product);
+			}
+		}
+		totalCount = snapshot.totalCount();
+	}
+
+	/**
+	 * Appends a page read from the database to the repository, replacing the snapshot products it covers.
+	 * The new products of the page are added with a single change of the list.
+	 *
+	 * @param page the page read from the database.
+	 * @return {@code true} if the page contained products, {@code false} otherwise.
+	 */
+
+	private boolean append(Page page) {
+		exhausted = page.products().size() < pageSize;
+
+		List<Product> added = new ArrayList<>(page.products().size());
+		for (Product product : page.products()) {
+			cursor = product;
+			Product placeholder = provisional.remove(ProductKey.of(product));
+			if (placeholder != null && products.get(ProductKey.of(product)) == placeholder) {
+				products.replace(placeholder, product);
+			} else {
+				added.add(product);
+			}
+		}
+		products.addAll(added);
+
+		if (!provisional.isEmpty()) {
+			for (Iterator<Product> iterator = provisional.values().iterator(); iterator.hasNext(); ) {
+				Product stale = iterator.next();
+				if (exhausted || (cursor != null && keysetOrder.compare(stale, cursor) <= 0)) {
+					if (products.get(ProductKey.of(stale)) == stale) {
+						products.remove(ProductKey.of(stale));
+					}
+					iterator.remove();
+				}
+			}
+		}
+
+		totalCount = page.totalCount();
+
+		return !page.products().isEmpty();
+	}
+
+	/**
+	 * Checks whether a product falls within the range of the loaded pages, that is whether it would not be read by
+	 * a page loaded later.
+	 *
+	 * @param product the product.
+	 * @return {@code true} if the product belongs to a loaded page, {@code false} otherwise.
+	 */
+
+	boolean isLoaded(Product product) {
+		return exhausted || (cursor != null && keysetOrder.compare(product, cursor) <= 0);
+	}
+
+	/**
+	 * Checks whether there are products that were not loaded yet.
+	 *
+	 * @return {@code true} if more pages can be loaded, {@code false} otherwise.
+	 */
+
+	boolean hasMore() {
+		return !exhausted;
+	}
+
+	/**
+	 * Returns the number of products stored in the database, as read with the last page.
+	 *
+	 * @return the total number of products.
+	 */
+
+	int getTotalCount() {
+		return totalCount;
+	}
+
+	/**
+	 * A page of products together with the product count read with it.
+	 *
+	 * @param products   the products of the page.
+	 * @param totalCount the number of products stored in the database.
+	 */
+	private record Page(List<Product> products, int totalCount) {
+	}
+}
@@ -0,0 +1,301 @@
+package com.napolitanoveroni.expirationdate;
+
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * The products of the pantry shown by the application, indexed for constant-time lookups.
+ * <p>The repository owns the list of products and is the only way to change it: every mutation updates, together
+ * with the list, a hash index on the (product name, expiration date) key and one on the product name, whose lots
+ * are kept by expiration date. Finding a lot, merging into it and reading the non-expired product names therefore do
+ * not scan the list, however many lots the pantry holds.</p>
+ * <p>The list is kept in {@link #EXPIRATION_ORDER}: a product is inserted at, or removed from, the position found by
+ * a binary search, so every mutation changes a single element of the list instead of sorting it again, and the
+ * table only updates the affected row.</p>
+ * <p>The names and categories of the products are also kept in a {@link PantrySearchIndex}, which
+ * {@linkplain #search(String) searches} them without scanning the list.</p>
+ * <p>The list is exposed as a read-only {@linkplain #getView() observable view}, to be shown by the table.</p>
+ *
+ * @author SaverioNapolitano, MatteV02
+ * @version 2023.07.10
+ */
+public class PantryRepository {
+	/**
+	 * The order of the products: by expiration date, then by product name. Names differing only in case, which are
+	 * distinct products, are ordered case-sensitively.
+	 */
+	static final Comparator<Product> EXPIRATION_ORDER =
+		Comparator.comparing(Product::getExpirationDate).thenComparing(Product::getProductName,
+			String.CASE_INSENSITIVE_ORDER).thenComparing(Product::getProductName);
+
+	private final ObservableList<Product> products;
+	private final ObservableList<Product> view;
+	private final Map<ProductKey, Product> byKey;
+	private final Map<String, NavigableMap<LocalDate, Product>> byName;
+	private final PantrySearchIndex searchIndex;
+
+	/**
+	 * Constructs an empty repository.
+	 */
+
+	PantryRepository() {
+		this.products = FXCollections.observableArrayList();
+		this.view = FXCollections.unmodifiableObservableList(products);
+		this.byKey = new HashMap<>();
+		this.byName = new HashMap<>();
+		this.searchIndex = new PantrySearchIndex();
+	}
+
+	/**
+	 * Returns the read-only view of the products, which follows every change of the repository.
+	 *
+	 * @return the observable view of the products.
+	 */
+
+	ObservableList<Product> getView() {
+		return view;
+	}
+
+	/**
+	 * Returns the number of products.
+	 *
+	 * @return the number of products.
+	 */
+
+	int size() {
+		return products.size();
+	}
+
+	/**
+	 * Returns the product with the given name and expiration date.
+	 *
+	 * @param key the name and expiration date of the product.
+	 * @return the product, or {@code null} if there is none.
+	 */
+
+	Product get(ProductKey key) {
+		return byKey.get(key);
+	}
+
+	/**
+	 * Checks whether a product with the given name and expiration date is listed.
+	 *
+	 * @param key the name and expiration date of the product.
+	 * @return {@code true} if the product is listed, {@code false} otherwise.
+	 */
+
+	boolean contains(ProductKey key) {
+		return byKey.containsKey(key);
+	}
+
+	/**
+	 * Returns the lots of a product, by expiration date.
+	 *
+	 * @param productName the name of the product.
+	 * @return the lots of the product, from the first to expire; empty if there are none.
+	 */
+
+	Collection<Product> findByName(String productName) {
+		NavigableMap<LocalDate, Product> lots = byName.get(productName);
+		return lots == null ? List.of() : Collections.unmodifiableCollection(lots.values());
+	}
+
+	/**
+	 * Returns the names of the products having a lot that expires after the given date.
+	 * The cost depends on the number of distinct names, not on the number of lots.
+	 *
+	 * @param date the date.
+	 * @return the names of the products not expired at the given date.
+	 */
+
+	Set<String> getNotExpiredProductNames(LocalDate date) {
+		Set<String> names = new HashSet<>();
+		byName.forEach((name, lots) -> {
+			if (lots.lastKey().isAfter(date)) {
+				names.add(name);
+			}
+		});
+		return names;
+	}
+
+	/**
+	 * Finds the products whose name and category match a query, with the prefix and typo-tolerant matching of
+	 * {@link PantrySearchIndex}.
+	 *
+	 * Keys the index still holds but the repository no longer lists are skipped.
+	 *
+	 * @param query the query.
+	 * @return the matching products, in {@link #EXPIRATION_ORDER}.
+	 */
+
+	List<Product> search(String query) {
+		List<Product> matches = new ArrayList<>();
+		for (ProductKey key : searchIndex.search(query)) {
+			Product product = byKey.get(key);
+			if (product != null) {
+				matches.add(product);
+			}
+		}
+		matches.sort(EXPIRATION_ORDER);
+		return matches;
+	}
+
+	/**
+	 * Adds a product at its position, unless a product with the same name and expiration date is listed.
+	 *
+	 * @param product the product to be added.
+	 * @return {@code true} if the product was added, {@code false} if its key was already listed.
+	 */
+
+	boolean add(Product product) {
+		if (!index(product)) {
+			return false;
+		}
+		products.add(insertionPoint(product), product);
+		return true;
+	}
+
+	/**
+	 * Adds several products, skipping those whose name and expiration date are already listed.
+	 * If they all follow the listed products, as the pages of the pantry do, they are appended with a single change of
+	 * the list; otherwise each one is inserted at its position.
+	 *
+	 * @param added the products to be added.
+	 * @return the number of products added.
+	 */
+
+	int addAll(Collection<Product> added) {
+		List<Product> indexed = new ArrayList<>(added.size());
+		for (Product product : added) {
+			if (index(product)) {
+				indexed.add(product);
+			}
+		}
+		if (indexed.isEmpty()) {
+			return 0;
+		}
+
+		indexed.sort(EXPIRATION_ORDER);
+		if (products.isEmpty() || EXPIRATION_ORDER.compare(products.get(products.size() - 1), indexed.get(0)) < 0) {
+			products.addAll(indexed);
+		} else {
+			for (Product product : indexed) {
+				products.add(insertionPoint(product), product);
+			}
+		}
+		return indexed.size();
+	}
+
+	/**
+	 * Replaces a listed product with another one with the same name and expiration date, at the same position.
+	 *
+	 * @param listed  the listed product.
+	 * @param product the product replacing it.
+	 * @throws IllegalArgumentException if the product is not listed or the keys differ.
+	 */
+
+	void replace(Product listed, Product product) {
+		ProductKey key = ProductKey.of(listed);
+		if (byKey.get(key) != listed || !key.equals(ProductKey.of(product))) {
+			throw new IllegalArgumentException("Cannot replace " + key + " with " + ProductKey.of(product));
+		}
+
+		int position = positionOf(listed);
+		unindex(listed);
+		index(product);
+		products.set(position, product);
+	}
+
+	/**
+	 * Removes the product with the given name and expiration date.
+	 *
+	 * @param key the name and expiration date of the product.
+	 * @return the removed product, or {@code null} if there was none.
+	 */
+
+	Product remove(ProductKey key) {
+		Product removed = byKey.get(key);
+		if (removed != null) {
+			products.remove(positionOf(removed));
+			unindex(removed);
+		}
+		return removed;
+	}
+
+	/**
+	 * Removes every product.
+	 */
+
+	void clear() {
+		byKey.clear();
+		byName.clear();
+		searchIndex.clear();
+		products.clear();
+	}
+
+	/**
+	 * Finds the position a product not yet listed is to be inserted at.
+	 *
+	 * @param product the product.
+	 * @return the position of the first listed product following it.
+	 */
+
+	private int insertionPoint(Product product) {
+		int position = Collections.binarySearch(products, product, EXPIRATION_ORDER);
+		return position < 0 ? -position - 1 : position;
+	}
+
+	/**
+	 * Finds the position of a listed product.
+	 *
+	 * @param product the listed product.
+	 * @return the position of the product.
+	 * @throws IllegalStateException if the product is not at the position its order gives, that is if its name or
+	 *                               expiration date was changed while listed.
+	 */
+
+	private int positionOf(Product product) {
+		int position = Collections.binarySearch(products, product, EXPIRATION_ORDER);
+		if (position < 0 || products.get(position) != product) {
+			throw new IllegalStateException("Product " + ProductKey.of(product) + " is out of order");
+		}
+		return position;
+	}
+
+	/**
+	 * Adds a product to the indexes, unless its key is already indexed.
+	 *
+	 * @param product the product.
+	 * @return {@code true} if the product was indexed, {@code false} if its key was already indexed.
+	 */
+
+	private boolean index(Product product) {
+		if (byKey.putIfAbsent(ProductKey.of(product), product) != null) {
+			return false;
+		}
+		byName.computeIfAbsent(product.getProductName(), name -> new TreeMap<>()).put(product.getExpirationDate(), product);
+		searchIndex.add(product);
+		return true;
+	}
+
+	/**
+	 * Removes a product from the indexes.
+	 *
+	 * @param product the product.
+	 */
+
+	private void unindex(Product product) {
+		byKey.remove(ProductKey.of(product));
+		searchIndex.remove(product);
+		NavigableMap<LocalDate, Product> lots = byName.get(product.getProductName());
+		if (lots != null) {
+			lots.remove(product.getExpirationDate());
+			if (lots.isEmpty()) {
+				byName.remove(product.getProductName());
+			}
+		}
+	}
+}
@@ -0,0 +1,324 @@
+package com.napolitanoveroni.expirationdate;
+
+import java.util.*;
+
+/**
+ * Full-text index of the names and categories of the products of the pantry, supporting prefix and typo-tolerant
+ * searches.
+ * <p>Names and categories are split into lowercase words. Each distinct word is stored in a trie, which finds the
+ * words starting with a search term without looking at the others, and in a trigram index, which finds the words
+ * sharing a trigram with a misspelled term; only those candidates are compared with the term. The index is updated
+ * as products are added and removed, so a search never scans the products.</p>
+ * <p>A product matches a query if each term of the query is a prefix of one of its words, or is within
+ * {@linkplain #maxTypos(String) a few typos} of one of its words or of the prefix of that word as long as the
+ * term.</p>
+ *
+ * @author SaverioNapolitano, MatteV02
+ * @version 2023.07.10
+ */
+public class PantrySearchIndex {
+	/**
+	 * The shortest term matched with typos; shorter terms only match as prefixes.
+	 */
+	static final int FUZZY_MIN_LENGTH = 4;
+
+	/**
+	 * The shortest term matched with two typos instead of one.
+	 */
+	static final int TWO_TYPOS_MIN_LENGTH = 8;
+
+	private final TrieNode root;
+	private final Map<String, Set<ProductKey>> postings;
+	private final Map<String, Set<String>> trigrams;
+
+	/**
+	 * Constructs an empty index.
+	 */
+
+	PantrySearchIndex() {
+		this.root = new TrieNode();
+		this.postings = new HashMap<>();
+		this.trigrams = new HashMap<>();
+	}
+
+	/**
+	 * Indexes the name and category of a product.
+	 *
+	 * @param product the product.
+	 */
+
+	void add(Product product) {
+		ProductKey key = ProductKey.of(product);
+		for (String word : words(product)) {
+			postings.computeIfAbsent(word, this::addWord).add(key);
+		}
+	}
+
+	/**
+	 * Removes a product from the index. Its name and category must be the ones it was indexed with.
+	 *
+	 * @param product the product.
+	 */
+
+	void remove(Product product) {
+		ProductKey key = ProductKey.of(product);
+		for (String word : words(product)) {
+			Set<ProductKey> keys = postings.get(word);
+			if (keys != null && keys.remove(key) && keys.isEmpty()) {
+				postings.remove(word);
+				removeWord(word);
+			}
+		}
+	}
+
+	/**
+	 * Removes every product from the index.
+	 */
+
+	void clear() {
+		root.children.clear();
+		root.word = null;
+		postings.clear();
+		trigrams.clear();
+	}
+
+	/**
+	 * Finds the products matching a query.
+	 *
+	 * @param query the query, whose terms are separated by spaces or punctuation.
+	 * @return the keys of the products matching every term of the query; every indexed product for a blank query.
+	 */
+
+	Set<ProductKey> search(String query) {
+		List<String> terms = split(query);
+		if (terms.isEmpty()) {
+			Set<ProductKey> all = new HashSet<>();
+			postings.values().forEach(all::addAll);
+			return all;
+		}
+
+		Set<ProductKey> matches = null;
+		for (String term : terms) {
+			Set<ProductKey> termMatches = new HashSet<>();
+			for (String word : matchingWords(term)) {
+				termMatches.addAll(postings.get(word));
+			}
+			if (matches == null) {
+				matches = termMatches;
+			} else {
+				matches.retainAll(termMatches);
+			}
+			if (matches.isEmpty()) {
+				break;
+			}
+		}
+		return matches;
+	}
+
+	/**
+	 * Finds the indexed words matched by a term: those it is a prefix of and, for long enough terms, those within
+	 * {@link #maxTypos(String)} typos of it.
+	 *
+	 * @param term the lowercase term.
+	 * @return the matching words.
+	 */
+
+	private Set<String> matchingWords(String term) {
+		Set<String> words = new HashSet<>();
+
+		TrieNode node = root;
+		for (int i = 0; i < term.length() && node != null; i++) {
+			node = node.children.get(term.charAt(i));
+		}
+		if (node != null) {
+			node.collect(words);
+		}
+
+		int maxTypos = maxTypos(term);
+		if (maxTypos > 0) {
+			for (String trigram : trigrams(term)) {
+				for (String candidate : trigrams.getOrDefault(trigram, Set.of())) {
+					if (!words.contains(candidate) && (distance(term, candidate) <= maxTypos ||
+						distance(term, candidate.substring(0, Math.min(candidate.length(), term.length()))) <= maxTypos)) {
+						words.add(candidate);
+					}
+				}
+			}
+		}
+		return words;
+	}
+
+	/**
+	 * Returns the number of typos tolerated in a term, growing with its length.
+	 *
+	 * @param term the term.
+	 * @return the maximum edit distance between the term and a matching word.
+	 */
+
+	static int maxTypos(String term) {
+		if (term.length() >= TWO_TYPOS_MIN_LENGTH) {
+			return 2;
+		}
+		return term.length() >= FUZZY_MIN_LENGTH ? 1 : 0;
+	}
+
+	/**
+	 * Adds a new word to the trie and to the trigram index.
+	 *
+	 * @param word the word.
+	 * @return an empty set for the keys of the products containing the word.
+	 */
+
+	private Set<ProductKey> addWord(String word) {
+		TrieNode node = root;
+		for (int i = 0; i < word.length(); i++) {
+			node = node.children.computeIfAbsent(word.charAt(i), character -> new TrieNode());
+		}
+		node.word = word;
+
+		for (String trigram : trigrams(word)) {
+			trigrams.computeIfAbsent(trigram, ignored -> new HashSet<>()).add(word);
+		}
+		return new HashSet<>();
+	}
+
+	/**
+	 * Removes a word from the trie, pruning the nodes left without words, and from the trigram index.
+	 *
+	 * @param word the word.
+	 */
+
+	private void removeWord(String word) {
+		Deque<TrieNode> path = new ArrayDeque<>();
+		TrieNode node = root;
+		for (int i = 0; i < word.length() && node != null; i++) {
+			path.push(node);
+			node = node.children.get(word.charAt(i));
+		}
+		if (node == null) {
+			return;
+		}
+
+		node.word = null;
+		for (int i = word.length() - 1; i >= 0 && node.word == null && node.children.isEmpty(); i--) {
+			TrieNode parent = path.pop();
+			parent.children.remove(word.charAt(i));
+			node = parent;
+		}
+
+		for (String trigram : trigrams(word)) {
+			Set<String> words = trigrams.get(trigram);
+			if (words != null && words.remove(word) && words.isEmpty()) {
+				trigrams.remove(trigram);
+			}
+		}
+	}
+
+	/**
+	 * Returns the distinct words of the name and category of a product.
+	 *
+	 * @param product the product.
+	 * @return the lowercase words.
+	 */
+
+	private static Set<String> words(Product product) {
+		Set<String> words = new HashSet<>(split(product.getProductName()));
+		if (product.getCategoryName() != null) {
+			words.addAll(split(product.getCategoryName()));
+		}
+		return words;
+	}
+
+	/**
+	 * Splits a text into lowercase words, at every character that is neither a letter nor a digit.
+	 *
+	 * @param text the text.
+	 * @return the words, in order.
+	 */
+
+	static List<String> split(String text) {
+		List<String> words = new ArrayList<>();
+		if (text == null) {
+			return words;
+		}
+
+		int start = -1;
+		for (int i = 0; i <= text.length(); i++) {
+			boolean wordCharacter = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+			if (wordCharacter && start < 0) {
+				start = i;
+			} else if (!wordCharacter && start >= 0) {
+				words.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+				start = -1;
+			}
+		}
+		return words;
+	}
+
+	/**
+	 * Returns the trigrams of a word, padded at its start so that its first letters form trigrams too.
+	 *
+	 * @param word the word.
+	 * @return the trigrams of the word.
+	 */
+
+	private static Set<String> trigrams(String word) {
+		String padded = "  " + word;
+		Set<String> trigrams = new HashSet<>();
+		for (int i = 0; i + 3 <= padded.length(); i++) {
+			trigrams.add(padded.substring(i, i + 3));
+		}
+		return trigrams;
+	}
+
+	/**
+	 * Computes the edit distance between two words, counting insertions, deletions, substitutions and transpositions
+	 * of adjacent characters.
+	 *
+	 * @param a the first word.
+	 * @param b the second word.
+	 * @return the number of edits turning a word into the other.
+	 */
+
+	static int distance(String a, String b) {
+		int[][] d = new int[a.length() + 1][b.length() + 1];
+		for (int i = 0; i <= a.length(); i++) {
+			d[i][0] = i;
+		}
+		for (int j = 0; j <= b.length(); j++) {
+			d[0][j] = j;
+		}
+
+		for (int i = 1; i <= a.length(); i++) {
+			for (int j = 1; j <= b.length(); j++) {
+				int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+				d[i][j] = Math.min(Math.min(d[i - 1][j] + 1, d[i][j - 1] + 1), d[i - 1][j - 1] + cost);
+				if (i > 1 && j > 1 && a.charAt(i - 1) == b.charAt(j - 2) && a.charAt(i - 2) == b.charAt(j - 1)) {
+					d[i][j] = Math.min(d[i][j], d[i - 2][j - 2] + 1);
+				}
+			}
+		}
+		return d[a.length()][b.length()];
+	}
+
+	/**
+	 * A node of the trie: the words continuing with each character, and the word ending here, if any.
+	 */
+	private static class TrieNode {
+		private final Map<Character, TrieNode> children = new HashMap<>();
+		private String word;
+
+		/**
+		 * Adds the words ending at this node or below it.
+		 *
+		 * @param words the set the words are added to.
+		 */
+
+		private void collect(Set<String> words) {
+			if (word != null) {
+				words.add(word);
+			}
+			children.values().forEach(child -> child.collect(words));
+		}
+	}
+}
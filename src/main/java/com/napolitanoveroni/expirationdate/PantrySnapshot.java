@@ -0,0 +1,232 @@
+package com.napolitanoveroni.expirationdate;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A local copy of the first products of the pantry, shown at start-up before the database answers.
+ * <p>The snapshot is a compact JSON file holding one array per product, in (expiration date, product name) order,
+ * together with the number of products stored in the database. Snapshots are written on a background thread; when
+ * several are saved while one is being written, only the latest one is written next. The file is replaced
+ * atomically, so a crash while saving leaves the previous snapshot in place.</p>
+ *
+ * @author SaverioNapolitano, MatteV02
+ * @version 2023.07.10
+ */
+public class PantrySnapshot {
+	/**
+	 * The system property that sets the path of the snapshot file.
+	 */
+	static final String PATH_PROPERTY = "expirationdate.snapshot.path";
+
+	/**
+	 * The maximum number of products kept in the snapshot.
+	 */
+	static final int MAX_PRODUCTS = 1_000;
+
+	private static final int FORMAT_VERSION = 1;
+	private static final System.Logger logger = System.getLogger(PantrySnapshot.class.getName());
+	private static final Comparator<Product> keysetOrder =
+		Comparator.comparing(Product::getExpirationDate).thenComparing(Product::getProductName,
+			String.CASE_INSENSITIVE_ORDER);
+	private static final ExecutorService saveExecutor = Executors.newSingleThreadExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "pantry-snapshot");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private final Path path;
+	private Contents pending;
+
+	/**
+	 * Constructs a snapshot stored in the given file.
+	 *
+	 * @param path the path of the snapshot file.
+	 */
+
+	PantrySnapshot(Path path) {
+		this.path = path;
+		this.pending = null;
+	}
+
+	/**
+	 * Returns the path of the snapshot file: the value of {@link #PATH_PROPERTY} if it is set, a file in the
+	 * {@code .expirationdate} directory of the user home otherwise.
+	 *
+	 * @return the path of the snapshot file.
+	 */
+
+	static Path defaultPath() {
+		String path = System.getProperty(PATH_PROPERTY);
+		if (path != null && !path.isBlank()) {
+			return Path.of(path);
+		}
+		return Path.of(System.getProperty("user.home"), ".expirationdate", "pantry-snapshot.json");
+	}
+
+	/**
+	 * Reads the snapshot file.
+	 * A missing or unreadable file gives an empty snapshot: the pantry is then read from the database only.
+	 *
+	 * @return the contents of the snapshot.
+	 */
+
+	Contents load() {
+		List<Product> products = new ArrayList<>();
+		if (Files.notExists(path)) {
+			return new Contents(List.of(), 0);
+		}
+
+		try {
+			JsonNode root = new ObjectMapper().readTree(path.toFile());
+			if (root == null || root.path("format").asInt() != FORMAT_VERSION) {
+				return new Contents(List.of(), 0);
+			}
+
+			for (JsonNode row : root.path("products")) {
+				Product product = new Product(row.get(0).asText(), LocalDate.parse(row.get(1).asText()), row.get(2).asText(), row.get(3).asInt(), row.get(4).asDouble());
+				product.setVersion(row.get(5).asLong());
+				products.add(product);
+			}
+
+			return new Contents(products, root.path("totalCount").asInt(products.size()));
+		} catch (IOException | DateTimeParseException | NullPointerException e) {
+			logger.log(System.Logger.Level.WARNING, "Ignoring unreadable pantry snapshot " + path, e);
+			return new Contents(List.of(), 0);
+		}
+	}
+
+	/**
+	 * Saves the given pantry on the background thread, replacing any snapshot still waiting to be written.
+	 * The products are copied, so the list can keep changing while the snapshot is written.
+	 *
+	 * @param products   the products shown in the pantry.
+	 * @param totalCount the number of products stored in the database.
+	 */
+
+	void save(List<Product> products, int totalCount) {
+		Contents contents = copy(products, totalCount);
+
+		synchronized (this) {
+			boolean queued = pending != null;
+			pending = contents;
+			if (queued) {
+				return;
+			}
+		}
+
+		saveExecutor.execute(() -> {
+			Contents latest;
+			synchronized (this) {
+				latest = pending;
+				pending = null;
+			}
+			writeQuietly(latest);
+		});
+	}
+
+	/**
+	 * Saves the given pantry on the calling thread, discarding any snapshot still waiting to be written.
+	 * Used on exit, when the background thread may not get the chance to run.
+	 *
+	 * @param products   the products shown in the pantry.
+	 * @param totalCount the number of products stored in the database.
+	 */
+
+	void saveNow(List<Product> products, int totalCount) {
+		Contents contents = copy(products, totalCount);
+		synchronized (this) {
+			pending = null;
+		}
+		writeQuietly(contents);
+	}
+
+	/**
+	 * Copies the first products of the pantry, in (expiration date, product name) order.
+	 *
+	 * @param products   the products shown in the pantry.
+	 * @param totalCount the number of products stored in the database.
+	 * @return the contents of the snapshot.
+	 */
+
+	private static Contents copy(List<Product> products, int totalCount) {
+		return new Contents(products.stream().sorted(keysetOrder).limit(MAX_PRODUCTS).map(Product::new).toList(), totalCount);
+	}
+
+	/**
+	 * Writes a snapshot, logging the failures instead of reporting them: the snapshot is only a cache of the
+	 * database.
+	 *
+	 * @param contents the snapshot to be written.
+	 */
+
+	private void writeQuietly(Contents contents) {
+		try {
+			write(contents);
+		} catch (IOException e) {
+			logger.log(System.Logger.Level.WARNING, "Could not save the pantry snapshot " + path, e);
+		}
+	}
+
+	/**
+	 * Writes a snapshot to a temporary file and moves it over the snapshot file.
+	 *
+	 * @param contents the snapshot to be written.
+	 * @throws IOException if the file cannot be written.
+	 */
+
+	private synchronized void write(Contents contents) throws IOException {
+		Path directory = path.toAbsolutePath().getParent();
+		Files.createDirectories(directory);
+		Path temporary = Files.createTempFile(directory, "pantry-snapshot", ".tmp");
+
+		try {
+			try (JsonGenerator generator = new ObjectMapper().getFactory().createGenerator(temporary.toFile(), JsonEncoding.UTF8)) {
+				generator.writeStartObject();
+				generator.writeNumberField("format", FORMAT_VERSION);
+				generator.writeNumberField("totalCount", contents.totalCount());
+				generator.writeArrayFieldStart("products");
+				for (Product product : contents.products()) {
+					generator.writeStartArray();
+					generator.writeString(product.getProductName());
+					generator.writeString(product.getExpirationDate().toString());
+					generator.writeString(Objects.requireNonNullElse(product.getCategoryName(), ""));
+					generator.writeNumber(product.getQuantity());
+					generator.writeNumber(product.getPrice());
+					generator.writeNumber(product.getVersion());
+					generator.writeEndArray();
+				}
+				generator.writeEndArray();
+				generator.writeEndObject();
+			}
+
+			Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(temporary);
+		}
+	}
+
+	/**
+	 * The contents of a snapshot.
+	 *
+	 * @param products   the first products of the pantry, in (expiration date, product name) order.
+	 * @param totalCount the number of products stored in the database when the snapshot was taken.
+	 */
+	record Contents(List<Product> products, int totalCount) {
+	}
+}
@@ -15,6 +15,7 @@ public class Product {
 	String categoryName;
 	int quantity;
 	double price;
+	long version;
 
 	/**
 	 * Default constructor.
@@ -72,6 +73,7 @@ public class Product {
 		setCategoryName(other.getCategoryName());
 		setQuantity(other.getQuantity());
 		setPrice(other.getPrice());
+		setVersion(other.getVersion());
 	}
 
 	/**
@@ -164,6 +166,26 @@ public class Product {
 		this.expirationDate = expirationDate;
 	}
 
+	/**
+	 * Gets the version of the product, as read from the database.
+	 * The version is incremented by every write of the product row and is 0 for products that were not read from the
+	 * database.
+	 *
+	 * @return The version of the product.
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 * Sets the version of the product.
+	 *
+	 * @param version The version of the product.
+	 */
+	public void setVersion(long version) {
+		this.version = version;
+	}
+
 	/**
 	 * Generates the hash code for the product based on its attributes.
 	 *
@@ -0,0 +1,26 @@
+package com.napolitanoveroni.expirationdate;
+
+import java.time.LocalDate;
+
+/**
+ * The key identifying a product lot: its name together with its expiration date, as in the primary key of the
+ * products table.
+ *
+ * @param productName    the name of the product.
+ * @param expirationDate the expiration date of the product.
+ * @author SaverioNapolitano, MatteV02
+ * @version 2023.07.10
+ */
+public record ProductKey(String productName, LocalDate expirationDate) {
+
+	/**
+	 * Returns the key of the given product.
+	 *
+	 * @param product the product.
+	 * @return the key of the product.
+	 */
+
+	public static ProductKey of(Product product) {
+		return new ProductKey(product.getProductName(), product.getExpirationDate());
+	}
+}
@@ -21,6 +21,7 @@ public class Recipe {
 	String steps;
 	List<Ingredient> ingredientList;
 	List<String> tagList;
+	long version;
 
 	/**
 	 * Constructs a new Recipe object with the specified properties.
@@ -76,6 +77,7 @@ public class Recipe {
 		this.steps = recipe.getSteps();
 		this.ingredientList = new ArrayList<>(recipe.getIngredientList());
 		this.tagList = new ArrayList<>(recipe.getTagList());
+		this.version = recipe.getVersion();
 	}
 
 	/**
@@ -187,6 +189,28 @@ public class Recipe {
 		this.steps = steps;
 	}
 
+	/**
+	 * Returns the version of the recipe, as read from the database.
+	 * The version is incremented by every write of the recipe row and is 0 for recipes that were not read from the
+	 * database.
+	 *
+	 * @return the version of the recipe
+	 */
+
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 * Sets the version of the recipe.
+	 *
+	 * @param version the version of the recipe
+	 */
+
+	public void setVersion(long version) {
+		this.version = version;
+	}
+
 	/**
 	 * Returns the list of ingredients required for the recipe.
 	 *
@@ -0,0 +1,279 @@
+package com.napolitanoveroni.expirationdate;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Tells, for every recipe, how many of its ingredients are in the pantry, to rank the recipes that can be cooked now.
+ * <p>The index is inverted: each {@linkplain IngredientNormalizer normalized} ingredient maps to the recipes using it,
+ * and each recipe keeps the count of its ingredients available in the pantry. The lots of the whole pantry are
+ * {@linkplain #setLots(Collection) loaded} once; then, when the first non-expired lot of a product enters the pantry,
+ * or the last one leaves it or expires, only the recipes using that product have their count updated; nothing is
+ * recomputed from scratch. Lots expire as the date given to {@link #expire(LocalDate)} passes their expiration
+ * date.</p>
+ * <p>The {@linkplain #ranking() ranking} is sorted in parallel when there are at least {@link #PARALLEL_THRESHOLD}
+ * recipes. The index is not thread-safe: it is updated and ranked on the JavaFX application thread.</p>
+ *
+ * @author SaverioNapolitano, MatteV02
+ * @version 2023.07.10
+ */
+public class RecipeCoverageIndex {
+	/**
+	 * The number of recipes from which the ranking is sorted in parallel.
+	 */
+	static final int PARALLEL_THRESHOLD = 2_000;
+
+	/**
+	 * The order of the ranking: the recipes with the largest share of available ingredients first, then those missing
+	 * the fewest ingredients, then by title. Recipes with no ingredients come last.
+	 */
+	static final Comparator<Coverage> RANKING_ORDER =
+		Comparator.comparing((Coverage coverage) -> coverage.total() == 0).thenComparing(Comparator.comparingDouble(Coverage::share).reversed())
+			.thenComparingInt(Coverage::missing).thenComparing(Coverage::title, String.CASE_INSENSITIVE_ORDER);
+
+	private final Map<String, Set<String>> recipesByIngredient;
+	private final Map<String, RecipeState> recipes;
+	private final Map<String, Integer> lotsByProduct;
+	private final Map<ProductKey, String> countedLots;
+	private final NavigableMap<LocalDate, Set<ProductKey>> countedByExpiration;
+	private LocalDate today;
+
+	/**
+	 * Constructs an index with no recipes and an empty pantry.
+	 *
+	 * @param today the current date: lots expiring on or before it are not counted.
+	 */
+
+	RecipeCoverageIndex(LocalDate today) {
+		this.recipesByIngredient = new HashMap<>();
+		this.recipes = new HashMap<>();
+		this.lotsByProduct = new HashMap<>();
+		this.countedLots = new HashMap<>();
+		this.countedByExpiration = new TreeMap<>();
+		this.today = today;
+	}
+
+	/**
+	 * Replaces every recipe of the index.
+	 *
+	 * @param ingredientsByRecipe the ingredient names of each recipe, by title.
+	 */
+
+	void setRecipes(Map<String, ? extends Collection<String>> ingredientsByRecipe) {
+		recipesByIngredient.clear();
+		recipes.clear();
+		ingredientsByRecipe.forEach(this::putRecipe);
+	}
+
+	/**
+	 * Adds a recipe to the index, or replaces its ingredients.
+	 *
+	 * @param title       the title of the recipe.
+	 * @param ingredients the ingredient names of the recipe.
+	 */
+
+	void putRecipe(String title, Collection<String> ingredients) {
+		removeRecipe(title);
+
+		RecipeState recipe = new RecipeState();
+		for (String ingredient : ingredients) {
+			String normalized = IngredientNormalizer.normalize(ingredient);
+			if (!normalized.isEmpty() && recipe.ingredients.add(normalized)) {
+				recipesByIngredient.computeIfAbsent(normalized, ignored -> new HashSet<>()).add(title);
+				if (lotsByProduct.containsKey(normalized)) {
+					recipe.available++;
+				}
+			}
+		}
+		recipes.put(title, recipe);
+	}
+
+	/**
+	 * Removes a recipe from the index.
+	 *
+	 * @param title the title of the recipe.
+	 */
+
+	void removeRecipe(String title) {
+		RecipeState recipe = recipes.remove(title);
+		if (recipe == null) {
+			return;
+		}
+
+		for (String ingredient : recipe.ingredients) {
+			Set<String> titles = recipesByIngredient.get(ingredient);
+			if (titles != null && titles.remove(title) && titles.isEmpty()) {
+				recipesByIngredient.remove(ingredient);
+			}
+		}
+	}
+
+	/**
+	 * Replaces every lot of the pantry.
+	 *
+	 * @param keys the lots in the pantry; the expired ones are not counted.
+	 */
+
+	void setLots(Collection<ProductKey> keys) {
+		lotsByProduct.clear();
+		countedLots.clear();
+		countedByExpiration.clear();
+		recipes.values().forEach(recipe -> recipe.available = 0);
+		keys.forEach(this::addLot);
+	}
+
+	/**
+	 * Counts a lot that entered the pantry, unless it is expired or already counted.
+	 *
+	 * @param key the name and expiration date of the lot.
+	 */
+
+	void addLot(ProductKey key) {
+		if (!key.expirationDate().isAfter(today) || countedLots.containsKey(key)) {
+			return;
+		}
+
+		String normalized = IngredientNormalizer.normalize(key.productName());
+		countedLots.put(key, normalized);
+		countedByExpiration.computeIfAbsent(key.expirationDate(), ignored -> new HashSet<>()).add(key);
+		if (lotsByProduct.merge(normalized, 1, Integer::sum) == 1) {
+			updateRecipesUsing(normalized, 1);
+		}
+	}
+
+	/**
+	 * Stops counting a lot that left the pantry.
+	 *
+	 * @param key the name and expiration date of the lot.
+	 */
+
+	void removeLot(ProductKey key) {
+		if (!countedLots.containsKey(key)) {
+			return;
+		}
+
+		Set<ProductKey> expiring = countedByExpiration.get(key.expirationDate());
+		if (expiring != null && expiring.remove(key) && expiring.isEmpty()) {
+			countedByExpiration.remove(key.expirationDate());
+		}
+		uncount(key);
+	}
+
+	/**
+	 * Stops counting the lots expiring on or before the given date.
+	 * Only the expired lots are visited.
+	 *
+	 * @param date the current date.
+	 */
+
+	void expire(LocalDate date) {
+		if (!date.isAfter(today)) {
+			return;
+		}
+		today = date;
+
+		NavigableMap<LocalDate, Set<ProductKey>> expired = countedByExpiration.headMap(date, true);
+		for (Set<ProductKey> keys : expired.values()) {
+			keys.forEach(this::uncount);
+		}
+		expired.clear();
+	}
+
+	/**
+	 * Returns the coverage of a recipe.
+	 *
+	 * @param title the title of the recipe.
+	 * @return the coverage, or an empty optional if the recipe is not indexed.
+	 */
+
+	Optional<Coverage> getCoverage(String title) {
+		RecipeState recipe = recipes.get(title);
+		return recipe == null ? Optional.empty() : Optional.of(new Coverage(title, recipe.available, recipe.ingredients.size()));
+	}
+
+	/**
+	 * Returns every recipe, ranked by the share of its ingredients available in the pantry.
+	 *
+	 * @return the coverage of the recipes, in {@link #RANKING_ORDER}.
+	 */
+
+	List<Coverage> ranking() {
+		Stream<Map.Entry<String, RecipeState>> entries = recipes.size() >= PARALLEL_THRESHOLD ? recipes.entrySet().parallelStream() : recipes.entrySet().stream();
+		return entries.map(entry -> new Coverage(entry.getKey(), entry.getValue().available, entry.getValue().ingredients.size())).sorted(RANKING_ORDER).toList();
+	}
+
+	/**
+	 * Returns the number of indexed recipes.
+	 *
+	 * @return the number of recipes.
+	 */
+
+	int recipeCount() {
+		return recipes.size();
+	}
+
+	/**
+	 * Stops counting a lot, without touching the expiration index.
+	 *
+	 * @param key the key of the lot.
+	 */
+
+	private void uncount(ProductKey key) {
+		String normalized = countedLots.remove(key);
+		if (normalized != null && lotsByProduct.merge(normalized, -1, Integer::sum) == 0) {
+			lotsByProduct.remove(normalized);
+			updateRecipesUsing(normalized, -1);
+		}
+	}
+
+	/**
+	 * Changes the available count of the recipes using an ingredient.
+	 *
+	 * @param ingredient the normalized ingredient.
+	 * @param delta      1 if the ingredient became available, -1 if it is no longer available.
+	 */
+
+	private void updateRecipesUsing(String ingredient, int delta) {
+		for (String title : recipesByIngredient.getOrDefault(ingredient, Set.of())) {
+			recipes.get(title).available += delta;
+		}
+	}
+
+	/**
+	 * The normalized ingredients of a recipe, and how many of them are available.
+	 */
+	private static class RecipeState {
+		private final Set<String> ingredients = new HashSet<>();
+		private int available;
+	}
+
+	/**
+	 * How many ingredients of a recipe are available in the pantry.
+	 *
+	 * @param title     the title of the recipe.
+	 * @param available the number of distinct ingredients available.
+	 * @param total     the number of distinct ingredients of the recipe.
+	 */
+	record Coverage(String title, int available, int total) {
+		/**
+		 * Returns the share of the ingredients available; a recipe with no ingredients has share 0.
+		 *
+		 * @return the share of available ingredients, between 0 and 1.
+		 */
+
+		double share() {
+			return total == 0 ? 0 : (double) available / total;
+		}
+
+		/**
+		 * Returns the number of ingredients missing from the pantry.
+		 *
+		 * @return the number of missing ingredients.
+		 */
+
+		int missing() {
+			return total - available;
+		}
+	}
+}
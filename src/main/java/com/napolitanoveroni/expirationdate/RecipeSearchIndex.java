@@ -0,0 +1,455 @@
+package com.napolitanoveroni.expirationdate;
+
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Full-text index of the recipes, searched from the recipe window.
+ * <p>The title, category, tags, ingredient names and steps of every recipe are split into
+ * {@linkplain IngredientNormalizer#words(String) normalized words}. Every recipe has a small integer id, and the index
+ * maps each word to the ids of the recipes containing it, with the number of occurrences in each field, in plain
+ * arrays; ingredient names are also indexed under their
+ * {@linkplain IngredientNormalizer#normalize(String) canonical name}, so that "ingredient:aubergine" finds the recipes
+ * using eggplant. A recipe is re-indexed on its own when it changes, by {@link #put(Recipe)} and
+ * {@link #remove(String)}: each recipe remembers its position in the postings of its words, so it is removed from them
+ * without searching.</p>
+ * <p>A query is a list of terms, all of which must match. A term matches any field, unless it is prefixed by a field
+ * name, as in {@code tag:vegan}, {@code ingredient:egg} or {@code category:"side dish"}. The last term of the query,
+ * while it is being typed, also matches the words it is a prefix of. Matching recipes are ranked by a TF-IDF score in
+ * which each field has its own {@linkplain Field#weight weight}. Terms are scored one at a time, from the one matching
+ * the fewest recipes, into arrays indexed by recipe id, and only the best recipes are kept: a query costs a pass over
+ * the ids of the recipes containing its words, without hashing or allocating per recipe.</p>
+ *
+ * @author SaverioNapolitano, MatteV02
+ * @version 2023.07.10
+ */
+public class RecipeSearchIndex {
+	/**
+	 * The shortest prefix expanded to the words it starts; shorter trailing terms only match whole words.
+	 */
+	static final int MIN_PREFIX_LENGTH = 2;
+
+	/**
+	 * The weight of the words a trailing term is a prefix of, relative to the word equal to the term.
+	 */
+	static final double PREFIX_WEIGHT = 0.5;
+
+	private static final int FIELD_COUNT = Field.values().length;
+
+	private static final Pattern queryTerm = Pattern.compile("(?:(\\p{Alpha}+):)?(?:\"([^\"]*)\"?|(\\S+))");
+
+	private final NavigableMap<String, Postings> postings;
+	private final Map<String, Integer> ids;
+	private final List<String> titles;
+	private final List<Map<String, Integer>> positions;
+	private final Deque<Integer> freeIds;
+
+	/**
+	 * Constructs an empty index.
+	 */
+
+	RecipeSearchIndex() {
+		this.postings = new TreeMap<>();
+		this.ids = new HashMap<>();
+		this.titles = new ArrayList<>();
+		this.positions = new ArrayList<>();
+		this.freeIds = new ArrayDeque<>();
+	}
+
+	/**
+	 * Builds the index of the given recipes.
+	 *
+	 * @param recipes the recipes.
+	 * @return the index.
+	 */
+
+	static RecipeSearchIndex of(Collection<Recipe> recipes) {
+		RecipeSearchIndex index = new RecipeSearchIndex();
+		recipes.forEach(index::put);
+		return index;
+	}
+
+	/**
+	 * Indexes a recipe, replacing the previous version of the recipe with the same title.
+	 * Recipes with a blank title, not stored yet, are not indexed.
+	 *
+	 * @param recipe the recipe.
+	 */
+
+	void put(Recipe recipe) {
+		String title = recipe.getTitle();
+		remove(title);
+		if (title == null || title.isBlank()) {
+			return;
+		}
+
+		Map<String, int[]> counts = new HashMap<>();
+		count(counts, Field.TITLE, IngredientNormalizer.words(title));
+		count(counts, Field.CATEGORY, IngredientNormalizer.words(recipe.getCategory()));
+		for (String tag : recipe.getTagList()) {
+			count(counts, Field.TAG, IngredientNormalizer.words(tag));
+		}
+		for (Ingredient ingredient : recipe.getIngredientList()) {
+			Set<String> words = new LinkedHashSet<>(IngredientNormalizer.words(ingredient.getIngredient()));
+			words.addAll(IngredientNormalizer.words(IngredientNormalizer.normalize(ingredient.getIngredient())));
+			count(counts, Field.INGREDIENT, words);
+		}
+		count(counts, Field.STEPS, IngredientNormalizer.words(recipe.getSteps()));
+
+		Map<String, Integer> recipePositions = new HashMap<>(counts.size() * 2);
+		int id;
+		if (freeIds.isEmpty()) {
+			id = titles.size();
+			titles.add(title);
+			positions.add(recipePositions);
+		} else {
+			id = freeIds.pop();
+			titles.set(id, title);
+			positions.set(id, recipePositions);
+		}
+		ids.put(title, id);
+		counts.forEach((word, fieldCounts) -> recipePositions.put(word, postings.computeIfAbsent(word, ignored -> new Postings()).add(id, fieldCounts)));
+	}
+
+	/**
+	 * Removes a recipe from the index.
+	 *
+	 * @param title the title of the recipe.
+	 */
+
+	void remove(String title) {
+		Integer id = ids.remove(title);
+		if (id == null) {
+			return;
+		}
+
+		positions.get(id).forEach((word, index) -> {
+			Postings recipes = postings.get(word);
+			int moved = recipes.remove(index);
+			if (moved >= 0) {
+				positions.get(moved).put(word, index);
+			}
+			if (recipes.size == 0) {
+				postings.remove(word);
+			}
+		});
+		titles.set(id, null);
+		positions.set(id, null);
+		freeIds.push(id);
+	}
+
+	/**
+	 * Returns the number of indexed recipes.
+	 *
+	 * @return the number of recipes.
+	 */
+
+	int size() {
+		return ids.size();
+	}
+
+	/**
+	 * Finds the recipes matching a query, best first.
+	 *
+	 * @param query the query.
+	 * @param limit the maximum number of results.
+	 * @return the titles of the best matching recipes with their scores, by decreasing score.
+	 */
+
+	List<Hit> search(String query, int limit) {
+		List<Term> terms = parse(query);
+		if (terms.isEmpty() || limit <= 0) {
+			return List.of();
+		}
+
+		List<List<Match>> matches = new ArrayList<>(terms.size());
+		for (Term term : terms) {
+			List<Match> termMatches = matches(term);
+			if (termMatches.isEmpty()) {
+				return List.of();
+			}
+			matches.add(termMatches);
+		}
+		// starting from the rarest term, each term only scores the recipes matching all the previous ones
+		matches.sort(Comparator.comparingInt(RecipeSearchIndex::recipeCount));
+
+		double[] scores = new double[titles.size()];
+		double[] termScores = new double[titles.size()];
+		int[] matchedTerms = new int[titles.size()];
+		int[] matching = new int[titles.size()];
+		int matchingCount = 0;
+		for (int t = 0; t < matches.size(); t++) {
+			matchingCount = 0;
+			for (Match match : matches.get(t)) {
+				Postings recipes = match.recipes();
+				for (int i = 0; i < recipes.size; i++) {
+					int id = recipes.ids[i];
+					if (matchedTerms[id] != t) {
+						continue;
+					}
+
+					double score = match.score(recipes, i);
+					if (score > termScores[id]) {
+						if (termScores[id] == 0) {
+							matching[matchingCount++] = id;
+						}
+						termScores[id] = score;
+					}
+				}
+			}
+			if (matchingCount == 0) {
+				return List.of();
+			}
+
+			for (int i = 0; i < matchingCount; i++) {
+				int id = matching[i];
+				scores[id] += termScores[id];
+				termScores[id] = 0;
+				matchedTerms[id] = t + 1;
+			}
+		}
+
+		PriorityQueue<Hit> best = new PriorityQueue<>(limit + 1, Hit.ORDER.reversed());
+		for (int i = 0; i < matchingCount; i++) {
+			int id = matching[i];
+			best.add(new Hit(titles.get(id), scores[id]));
+			if (best.size() > limit) {
+				best.poll();
+			}
+		}
+
+		List<Hit> hits = new ArrayList<>(best);
+		hits.sort(Hit.ORDER);
+		return hits;
+	}
+
+	/**
+	 * Finds the indexed words matching a term: the word of the term and, for a trailing term of at least
+	 * {@link #MIN_PREFIX_LENGTH} characters, the words it is a prefix of.
+	 *
+	 * @param term the term.
+	 * @return the matching words, with the recipes containing them.
+	 */
+
+	private List<Match> matches(Term term) {
+		List<Match> matches = new ArrayList<>();
+
+		Postings exact = postings.get(term.word());
+		if (exact != null) {
+			matches.add(new Match(term, exact, idf(exact)));
+		}
+		if (term.prefix() && term.word().length() >= MIN_PREFIX_LENGTH) {
+			for (Postings recipes : postings.subMap(term.word(), false, term.word() + Character.MAX_VALUE, false).values()) {
+				matches.add(new Match(term, recipes, PREFIX_WEIGHT * idf(recipes)));
+			}
+		}
+		return matches;
+	}
+
+	/**
+	 * Returns the inverse document frequency of a word.
+	 *
+	 * @param recipes the recipes containing the word.
+	 * @return the inverse document frequency of the word.
+	 */
+
+	private double idf(Postings recipes) {
+		return Math.log(1 + (double) ids.size() / recipes.size);
+	}
+
+	/**
+	 * Returns an upper bound of the number of recipes matching a term.
+	 *
+	 * @param matches the words matching the term.
+	 * @return the total number of recipes containing the words.
+	 */
+
+	private static int recipeCount(List<Match> matches) {
+		int count = 0;
+		for (Match match : matches) {
+			count += match.recipes().size;
+		}
+		return count;
+	}
+
+	/**
+	 * Splits a query into terms. Words of a quoted or field-prefixed value are separate terms of the same field.
+	 * Unknown field names are searched as ordinary words.
+	 *
+	 * @param query the query.
+	 * @return the terms of the query.
+	 */
+
+	static List<Term> parse(String query) {
+		List<Term> terms = new ArrayList<>();
+		if (query == null) {
+			return terms;
+		}
+
+		Matcher matcher = queryTerm.matcher(query);
+		while (matcher.find()) {
+			Field field = matcher.group(1) == null ? null : Field.named(matcher.group(1));
+			String value = matcher.group(2) != null ? matcher.group(2) : matcher.group(3);
+			if (matcher.group(1) != null && field == null) {
+				value = matcher.group(1) + " " + value;
+			}
+
+			List<String> words = field == Field.INGREDIENT ? IngredientNormalizer.words(IngredientNormalizer.normalize(value)) : IngredientNormalizer.words(value);
+			boolean typing = matcher.end() == query.length() && matcher.group(2) == null;
+			for (int i = 0; i < words.size(); i++) {
+				terms.add(new Term(field, words.get(i), typing && i == words.size() - 1));
+			}
+		}
+		return terms;
+	}
+
+	/**
+	 * Adds the words of a field to the occurrence counts of a recipe.
+	 *
+	 * @param counts the occurrences of each word in each field.
+	 * @param field  the field.
+	 * @param words  the words of the field.
+	 */
+
+	private static void count(Map<String, int[]> counts, Field field, Collection<String> words) {
+		for (String word : words) {
+			counts.computeIfAbsent(word, ignored -> new int[FIELD_COUNT])[field.ordinal()]++;
+		}
+	}
+
+	/**
+	 * The indexed fields of a recipe, with the name used to filter them in a query and their weight in the score.
+	 */
+	enum Field {
+		TITLE("title", 5),
+		CATEGORY("category", 2),
+		TAG("tag", 3),
+		INGREDIENT("ingredient", 3),
+		STEPS("steps", 1);
+
+		private final String name;
+		private final double weight;
+
+		Field(String name, double weight) {
+			this.name = name;
+			this.weight = weight;
+		}
+
+		/**
+		 * Returns the field with the given query name.
+		 *
+		 * @param name the name of the field, in any case.
+		 * @return the field, or {@code null} if no field has the given name.
+		 */
+
+		static Field named(String name) {
+			for (Field field : values()) {
+				if (field.name.equalsIgnoreCase(name)) {
+					return field;
+				}
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * A term of a query.
+	 *
+	 * @param field  the field the term applies to, or {@code null} for every field.
+	 * @param word   the normalized word of the term.
+	 * @param prefix whether the term also matches the words it is a prefix of.
+	 */
+	record Term(Field field, String word, boolean prefix) {
+	}
+
+	/**
+	 * An indexed word matching a term.
+	 *
+	 * @param term    the term.
+	 * @param recipes the recipes containing the word.
+	 * @param weight  the weight of the word: its inverse document frequency, reduced by {@link #PREFIX_WEIGHT} for the
+	 *                words longer than the term.
+	 */
+	private record Match(Term term, Postings recipes, double weight) {
+		/**
+		 * Scores a recipe containing the word: its weighted occurrences in the fields the term applies to, saturated so
+		 * that a word repeated in the steps does not outweigh the title.
+		 *
+		 * @param recipes the recipes containing the word.
+		 * @param index   the position of the recipe among them.
+		 * @return the score of the recipe, 0 if the word is not in the fields of the term.
+		 */
+
+		double score(Postings recipes, int index) {
+			double score = 0;
+			for (Field field : Field.values()) {
+				int count = recipes.counts[index * FIELD_COUNT + field.ordinal()];
+				if (count > 0 && (term.field() == null || term.field() == field)) {
+					score += field.weight * count / (count + 1.0);
+				}
+			}
+			return weight * score;
+		}
+	}
+
+	/**
+	 * The recipes containing a word, in no particular order, with the occurrences of the word in each field of each
+	 * recipe.
+	 */
+	private static class Postings {
+		private int[] ids = new int[4];
+		private int[] counts = new int[4 * FIELD_COUNT];
+		private int size;
+
+		/**
+		 * Adds a recipe at the end.
+		 *
+		 * @param id          the id of the recipe.
+		 * @param fieldCounts the occurrences of the word in each field of the recipe.
+		 * @return the position of the recipe.
+		 */
+
+		private int add(int id, int[] fieldCounts) {
+			if (size == ids.length) {
+				ids = Arrays.copyOf(ids, size * 2);
+				counts = Arrays.copyOf(counts, size * 2 * FIELD_COUNT);
+			}
+
+			ids[size] = id;
+			System.arraycopy(fieldCounts, 0, counts, size * FIELD_COUNT, FIELD_COUNT);
+			return size++;
+		}
+
+		/**
+		 * Removes the recipe at a position, moving the last recipe into it.
+		 *
+		 * @param index the position of the recipe.
+		 * @return the id of the recipe moved to the position, or -1 if the removed recipe was the last one.
+		 */
+
+		private int remove(int index) {
+			size--;
+			if (index == size) {
+				return -1;
+			}
+
+			ids[index] = ids[size];
+			System.arraycopy(counts, size * FIELD_COUNT, counts, index * FIELD_COUNT, FIELD_COUNT);
+			return ids[index];
+		}
+	}
+
+	/**
+	 * A recipe matching a query.
+	 *
+	 * @param title the title of the recipe.
+	 * @param score the relevance of the recipe.
+	 */
+	record Hit(String title, double score) {
+		/**
+		 * The order of the results: by decreasing score, then by title.
+		 */
+		static final Comparator<Hit> ORDER = Comparator.comparingDouble(Hit::score).reversed().thenComparing(Hit::title);
+	}
+}
@@ -0,0 +1,434 @@
+package com.napolitanoveroni.expirationdate;
+
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Predicate;
+
+/**
+ * A list of recipes that only keeps the recipe titles in memory and loads the full recipes on demand.
+ * <p>At start-up only the titles are read from the database. A recipe is hydrated, with its steps, ingredients and
+ * tags, the first time it is accessed, and its neighbours are prefetched in the background so that the left and
+ * right navigation of the recipe window does not wait for the database. Recipes are only loaded in the background,
+ * through {@link #fetch(int)}: {@link #get(int)} never reads the database, so it cannot block the JavaFX application
+ * thread. Hydrated recipes are kept in a bounded least-recently-used cache, so memory usage does not grow with the
+ * number of recipes; the pinned recipe, the one being edited, and the recipes with changes not written yet are never
+ * evicted, so their in-memory edits are not replaced by stale rows.</p>
+ * <p>Recipes that are not stored in the database yet (the blank recipe of the creation view) are kept in memory
+ * until they are removed or replaced.</p>
+ *
+ * @author SaverioNapolitano, MatteV02
+ * @version 2023.07.10
+ */
+public class RecipeSource {
+	/**
+	 * The maximum number of hydrated recipes kept in memory.
+	 */
+	static final int CACHE_CAPACITY = 16;
+
+	/**
+	 * The number of recipes prefetched on each side of the accessed one.
+	 */
+	static final int PREFETCH_DISTANCE = 1;
+
+	private static final ExecutorService prefetchExecutor = Executors.newSingleThreadExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "recipe-prefetch");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private final List<String> titles;
+	private final Map<String, Recipe> cache;
+	private final Map<String, Recipe> unsaved;
+	private final Predicate<String> hasPendingChanges;
+	private volatile String pinned;
+
+	/**
+	 * Constructs a recipe source over the given recipe titles.
+	 *
+	 * @param titles            the titles of the recipes, in display order.
+	 * @param hasPendingChanges tells whether a recipe has changes not written yet; such recipes are not evicted.
+	 */
+
+	RecipeSource(List<String> titles, Predicate<String> hasPendingChanges) {
+		this.titles = new ArrayList<>(titles);
+		this.cache = new LinkedHashMap<>(CACHE_CAPACITY, 0.75f, true);
+		this.unsaved = new HashMap<>();
+		this.hasPendingChanges = hasPendingChanges;
+	}
+
+	/**
+	 * Creates a recipe source by loading the recipe titles from the database.
+	 *
+	 * @param hasPendingChanges tells whether a recipe has changes not written yet; such recipes are not evicted.
+	 * @return the recipe source.
+	 * @throws SQLException if a database access error occurs.
+	 */
+
+	static RecipeSource load(Predicate<String> hasPendingChanges) throws SQLException {
+		return new RecipeSource(UtilsDB.getRecipeTitles(), hasPendingChanges);
+	}
+
+	/**
+	 * Returns the recipe at the given position if it is in memory, without reading the database.
+	 * The pinned recipe is always in memory; the other ones are loaded through {@link #fetch(int)}.
+	 *
+	 * @param index the position of the recipe.
+	 * @return the recipe at the given position.
+	 * @throws IllegalStateException if the recipe is not in memory.
+	 */
+
+	Recipe get(int index) {
+		String title = titles.get(index);
+
+		Recipe recipe = cached(title);
+		if (recipe == null) {
+			throw new IllegalStateException("Recipe " + title + " is not loaded");
+		}
+
+		return recipe;
+	}
+
+	/**
+	 * Loads the recipe at the given position on the calling thread if it is not in memory, and schedules the prefetch
+	 * of its neighbours. Used by background tasks only: the JavaFX application thread loads recipes through
+	 * {@link #fetch(int)}.
+	 *
+	 * @param index the position of the recipe.
+	 * @return the recipe at the given position.
+	 * @throws SQLException if a database access error occurs.
+	 */
+
+	Recipe hydrate(int index) throws SQLException {
+		String title = titles.get(index);
+
+		Recipe recipe = cached(title);
+		if (recipe == null) {
+			recipe = hydrate(title);
+		}
+
+		prefetchNeighbours(index);
+
+		return recipe;
+	}
+
+	/**
+	 * Returns the recipe at the given position, loading it through {@link AsyncUtilsDB} if it is not in memory, and
+	 * schedules the prefetch of its neighbours.
+	 *
+	 * @param index the position of the recipe.
+	 * @return a future completed, on the JavaFX application thread, with the recipe at the given position.
+	 */
+
+	CompletableFuture<Recipe> fetch(int index) {
+		String title = titles.get(index);
+
+		Recipe recipe = cached(title);
+		if (recipe != null) {
+			prefetchNeighbours(index);
+			return CompletableFuture.completedFuture(recipe);
+		}
+
+		return AsyncUtilsDB.read(() -> hydrate(title)).thenApply(loaded -> {
+			int position = titles.indexOf(title);
+			if (position >= 0) {
+				prefetchNeighbours(position);
+			}
+			return loaded;
+		});
+	}
+
+	/**
+	 * Returns the number of recipes.
+	 *
+	 * @return the number of recipes.
+	 */
+
+	int size() {
+		return titles.size();
+	}
+
+	/**
+	 * Checks whether there are no recipes.
+	 *
+	 * @return {@code true} if there are no recipes, {@code false} otherwise.
+	 */
+
+	boolean isEmpty() {
+		return titles.isEmpty();
+	}
+
+	/**
+	 * Appends a recipe.
+	 *
+	 * @param recipe the recipe to be appended.
+	 */
+
+	void add(Recipe recipe) {
+		add(titles.size(), recipe);
+	}
+
+	/**
+	 * Appends the given recipes, in order.
+	 *
+	 * @param recipes the recipes to be appended.
+	 */
+
+	void addAll(Collection<Recipe> recipes) {
+		recipes.forEach(this::add);
+	}
+
+	/**
+	 * Inserts a recipe at the given position.
+	 *
+	 * @param index  the position of the recipe.
+	 * @param recipe the recipe to be inserted.
+	 */
+
+	void add(int index, Recipe recipe) {
+		titles.add(index, recipe.getTitle());
+		remember(recipe);
+	}
+
+	/**
+	 * Removes the recipe at the given position.
+	 * The title is removed at once; if the recipe is not in memory it is then loaded in the background.
+	 *
+	 * @param index the position of the recipe.
+	 * @return a future completed, on the JavaFX application thread, with the removed recipe.
+	 */
+
+	CompletableFuture<Recipe> remove(int index) {
+		String title = titles.remove(index);
+		Recipe removed = cached(title);
+		forget(title);
+
+		if (removed != null) {
+			return CompletableFuture.completedFuture(removed);
+		}
+		return AsyncUtilsDB.read(() -> UtilsDB.getRecipe(title).orElseThrow(() -> new SQLException("Recipe " + title + " not found")));
+	}
+
+	/**
+	 * Pins the recipe being edited, so it is kept in memory, releasing the previously pinned one.
+	 *
+	 * @param title the title of the recipe being edited.
+	 */
+
+	void pin(String title) {
+		pinned = title;
+	}
+
+	/**
+	 * Returns the title of the recipe at the given position, without loading the recipe.
+	 *
+	 * @param index the position of the recipe.
+	 * @return the title of the recipe.
+	 */
+
+	String getTitle(int index) {
+		return titles.get(index);
+	}
+
+	/**
+	 * Returns the position of the recipe with the given title, without loading any recipe.
+	 *
+	 * @param title the title to look for.
+	 * @return the position of the recipe, or -1 if no recipe has the given title.
+	 */
+
+	int indexOfTitle(String title) {
+		return titles.indexOf(title);
+	}
+
+	/**
+	 * Applies the changes made to the recipes by other clients.
+	 * Removed titles are dropped, new titles are appended and the edited recipes are evicted from the cache, so they
+	 * are loaded again when they are accessed. The recipes that cannot be evicted, the pinned one and those with
+	 * changes not written yet, are kept as they are in memory unless they were removed.
+	 *
+	 * @param changed the titles of the recipes added or edited.
+	 * @param removed the titles of the recipes removed or renamed.
+	 * @return {@code true} if titles were added or removed, {@code false} otherwise.
+	 */
+
+	boolean synchronize(Collection<String> changed, Collection<String> removed) {
+		boolean structural = false;
+
+		for (String title : removed) {
+			if (titles.remove(title)) {
+				forget(title);
+				structural = true;
+			}
+		}
+
+		for (String title : changed) {
+			if (!titles.contains(title)) {
+				titles.add(title);
+				structural = true;
+			} else if (!isRetained(title)) {
+				synchronized (cache) {
+					cache.remove(title);
+				}
+			}
+		}
+
+		return structural;
+	}
+
+	/**
+	 * Checks whether a recipe with the given title exists, without loading any recipe.
+	 *
+	 * @param title the title to look for.
+	 * @return {@code true} if a recipe has the given title, {@code false} otherwise.
+	 */
+
+	boolean containsTitle(String title) {
+		return titles.contains(title);
+	}
+
+	/**
+	 * Returns the recipe with the given title if it is in memory.
+	 *
+	 * @param title the title of the recipe.
+	 * @return the recipe, or {@code null} if it is not in memory.
+	 */
+
+	private Recipe cached(String title) {
+		Recipe recipe = unsaved.get(title);
+		if (recipe != null) {
+			return recipe;
+		}
+
+		synchronized (cache) {
+			return cache.get(title);
+		}
+	}
+
+	/**
+	 * Loads a recipe from the database and stores it in the cache.
+	 * If another thread stored the same recipe in the meantime, the stored instance is returned.
+	 *
+	 * @param title the title of the recipe.
+	 * @return the loaded recipe.
+	 * @throws SQLException if a database access error occurs.
+	 */
+
+	private Recipe hydrate(String title) throws SQLException {
+		Recipe loaded = UtilsDB.getRecipe(title).orElseThrow(() -> new SQLException("Recipe " + title + " not found"));
+
+		synchronized (cache) {
+			Recipe existing = cache.putIfAbsent(title, loaded);
+			evict();
+			return existing != null ? existing : loaded;
+		}
+	}
+
+	/**
+	 * Evicts the least recently used recipes until the cache fits its capacity, skipping the retained ones.
+	 * Must be called while holding the lock of the cache.
+	 */
+
+	private void evict() {
+		Iterator<String> eldest = cache.keySet().iterator();
+		while (cache.size() > CACHE_CAPACITY && eldest.hasNext()) {
+			if (!isRetained(eldest.next())) {
+				eldest.remove();
+			}
+		}
+	}
+
+	/**
+	 * Checks whether a recipe must be kept in memory: it is the pinned one or it has changes not written yet.
+	 *
+	 * @param title the title of the recipe.
+	 * @return {@code true} if the recipe must not be evicted, {@code false} otherwise.
+	 */
+
+	private boolean isRetained(String title) {
+		return title.equals(pinned) || hasPendingChanges.test(title);
+	}
+
+	/**
+	 * Schedules the background loading of the recipes next to the given position.
+	 *
+	 * @param index the position of the accessed recipe.
+	 */
+
+	private void prefetchNeighbours(int index) {
+		int size = titles.size();
+		if (size <= 1) {
+			return;
+		}
+
+		for (int distance = 1; distance <= PREFETCH_DISTANCE; distance++) {
+			for (int neighbour : new int[]{(index + distance) % size, (index - distance + size) % size}) {
+				String title = titles.get(neighbour);
+				if (cached(title) == null) {
+					prefetchExecutor.execute(() -> {
+						try {
+							if (cached(title) == null) {
+								hydrate(title);
+							}
+						} catch (SQLException ignored) {
+							// the recipe is loaded again, reporting the error, when it is accessed
+						}
+					});
+				}
+			}
+		}
+	}
+
+	/**
+	 * Keeps a recipe in memory, pinning it if it is not stored in the database yet.
+	 *
+	 * @param recipe the recipe.
+	 */
+
+	private void remember(Recipe recipe) {
+		if (recipe.getTitle().isBlank()) {
+			unsaved.put(recipe.getTitle(), recipe);
+		} else {
+			synchronized (cache) {
+				cache.put(recipe.getTitle(), recipe);
+				evict();
+			}
+		}
+	}
+
+	/**
+	 * Reads a recipe again from the database, replacing the instance in memory even if it is retained.
+	 * Used when a write of the recipe was refused because another client changed it.
+	 *
+	 * @param title the title of the recipe.
+	 * @return a future completed, on the JavaFX application thread, with the recipe read, or with {@code null} if
+	 * the recipe was removed.
+	 */
+
+	CompletableFuture<Recipe> reload(String title) {
+		return AsyncUtilsDB.read(() -> UtilsDB.getRecipe(title)).thenApply(loaded -> {
+			if (loaded.isEmpty()) {
+				forget(title);
+				return null;
+			}
+
+			remember(loaded.get());
+			return loaded.get();
+		});
+	}
+
+	/**
+	 * Drops a recipe from memory.
+	 *
+	 * @param title the title of the recipe.
+	 */
+
+	private void forget(String title) {
+		unsaved.remove(title);
+		synchronized (cache) {
+			cache.remove(title);
+		}
+	}
+}
@@ -0,0 +1,47 @@
+package com.napolitanoveroni.expirationdate;
+
+import java.util.UUID;
+
+/**
+ * The state of a recipe a write depends on: its title, the version of the row that was read and the client making
+ * the write.
+ * <p>A write only applies if the recipe row is still at the version that was read, or if the same client made the
+ * last write of the row: the edits of a client are written one after the other, each bumping the version, without
+ * the client having to learn the version its own writes left the row at. A write made after another client changed
+ * the row affects no row, and an {@link OptimisticLockException} is thrown.</p>
+ *
+ * @param title   the title of the recipe.
+ * @param version the version of the recipe row that was read, 0 for a recipe that was not read from the database.
+ * @param writer  the identifier of the client making the write.
+ * @author SaverioNapolitano, MatteV02
+ * @version 2023.07.10
+ */
+public record RecipeVersion(String title, long version, String writer) {
+	/**
+	 * The identifier of this running application among the clients of the database.
+	 */
+	static final String WRITER = UUID.randomUUID().toString();
+
+	/**
+	 * Returns the state of the given recipe a write of this application depends on.
+	 *
+	 * @param recipe the recipe, as read from the database.
+	 * @return the version of the recipe.
+	 */
+
+	public static RecipeVersion of(Recipe recipe) {
+		return of(recipe.getTitle(), recipe.getVersion());
+	}
+
+	/**
+	 * Returns the state of a recipe a write of this application depends on.
+	 *
+	 * @param title   the title of the recipe.
+	 * @param version the version of the recipe row that was read.
+	 * @return the version of the recipe.
+	 */
+
+	public static RecipeVersion of(String title, long version) {
+		return new RecipeVersion(title, version, WRITER);
+	}
+}
@@ -10,6 +10,7 @@ import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
+import javafx.geometry.Side;
 import javafx.scene.Node;
 import javafx.scene.control.*;
 import javafx.scene.image.ImageView;
@@ -26,6 +27,8 @@ import java.io.IOException;
 import java.sql.SQLException;
 import java.sql.SQLIntegrityConstraintViolationException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 import static com.napolitanoveroni.expirationdate.UtilsDB.*;
 
@@ -39,10 +42,14 @@ import static com.napolitanoveroni.expirationdate.UtilsDB.*;
 
 
 public class RecipeWindowController {
+	/**
+	 * The maximum number of recipes listed under the search box.
+	 */
+	static final int MAX_SEARCH_RESULTS = 10;
 
 	int recipesIndex;
-	Set<String> notExpiredProducts;
-	Set<String> existingTags;
+	IngredientMatchIndex notExpiredProducts;
+	TagDictionary tagDictionary;
 	@FXML
 	private ComboBox<String> categoryComboBox;
 	@FXML
@@ -67,21 +74,33 @@ public class RecipeWindowController {
 	private Button rightButton;
 	@FXML
 	private MenuItem addMenuitem;
-	private ObservableList<Recipe> recipes;
+	@FXML
+	private TextField recipeSearchTextField;
+	private final ContextMenu searchResultsMenu = new ContextMenu();
+	private RecipeSearchIndex searchIndex;
+	private List<Consumer<RecipeSearchIndex>> pendingSearchUpdates = new ArrayList<>();
+	private RecipeSource recipes;
+	private RecipeWriteBehind writeBehind;
+	private AnimationTimer autoSaveTimer;
+	private final Consumer<ChangeSet> changeListener = this::applyChanges;
 	private int unitComboBoxSelected;
 	private String categoryComboBoxSelected;
 	private boolean suspendAutoSave;
+	private int savesInFlight;
+	private boolean reloadingConflict;
 
 	/**
-	 * Sets the not expired products.
+	 * Sets the not expired products, indexing their normalized names for the ingredient lookups.
 	 *
 	 * @param notExpiredProducts the set of not expired products
 	 */
 
 	public void setNotExpiredProducts(Set<String> notExpiredProducts) {
-		this.notExpiredProducts = notExpiredProducts;
+		this.notExpiredProducts = new IngredientMatchIndex(notExpiredProducts);
 
-		updateProgressIndicator(recipes.get(recipesIndex));
+		if (!recipes.isEmpty()) {
+			updateProgressIndicator(recipes.get(recipesIndex));
+		}
 	}
 
 	/**
@@ -107,9 +126,8 @@ public class RecipeWindowController {
 	 * Initializes the controller and sets up the initial state of the view.
 	 * JavaFX automatically calls this method when the corresponding FXML file is loaded.
 	 * It performs the following tasks:
-	 * Establishes a database connection and retrieves recipe data.
-	 * Initializes the list of existing tags.
-	 * Sets up the view for creating a new recipe or selecting an existing recipe.
+	 * Retrieves, in the background, the recipe titles and the existing tags; recipes are loaded when they are shown.
+	 * Sets up the view for creating a new recipe or selecting an existing recipe once the titles are loaded.
 	 * Initializes the category combo box with available options.
 	 * Initializes the tag combo boxes with existing tags.
 	 * Enables auto-saving functionality.
@@ -119,43 +137,205 @@ public class RecipeWindowController {
 
 	@FXML
 	public void initialize() {
+		writeBehind = new RecipeWriteBehind(ignoredConflict -> reloadAfterConflict());
+		recipes = new RecipeSource(new ArrayList<>(), writeBehind::hasPendingEdits);
+		tagDictionary = new TagDictionary(Map.of());
+		notExpiredProducts = new IngredientMatchIndex();
+		recipesIndex = 0;
 
-		try {
-			dbConnection();
-			recipes = getRecipeData();
-			existingTags = getAllTags();
-		} catch (SQLException e) {
-			recipes = FXCollections.observableArrayList();
-			AlertDialog.alertError("Database Error: while loading data");
+		categoryComboBox.setItems(FXCollections.observableArrayList("first course", "second course", "dessert", "side dish"));
+
+		titleTextField.setDisable(true);
+		disableRecipeFields(true);
+		recipeSearchTextField.textProperty().addListener((observable, oldValue, newValue) -> searchRecipes());
+		recipeSearchTextField.setOnAction(ignoredEvent -> {
+			if (!searchResultsMenu.getItems().isEmpty() && !searchResultsMenu.getItems().get(0).isDisable()) {
+				searchResultsMenu.getItems().get(0).fire();
+			}
+		});
+
+		AsyncUtilsDB.read(() -> {
+			RecipeSource source = RecipeSource.load(writeBehind::hasPendingEdits);
+			TagDictionary tags = TagDictionary.load();
+			if (!source.isEmpty()) {
+				source.pin(source.getTitle(0));
+				source.hydrate(0);
+			}
+			return Map.entry(source, tags);
+		}).whenComplete((loaded, error) -> {
+			if (error != null) {
+				AlertDialog.alertError("Database Error: while loading data");
+				pendingSearchUpdates = null;
+			} else {
+				recipes = loaded.getKey();
+				tagDictionary = loaded.getValue();
+				loadSearchIndex();
+			}
+
+			titleTextField.setDisable(false);
+			disableRecipeFields(false);
+
+			if (recipes.isEmpty()) {
+				initializeCreationView();
+			} else {
+				setRecipe(recipes.get(0));
+			}
+
+			for (Node node : tagGridPane.getChildren()) {
+				if (node instanceof ComboBox<?> comboBox) {
+					ComboBox<String> tag = (ComboBox<String>) comboBox;
+					tag.setItems(tagDictionary.getTags());
+				}
+			}
+
+			suspendAutoSave = false;
+
+			initializeTimer();
+			SyncPoller.addListener(changeListener);
+		});
+	}
+
+	/**
+	 * Applies the changes made to the recipes by other clients.
+	 * The recipe being edited is kept as it is, unless it was removed: then the recipe at its position is shown. If
+	 * it was changed, its next write is refused by the version check and the recipe is read again then.
+	 * The other changed recipes are read in the background and re-indexed for the search box, and the tag counts are
+	 * read again for the tag dictionary.
+	 *
+	 * @param changes the changes read from the database.
+	 */
+
+	void applyChanges(ChangeSet changes) {
+		String shown = recipes.isEmpty() ? null : recipes.getTitle(recipesIndex);
+
+		changes.deletedRecipes().forEach(this::unindexRecipe);
+		if (!changes.recipes().isEmpty() || !changes.deletedRecipes().isEmpty()) {
+			AsyncUtilsDB.read(UtilsDB::getTagCounts).whenComplete((counts, error) -> {
+				if (error == null) {
+					tagDictionary.replace(counts);
+				}
+			});
+		}
+		List<String> changed = changes.recipes().stream().filter(title -> !title.equals(shown)).toList();
+		if (!changed.isEmpty()) {
+			AsyncUtilsDB.read(() -> {
+				List<Recipe> changedRecipes = new ArrayList<>();
+				for (String title : changed) {
+					getRecipe(title).ifPresent(changedRecipes::add);
+				}
+				return changedRecipes;
+			}).whenComplete((changedRecipes, error) -> {
+				if (error == null) {
+					changedRecipes.forEach(this::reindexRecipe);
+				}
+			});
 		}
 
-		notExpiredProducts = new HashSet<>();
+		if (!recipes.synchronize(changes.recipes(), changes.deletedRecipes())) {
+			return;
+		}
 
-		if (recipes.isEmpty()) {
+		int index = shown == null ? -1 : recipes.indexOfTitle(shown);
+		if (index >= 0) {
+			recipesIndex = index;
+		} else if (recipes.isEmpty()) {
 			initializeCreationView();
 		} else {
-			setRecipe(recipes.get(0));
+			showRecipe(Math.min(recipesIndex, recipes.size() - 1));
 		}
+	}
 
-		recipesIndex = 0;
+	/**
+	 * Builds, in the background, the search index of all the recipes, read from the database in a single query.
+	 * The search box is enabled once the index is built, like the navigation buttons; the edits made meanwhile are
+	 * applied to the index then.
+	 */
 
-		categoryComboBox.setItems(FXCollections.observableArrayList("first course", "second course", "dessert", "side dish"));
+	void loadSearchIndex() {
+		AsyncUtilsDB.read(() -> RecipeSearchIndex.of(getRecipeData())).whenComplete((index, error) -> {
+			if (error != null) {
+				pendingSearchUpdates = null;
+				AlertDialog.alertWarning("Search", "Recipe search unavailable", "The recipes could not be read from the database.");
+				return;
+			}
 
-		tagGridPane.getChildren().forEach(node -> {
-			ComboBox<String> comboBox = (ComboBox<String>) node;
-			comboBox.setItems(FXCollections.observableArrayList(existingTags));
+			pendingSearchUpdates.forEach(update -> update.accept(index));
+			pendingSearchUpdates = null;
+			searchIndex = index;
+			recipeSearchTextField.setDisable(leftButton.isDisable());
 		});
+	}
 
-		for (Node node : tagGridPane.getChildren()) {
-			if (node instanceof ComboBox<?> comboBox) {
-				ComboBox<String> tag = (ComboBox<String>) comboBox;
-				tag.setItems(FXCollections.observableArrayList(existingTags));
-			}
+	/**
+	 * Applies a change to the search index, or keeps it until the index is built.
+	 *
+	 * @param update the change.
+	 */
+
+	void updateSearchIndex(Consumer<RecipeSearchIndex> update) {
+		if (searchIndex != null) {
+			update.accept(searchIndex);
+		} else if (pendingSearchUpdates != null) {
+			pendingSearchUpdates.add(update);
 		}
+	}
 
-		suspendAutoSave = false;
+	/**
+	 * Indexes the current content of a recipe for the search box.
+	 * Called whenever a recipe is edited, imported or changed by another client.
+	 *
+	 * @param recipe the recipe.
+	 */
+
+	void reindexRecipe(Recipe recipe) {
+		updateSearchIndex(index -> index.put(recipe));
+	}
+
+	/**
+	 * Removes a recipe from the search index.
+	 *
+	 * @param title the title of the recipe.
+	 */
+
+	void unindexRecipe(String title) {
+		updateSearchIndex(index -> index.remove(title));
+	}
 
-		initializeTimer();
+	/**
+	 * Lists the recipes matching the query of the search box under it, best first; choosing one shows it.
+	 * The query is run on the search index, so it does not read the database.
+	 */
+
+	void searchRecipes() {
+		String query = recipeSearchTextField.getText();
+		if (searchIndex == null || query == null || query.isBlank()) {
+			searchResultsMenu.hide();
+			return;
+		}
+
+		List<MenuItem> items = new ArrayList<>();
+		for (RecipeSearchIndex.Hit hit : searchIndex.search(query, MAX_SEARCH_RESULTS)) {
+			MenuItem item = new MenuItem(hit.title());
+			item.setMnemonicParsing(false);
+			item.setOnAction(ignoredEvent -> {
+				int index = recipes.indexOfTitle(hit.title());
+				if (index >= 0) {
+					recipeSearchTextField.clear();
+					showRecipe(index);
+				}
+			});
+			items.add(item);
+		}
+		if (items.isEmpty()) {
+			MenuItem none = new MenuItem("No recipes found");
+			none.setDisable(true);
+			items.add(none);
+		}
+
+		searchResultsMenu.getItems().setAll(items);
+		if (!searchResultsMenu.isShowing()) {
+			searchResultsMenu.show(recipeSearchTextField, Side.BOTTOM, 0, 0);
+		}
 	}
 
 	/**
@@ -163,7 +343,7 @@ public class RecipeWindowController {
 	 */
 
 	private void initializeTimer() {
-		AnimationTimer timer = new AnimationTimer() {
+		autoSaveTimer = new AnimationTimer() {
 
 			private long lastUpdate = 0;
 
@@ -175,7 +355,7 @@ public class RecipeWindowController {
 				}
 			}
 		};
-		timer.start();
+		autoSaveTimer.start();
 	}
 
 	/**
@@ -185,6 +365,7 @@ public class RecipeWindowController {
 	 */
 
 	void setRecipe(Recipe recipe) {
+		recipes.pin(recipe.getTitle());
 		titleTextField.setText(recipe.getTitle());
 		durationTextField.setText(Double.toString(recipe.getDuration()));
 		unitComboBox.setItems(FXCollections.observableArrayList("minutes", "hours"));
@@ -204,10 +385,10 @@ public class RecipeWindowController {
 		tagGridPane.getChildren().remove(0, lastTagGridIndex());
 		GridPane.setConstraints(tagGridPane.getChildren().get(lastTagGridIndex()), 0, 0);
 
-		List<String> tagsCopy = new ArrayList<>(recipe.getTagList());
-		recipe.setTagList(new ArrayList<>());
-		for (String tag : tagsCopy) {
-			insertTag(tag);
+		for (String tag : recipe.getTagList()) {
+			ComboBox<String> lastTag = (ComboBox<String>) tagGridPane.getChildren().get(lastTagGridIndex());
+			lastTag.getEditor().setText(tag);
+			appendEmptyTagComboBox();
 		}
 
 		clearIngredientsVBox();
@@ -243,6 +424,7 @@ public class RecipeWindowController {
 		leftButton.setDisable(disable);
 		rightButton.setDisable(disable);
 		addMenuitem.setDisable(disable);
+		recipeSearchTextField.setDisable(disable || searchIndex == null);
 	}
 
 	/**
@@ -277,7 +459,7 @@ public class RecipeWindowController {
 
 	@FXML
 	void onEnterTagComboBox(ActionEvent event) {
-		if (suspendAutoSave) {
+		if (suspendAutoSave || savesInFlight > 0) {
 			return;
 		}
 
@@ -301,69 +483,97 @@ public class RecipeWindowController {
 		}
 
 		if (newTag.isBlank()) {
-			for (int i = index; i < tagGridPane.getChildren().size() - 1; i++) {
-				int columnIndex = i % tagGridPane.getColumnCount();
-				int rowIndex = i / tagGridPane.getColumnCount();
-				GridPane.setConstraints(tagGridPane.getChildren().get(i + 1), columnIndex, rowIndex);
-			}
-
 			if (!oldTag.isBlank()) {
-				tagGridPane.getChildren().remove(index);
-
-				try {
-					removeDBTag(title, oldTag);
-					recipe.getTagList().remove(index);
-				} catch (SQLException ignored) {
-				}
+				save(JournalEntry.removeTag(RecipeVersion.of(recipe), oldTag), "Error while changing tags.").thenRun(() -> {
+					recipe.getTagList().remove(oldTag);
+					reindexRecipe(recipe);
+					updateTagDictionary(oldTag, null);
+					removeTagComboBox(comboBox);
+				});
 			}
 
 			return;
 		}
 
 		if (!((ComboBox<String>) (tagGridPane.getChildren().get(tagGridPane.getChildren().size() - 1))).getEditor().getText().isBlank()) {
-			int lastIndex = tagGridPane.getChildren().size();
-			ComboBox<String> newComboBoxTag = new ComboBox<>();
-			newComboBoxTag.setItems(FXCollections.observableArrayList(existingTags));
-			newComboBoxTag.setEditable(true);
-			newComboBoxTag.getEditor().setPromptText("Add tag...");
-
-			int columnIndex = lastIndex % tagGridPane.getColumnCount();
-			int rowIndex = lastIndex / tagGridPane.getColumnCount();
-
-			tagGridPane.add(newComboBoxTag, columnIndex, rowIndex);
-			newComboBoxTag.setOnAction(this::onEnterTagComboBox);
-			GridPane.setMargin(newComboBoxTag, new Insets(0, 5, 0, 5));
+			appendEmptyTagComboBox();
 		}
 
-		try {
-			try {
-				removeDBTag(title, oldTag);
-				if (index < recipe.getTagList().size()) {
-					recipe.getTagList().remove(index);
-				}
-			} catch (SQLException ignored) {
+		save(JournalEntry.replaceTag(RecipeVersion.of(recipe), oldTag, newTag), "Error while changing tags.").thenRun(() -> {
+			List<String> tags = recipe.getTagList();
+			int position = tags.indexOf(oldTag);
+			if (position >= 0) {
+				tags.set(position, newTag);
+			} else {
+				tags.add(Math.min(index, tags.size()), newTag);
 			}
+			reindexRecipe(recipe);
+
+			updateTagDictionary(oldTag.equals(newTag) ? null : oldTag, newTag);
+		});
+	}
 
-			insertDBTag(title, newTag);
-			recipe.getTagList().add(index, newTag);
+	/**
+	 * Removes a tag combo box from the tag grid pane, moving the following ones back by one cell.
+	 * Nothing is done if the combo box is no longer shown.
+	 *
+	 * @param comboBox the tag combo box.
+	 */
 
-		} catch (SQLException e) {
-			AlertDialog.alertError("Error while changing tags.");
+	void removeTagComboBox(ComboBox<String> comboBox) {
+		int index = tagGridPane.getChildren().indexOf(comboBox);
+		if (index < 0 || index == lastTagGridIndex()) {
+			return;
 		}
 
-		try {
-			existingTags = getAllTags();
-			suspendAutoSave = true;
-			tagGridPane.getChildren().forEach(node -> {
-				ComboBox<String> comboBox1 = (ComboBox<String>) node;
-				if (!comboBox1.getItems().contains(newTag)) {
-					comboBox1.setItems(FXCollections.observableArrayList(existingTags));
-				}
-			});
-			suspendAutoSave = false;
-		} catch (SQLException e) {
-			AlertDialog.alertError("Error while updating tags.");
+		for (int i = index; i < tagGridPane.getChildren().size() - 1; i++) {
+			int columnIndex = i % tagGridPane.getColumnCount();
+			int rowIndex = i / tagGridPane.getColumnCount();
+			GridPane.setConstraints(tagGridPane.getChildren().get(i + 1), columnIndex, rowIndex);
+		}
+		tagGridPane.getChildren().remove(index);
+	}
+
+	/**
+	 * Reports a tag change written to the database to the tag dictionary, whose list of tags is shared by every tag
+	 * combo box.
+	 * Auto-save is suspended meanwhile, as the combo boxes may fire their action while their items change.
+	 *
+	 * @param removedTag the tag removed from the recipe, or {@code null}.
+	 * @param addedTag   the tag added to the recipe, or {@code null}.
+	 */
+
+	void updateTagDictionary(String removedTag, String addedTag) {
+		boolean wasSuspended = suspendAutoSave;
+		suspendAutoSave = true;
+
+		if (removedTag != null) {
+			tagDictionary.remove(removedTag);
+		}
+		if (addedTag != null) {
+			tagDictionary.add(addedTag);
 		}
+
+		suspendAutoSave = wasSuspended;
+	}
+
+	/**
+	 * Appends an empty tag combo box, used to add a new tag, at the end of the tag grid pane.
+	 */
+
+	void appendEmptyTagComboBox() {
+		int lastIndex = tagGridPane.getChildren().size();
+		ComboBox<String> newComboBoxTag = new ComboBox<>();
+		newComboBoxTag.setItems(tagDictionary.getTags());
+		newComboBoxTag.setEditable(true);
+		newComboBoxTag.getEditor().setPromptText("Add tag...");
+
+		int columnIndex = lastIndex % tagGridPane.getColumnCount();
+		int rowIndex = lastIndex / tagGridPane.getColumnCount();
+
+		tagGridPane.add(newComboBoxTag, columnIndex, rowIndex);
+		newComboBoxTag.setOnAction(this::onEnterTagComboBox);
+		GridPane.setMargin(newComboBoxTag, new Insets(0, 5, 0, 5));
 	}
 
 	/**
@@ -411,17 +621,17 @@ public class RecipeWindowController {
 	void onCategoryComboBoxChosen(ActionEvent ignoredEvent) {
 		categoryComboBoxSelected = categoryComboBox.getValue();
 
-		try {
-			editDBRecipeCategory(recipes.get(recipesIndex).getTitle(), categoryComboBoxSelected);
-			recipes.get(recipesIndex).setCategory(categoryComboBoxSelected);
-		} catch (SQLException e) {
-			AlertDialog.alertError("Error while updating category");
-		}
+		Recipe recipe = recipes.get(recipesIndex);
+		String category = categoryComboBoxSelected;
+		recipe.setCategory(category);
+		reindexRecipe(recipe);
+
+		writeBehind.editCategory(RecipeVersion.of(recipe), category);
 	}
 
 	/**
 	 * Event handler for the "Delete" menu item click.
-	 * Removes the current recipe from
+	 * Once the current recipe is removed from the database, removes it from
 	 * the list of recipes, updates the recipe index, and performs necessary UI updates.
 	 * Handles any SQL exceptions that occur.
 	 *
@@ -430,24 +640,35 @@ public class RecipeWindowController {
 
 	@FXML
 	void onDeleteMenuItemClicked(ActionEvent ignoredEvent) {
-		try {
-			removeDBRecipe(recipes.get(recipesIndex).getTitle());
-			recipes.remove(recipesIndex);
+		if (savesInFlight > 0) {
+			return;
+		}
+
+		Recipe removed = recipes.get(recipesIndex);
+		String title = removed.getTitle();
+		save(JournalEntry.removeRecipe(title), "Error while removing recipe.").thenRun(() -> {
+			removed.getTagList().forEach(tag -> updateTagDictionary(tag, null));
+			unindexRecipe(title);
+
+			int index = recipes.indexOfTitle(title);
+			if (index < 0) {
+				return;
+			}
+			recipes.remove(index);
+
 			if (recipes.size() == 0) {
 				initializeCreationView();
-			} else {
-				recipesIndex %= recipes.size();
-				Recipe recipe = recipes.get(recipesIndex);
-				setRecipe(recipe);
+			} else if (index == recipesIndex) {
+				showRecipe(recipesIndex % recipes.size());
 
 				if (suspendAutoSave) {
 					suspendAutoSave = false;
 					disableRecipeFields(false);
 				}
+			} else if (index < recipesIndex) {
+				recipesIndex--;
 			}
-		} catch (SQLException e) {
-			AlertDialog.alertError("Error while removing recipe.");
-		}
+		});
 	}
 
 	/**
@@ -470,14 +691,12 @@ public class RecipeWindowController {
 				return;
 			}
 
-			editDBRecipeDuration(recipe.getTitle(), newDuration);
 			recipe.setDuration(newDuration);
+			writeBehind.editDuration(RecipeVersion.of(recipe), newDuration);
 		} catch (NumberFormatException e) {
 			//new Alert(Alert.AlertType.ERROR, "What you typed wasn't a double number").show();
 			AlertDialog.alertError("What you typed wasn't a double number");
 			durationTextField.setText(Double.toString(recipe.getDuration()));
-		} catch (SQLException e) {
-			AlertDialog.alertError("Error while updating duration.");
 		}
 	}
 
@@ -501,13 +720,11 @@ public class RecipeWindowController {
 				return;
 			}
 
-			editDBRecipePortion(recipe.getTitle(), newPortions);
 			recipe.setPortions(newPortions);
+			writeBehind.editPortions(RecipeVersion.of(recipe), newPortions);
 		} catch (NumberFormatException e) {
 			AlertDialog.alertError("What you typed wasn't an integer number");
 			portionsTextField.setText(Integer.toString(recipe.getPortions()));
-		} catch (SQLException e) {
-			AlertDialog.alertError("Error while updating portions.");
 		}
 	}
 
@@ -521,6 +738,10 @@ public class RecipeWindowController {
 
 	@FXML
 	void onEnterTitleTextField(ActionEvent ignoredEvent) {
+		if (savesInFlight > 0) {
+			return;
+		}
+
 		Recipe recipe = new Recipe(recipes.get(recipesIndex));
 		String oldTitle = recipe.getTitle();
 
@@ -536,7 +757,7 @@ public class RecipeWindowController {
 			return;
 		}
 
-		if (recipes.stream().map(Recipe::getTitle).toList().contains(newTitle)) {
+		if (recipes.containsTitle(newTitle)) {
 			suspendAutoSave = true;
 			disableRecipeFields(true);
 			return;
@@ -546,46 +767,59 @@ public class RecipeWindowController {
 
 		recipe.setTitle(newTitle);
 
-		try {
-			if (recipes.size() != 0) {
-				removeDBRecipe(oldTitle);
-				recipes.remove(recipesIndex);
-			}
+		disableRecipeFields(false);
 
-			insertDBRecipe(recipe);
-			recipes.add(recipesIndex, recipe);
+		// A stored recipe is renamed in place; a new one (or one whose row is missing) is inserted
+		Recipe saved = new Recipe(recipe);
+		save(JournalEntry.saveRecipe(oldTitle, saved), "Error while inserting/editing recipe").thenRun(() -> {
+			int index = recipes.indexOfTitle(oldTitle);
+			if (index < 0) {
+				return;
+			}
 
-			disableRecipeFields(false);
-		} catch (SQLException e) {
-			AlertDialog.alertError("Error while inserting/editing recipe");
-		}
+			recipes.remove(index);
+			recipes.add(index, recipe);
+			if (index == recipesIndex) {
+				recipes.pin(newTitle);
+			}
+			unindexRecipe(oldTitle);
+			reindexRecipe(recipe);
+		});
 	}
 
 	/**
 	 * Event handler for the "Export" menu item click.
 	 * Opens a file chooser dialog and
 	 * exports the recipes as JSON to the selected file.
-	 * Handles any IO exceptions that
+	 * All the recipes are read from the database in a single query.
+	 * Handles any IO or SQL exceptions that
 	 * occur.
 	 *
 	 * @param ignoredEvent The action event (ignored).
 	 */
 	@FXML
 	void onExportMenuItemClicked(ActionEvent ignoredEvent) {
-		try {
-			FileChooser fileChooser = new FileChooser();
-			FileChooser.ExtensionFilter extFilter = new FileChooser.ExtensionFilter("JSON files (*.json)", "*.json");
-			fileChooser.getExtensionFilters().add(extFilter);
+		FileChooser fileChooser = new FileChooser();
+		FileChooser.ExtensionFilter extFilter = new FileChooser.ExtensionFilter("JSON files (*.json)", "*.json");
+		fileChooser.getExtensionFilters().add(extFilter);
+
+		File file = fileChooser.showSaveDialog(null);
+		if (file != null) {
+			AsyncUtilsDB.read(UtilsDB::getRecipeData).whenComplete((recipeList, error) -> {
+				if (error != null) {
+					AlertDialog.alertError("Error while reading recipes from the database.");
+					return;
+				}
 
-			File file = fileChooser.showSaveDialog(null);
-			if (file != null) {
-				ObjectMapper mapper = new ObjectMapper();
-				mapper.registerModule(new JavaTimeModule());
-				mapper.writerWithDefaultPrettyPrinter().writeValue(file, recipes);
-			}
-		} catch (IOException e) {
-			//new Alert(Alert.AlertType.ERROR, "Could not save data").showAndWait();
-			AlertDialog.alertError("Could not save data");
+				try {
+					ObjectMapper mapper = new ObjectMapper();
+					mapper.registerModule(new JavaTimeModule());
+					mapper.writerWithDefaultPrettyPrinter().writeValue(file, recipeList);
+				} catch (IOException e) {
+					//new Alert(Alert.AlertType.ERROR, "Could not save data").showAndWait();
+					AlertDialog.alertError("Could not save data");
+				}
+			});
 		}
 	}
 
@@ -612,27 +846,35 @@ public class RecipeWindowController {
 				mapper.registerModule(new JavaTimeModule());
 				List<Recipe> recipeList = mapper.readValue(file, new TypeReference<>() {
 				});
-				for (ListIterator<Recipe> recipeListIterator =
-					recipeList.listIterator(); recipeListIterator.hasNext(); ) {
-					Recipe recipe = recipeListIterator.next();
-					try {
-						insertDBRecipe(recipe);
-					} catch (SQLIntegrityConstraintViolationException e) {
-						recipeListIterator.remove();
+				AsyncUtilsDB.write(() -> {
+					for (ListIterator<Recipe> recipeListIterator =
+						recipeList.listIterator(); recipeListIterator.hasNext(); ) {
+						Recipe recipe = recipeListIterator.next();
+						try {
+							insertDBRecipe(recipe);
+						} catch (SQLIntegrityConstraintViolationException e) {
+							recipeListIterator.remove();
+						}
 					}
-				}
-				recipes.addAll(recipeList);
-				if (recipes.get(recipesIndex).getTitle().isBlank()) {
-					recipes.remove(recipesIndex);
-					recipesIndex %= recipes.size();
-					setRecipe(recipes.get(recipesIndex));
-				}
-				disableRecipeFields(false);
+				}).whenComplete((ignored, error) -> {
+					if (error != null) {
+						AlertDialog.alertError("Error while inserting recipes in the database.");
+						return;
+					}
+
+					recipes.addAll(recipeList);
+					recipeList.forEach(this::reindexRecipe);
+					recipeList.forEach(recipe -> recipe.getTagList().forEach(tag -> updateTagDictionary(null, tag)));
+					if (recipes.get(recipesIndex).getTitle().isBlank()) {
+						recipes.remove(recipesIndex);
+						recipesIndex %= recipes.size();
+						setRecipe(recipes.get(recipesIndex));
+					}
+					disableRecipeFields(false);
+				});
 			}
 		} catch (IOException e) {
 			AlertDialog.alertError("Could not load data");
-		} catch (SQLException e) {
-			AlertDialog.alertError("Error while inserting recipes in the database.");
 		}
 	}
 
@@ -645,14 +887,7 @@ public class RecipeWindowController {
 	 */
 	@FXML
 	void onLeftButtonClicked(ActionEvent ignoredEvent) {
-		if (recipesIndex - 1 < 0) {
-			recipesIndex = recipes.size() - 1;
-		} else {
-			recipesIndex--;
-		}
-
-		Recipe recipe = recipes.get(recipesIndex);
-		setRecipe(recipe);
+		showRecipe(recipesIndex - 1 < 0 ? recipes.size() - 1 : recipesIndex - 1);
 	}
 
 	/**
@@ -664,9 +899,34 @@ public class RecipeWindowController {
 	 */
 	@FXML
 	void onRightButtonClicked(ActionEvent ignoredEvent) {
-		recipesIndex = (recipesIndex + 1) % recipes.size();
-		Recipe recipe = recipes.get(recipesIndex);
-		setRecipe(recipe);
+		showRecipe((recipesIndex + 1) % recipes.size());
+	}
+
+	/**
+	 * Shows the recipe at the given position once it is loaded, without blocking the user interface.
+	 * The current recipe index is only moved when the recipe is shown, so the auto-save never writes the fields of
+	 * the previous recipe into the next one. The recipe is read after the pending field edits are written, so it is
+	 * never read from rows older than the edits made in memory.
+	 *
+	 * @param index the position of the recipe to be shown.
+	 */
+
+	void showRecipe(int index) {
+		String title = recipes.getTitle(index);
+		CompletableFuture<Recipe> loaded = writeBehind.flush().handle((ignored, flushError) -> recipes.indexOfTitle(title))
+			.thenCompose(position -> position < 0 ? CompletableFuture.completedFuture(null) : recipes.fetch(position));
+
+		loaded.whenComplete((recipe, error) -> {
+			if (error != null) {
+				AlertDialog.alertError("Error while loading recipe.");
+				return;
+			}
+
+			if (recipe != null) {
+				recipesIndex = recipes.indexOfTitle(recipe.getTitle());
+				setRecipe(recipe);
+			}
+		});
 	}
 
 	/**
@@ -682,12 +942,11 @@ public class RecipeWindowController {
 	void onUnitComboBoxChosen(ActionEvent ignoredEvent) {
 		unitComboBoxSelected = unitComboBox.getSelectionModel().getSelectedIndex();
 
-		try {
-			editDBRecipeUnit(recipes.get(recipesIndex).getTitle(), unitComboBoxSelected);
-			recipes.get(recipesIndex).setUnit(unitComboBoxSelected == 0 ? durationUnit.MIN : durationUnit.H);
-		} catch (SQLException e) {
-			AlertDialog.alertError("Error while updating unit");
-		}
+		Recipe recipe = recipes.get(recipesIndex);
+		int unit = unitComboBoxSelected;
+		recipe.setUnit(unit == 0 ? durationUnit.MIN : durationUnit.H);
+
+		writeBehind.editUnit(RecipeVersion.of(recipe), unit);
 	}
 
 	/**
@@ -699,7 +958,7 @@ public class RecipeWindowController {
 	 */
 
 	void allFieldsAutoSave() {
-		if (titleTextField.getText().isBlank()) {
+		if (titleTextField.getText().isBlank() || savesInFlight > 0) {
 			return;
 		}
 		onEnterTitleTextField(new ActionEvent());
@@ -753,13 +1012,68 @@ public class RecipeWindowController {
 		String steps = stepsTextArea.getText();
 		Recipe recipe = recipes.get(recipesIndex);
 		if (!steps.equals(recipe.getSteps())) {
-			try {
-				editDBRecipeSteps(recipe.getTitle(), steps);
-				recipe.setSteps(steps);
-			} catch (SQLException e) {
-				AlertDialog.alertError("Error while auto-saving steps.");
+			recipe.setSteps(steps);
+			reindexRecipe(recipe);
+			writeBehind.editSteps(RecipeVersion.of(recipe), steps);
+		}
+	}
+
+	/**
+	 * Saves a change of the current recipe in the background.
+	 * The caller applies the change to the recipes in memory once the returned future completes; meanwhile the
+	 * auto-save is suspended, so the change is not submitted again while it is being written. Writes are executed in
+	 * submission order. If the update fails, the current recipe is shown again as it is in memory, discarding the
+	 * change from the user interface; if it fails because another client changed the recipe, the recipe is read again
+	 * from the database instead.
+	 * The field edits queued in the write-behind queue are flushed first, so they are written under the title the
+	 * recipe had when they were made.
+	 *
+	 * @param update       the database update, kept in the write journal while the database is unreachable.
+	 * @param errorMessage the message shown if the update fails.
+	 * @return a future completed, on the JavaFX application thread, when the update is written or journaled.
+	 */
+
+	CompletableFuture<Void> save(JournalEntry update, String errorMessage) {
+		savesInFlight++;
+		writeBehind.flush();
+		return WriteJournal.submit(update).<Void>thenApply(ignored -> null).whenComplete((ignored, error) -> {
+			savesInFlight--;
+			if (error != null && AsyncUtilsDB.cause(error) instanceof OptimisticLockException) {
+				reloadAfterConflict();
+			} else if (error != null) {
+				AlertDialog.alertError(errorMessage);
+				if (!recipes.isEmpty()) {
+					setRecipe(recipes.get(recipesIndex));
+				}
 			}
+		});
+	}
+
+	/**
+	 * Reports that a write of a recipe was refused because another client changed or removed the recipe.
+	 * The user is warned once for the writes refused together, and the current recipe is read again from the
+	 * database, so the edit can be repeated on the current data.
+	 */
+
+	void reloadAfterConflict() {
+		if (reloadingConflict || recipes.isEmpty()) {
+			return;
 		}
+
+		reloadingConflict = true;
+		AlertDialog.alertWarning("Conflict", "Recipe changed by another client", "The recipe was changed or removed on another computer. It is being reloaded: please repeat the edit.");
+		String title = recipes.getTitle(recipesIndex);
+		recipes.reload(title).whenComplete((recipe, error) -> {
+			reloadingConflict = false;
+			if (error != null) {
+				AlertDialog.alertError("Error while loading recipe.");
+			} else if (recipe == null) {
+				SyncPoller.pollNow();
+			} else if (!recipes.isEmpty() && recipes.getTitle(recipesIndex).equals(title)) {
+				reindexRecipe(recipe);
+				setRecipe(recipe);
+			}
+		});
 	}
 
 	/**
@@ -809,11 +1123,34 @@ public class RecipeWindowController {
 	 * Event handler for the window close request.
 	 * Prompts the user to confirm closing
 	 * the application and canceling the current recipe if it exists.
+	 * When the window closes, the auto-save is stopped and the pending edits are flushed.
 	 *
 	 * @param event The window event.
 	 */
 
 	public void onWindowCloseRequest(WindowEvent event) {
+		onWindowClosing(event);
+
+		if (!event.isConsumed()) {
+			SyncPoller.removeListener(changeListener);
+			if (autoSaveTimer != null) {
+				autoSaveTimer.stop();
+			}
+			writeBehind.close().whenComplete((ignored, error) -> {
+				if (error != null) {
+					AlertDialog.alertError("Error while saving recipe.");
+				}
+			});
+		}
+	}
+
+	/**
+	 * Asks the user whether to cancel the current recipe when its title clashes with an existing one.
+	 *
+	 * @param event The window event, consumed if the user cancels the close.
+	 */
+
+	private void onWindowClosing(WindowEvent event) {
 		if (suspendAutoSave) {
 			Alert alert = new Alert(Alert.AlertType.INFORMATION);
 			alert.getButtonTypes().remove(ButtonType.OK);
@@ -828,13 +1165,13 @@ public class RecipeWindowController {
 				if (res.get().equals(ButtonType.CANCEL)) {
 					event.consume();
 				} else {
-					try {
-						String oldTitle = recipes.get(recipesIndex).getTitle();
-						removeDBRecipe(oldTitle);
-						recipes.remove(recipesIndex);
-					} catch (SQLException e) {
-						AlertDialog.alertError("Error while removing recipe.");
-					}
+					String oldTitle = recipes.get(recipesIndex).getTitle();
+					save(JournalEntry.removeRecipe(oldTitle), "Error while removing recipe.").thenRun(() -> {
+						int index = recipes.indexOfTitle(oldTitle);
+						if (index >= 0) {
+							recipes.remove(index);
+						}
+					});
 				}
 			}
 		}
@@ -979,35 +1316,34 @@ public class RecipeWindowController {
 			String newIngredient = ingredientTextField.getText();
 
 			if (!newIngredient.isBlank()) {
-				if (newIngredient.equals(ingredient.getIngredient())) {
+				if (newIngredient.equals(ingredient.getIngredient()) || savesInFlight > 0) {
 					return;
 				}
 
-				List<Ingredient> ingredientList = recipes.get(recipesIndex).getIngredientList();
-				try {
-					try {
-						removeDBIngredient(recipeTitle, ingredient);
-						ingredientList.remove(ingredient);
-					} catch (SQLException ignored) {
-					}
-
-					ingredient.setIngredient(newIngredient);
+				Recipe recipe = recipes.get(recipesIndex);
+				String title = recipeTitle;
+				Ingredient oldIngredient =
+					new Ingredient(ingredient.getIngredient(), ingredient.getQuantity(), ingredient.getUnit_of_measurement());
+				Ingredient renamedIngredient =
+					new Ingredient(newIngredient, ingredient.getQuantity(), ingredient.getUnit_of_measurement());
 
-					insertDBIngredient(recipeTitle, ingredient);
-					ingredientList.add(ingredient);
+				setIcon();
 
-					setIcon();
+				suspendAutoSave = false;
+				disableRecipeFields(false);
+				titleTextField.setDisable(false);
+				ingredientVBox.getChildren().forEach(node -> node.setDisable(false));
+				quantityTextField.setDisable(false);
+				unitComboBox.setDisable(false);
+				deleteButton.setDisable(false);
 
-					suspendAutoSave = false;
-					disableRecipeFields(false);
-					titleTextField.setDisable(false);
-					ingredientVBox.getChildren().forEach(node -> node.setDisable(false));
-					quantityTextField.setDisable(false);
-					unitComboBox.setDisable(false);
-					deleteButton.setDisable(false);
-				} catch (SQLException e) {
-					AlertDialog.alertError("Error while inserting ingredient.");
-				}
+				save(JournalEntry.replaceIngredient(RecipeVersion.of(title, recipe.getVersion()), oldIngredient, renamedIngredient), "Error while inserting ingredient.").thenRun(() -> {
+					List<Ingredient> ingredientList = recipe.getIngredientList();
+					ingredientList.remove(ingredient);
+					ingredient.setIngredient(newIngredient);
+					ingredientList.add(ingredient);
+					reindexRecipe(recipe);
+				});
 			} else {
 				String oldValue = ingredient.getIngredient();
 				if (!oldValue.isBlank()) {
@@ -1077,25 +1413,26 @@ public class RecipeWindowController {
 
 		/**
 		 * Event handler for the "Delete Ingredient" button click.
-		 * Deletes the ingredient from
-		 * the recipe, updates the database, and removes the ingredient UI from the UI.
+		 * Deletes the ingredient from the database and then
+		 * from the recipe, and removes the ingredient UI from the UI.
 		 *
 		 * @param event The action event.
 		 */
 
 		@FXML
 		void onDeleteIngredientButtonClicked(ActionEvent event) {
-			if (!ingredientTextField.getText().isBlank()) {
-				try {
-					removeDBIngredient(recipeTitle, ingredient);
+			if (!ingredientTextField.getText().isBlank() && savesInFlight == 0) {
+				Recipe recipe = recipes.get(recipesIndex);
+				String title = recipeTitle;
+				Ingredient removed =
+					new Ingredient(ingredient.getIngredient(), ingredient.getQuantity(), ingredient.getUnit_of_measurement());
 
-					List<Ingredient> ingredientList = recipes.get(recipesIndex).getIngredientList();
-					ingredientList.remove(ingredient);
+				save(JournalEntry.removeIngredient(RecipeVersion.of(title, recipe.getVersion()), removed), "Error while deleting ingredient").thenRun(() -> {
+					recipe.getIngredientList().remove(ingredient);
+					reindexRecipe(recipe);
 
 					deleteIngredientUI(this);
-				} catch (SQLException e) {
-					AlertDialog.alertError("Error while deleting ingredient");
-				}
+				});
 			}
 		}
 
@@ -1112,17 +1449,17 @@ public class RecipeWindowController {
 		 */
 
 		void updateIngredient(int ingredientIndex, List<Ingredient> ingredientList) {
-			try {
-				updateDBIngredient(recipeTitle, ingredient);
+			String title = recipeTitle;
+			Ingredient updated =
+				new Ingredient(ingredient.getIngredient(), ingredient.getQuantity(), ingredient.getUnit_of_measurement());
 
-				if (ingredientIndex != -1) {
-					ingredientList.set(ingredientIndex, ingredient);
-				} else {
-					ingredientList.add(ingredient);
-				}
-			} catch (SQLException e) {
-				AlertDialog.alertError("Error while updating ingredient");
+			if (ingredientIndex != -1) {
+				ingredientList.set(ingredientIndex, ingredient);
+			} else {
+				ingredientList.add(ingredient);
 			}
+
+			writeBehind.updateIngredient(RecipeVersion.of(title, recipes.get(recipesIndex).getVersion()), updated);
 		}
 
 		/**
@@ -0,0 +1,352 @@
+package com.napolitanoveroni.expirationdate;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Write-behind queue for the field edits of the recipe editor.
+ * <p>Edits are not written as they happen: each one replaces the pending edit of the same recipe field, so a field
+ * edited many times between two flushes is written once, with its latest value. Pending edits are flushed in a
+ * single transaction, one JDBC batch per statement, every {@link #FLUSH_INTERVAL} milliseconds and whenever
+ * {@link #flush()} is called. Flushes go through {@link WriteJournal#submit(JournalEntry)}, so a flush requested
+ * before a structural change of a recipe (a rename, a removal) is written before it, and edits made while the
+ * database is unreachable are kept in the journal.</p>
+ * <p>Every edit carries the {@linkplain RecipeVersion version} of the recipe it was made on. If another client
+ * changed the recipe since, the flush fails with an {@link OptimisticLockException}: its edits are discarded, since
+ * writing them would overwrite the other change, and the conflict listener is notified so that the recipe can be
+ * read again.</p>
+ * <p>If a flush fails for any other reason, its edits are queued again, unless the same field was edited meanwhile,
+ * so the next flush writes them; an edit is discarded after {@link #MAX_ATTEMPTS} failed flushes, so an edit the
+ * database rejects is not retried forever.</p>
+ * <p>Every open queue is flushed by {@link #flushAll()} on application shutdown.</p>
+ *
+ * @author SaverioNapolitano, MatteV02
+ * @version 2023.07.10
+ */
+public class RecipeWriteBehind {
+	/**
+	 * The number of milliseconds between two automatic flushes.
+	 */
+	static final long FLUSH_INTERVAL = 2_000L;
+
+	/**
+	 * The number of failed flushes after which an edit is discarded.
+	 */
+	static final int MAX_ATTEMPTS = 3;
+
+	/**
+	 * The statements writing a recipe row, which only apply to the version the edit was made on.
+	 */
+	private static final Set<SQLStatement> VERSIONED = EnumSet.of(SQLStatement.EDIT_RECIPE_CATEGORY,
+		SQLStatement.EDIT_RECIPE_UNIT, SQLStatement.EDIT_RECIPE_DURATION, SQLStatement.EDIT_RECIPE_PORTIONS,
+		SQLStatement.EDIT_RECIPE_STEPS, SQLStatement.TOUCH_RECIPE);
+
+	private static final Set<RecipeWriteBehind> openQueues = ConcurrentHashMap.newKeySet();
+	private static final ScheduledExecutorService flushScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "recipe-write-behind");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private final Map<FieldKey, Edit> pending;
+	private final Map<FieldKey, Long> latest;
+	private final ScheduledFuture<?> flushTask;
+	private final Consumer<OptimisticLockException> conflictListener;
+	private long sequence;
+
+	/**
+	 * Constructs a queue and starts its periodic flush.
+	 *
+	 * @param conflictListener notified, on the JavaFX application thread, when the edits of a flush are discarded
+	 *                         because another client changed their recipe.
+	 */
+
+	RecipeWriteBehind(Consumer<OptimisticLockException> conflictListener) {
+		this.pending = new LinkedHashMap<>();
+		this.latest = new HashMap<>();
+		this.conflictListener = conflictListener;
+		this.flushTask = flushScheduler.scheduleWithFixedDelay(() -> flush().whenComplete((ignored, error) -> {
+			if (error != null && !(AsyncUtilsDB.cause(error) instanceof OptimisticLockException)) {
+				AlertDialog.alertError("Error while auto-saving recipe.");
+			}
+		}), FLUSH_INTERVAL, FLUSH_INTERVAL, TimeUnit.MILLISECONDS);
+		openQueues.add(this);
+	}
+
+	/**
+	 * Flushes every open queue.
+	 *
+	 * @return a future completed when the flushed edits are written.
+	 */
+
+	static CompletableFuture<Void> flushAll() {
+		return CompletableFuture.allOf(openQueues.stream().map(RecipeWriteBehind::flush).toArray(CompletableFuture[]::new));
+	}
+
+	/**
+	 * Queues the edit of the category of a recipe.
+	 *
+	 * @param recipe   the recipe, at the version the edit was made on.
+	 * @param category the new category of the recipe.
+	 */
+
+	void editCategory(RecipeVersion recipe, String category) {
+		enqueue(new FieldKey(SQLStatement.EDIT_RECIPE_CATEGORY, recipe.title(), null), versioned(recipe, category));
+	}
+
+	/**
+	 * Queues the edit of the unit of a recipe.
+	 *
+	 * @param recipe the recipe, at the version the edit was made on.
+	 * @param unit   the new unit of the recipe.
+	 */
+
+	void editUnit(RecipeVersion recipe, int unit) {
+		enqueue(new FieldKey(SQLStatement.EDIT_RECIPE_UNIT, recipe.title(), null), versioned(recipe, unit));
+	}
+
+	/**
+	 * Queues the edit of the duration of a recipe.
+	 *
+	 * @param recipe   the recipe, at the version the edit was made on.
+	 * @param duration the new duration of the recipe.
+	 */
+
+	void editDuration(RecipeVersion recipe, double duration) {
+		enqueue(new FieldKey(SQLStatement.EDIT_RECIPE_DURATION, recipe.title(), null), versioned(recipe, duration));
+	}
+
+	/**
+	 * Queues the edit of the portions of a recipe.
+	 *
+	 * @param recipe   the recipe, at the version the edit was made on.
+	 * @param portions the new portions of the recipe.
+	 */
+
+	void editPortions(RecipeVersion recipe, int portions) {
+		enqueue(new FieldKey(SQLStatement.EDIT_RECIPE_PORTIONS, recipe.title(), null), versioned(recipe, portions));
+	}
+
+	/**
+	 * Queues the edit of the steps of a recipe.
+	 *
+	 * @param recipe the recipe, at the version the edit was made on.
+	 * @param steps  the new steps of the recipe.
+	 */
+
+	void editSteps(RecipeVersion recipe, String steps) {
+		enqueue(new FieldKey(SQLStatement.EDIT_RECIPE_STEPS, recipe.title(), null), versioned(recipe, steps));
+	}
+
+	/**
+	 * Queues the edit of the quantity and unit of measurement of an ingredient of a recipe, marking the recipe as
+	 * changed for the other clients.
+	 *
+	 * @param recipe     the recipe, at the version the edit was made on.
+	 * @param ingredient the ingredient, holding its new quantity and unit of measurement.
+	 */
+
+	void updateIngredient(RecipeVersion recipe, Ingredient ingredient) {
+		enqueue(new FieldKey(SQLStatement.UPDATE_INGREDIENT, recipe.title(), ingredient.getIngredient()),
+			ingredient.getQuantity(), ingredient.getUnit_of_measurement(), recipe.title(), ingredient.getIngredient());
+		enqueue(new FieldKey(SQLStatement.TOUCH_RECIPE, recipe.title(), null), versioned(recipe));
+	}
+
+	/**
+	 * Checks whether a recipe has edits not written yet, either queued or being flushed.
+	 *
+	 * @param title the title of the recipe.
+	 * @return {@code true} if edits of the recipe are pending, {@code false} otherwise.
+	 */
+
+	boolean hasPendingEdits(String title) {
+		synchronized (pending) {
+			return latest.keySet().stream().anyMatch(key -> key.title().equals(title));
+		}
+	}
+
+	/**
+	 * Writes the pending edits in a single transaction.
+	 * If another client changed a recipe of the edits, they are discarded and the conflict listener is notified;
+	 * if the write fails for any other reason, the edits are queued again before the ones made meanwhile.
+	 *
+	 * @return a future completed, on the JavaFX application thread, when the edits are written.
+	 */
+
+	CompletableFuture<Void> flush() {
+		Map<FieldKey, Edit> flushed;
+		synchronized (pending) {
+			if (pending.isEmpty()) {
+				return CompletableFuture.completedFuture(null);
+			}
+			flushed = new LinkedHashMap<>(pending);
+			pending.clear();
+		}
+
+		List<Map.Entry<SQLStatement, Object[]>> edits = new ArrayList<>();
+		flushed.forEach((key, edit) -> edits.add(Map.entry(key.statement(), edit.parameters())));
+
+		return WriteJournal.submit(JournalEntry.editRecipeFields(edits)).<Void>thenApply(ignored -> null).whenComplete((ignored, error) -> {
+			if (error == null) {
+				forget(flushed);
+			} else if (AsyncUtilsDB.cause(error) instanceof OptimisticLockException conflict) {
+				forget(flushed);
+				conflictListener.accept(conflict);
+			} else {
+				requeue(flushed);
+			}
+		});
+	}
+
+	/**
+	 * Stops the periodic flush and flushes the pending edits.
+	 *
+	 * @return a future completed, on the JavaFX application thread, when the pending edits are written.
+	 */
+
+	CompletableFuture<Void> close() {
+		flushTask.cancel(false);
+		openQueues.remove(this);
+		return flush();
+	}
+
+	/**
+	 * Replaces the pending edit of a recipe field.
+	 *
+	 * @param key        the edited field.
+	 * @param parameters the parameters of the statement, in order.
+	 */
+
+	private void enqueue(FieldKey key, Object... parameters) {
+		synchronized (pending) {
+			pending.remove(key);
+			pending.put(key, new Edit(parameters, ++sequence, 0));
+			latest.put(key, sequence);
+		}
+	}
+
+	/**
+	 * Appends to the values written by a recipe edit the parameters checking the version of the recipe: the writer,
+	 * the title, the version and the writer again.
+	 *
+	 * @param recipe the recipe, at the version the edit was made on.
+	 * @param values the values written by the edit.
+	 * @return the parameters of the statement, in order.
+	 */
+
+	private static Object[] versioned(RecipeVersion recipe, Object... values) {
+		Object[] parameters = Arrays.copyOf(values, values.length + 4);
+		parameters[values.length] = recipe.writer();
+		parameters[values.length + 1] = recipe.title();
+		parameters[values.length + 2] = recipe.version();
+		parameters[values.length + 3] = recipe.writer();
+		return parameters;
+	}
+
+	/**
+	 * Queues again the edits of a failed flush, before the edits made meanwhile.
+	 * An edit is dropped if its field was edited after it, or after {@link #MAX_ATTEMPTS} failed flushes.
+	 *
+	 * @param failed the edits of the failed flush.
+	 */
+
+	private void requeue(Map<FieldKey, Edit> failed) {
+		synchronized (pending) {
+			Map<FieldKey, Edit> merged = new LinkedHashMap<>();
+			failed.forEach((key, edit) -> {
+				if (Objects.equals(latest.get(key), edit.sequence())) {
+					if (edit.attempts() + 1 < MAX_ATTEMPTS) {
+						merged.put(key, new Edit(edit.parameters(), edit.sequence(), edit.attempts() + 1));
+					} else {
+						latest.remove(key);
+					}
+				}
+			});
+			merged.putAll(pending);
+
+			pending.clear();
+			pending.putAll(merged);
+		}
+	}
+
+	/**
+	 * Drops the bookkeeping of the written edits whose fields were not edited again.
+	 *
+	 * @param written the written edits.
+	 */
+
+	private void forget(Map<FieldKey, Edit> written) {
+		synchronized (pending) {
+			written.forEach((key, edit) -> latest.remove(key, edit.sequence()));
+		}
+	}
+
+	/**
+	 * Executes the given edits on a connection, grouping them into one batch per statement.
+	 *
+	 * @param connection the connection the edits are executed on.
+	 * @param edits      the statements of the edits with their parameters, in the order they were queued.
+	 * @throws OptimisticLockException if an edit of a recipe row found it changed or removed by another client.
+	 * @throws SQLException            if a database access error occurs.
+	 */
+
+	static void executeBatches(Connection connection, List<Map.Entry<SQLStatement, Object[]>> edits) throws
+		SQLException {
+		Map<SQLStatement, List<Object[]>> batches = new EnumMap<>(SQLStatement.class);
+		for (Map.Entry<SQLStatement, Object[]> edit : edits) {
+			batches.computeIfAbsent(edit.getKey(), statement -> new ArrayList<>()).add(edit.getValue());
+		}
+
+		for (Map.Entry<SQLStatement, List<Object[]>> batch : batches.entrySet()) {
+			try (PreparedStatement statement = batch.getKey().prepare(connection)) {
+				for (Object[] parameters : batch.getValue()) {
+					for (int i = 0; i < parameters.length; i++) {
+						statement.setObject(i + 1, parameters[i]);
+					}
+					statement.addBatch();
+				}
+				int[] counts = statement.executeBatch();
+
+				if (VERSIONED.contains(batch.getKey())) {
+					for (int i = 0; i < counts.length; i++) {
+						if (counts[i] == 0) {
+							Object[] parameters = batch.getValue().get(i);
+							int title = parameters.length - 3;
+							throw UtilsDB.recipeConflict(new RecipeVersion((String) parameters[title],
+								((Number) parameters[title + 1]).longValue(), (String) parameters[title - 1]));
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Identifies a recipe field: the statement that writes it, the recipe and, for ingredients, the ingredient.
+	 *
+	 * @param statement  the statement writing the field.
+	 * @param title      the title of the recipe.
+	 * @param ingredient the name of the ingredient, or {@code null} for the fields of the recipe itself.
+	 */
+	private record FieldKey(SQLStatement statement, String title, String ingredient) {
+	}
+
+	/**
+	 * A queued edit of a recipe field.
+	 *
+	 * @param parameters the parameters of the statement, in order.
+	 * @param sequence   the position of the edit among all the edits of the queue, used to tell newer edits apart.
+	 * @param attempts   the number of failed flushes of the edit.
+	 */
+	private record Edit(Object[] parameters, long sequence, int attempts) {
+	}
+}
@@ -0,0 +1,173 @@
+package com.napolitanoveroni.expirationdate;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * Registry of every SQL statement issued by {@link UtilsDB} and {@link SchemaMigrator}, one constant per operation.
+ * <p>Keeping the SQL text in a single place guarantees that each operation always sends the very same string,
+ * so the driver and server prepared-statement caches configured in {@link MySQLStorageBackend#configure} can
+ * reuse the parsed statement instead of parsing it again on every call.</p>
+ *
+ * @author SaverioNapolitano, MatteV02
+ * @version 2023.07.10
+ */
+public enum SQLStatement {
+	GET_FIRST_PRODUCT_PAGE("SELECT productName, expirationDate, categoryName, quantity, price, version FROM products " +
+		"ORDER BY expirationDate, productName LIMIT ?"),
+	GET_NEXT_PRODUCT_PAGE("SELECT productName, expirationDate, categoryName, quantity, price, version FROM products " +
+		"WHERE expirationDate > ? OR (expirationDate = ? AND productName > ?) " +
+		"ORDER BY expirationDate, productName LIMIT ?"),
+	COUNT_PRODUCTS("SELECT COUNT(*) FROM products"),
+	GET_NOT_EXPIRED_PRODUCT_NAMES("SELECT DISTINCT productName FROM products WHERE expirationDate > ?"),
+	GET_NOT_EXPIRED_PRODUCT_KEYS("SELECT productName, expirationDate FROM products WHERE expirationDate > ?"),
+	GET_PRODUCT("SELECT productName, expirationDate, categoryName, quantity, price, version FROM products " +
+		"WHERE productName=? AND expirationDate=?"),
+	/*
+	 * Every write to products and recipe increments the row version and stamps updated_at with the database clock:
+	 * the version detects concurrent edits, the timestamp lets other clients fetch the rows changed since they last
+	 * synchronized. Removed rows are recorded in the deleted_* tables for the same purpose.
+	 */
+	/**
+	 * Inserts a product or, if a product with the same name and expiration date exists, adds to its quantity and
+	 * replaces its category and price with the new ones.
+	 */
+	MERGE_PRODUCT("INSERT INTO products (productName, expirationDate, categoryName, quantity, price) " +
+		"VALUES (?, ?, ?, ?, ?) ON DUPLICATE KEY UPDATE quantity = quantity + VALUES(quantity), " +
+		"categoryName = VALUES(categoryName), price = VALUES(price), version = version + 1, " +
+		"updated_at = CURRENT_TIMESTAMP(3)"),
+	REMOVE_PRODUCT("DELETE FROM products WHERE productName=? AND expirationDate=? AND version=?"),
+	INSERT_DELETED_PRODUCT("INSERT INTO deleted_products (productName, expirationDate) VALUES (?, ?)"),
+	GET_CHANGED_PRODUCTS("SELECT productName, expirationDate, categoryName, quantity, price, version FROM products " +
+		"WHERE updated_at > ?"),
+	GET_DELETED_PRODUCTS("SELECT DISTINCT productName, expirationDate FROM deleted_products WHERE deleted_at > ?"),
+	PRUNE_DELETED_PRODUCTS("DELETE FROM deleted_products WHERE deleted_at < ?"),
+
+	/**
+	 * Loads every recipe with its ingredients and tags in one round trip.
+	 * Each recipe row ({@code row_kind} 0) is immediately followed by its ingredient rows (1) and tag rows (2).
+	 */
+	GET_RECIPE_GRAPH("SELECT 0 AS row_kind, id AS recipe_id, title, duration, unit, portions, category, steps, " +
+		"version, NULL AS ingredient, NULL AS quantity, NULL AS unit_of_measurement, NULL AS tag FROM recipe " +
+		"UNION ALL " +
+		"SELECT 1, recipe_id, NULL, NULL, NULL, NULL, NULL, NULL, NULL, ingredient, quantity, unit_of_measurement, " +
+		"NULL FROM consist " +
+		"UNION ALL " +
+		"SELECT 2, recipe_id, NULL, NULL, NULL, NULL, NULL, NULL, NULL, NULL, NULL, NULL, tag FROM tag " +
+		"ORDER BY recipe_id, row_kind"),
+	/**
+	 * Loads a single recipe with its ingredients and tags, with the same row layout as {@link #GET_RECIPE_GRAPH}.
+	 */
+	GET_RECIPE_GRAPH_BY_TITLE("SELECT 0 AS row_kind, id AS recipe_id, title, duration, unit, portions, category, " +
+		"steps, version, NULL AS ingredient, NULL AS quantity, NULL AS unit_of_measurement, NULL AS tag FROM recipe " +
+		"WHERE title=? " +
+		"UNION ALL " +
+		"SELECT 1, c.recipe_id, NULL, NULL, NULL, NULL, NULL, NULL, NULL, c.ingredient, c.quantity, " +
+		"c.unit_of_measurement, NULL FROM consist c JOIN recipe r ON r.id = c.recipe_id WHERE r.title=? " +
+		"UNION ALL " +
+		"SELECT 2, t.recipe_id, NULL, NULL, NULL, NULL, NULL, NULL, NULL, NULL, NULL, NULL, t.tag " +
+		"FROM tag t JOIN recipe r ON r.id = t.recipe_id WHERE r.title=? " +
+		"ORDER BY row_kind"),
+	GET_RECIPE_TITLES("SELECT title FROM recipe ORDER BY title"),
+	GET_RECIPE_INGREDIENTS("SELECT r.title, c.ingredient FROM recipe r LEFT JOIN consist c ON c.recipe_id = r.id"),
+	GET_RECIPE_INGREDIENTS_BY_TITLE("SELECT r.title, c.ingredient FROM recipe r LEFT JOIN consist c ON c.recipe_id = r.id " +
+		"WHERE r.title=?"),
+	INSERT_RECIPE("INSERT INTO recipe (title, duration, unit, portions, category, steps, updated_by) " +
+		"VALUES (?, ?, ?, ?, ?, ?, ?)"),
+	/*
+	 * Every write to a recipe row records the client that made it in updated_by, and only succeeds if the row is at
+	 * the version the client read or was last written by the same client, so its own earlier writes do not conflict.
+	 * The last four parameters are the writer, the title, the version read and the writer again.
+	 */
+	EDIT_RECIPE_TITLE("UPDATE recipe SET title=?, version=version+1, updated_by=?, updated_at=CURRENT_TIMESTAMP(3) " +
+		"WHERE title=? AND (version=? OR updated_by=?)"),
+	EDIT_RECIPE_CATEGORY("UPDATE recipe SET category=?, version=version+1, updated_by=?, " +
+		"updated_at=CURRENT_TIMESTAMP(3) WHERE title=? AND (version=? OR updated_by=?)"),
+	EDIT_RECIPE_UNIT("UPDATE recipe SET unit=?, version=version+1, updated_by=?, updated_at=CURRENT_TIMESTAMP(3) " +
+		"WHERE title=? AND (version=? OR updated_by=?)"),
+	EDIT_RECIPE_DURATION("UPDATE recipe SET duration=?, version=version+1, updated_by=?, " +
+		"updated_at=CURRENT_TIMESTAMP(3) WHERE title=? AND (version=? OR updated_by=?)"),
+	EDIT_RECIPE_PORTIONS("UPDATE recipe SET portions=?, version=version+1, updated_by=?, " +
+		"updated_at=CURRENT_TIMESTAMP(3) WHERE title=? AND (version=? OR updated_by=?)"),
+	EDIT_RECIPE_STEPS("UPDATE recipe SET steps=?, version=version+1, updated_by=?, updated_at=CURRENT_TIMESTAMP(3) " +
+		"WHERE title=? AND (version=? OR updated_by=?)"),
+	/**
+	 * Marks a recipe as changed after an edit of its ingredients or tags.
+	 */
+	TOUCH_RECIPE("UPDATE recipe SET version=version+1, updated_by=?, updated_at=CURRENT_TIMESTAMP(3) " +
+		"WHERE title=? AND (version=? OR updated_by=?)"),
+	EXISTS_RECIPE("SELECT 1 FROM recipe WHERE title=?"),
+	REMOVE_RECIPE("DELETE FROM recipe WHERE title=?"),
+	INSERT_DELETED_RECIPE("INSERT INTO deleted_recipes (title) VALUES (?)"),
+	GET_CHANGED_RECIPE_TITLES("SELECT title FROM recipe WHERE updated_at > ?"),
+	GET_DELETED_RECIPE_TITLES("SELECT DISTINCT title FROM deleted_recipes WHERE deleted_at > ?"),
+	PRUNE_DELETED_RECIPES("DELETE FROM deleted_recipes WHERE deleted_at < ?"),
+	GET_SYNC_TOKEN("SELECT CURRENT_TIMESTAMP(3)"),
+	INSERT_APPLIED_JOURNAL_ENTRY("INSERT IGNORE INTO applied_journal_entries (id) VALUES (?)"),
+	PRUNE_APPLIED_JOURNAL_ENTRIES("DELETE FROM applied_journal_entries WHERE applied_at < ?"),
+
+	/*
+	 * Ingredients and tags reference their recipe by its numeric id; the statements below resolve it from the recipe
+	 * title through the unique index on recipe.title.
+	 */
+	INSERT_INGREDIENT("INSERT INTO consist (recipe_id, ingredient, quantity, unit_of_measurement) " +
+		"VALUES ((SELECT id FROM recipe WHERE title=?), ?, ?, ?)"),
+	UPDATE_INGREDIENT("UPDATE consist SET quantity=?, unit_of_measurement=? " +
+		"WHERE recipe_id=(SELECT id FROM recipe WHERE title=?) AND ingredient=?"),
+	REMOVE_INGREDIENT("DELETE FROM consist WHERE recipe_id=(SELECT id FROM recipe WHERE title=?) AND ingredient=?"),
+
+	GET_TAG_COUNTS("SELECT tag, COUNT(*) AS recipes FROM tag GROUP BY tag"),
+	INSERT_TAG("INSERT INTO tag (recipe_id, tag) VALUES ((SELECT id FROM recipe WHERE title=?), ?)"),
+	REMOVE_TAG("DELETE FROM tag WHERE recipe_id=(SELECT id FROM recipe WHERE title=?) AND tag=?"),
+
+	CREATE_SCHEMA_VERSION("CREATE TABLE IF NOT EXISTS schema_version (version INT NOT NULL PRIMARY KEY, " +
+		"description VARCHAR(255) NOT NULL, installed_on TIMESTAMP DEFAULT CURRENT_TIMESTAMP)"),
+	GET_SCHEMA_VERSION("SELECT MAX(version) FROM schema_version"),
+	INSERT_SCHEMA_VERSION("INSERT INTO schema_version (version, description) VALUES (?, ?)"),
+	CREATE_SCHEMA_MIGRATION_PROGRESS("CREATE TABLE IF NOT EXISTS schema_migration_progress (version INT NOT NULL PRIMARY KEY, " +
+		"statements INT NOT NULL)"),
+	GET_SCHEMA_MIGRATION_PROGRESS("SELECT statements FROM schema_migration_progress WHERE version = ?"),
+	SET_SCHEMA_MIGRATION_PROGRESS("INSERT INTO schema_migration_progress (version, statements) VALUES (?, ?) " +
+		"ON DUPLICATE KEY UPDATE statements = VALUES(statements)"),
+	REMOVE_SCHEMA_MIGRATION_PROGRESS("DELETE FROM schema_migration_progress WHERE version = ?"),
+	LOCK_SCHEMA("SELECT GET_LOCK(?, ?)"),
+	UNLOCK_SCHEMA("SELECT RELEASE_LOCK(?)");
+
+	private final String sql;
+
+	/**
+	 * Constructs a registry entry for the given SQL text.
+	 *
+	 * @param sql the SQL text of the statement.
+	 */
+
+	SQLStatement(String sql) {
+		this.sql = sql;
+	}
+
+	/**
+	 * Returns the SQL text of the statement.
+	 *
+	 * @return the SQL text of the statement.
+	 */
+
+	public String getSql() {
+		return sql;
+	}
+
+	/**
+	 * Prepares the statement on the given connection.
+	 * Unless {@linkplain DatabaseMetrics#isEnabled() disabled}, the statement is instrumented to report its latency
+	 * and rows to {@link DatabaseMetrics}.
+	 *
+	 * @param connection the connection the statement is prepared on.
+	 * @return the prepared statement, to be closed by the caller.
+	 * @throws SQLException if a database access error occurs.
+	 */
+
+	PreparedStatement prepare(Connection connection) throws SQLException {
+		PreparedStatement statement = connection.prepareStatement(sql);
+		return DatabaseMetrics.isEnabled() ? InstrumentedStatement.wrap(this, statement) : statement;
+	}
+}
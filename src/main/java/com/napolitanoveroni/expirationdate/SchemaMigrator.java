@@ -0,0 +1,335 @@
+package com.napolitanoveroni.expirationdate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Brings the database schema to the version expected by the application.
+ * <p>The schema is described by versioned scripts stored in the {@code sql/migrations} resources, named
+ * {@code V<version>__<description>.sql} and applied in version order. The version reached by a database is recorded
+ * in the {@code schema_version} table, so each script is applied once per database, when the connection pool is
+ * started. Scripts only use statements understood by every {@link StorageBackend}.</p>
+ * <p>Clients sharing a database migrate it one at a time, holding the {@linkplain StorageBackend#lockSchema(Connection)
+ * schema lock}; the version is read once the lock is held, so a client waiting for another one does not apply the
+ * scripts again. The statements of a script are executed one by one and, as most of them commit implicitly, the
+ * number of statements executed is recorded in the {@code schema_migration_progress} table after each of them: a
+ * migration interrupted by a crash resumes from the statement it was executing. That statement may have completed,
+ * so every statement can be executed again: the scripts drop tables with {@code IF EXISTS} and copy rows that are
+ * not copied yet, and the statements MySQL cannot guard, creating an index, adding a column or a foreign key or
+ * renaming a table, are skipped when the schema already has their effect.</p>
+ *
+ * @author SaverioNapolitano, MatteV02
+ * @version 2023.07.10
+ */
+public class SchemaMigrator {
+	/**
+	 * The migration scripts, in version order.
+	 */
+	static final List<String> MIGRATIONS = List.of(
+		"V1__create_tables",
+		"V2__add_indexes",
+		"V3__recipe_surrogate_keys",
+		"V4__change_tracking",
+		"V5__write_journal",
+		"V6__recipe_foreign_keys",
+		"V7__recipe_writer"
+	);
+
+	private static final System.Logger logger = System.getLogger(SchemaMigrator.class.getName());
+	private static final Pattern CREATE_INDEX = Pattern.compile("CREATE\\s+INDEX\\s+(\\w+)\\s+ON\\s+(\\w+)", Pattern.CASE_INSENSITIVE);
+	private static final Pattern ADD_COLUMN = Pattern.compile("ALTER\\s+TABLE\\s+(\\w+)\\s+ADD\\s+COLUMN\\s+(\\w+)", Pattern.CASE_INSENSITIVE);
+	private static final Pattern ADD_FOREIGN_KEY = Pattern.compile("ALTER\\s+TABLE\\s+(\\w+)\\s+ADD\\s+CONSTRAINT\\s+(\\w+)\\s+FOREIGN\\s+KEY", Pattern.CASE_INSENSITIVE);
+	private static final Pattern RENAME_TABLE = Pattern.compile("ALTER\\s+TABLE\\s+(\\w+)\\s+RENAME\\s+TO\\s+(\\w+)", Pattern.CASE_INSENSITIVE);
+
+	private SchemaMigrator() {
+	}
+
+	/**
+	 * Returns the schema version the application expects.
+	 *
+	 * @return the version of the last migration script.
+	 */
+
+	static int getLatestVersion() {
+		return MIGRATIONS.size();
+	}
+
+	/**
+	 * Applies the migration scripts the database has not applied yet.
+	 *
+	 * @param connection the connection the scripts are applied on.
+	 * @return the schema version of the database after the migration.
+	 * @throws SQLException if a script fails or the database has a newer schema than the application.
+	 */
+
+	static int migrate(Connection connection) throws SQLException {
+		return migrate(connection, getLatestVersion());
+	}
+
+	/**
+	 * Applies the migration scripts the database has not applied yet, up to the given version.
+	 *
+	 * @param connection the connection the scripts are applied on.
+	 * @param target     the version the schema is brought to.
+	 * @return the schema version of the database after the migration.
+	 * @throws SQLException if a script fails or the database has a newer schema than the application.
+	 */
+
+	static int migrate(Connection connection, int target) throws SQLException {
+		StorageBackend backend = ConnectionPool.getBackend();
+		backend.lockSchema(connection);
+		try {
+			for (SQLStatement create : List.of(SQLStatement.CREATE_SCHEMA_VERSION, SQLStatement.CREATE_SCHEMA_MIGRATION_PROGRESS)) {
+				try (PreparedStatement createTable = create.prepare(connection)) {
+					createTable.execute();
+				}
+			}
+
+			int version = getVersion(connection);
+			if (version > getLatestVersion()) {
+				throw new SQLException("The database schema version " + version + " is newer than the supported version " + getLatestVersion());
+			}
+
+			for (int next = version + 1; next <= target; next++) {
+				String migration = MIGRATIONS.get(next - 1);
+				apply(connection, next, migration);
+				recordVersion(connection, next, migration.substring(migration.indexOf("__") + 2).replace('_', ' '));
+				logger.log(System.Logger.Level.INFO, "Applied schema migration {0}", migration);
+			}
+
+			int reached = Math.max(version, target);
+			logger.log(System.Logger.Level.INFO, "Database schema at version {0}", reached);
+			return reached;
+		} finally {
+			backend.unlockSchema(connection);
+		}
+	}
+
+	/**
+	 * Returns the schema version recorded in the database.
+	 *
+	 * @param connection the connection the version is read on.
+	 * @return the schema version, or 0 if no migration was applied.
+	 * @throws SQLException if a database access error occurs.
+	 */
+
+	static int getVersion(Connection connection) throws SQLException {
+		try (PreparedStatement getVersion = SQLStatement.GET_SCHEMA_VERSION.prepare(connection);
+			 ResultSet rs = getVersion.executeQuery()) {
+			return rs.next() ? rs.getInt(1) : 0;
+		}
+	}
+
+	/**
+	 * Executes the statements of a migration script, resuming after the last statement recorded as executed.
+	 *
+	 * @param connection the connection the script is executed on.
+	 * @param version    the version of the script.
+	 * @param migration  the name of the script, without extension.
+	 * @throws SQLException if a statement fails or the script could not be read.
+	 */
+
+	private static void apply(Connection connection, int version, String migration) throws SQLException {
+		List<String> statements = statements(migration);
+
+		int executed = getProgress(connection, version);
+		if (executed > 0) {
+			logger.log(System.Logger.Level.INFO, "Resuming schema migration {0} after statement {1}", migration, executed);
+		}
+
+		try (Statement statement = connection.createStatement()) {
+			for (int i = executed; i < statements.size(); i++) {
+				String sql = statements.get(i);
+				if (!isApplied(connection, sql)) {
+					statement.execute(sql);
+				}
+				setProgress(connection, version, i + 1);
+			}
+		}
+	}
+
+	/**
+	 * Reads the statements of a migration script.
+	 *
+	 * @param migration the name of the script, without extension.
+	 * @return the statements of the script, in order.
+	 * @throws SQLException if the script could not be read.
+	 */
+
+	static List<String> statements(String migration) throws SQLException {
+		String resource = "sql/migrations/" + migration + ".sql";
+		String script;
+		try (InputStream input = SchemaMigrator.class.getResourceAsStream(resource)) {
+			if (input == null) {
+				throw new SQLException("Missing migration script " + resource);
+			}
+			script = new String(input.readAllBytes(), StandardCharsets.UTF_8);
+		} catch (IOException e) {
+			throw new SQLException("Could not read migration script " + resource, e);
+		}
+
+		List<String> statements = new ArrayList<>();
+		for (String sql : script.split(";")) {
+			if (!sql.isBlank()) {
+				statements.add(sql.strip());
+			}
+		}
+		return statements;
+	}
+
+	/**
+	 * Checks whether the schema already has the effect of a statement that cannot be executed twice: the index it
+	 * creates or the column or foreign key it adds exists, or the table it renames was renamed.
+	 *
+	 * @param connection the connection the schema is read on.
+	 * @param sql        the statement.
+	 * @return {@code true} if the statement must be skipped, {@code false} if it must be executed.
+	 * @throws SQLException if a database access error occurs.
+	 */
+
+	private static boolean isApplied(Connection connection, String sql) throws SQLException {
+		DatabaseMetaData metaData = connection.getMetaData();
+
+		Matcher createIndex = CREATE_INDEX.matcher(sql);
+		if (createIndex.lookingAt()) {
+			try (ResultSet rs = metaData.getIndexInfo(connection.getCatalog(), connection.getSchema(), identifier(metaData, createIndex.group(2)), false, false)) {
+				while (rs.next()) {
+					if (createIndex.group(1).equalsIgnoreCase(rs.getString("INDEX_NAME"))) {
+						return true;
+					}
+				}
+			}
+			return false;
+		}
+
+		Matcher addColumn = ADD_COLUMN.matcher(sql);
+		if (addColumn.lookingAt()) {
+			try (ResultSet rs = metaData.getColumns(connection.getCatalog(), connection.getSchema(), identifier(metaData, addColumn.group(1)), identifier(metaData, addColumn.group(2)))) {
+				return rs.next();
+			}
+		}
+
+		Matcher addForeignKey = ADD_FOREIGN_KEY.matcher(sql);
+		if (addForeignKey.lookingAt()) {
+			try (ResultSet rs = metaData.getImportedKeys(connection.getCatalog(), connection.getSchema(), identifier(metaData, addForeignKey.group(1)))) {
+				while (rs.next()) {
+					if (addForeignKey.group(2).equalsIgnoreCase(rs.getString("FK_NAME"))) {
+						return true;
+					}
+				}
+			}
+			return false;
+		}
+
+		Matcher renameTable = RENAME_TABLE.matcher(sql);
+		if (renameTable.lookingAt()) {
+			return !hasTable(connection, renameTable.group(1)) && hasTable(connection, renameTable.group(2));
+		}
+
+		return false;
+	}
+
+	/**
+	 * Checks whether a table exists.
+	 *
+	 * @param connection the connection the schema is read on.
+	 * @param table      the name of the table.
+	 * @return {@code true} if the table exists, {@code false} otherwise.
+	 * @throws SQLException if a database access error occurs.
+	 */
+
+	private static boolean hasTable(Connection connection, String table) throws SQLException {
+		DatabaseMetaData metaData = connection.getMetaData();
+		try (ResultSet rs = metaData.getTables(connection.getCatalog(), connection.getSchema(), identifier(metaData, table), new String[]{"TABLE"})) {
+			return rs.next();
+		}
+	}
+
+	/**
+	 * Converts an unquoted identifier of a script to the case the database stores it in.
+	 *
+	 * @param metaData the metadata of the database.
+	 * @param name     the identifier.
+	 * @return the identifier as stored by the database.
+	 * @throws SQLException if a database access error occurs.
+	 */
+
+	private static String identifier(DatabaseMetaData metaData, String name) throws SQLException {
+		if (metaData.storesUpperCaseIdentifiers()) {
+			return name.toUpperCase(Locale.ROOT);
+		}
+		if (metaData.storesLowerCaseIdentifiers()) {
+			return name.toLowerCase(Locale.ROOT);
+		}
+		return name;
+	}
+
+	/**
+	 * Returns the number of statements of a migration script recorded as executed.
+	 *
+	 * @param connection the connection the progress is read on.
+	 * @param version    the version of the script.
+	 * @return the number of executed statements, or 0 if the script was not started.
+	 * @throws SQLException if a database access error occurs.
+	 */
+
+	private static int getProgress(Connection connection, int version) throws SQLException {
+		try (PreparedStatement getProgress = SQLStatement.GET_SCHEMA_MIGRATION_PROGRESS.prepare(connection)) {
+			getProgress.setInt(1, version);
+			try (ResultSet rs = getProgress.executeQuery()) {
+				return rs.next() ? rs.getInt(1) : 0;
+			}
+		}
+	}
+
+	/**
+	 * Records the number of statements of a migration script executed so far.
+	 *
+	 * @param connection the connection the progress is recorded on.
+	 * @param version    the version of the script.
+	 * @param executed   the number of executed statements.
+	 * @throws SQLException if a database access error occurs.
+	 */
+
+	private static void setProgress(Connection connection, int version, int executed) throws SQLException {
+		try (PreparedStatement setProgress = SQLStatement.SET_SCHEMA_MIGRATION_PROGRESS.prepare(connection)) {
+			setProgress.setInt(1, version);
+			setProgress.setInt(2, executed);
+			setProgress.executeUpdate();
+		}
+	}
+
+	/**
+	 * Records that a migration script was applied.
+	 *
+	 * @param connection  the connection the version is recorded on.
+	 * @param version     the version of the script.
+	 * @param description the description of the script.
+	 * @throws SQLException if a database access error occurs.
+	 */
+
+	private static void recordVersion(Connection connection, int version, String description) throws SQLException {
+		try (PreparedStatement insertVersion = SQLStatement.INSERT_SCHEMA_VERSION.prepare(connection)) {
+			insertVersion.setInt(1, version);
+			insertVersion.setString(2, description);
+			insertVersion.executeUpdate();
+		}
+
+		try (PreparedStatement removeProgress = SQLStatement.REMOVE_SCHEMA_MIGRATION_PROGRESS.prepare(connection)) {
+			removeProgress.setInt(1, version);
+			removeProgress.executeUpdate();
+		}
+	}
+}
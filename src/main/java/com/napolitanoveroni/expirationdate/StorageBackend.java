@@ -0,0 +1,77 @@
+package com.napolitanoveroni.expirationdate;
+
+import com.zaxxer.hikari.HikariConfig;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * The database engine the application stores its data in.
+ * <p>A backend tells the {@link ConnectionPool} how to reach its engine. The statements of {@link SQLStatement} and
+ * the scripts of {@link SchemaMigrator} are written in the SQL dialect of MySQL and run unchanged on every backend.
+ * The backend is chosen with the {@value #BACKEND_PROPERTY} system property: {@code mysql} (the default) uses the
+ * MySQL server configured in {@code PersonalConfigDB}, {@code embedded} uses an in-process engine storing its data in
+ * a local file.</p>
+ *
+ * @author SaverioNapolitano, MatteV02
+ * @version 2023.07.10
+ */
+public interface StorageBackend {
+	/**
+	 * System property holding the name of the backend.
+	 */
+	String BACKEND_PROPERTY = "expirationdate.db.backend";
+
+	/**
+	 * Returns the backend selected by the {@value #BACKEND_PROPERTY} system property.
+	 *
+	 * @return the selected backend.
+	 * @throws IllegalArgumentException if the property names an unknown backend.
+	 */
+
+	static StorageBackend fromSystemProperties() {
+		String name = System.getProperty(BACKEND_PROPERTY, MySQLStorageBackend.NAME);
+		return switch (name) {
+			case MySQLStorageBackend.NAME -> new MySQLStorageBackend();
+			case EmbeddedStorageBackend.NAME -> new EmbeddedStorageBackend(EmbeddedStorageBackend.defaultPath());
+			default -> throw new IllegalArgumentException("Unknown storage backend: " + name);
+		};
+	}
+
+	/**
+	 * Returns the name of the backend, as used in the {@value #BACKEND_PROPERTY} system property.
+	 *
+	 * @return the name of the backend.
+	 */
+
+	String getName();
+
+	/**
+	 * Sets the driver, the URL and the driver properties of the engine on a pool configuration.
+	 *
+	 * @param config the pool configuration.
+	 */
+
+	void configure(HikariConfig config);
+
+	/**
+	 * Acquires the lock that lets a single client at a time migrate the schema, waiting for it.
+	 * Backends that cannot be opened by two clients at once do not need it: by default, nothing is done.
+	 *
+	 * @param connection the connection the schema is migrated on, which holds the lock.
+	 * @throws SQLException if the lock could not be acquired.
+	 */
+
+	default void lockSchema(Connection connection) throws SQLException {
+	}
+
+	/**
+	 * Releases the lock acquired by {@link #lockSchema(Connection)}.
+	 *
+	 * @param connection the connection holding the lock.
+	 * @throws SQLException if a database access error occurs.
+	 */
+
+	default void unlockSchema(Connection connection) throws SQLException {
+	}
+}
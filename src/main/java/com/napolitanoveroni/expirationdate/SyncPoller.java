@@ -0,0 +1,157 @@
+package com.napolitanoveroni.expirationdate;
+
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Keeps the application in sync with the changes other clients make to the shared database.
+ * <p>Every {@link #POLL_INTERVAL} milliseconds the poller reads the {@linkplain ChangeSet rows changed} since the
+ * token of the previous poll, and passes them, on the JavaFX application thread, to the registered listeners. Tokens
+ * are read from the database clock, so the clocks of the clients do not matter. Rows are stamped when their
+ * statement runs, not when their transaction commits, so each read goes back {@link #SAFETY_MARGIN} milliseconds
+ * before the token: a row committed after the previous read is stamped at most {@link UnitOfWork#MAX_DURATION}
+ * milliseconds before it, since no {@link UnitOfWork} lasting longer commits. Changes may therefore be delivered more
+ * than once, and listeners must apply them idempotently.</p>
+ * <p>Records of removed rows older than {@link #RETENTION} milliseconds are pruned when the poller starts: clients
+ * that were not running in the meantime load the whole database anyway.</p>
+ *
+ * @author SaverioNapolitano, MatteV02
+ * @version 2023.07.10
+ */
+public class SyncPoller {
+	/**
+	 * The number of milliseconds between two polls.
+	 */
+	static final long POLL_INTERVAL = 5_000L;
+
+	/**
+	 * The number of milliseconds every poll reads before the token of the previous one: the longest transaction, plus
+	 * the time a single statement outside a transaction may take between stamping and committing its rows.
+	 */
+	static final long SAFETY_MARGIN = UnitOfWork.MAX_DURATION + 10_000L;
+
+	/**
+	 * The number of milliseconds the records of removed rows are kept for.
+	 */
+	static final long RETENTION = 24 * 60 * 60 * 1_000L;
+
+	private static final System.Logger logger = System.getLogger(SyncPoller.class.getName());
+	private static final List<Consumer<ChangeSet>> listeners = new CopyOnWriteArrayList<>();
+	private static final AtomicBoolean polling = new AtomicBoolean(false);
+	private static final ScheduledExecutorService pollScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "sync-poller");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private static volatile Timestamp token;
+	private static ScheduledFuture<?> pollTask;
+
+	private SyncPoller() {
+	}
+
+	/**
+	 * Starts the periodic poll, taking the current database time as the first token.
+	 * Does nothing if the poller is already started.
+	 */
+
+	static synchronized void start() {
+		if (pollTask != null) {
+			return;
+		}
+
+		pollTask = pollScheduler.scheduleWithFixedDelay(SyncPoller::pollNow, POLL_INTERVAL, POLL_INTERVAL, TimeUnit.MILLISECONDS);
+		readFirstToken();
+	}
+
+	/**
+	 * Takes the current database time as the first token and prunes the old records of removed rows.
+	 * If the database cannot be reached, the token is read again by the next poll.
+	 */
+
+	private static void readFirstToken() {
+		if (!polling.compareAndSet(false, true)) {
+			return;
+		}
+
+		AsyncUtilsDB.read(UtilsDB::getSyncToken).whenComplete((now, error) -> {
+			polling.set(false);
+			if (error != null) {
+				logger.log(System.Logger.Level.WARNING, "Could not read the synchronization token", AsyncUtilsDB.cause(error));
+				return;
+			}
+
+			if (token == null) {
+				token = now;
+			}
+			AsyncUtilsDB.write(() -> UtilsDB.pruneDeletionRecords(new Timestamp(now.getTime() - RETENTION)));
+		});
+	}
+
+	/**
+	 * Stops the periodic poll.
+	 */
+
+	static synchronized void stop() {
+		if (pollTask != null) {
+			pollTask.cancel(false);
+			pollTask = null;
+		}
+	}
+
+	/**
+	 * Registers a listener notified with every non-empty change set.
+	 *
+	 * @param listener the listener, called on the JavaFX application thread.
+	 */
+
+	static void addListener(Consumer<ChangeSet> listener) {
+		listeners.add(listener);
+	}
+
+	/**
+	 * Unregisters a listener.
+	 *
+	 * @param listener the listener.
+	 */
+
+	static void removeListener(Consumer<ChangeSet> listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Reads the changes made since the previous poll and notifies the listeners.
+	 * Nothing is read while a previous poll is running or while the database is unreachable: the first poll after an
+	 * outage reads every change made during it. Until the first token is known, the poll reads it instead.
+	 */
+
+	static void pollNow() {
+		Timestamp previous = token;
+		if (!DatabaseHealth.isOnline()) {
+			return;
+		}
+		if (previous == null) {
+			readFirstToken();
+			return;
+		}
+		if (!polling.compareAndSet(false, true)) {
+			return;
+		}
+
+		AsyncUtilsDB.read(() -> UtilsDB.getChanges(new Timestamp(previous.getTime() - SAFETY_MARGIN))).whenComplete((changes, error) -> {
+			polling.set(false);
+			if (error != null) {
+				logger.log(System.Logger.Level.WARNING, "Could not read the changes of the other clients", AsyncUtilsDB.cause(error));
+				return;
+			}
+
+			token = changes.token();
+			if (!changes.isEmpty()) {
+				listeners.forEach(listener -> listener.accept(changes));
+			}
+		});
+	}
+}
@@ -0,0 +1,121 @@
+package com.napolitanoveroni.expirationdate;
+
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * In-memory dictionary of the tags used by the recipes, with the number of recipes using each of them.
+ * <p>The dictionary is loaded once and then kept up to date by reporting every tag written to or removed from the
+ * database, so a tag edit costs a map update instead of a query. The tags are published, in alphabetical order, as
+ * a single observable list that can be shared as the items of every tag combo box: a tag is added to the list when
+ * its first recipe uses it and removed when its last recipe drops it, and the combo boxes receive only these
+ * changes. The tags changed by other clients are applied by {@linkplain #replace(Map) replacing} the counts with the
+ * ones read again from the database.</p>
+ * <p>The dictionary must be used from the JavaFX application thread.</p>
+ *
+ * @author SaverioNapolitano, MatteV02
+ * @version 2023.07.10
+ */
+public class TagDictionary {
+	private final Map<String, Integer> counts;
+	private final ObservableList<String> tags;
+	private final ObservableList<String> readOnlyTags;
+
+	/**
+	 * Constructs a dictionary from the number of recipes using each tag.
+	 *
+	 * @param counts the number of recipes using each tag.
+	 */
+
+	TagDictionary(Map<String, Integer> counts) {
+		this.counts = new HashMap<>(counts);
+
+		ArrayList<String> sorted = new ArrayList<>(counts.keySet());
+		Collections.sort(sorted);
+		this.tags = FXCollections.observableArrayList(sorted);
+		this.readOnlyTags = FXCollections.unmodifiableObservableList(tags);
+	}
+
+	/**
+	 * Creates a dictionary by loading the tag counts from the database.
+	 *
+	 * @return the tag dictionary.
+	 * @throws SQLException if a database access error occurs.
+	 */
+
+	static TagDictionary load() throws SQLException {
+		return new TagDictionary(UtilsDB.getTagCounts());
+	}
+
+	/**
+	 * Returns the tags in use, in alphabetical order.
+	 *
+	 * @return a read-only observable list of the tags.
+	 */
+
+	ObservableList<String> getTags() {
+		return readOnlyTags;
+	}
+
+	/**
+	 * Records that a recipe started using a tag.
+	 *
+	 * @param tag the tag written to the database.
+	 */
+
+	void add(String tag) {
+		if (counts.merge(tag, 1, Integer::sum) == 1) {
+			int position = Collections.binarySearch(tags, tag);
+			tags.add(-position - 1, tag);
+		}
+	}
+
+	/**
+	 * Replaces the counts with the ones read from the database, adding to and removing from the list only the tags
+	 * whose presence changed.
+	 *
+	 * @param counts the number of recipes using each tag.
+	 */
+
+	void replace(Map<String, Integer> counts) {
+		tags.removeIf(tag -> !counts.containsKey(tag));
+		for (String tag : counts.keySet()) {
+			if (!this.counts.containsKey(tag)) {
+				int position = Collections.binarySearch(tags, tag);
+				tags.add(-position - 1, tag);
+			}
+		}
+
+		this.counts.clear();
+		this.counts.putAll(counts);
+	}
+
+	/**
+	 * Records that a recipe stopped using a tag.
+	 *
+	 * @param tag the tag removed from the database.
+	 */
+
+	void remove(String tag) {
+		Integer count = counts.get(tag);
+		if (count == null) {
+			return;
+		}
+
+		if (count > 1) {
+			counts.put(tag, count - 1);
+		} else {
+			counts.remove(tag);
+			int position = Collections.binarySearch(tags, tag);
+			if (position >= 0) {
+				tags.remove(position);
+			}
+		}
+	}
+}
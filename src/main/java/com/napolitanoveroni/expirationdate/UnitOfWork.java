@@ -0,0 +1,104 @@
+package com.napolitanoveroni.expirationdate;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A logical database operation that runs on a single pooled connection and inside a single transaction.
+ * <p>A unit of work is obtained through {@link UtilsDB#beginUnitOfWork()} and is meant to be used in a
+ * try-with-resources block: if {@link #commit()} has not been called when the unit of work is closed, every
+ * statement executed on its connection is rolled back.</p>
+ * <p>A unit of work that lasts longer than {@link #MAX_DURATION} milliseconds is rolled back instead of being
+ * committed. Rows are stamped with the time their statement runs, not the time they are committed, and
+ * {@link SyncPoller} only finds the rows committed at most {@link SyncPoller#SAFETY_MARGIN} milliseconds after being
+ * stamped: longer transactions must be split, as the {@link PantryImporter} and the {@link WriteJournal} replay
+ * do.</p>
+ *
+ * @author SaverioNapolitano, MatteV02
+ * @version 2023.07.10
+ */
+public class UnitOfWork implements AutoCloseable {
+	/**
+	 * The number of milliseconds a unit of work may last before committing it fails.
+	 */
+	static final long MAX_DURATION = 20_000L;
+
+	private final Connection connection;
+	private final long started;
+	private boolean completed;
+
+	/**
+	 * Starts a new unit of work on the given connection.
+	 *
+	 * @param connection the connection the unit of work owns until it is closed.
+	 * @throws SQLException if a database access error occurs.
+	 */
+
+	UnitOfWork(Connection connection) throws SQLException {
+		this.connection = connection;
+		this.started = System.nanoTime();
+		this.completed = false;
+
+		try {
+			connection.setAutoCommit(false);
+		} catch (SQLException exception) {
+			connection.close();
+			throw exception;
+		}
+	}
+
+	/**
+	 * Returns the connection every statement of this unit of work must be executed on.
+	 *
+	 * @return the connection of this unit of work.
+	 */
+
+	Connection getConnection() {
+		return connection;
+	}
+
+	/**
+	 * Makes every change done in this unit of work permanent.
+	 *
+	 * @throws SQLException if a database access error occurs or the unit of work lasted longer than
+	 *                      {@link #MAX_DURATION}, in which case it is rolled back.
+	 */
+
+	void commit() throws SQLException {
+		long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+		if (elapsed > MAX_DURATION) {
+			rollback();
+			throw new SQLException("Transaction rolled back after " + elapsed + " ms, longer than " + MAX_DURATION + " ms");
+		}
+		connection.commit();
+		completed = true;
+	}
+
+	/**
+	 * Undoes every change done in this unit of work.
+	 *
+	 * @throws SQLException if a database access error occurs.
+	 */
+
+	void rollback() throws SQLException {
+		connection.rollback();
+		completed = true;
+	}
+
+	/**
+	 * Rolls back the unit of work if it was neither committed nor rolled back and returns the connection to the pool.
+	 *
+	 * @throws SQLException if a database access error occurs.
+	 */
+
+	@Override
+	public void close() throws SQLException {
+		try (connection) {
+			if (!completed) {
+				connection.rollback();
+			}
+			connection.setAutoCommit(true);
+		}
+	}
+}
@@ -1,7 +1,5 @@
 package com.napolitanoveroni.expirationdate;
 
-import com.zaxxer.hikari.HikariConfig;
-import com.zaxxer.hikari.HikariDataSource;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 
@@ -18,41 +16,159 @@ import java.util.*;
  */
 
 public class UtilsDB {
-	static private HikariDataSource dataSource;
-
 	/**
 	 * Establishes a connection to the database.
+	 * The connection pool is shared by the whole application: it is started on the first call and reused afterwards.
 	 *
 	 * @throws SQLException if a database access error occurs.
 	 */
 
 	static void dbConnection() throws SQLException {
-		HikariConfig config = new HikariConfig();
-		config.setDriverClassName(PersonalConfigDB.JDBC_Driver);
-		config.setJdbcUrl(PersonalConfigDB.JDBC_URL);
-		config.setLeakDetectionThreshold(2000);
-		dataSource = new HikariDataSource(config);
+		ConnectionPool.getDataSource();
+	}
+
+	/**
+	 * Borrows a connection from the application connection pool.
+	 *
+	 * @return a pooled connection, to be closed by the caller.
+	 * @throws SQLException if a database access error occurs.
+	 */
+
+	static Connection getConnection() throws SQLException {
+		return ConnectionPool.getDataSource().getConnection();
+	}
+
+	/**
+	 * Starts a unit of work holding one connection and one transaction for a whole logical operation.
+	 *
+	 * @return the new unit of work, to be committed by the caller.
+	 * @throws SQLException if a database access error occurs.
+	 */
+
+	static UnitOfWork beginUnitOfWork() throws SQLException {
+		return new UnitOfWork(getConnection());
 	}
 
 	/**
-	 * Retrieves product data from the database.
+	 * Retrieves a page of products in (expiration date, product name) order.
+	 * Pages are read with keyset pagination: the next page starts right after the last product of the previous
+	 * one, so reading a page costs the same no matter how far the user has scrolled.
 	 *
-	 * @return an observable list of products.
+	 * @param after    the last product of the previous page, or {@code null} for the first page.
+	 * @param pageSize the maximum number of products of the page.
+	 * @return the products of the page.
 	 * @throws SQLException if a database access error occurs.
 	 */
 
-	static ObservableList<Product> getProductData() throws SQLException {
-		ObservableList<Product> products = FXCollections.observableArrayList();
+	static List<Product> getProductPage(Product after, int pageSize) throws SQLException {
+		List<Product> products = new ArrayList<>();
+
+		DatabaseMetrics.timed("getProductPage", () -> {
+			try (Connection connection = getConnection();
+				 PreparedStatement getPage = (after == null ? SQLStatement.GET_FIRST_PRODUCT_PAGE : SQLStatement.GET_NEXT_PRODUCT_PAGE).prepare(connection)) {
+				if (after == null) {
+					getPage.setInt(1, pageSize);
+				} else {
+					getPage.setDate(1, Date.valueOf(after.getExpirationDate()));
+					getPage.setDate(2, Date.valueOf(after.getExpirationDate()));
+					getPage.setString(3, after.getProductName());
+					getPage.setInt(4, pageSize);
+				}
 
-		try (Connection connection = dataSource.getConnection(); PreparedStatement getProducts = connection.prepareStatement("SELECT * FROM products"); ResultSet rs = getProducts.executeQuery()) {
-			while (rs.next()) {
-				products.add(new Product(rs.getString("productName"), UtilsDB.convertSQLDateToLocalDate(rs.getDate("expirationDate")), rs.getString("categoryName"), rs.getInt("quantity"), rs.getDouble("price")));
+				try (ResultSet rs = getPage.executeQuery()) {
+					while (rs.next()) {
+						products.add(readProduct(rs));
+					}
+				}
 			}
-		}
+		});
 
 		return products;
 	}
 
+	/**
+	 * Counts the products stored in the database.
+	 *
+	 * @return the number of products.
+	 * @throws SQLException if a database access error occurs.
+	 */
+
+	static int countProducts() throws SQLException {
+		return DatabaseMetrics.timed("countProducts", () -> {
+			try (Connection connection = getConnection();
+				 PreparedStatement countProducts = SQLStatement.COUNT_PRODUCTS.prepare(connection);
+				 ResultSet rs = countProducts.executeQuery()) {
+				return rs.next() ? rs.getInt(1) : 0;
+			}
+		});
+	}
+
+	/**
+	 * Retrieves the names of the products that expire after the given date.
+	 *
+	 * @param date the reference date.
+	 * @return the set of names of the products that are not expired at the given date.
+	 * @throws SQLException if a database access error occurs.
+	 */
+
+	static Set<String> getNotExpiredProductNames(LocalDate date) throws SQLException {
+		Set<String> names = new HashSet<>();
+
+		DatabaseMetrics.timed("getNotExpiredProductNames", () -> {
+			try (Connection connection = getConnection();
+				 PreparedStatement getNames = SQLStatement.GET_NOT_EXPIRED_PRODUCT_NAMES.prepare(connection)) {
+				getNames.setDate(1, Date.valueOf(date));
+				try (ResultSet rs = getNames.executeQuery()) {
+					while (rs.next()) {
+						names.add(rs.getString("productName"));
+					}
+				}
+			}
+		});
+
+		return names;
+	}
+
+	/**
+	 * Retrieves the name and expiration date of every product that expires after the given date.
+	 *
+	 * @param date the reference date.
+	 * @return the keys of the products that are not expired at the given date.
+	 * @throws SQLException if a database access error occurs.
+	 */
+
+	static List<ProductKey> getNotExpiredProductKeys(LocalDate date) throws SQLException {
+		List<ProductKey> keys = new ArrayList<>();
+
+		DatabaseMetrics.timed("getNotExpiredProductKeys", () -> {
+			try (Connection connection = getConnection();
+				 PreparedStatement getKeys = SQLStatement.GET_NOT_EXPIRED_PRODUCT_KEYS.prepare(connection)) {
+				getKeys.setDate(1, Date.valueOf(date));
+				try (ResultSet rs = getKeys.executeQuery()) {
+					while (rs.next()) {
+						keys.add(new ProductKey(rs.getString("productName"), convertSQLDateToLocalDate(rs.getDate("expirationDate"))));
+					}
+				}
+			}
+		});
+
+		return keys;
+	}
+
+	/**
+	 * Builds a product from the current row of a result set.
+	 *
+	 * @param rs the result set positioned on a product row.
+	 * @return the product.
+	 * @throws SQLException if a database access error occurs.
+	 */
+
+	private static Product readProduct(ResultSet rs) throws SQLException {
+		Product product = new Product(rs.getString("productName"), UtilsDB.convertSQLDateToLocalDate(rs.getDate("expirationDate")), rs.getString("categoryName"), rs.getInt("quantity"), rs.getDouble("price"));
+		product.setVersion(rs.getLong("version"));
+		return product;
+	}
+
 	/**
 	 * Converts an SQL date to a LocalDate object.
 	 *
@@ -67,6 +183,8 @@ public class UtilsDB {
 
 	/**
 	 * Retrieves recipe data from the database.
+	 * Recipes, ingredients and tags are read with a single query and assembled while the rows are streamed;
+	 * ingredients and tags whose recipe does not exist are skipped.
 	 *
 	 * @return an observable list of recipes.
 	 * @throws SQLException if a database access error occurs.
@@ -75,136 +193,279 @@ public class UtilsDB {
 	static ObservableList<Recipe> getRecipeData() throws SQLException {
 		ObservableList<Recipe> returnValue = FXCollections.observableArrayList();
 
-		Map<String, List<Ingredient>> ingredientsMap = new HashMap<>();
-		Map<String, List<String>> tagMap = new HashMap<>();
+		DatabaseMetrics.timed("getRecipeData", () -> {
+			try (Connection connection = getConnection();
+				 PreparedStatement getRecipes = SQLStatement.GET_RECIPE_GRAPH.prepare(connection);
+				 ResultSet rs = getRecipes.executeQuery()) {
+				readRecipeGraph(rs, returnValue);
+			}
+		});
+
+		return returnValue;
+	}
 
-		try (Connection connection = dataSource.getConnection(); PreparedStatement getIngredients = connection.prepareStatement("SELECT consist.* " + "FROM recipe " + "NATURAL JOIN consist "); ResultSet rs = getIngredients.executeQuery()) {
-			while (rs.next()) {
-				String title = rs.getString("title");
-				Ingredient ingredient =
-					new Ingredient(rs.getString("ingredient"), rs.getDouble("quantity"), rs.getString("unit_of_measurement"));
+	/**
+	 * Retrieves a single recipe, with its ingredients and tags, from the database.
+	 *
+	 * @param title the title of the recipe.
+	 * @return the recipe, or an empty optional if no recipe has the given title.
+	 * @throws SQLException if a database access error occurs.
+	 */
 
-				if (!ingredientsMap.containsKey(title)) {
-					ingredientsMap.put(title, new ArrayList<>());
+	static Optional<Recipe> getRecipe(String title) throws SQLException {
+		List<Recipe> recipes = new ArrayList<>();
+
+		DatabaseMetrics.timed("getRecipe", () -> {
+			try (Connection connection = getConnection();
+				 PreparedStatement getRecipe = SQLStatement.GET_RECIPE_GRAPH_BY_TITLE.prepare(connection)) {
+				getRecipe.setString(1, title);
+				getRecipe.setString(2, title);
+				getRecipe.setString(3, title);
+				try (ResultSet rs = getRecipe.executeQuery()) {
+					readRecipeGraph(rs, recipes);
 				}
-				ingredientsMap.get(title).add(ingredient);
 			}
-		}
+		});
 
-		try (Connection connection = dataSource.getConnection(); PreparedStatement getTag = connection.prepareStatement("SELECT tag.* " + "FROM recipe " + "NATURAL JOIN tag "); ResultSet rs = getTag.executeQuery()) {
-			while (rs.next()) {
-				String title = rs.getString("title");
-				String tag = rs.getString("tag");
+		return recipes.stream().findFirst();
+	}
 
-				if (!tagMap.containsKey(title)) {
-					tagMap.put(title, new ArrayList<>());
+	/**
+	 * Retrieves the titles of all the recipes, in title order, without loading their content.
+	 *
+	 * @return the list of recipe titles.
+	 * @throws SQLException if a database access error occurs.
+	 */
+
+	static List<String> getRecipeTitles() throws SQLException {
+		List<String> titles = new ArrayList<>();
+
+		DatabaseMetrics.timed("getRecipeTitles", () -> {
+			try (Connection connection = getConnection();
+				 PreparedStatement getTitles = SQLStatement.GET_RECIPE_TITLES.prepare(connection);
+				 ResultSet rs = getTitles.executeQuery()) {
+				while (rs.next()) {
+					titles.add(rs.getString("title"));
 				}
-				tagMap.get(title).add(tag);
 			}
-		}
+		});
 
-		try (Connection connection = dataSource.getConnection(); PreparedStatement getRecipe = connection.prepareStatement("SELECT * " + "FROM recipe "); ResultSet rs = getRecipe.executeQuery()) {
-			while (rs.next()) {
-				String title = rs.getString("title");
+		return titles;
+	}
 
-				Optional<List<Ingredient>> optionalIngredientList = Optional.ofNullable(ingredientsMap.get(title));
-				Optional<List<String>> optionalTagList = Optional.ofNullable(tagMap.get(title));
+	/**
+	 * Retrieves the ingredient names of every recipe, without the rest of their content.
+	 *
+	 * @return the ingredient names of each recipe, by title; recipes with no ingredients map to an empty list.
+	 * @throws SQLException if a database access error occurs.
+	 */
 
-				returnValue.add(new Recipe(title, rs.getDouble("duration"), (rs.getInt("unit") == 0) ? durationUnit.MIN : durationUnit.H, rs.getInt("portions"), rs.getString("category"), rs.getString("steps"), optionalIngredientList.orElse(new ArrayList<>()), optionalTagList.orElse(new ArrayList<>())));
+	static Map<String, List<String>> getRecipeIngredients() throws SQLException {
+		Map<String, List<String>> ingredients = new HashMap<>();
+
+		DatabaseMetrics.timed("getRecipeIngredients", () -> {
+			try (Connection connection = getConnection();
+				 PreparedStatement getIngredients = SQLStatement.GET_RECIPE_INGREDIENTS.prepare(connection);
+				 ResultSet rs = getIngredients.executeQuery()) {
+				readRecipeIngredients(rs, ingredients);
 			}
-		}
+		});
 
-		return returnValue;
+		return ingredients;
 	}
 
 	/**
-	 * Edits the product name in the database.
+	 * Retrieves the ingredient names of the given recipes.
 	 *
-	 * @param oldProduct the old product object.
-	 * @param newName    the new name of the product.
-	 * @param main       the main window controller.
+	 * @param titles the titles of the recipes.
+	 * @return the ingredient names of each recipe, by title; titles of no recipe are left out.
 	 * @throws SQLException if a database access error occurs.
 	 */
 
-	static void editDBProductName(Product oldProduct, String newName, MainWindowController main) throws SQLException {
+	static Map<String, List<String>> getRecipeIngredients(Collection<String> titles) throws SQLException {
+		Map<String, List<String>> ingredients = new HashMap<>();
+
+		DatabaseMetrics.timed("getRecipeIngredients", () -> {
+			try (Connection connection = getConnection();
+				 PreparedStatement getIngredients = SQLStatement.GET_RECIPE_INGREDIENTS_BY_TITLE.prepare(connection)) {
+				for (String title : titles) {
+					getIngredients.setString(1, title);
+					try (ResultSet rs = getIngredients.executeQuery()) {
+						readRecipeIngredients(rs, ingredients);
+					}
+				}
+			}
+		});
+
+		return ingredients;
+	}
 
-		try (Connection connection = dataSource.getConnection(); PreparedStatement updateProduct = connection.prepareStatement("UPDATE products SET " + "productName=?" + " WHERE productName=?" + " AND " + "expirationDate=?")) {
-			updateProduct.setString(1, newName);
-			productDBUpdate(oldProduct, updateProduct);
-		} catch (SQLIntegrityConstraintViolationException exception) {
-			main.onOverlappingProducts(oldProduct, newName, oldProduct.getExpirationDate());
+	/**
+	 * Groups the rows of a recipe ingredients query by recipe.
+	 *
+	 * @param rs          the result set of the query, with a row for each ingredient and a row with no ingredient for
+	 *                    each recipe without ingredients.
+	 * @param ingredients the map the ingredient names are added to, by title.
+	 * @throws SQLException if a database access error occurs.
+	 */
+
+	private static void readRecipeIngredients(ResultSet rs, Map<String, List<String>> ingredients) throws SQLException {
+		while (rs.next()) {
+			List<String> recipeIngredients = ingredients.computeIfAbsent(rs.getString("title"), title -> new ArrayList<>());
+			String ingredient = rs.getString("ingredient");
+			if (ingredient != null) {
+				recipeIngredients.add(ingredient);
+			}
 		}
 	}
 
 	/**
-	 * Updates the product information in the database.
+	 * Builds recipes from the rows of a recipe graph query, in which every recipe row is followed by the rows of
+	 * its ingredients and tags.
 	 *
-	 * @param product       the product object to be updated.
-	 * @param updateProduct the prepared statement for updating the product.
+	 * @param rs      the result set of the recipe graph query.
+	 * @param recipes the list the recipes are added to.
 	 * @throws SQLException if a database access error occurs.
 	 */
 
-	static void productDBUpdate(Product product, PreparedStatement updateProduct) throws SQLException {
-		updateProduct.setString(2, product.getProductName());
-		updateProduct.setDate(3, Date.valueOf(product.getExpirationDate()));
-		updateProduct.executeUpdate();
+	private static void readRecipeGraph(ResultSet rs, List<Recipe> recipes) throws SQLException {
+		Recipe current = null;
+		int currentId = 0;
+
+		while (rs.next()) {
+			int recipeId = rs.getInt("recipe_id");
+
+			switch (rs.getInt("row_kind")) {
+				case 0 -> {
+					currentId = recipeId;
+					current = new Recipe(rs.getString("title"), rs.getDouble("duration"), (rs.getInt("unit") == 0) ? durationUnit.MIN : durationUnit.H, rs.getInt("portions"), rs.getString("category"), rs.getString("steps"), new ArrayList<>(), new ArrayList<>());
+					current.setVersion(rs.getLong("version"));
+					recipes.add(current);
+				}
+				case 1 -> {
+					if (current != null && currentId == recipeId) {
+						current.getIngredientList().add(new Ingredient(rs.getString("ingredient"), rs.getDouble("quantity"), rs.getString("unit_of_measurement")));
+					}
+				}
+				case 2 -> {
+					if (current != null && currentId == recipeId) {
+						current.getTagList().add(rs.getString("tag"));
+					}
+				}
+			}
+		}
 	}
 
 	/**
-	 * Edits all fields of a product in the database.
+	 * Retrieves the product with the given name and expiration date using the given connection.
 	 *
-	 * @param oldProduct the old product object.
-	 * @param newProduct the new product object.
-	 * @param main       the main window controller.
+	 * @param connection     the connection to be used.
+	 * @param productName    the name of the product.
+	 * @param expirationDate the expiration date of the product.
+	 * @return the product, or an empty optional if it is not stored.
 	 * @throws SQLException if a database access error occurs.
 	 */
 
-	static void editDBProductAllField(Product oldProduct, Product newProduct, MainWindowController main) throws
+	static Optional<Product> getDBProduct(Connection connection, String productName, LocalDate expirationDate) throws
 		SQLException {
-		try (Connection connection = dataSource.getConnection(); PreparedStatement updateProduct = connection.prepareStatement("UPDATE products SET productName=?, expirationDate=?, " + "categoryName=?, quantity=?, price=?" + " WHERE productName=?" + " AND " + "expirationDate=?")) {
-			updateProduct.setString(1, newProduct.getProductName());
-			updateProduct.setDate(2, Date.valueOf(newProduct.getExpirationDate()));
-			updateProduct.setString(3, newProduct.getCategoryName());
-			updateProduct.setInt(4, newProduct.getQuantity());
-			updateProduct.setDouble(5, newProduct.getPrice());
-			updateProduct.setString(6, oldProduct.getProductName());
-			updateProduct.setDate(7, Date.valueOf(oldProduct.getExpirationDate()));
-			updateProduct.executeUpdate();
-		} catch (SQLIntegrityConstraintViolationException exception) {
-			main.onOverlappingProducts(oldProduct, newProduct.getProductName(), newProduct.getExpirationDate());
+		try (PreparedStatement getProduct = SQLStatement.GET_PRODUCT.prepare(connection)) {
+			getProduct.setString(1, productName);
+			getProduct.setDate(2, Date.valueOf(expirationDate));
+			try (ResultSet rs = getProduct.executeQuery()) {
+				return rs.next() ? Optional.of(readProduct(rs)) : Optional.empty();
+			}
 		}
 	}
 
 	/**
-	 * Edits the quantity of a product in the database.
+	 * Replaces a product with an edited version of it in the database.
+	 * The old row is removed and the edited product is {@linkplain #mergeDBProduct(Connection, Product) merged} in a
+	 * single transaction, so renaming a product to the name and expiration date of another one adds the quantities
+	 * instead of failing.
 	 *
-	 * @param product     the product object.
-	 * @param newQuantity the new quantity of the product.
+	 * @param oldProduct the product to be replaced.
+	 * @param newProduct the edited product.
+	 * @return the resulting product, as stored in the database.
+	 * @throws OptimisticLockException if the old product was changed or removed by another client.
+	 * @throws SQLException            if a database access error occurs.
+	 */
+
+	static Product replaceDBProduct(Product oldProduct, Product newProduct) throws SQLException {
+		return DatabaseMetrics.timed("replaceDBProduct", () -> {
+			try (UnitOfWork work = beginUnitOfWork()) {
+				removeDBProduct(work.getConnection(), oldProduct);
+				Product stored = mergeDBProduct(work.getConnection(), newProduct);
+				work.commit();
+				return stored;
+			}
+		});
+	}
+
+	/**
+	 * Adds a product to the database or, if a product with the same name and expiration date is stored, adds its
+	 * quantity to the stored one and replaces the stored category and price with its own.
+	 *
+	 * @param product the product to be added.
+	 * @return the resulting product, as stored in the database.
 	 * @throws SQLException if a database access error occurs.
 	 */
 
-	static void editDBProductQuantity(Product product, int newQuantity) throws SQLException {
-		try (Connection connection = dataSource.getConnection(); PreparedStatement updateProduct = connection.prepareStatement("UPDATE products SET " + "quantity=?" + " WHERE productName=?" + " AND " + "expirationDate=?")) {
-			updateProduct.setInt(1, newQuantity);
-			productDBUpdate(product, updateProduct);
+	static Product mergeDBProduct(Product product) throws SQLException {
+		return DatabaseMetrics.timed("mergeDBProduct", () -> {
+			try (UnitOfWork work = beginUnitOfWork()) {
+				Product stored = mergeDBProduct(work.getConnection(), product);
+				work.commit();
+				return stored;
+			}
+		});
+	}
+
+	/**
+	 * Adds a product, or adds its quantity to the stored product with the same name and expiration date and replaces
+	 * the stored category and price with its own, using the given connection.
+	 * The insert or merge is a single statement, so two clients adding the same product at the same time both see
+	 * their quantity added; the resulting row is then read back on the same connection.
+	 *
+	 * @param connection the connection to be used.
+	 * @param product    the product to be added.
+	 * @return the resulting product, as stored in the database.
+	 * @throws SQLException if a database access error occurs.
+	 */
+
+	static Product mergeDBProduct(Connection connection, Product product) throws SQLException {
+		try (PreparedStatement mergeProduct = SQLStatement.MERGE_PRODUCT.prepare(connection)) {
+			mergeProduct.setString(1, product.getProductName());
+			mergeProduct.setDate(2, Date.valueOf(product.getExpirationDate()));
+			mergeProduct.setString(3, product.getCategoryName());
+			mergeProduct.setInt(4, product.getQuantity());
+			mergeProduct.setDouble(5, product.getPrice());
+			mergeProduct.executeUpdate();
 		}
+
+		return getDBProduct(connection, product.getProductName(), product.getExpirationDate()).orElseThrow(() -> new SQLException("Product " + product.getProductName() + " not found after merge"));
 	}
 
 	/**
-	 * Inserts a new product into the database.
+	 * Adds several products, or adds their quantities to the stored products with the same name and expiration date,
+	 * in a single JDBC batch using the given connection.
+	 * Unlike {@link #mergeDBProduct(Connection, Product)}, the resulting rows are not read back.
 	 *
-	 * @param product the product object to be inserted.
+	 * @param connection the connection to be used.
+	 * @param products   the products to be added, each with a distinct name and expiration date.
 	 * @throws SQLException if a database access error occurs.
 	 */
 
-	static void insertDBProduct(Product product) throws SQLException {
-		try (Connection connection = dataSource.getConnection(); PreparedStatement insertProduct = connection.prepareStatement("INSERT INTO products (productName, " + "expirationDate, " + "categoryName, " + "quantity, price) VALUES (?, ?, ?, ?, ?)")) {
-			insertProduct.setString(1, product.getProductName());
-			insertProduct.setDate(2, Date.valueOf(product.getExpirationDate()));
-			insertProduct.setString(3, product.getCategoryName());
-			insertProduct.setInt(4, product.getQuantity());
-			insertProduct.setDouble(5, product.getPrice());
-			insertProduct.executeUpdate();
+	static void mergeDBProducts(Connection connection, List<Product> products) throws SQLException {
+		try (PreparedStatement mergeProduct = SQLStatement.MERGE_PRODUCT.prepare(connection)) {
+			for (Product product : products) {
+				mergeProduct.setString(1, product.getProductName());
+				mergeProduct.setDate(2, Date.valueOf(product.getExpirationDate()));
+				mergeProduct.setString(3, product.getCategoryName());
+				mergeProduct.setInt(4, product.getQuantity());
+				mergeProduct.setDouble(5, product.getPrice());
+				mergeProduct.addBatch();
+			}
+			mergeProduct.executeBatch();
 		}
 	}
 
@@ -212,28 +473,79 @@ public class UtilsDB {
 	 * Removes a product from the database.
 	 *
 	 * @param product the product object to be removed.
-	 * @throws SQLException if a database access error occurs.
+	 * @throws OptimisticLockException if the product was changed or removed by another client.
+	 * @throws SQLException            if a database access error occurs.
 	 */
 
 	static void removeDBProduct(Product product) throws SQLException {
-		try (Connection connection = dataSource.getConnection(); PreparedStatement deleteProduct = connection.prepareStatement("DELETE FROM products WHERE productName=? " + "AND expirationDate=?")) {
+		DatabaseMetrics.timed("removeDBProduct", () -> {
+			try (UnitOfWork work = beginUnitOfWork()) {
+				removeDBProduct(work.getConnection(), product);
+				work.commit();
+			}
+		});
+	}
+
+	/**
+	 * Removes a product using the given connection, and records the removal for the other clients.
+	 * The product is only removed if its stored version is the one that was read.
+	 *
+	 * @param connection the connection to be used.
+	 * @param product    the product object to be removed.
+	 * @throws OptimisticLockException if the product was changed or removed by another client.
+	 * @throws SQLException            if a database access error occurs.
+	 */
+
+	static void removeDBProduct(Connection connection, Product product) throws SQLException {
+		try (PreparedStatement deleteProduct = SQLStatement.REMOVE_PRODUCT.prepare(connection)) {
 			deleteProduct.setString(1, product.getProductName());
 			deleteProduct.setDate(2, Date.valueOf(product.getExpirationDate()));
-			deleteProduct.executeUpdate();
+			deleteProduct.setLong(3, product.getVersion());
+			if (deleteProduct.executeUpdate() == 0) {
+				throw new OptimisticLockException("Product " + product.getProductName() + " was changed by another client");
+			}
+		}
+
+		try (PreparedStatement recordDeletion = SQLStatement.INSERT_DELETED_PRODUCT.prepare(connection)) {
+			recordDeletion.setString(1, product.getProductName());
+			recordDeletion.setDate(2, Date.valueOf(product.getExpirationDate()));
+			recordDeletion.executeUpdate();
 		}
 	}
 
 	/**
 	 * Removes a tag from a recipe in the database.
 	 *
-	 * @param title the title of the recipe.
-	 * @param tag   the tag to be removed.
-	 * @throws SQLException if a database access error occurs.
+	 * @param recipe the recipe, at the version that was read.
+	 * @param tag    the tag to be removed.
+	 * @throws OptimisticLockException if the recipe was changed or removed by another client.
+	 * @throws SQLException            if a database access error occurs.
 	 */
 
-	static void removeDBTag(String title, String tag) throws SQLException {
-		try (Connection connection = dataSource.getConnection(); PreparedStatement deleteTag = connection.prepareStatement("DELETE FROM tag WHERE title=? " + "AND tag=?")) {
-			deleteTag.setString(1, title);
+	static void removeDBTag(RecipeVersion recipe, String tag) throws SQLException {
+		DatabaseMetrics.timed("removeDBTag", () -> {
+			try (UnitOfWork work = beginUnitOfWork()) {
+				removeDBTag(work.getConnection(), recipe, tag);
+				work.commit();
+			}
+		});
+	}
+
+	/**
+	 * Removes a tag from a recipe using the given connection.
+	 *
+	 * @param connection the connection to be used.
+	 * @param recipe     the recipe, at the version that was read.
+	 * @param tag        the tag to be removed.
+	 * @throws OptimisticLockException if the recipe was changed or removed by another client.
+	 * @throws SQLException            if a database access error occurs.
+	 */
+
+	static void removeDBTag(Connection connection, RecipeVersion recipe, String tag) throws SQLException {
+		touchDBRecipe(connection, recipe);
+
+		try (PreparedStatement deleteTag = SQLStatement.REMOVE_TAG.prepare(connection)) {
+			deleteTag.setString(1, recipe.title());
 			deleteTag.setString(2, tag);
 			deleteTag.executeUpdate();
 		}
@@ -242,139 +554,324 @@ public class UtilsDB {
 	/**
 	 * Edits the category of a recipe in the database.
 	 *
-	 * @param title    the title of the recipe.
+	 * @param recipe   the recipe, at the version that was read.
 	 * @param category the new category of the recipe.
-	 * @throws SQLException if a database access error occurs.
+	 * @throws OptimisticLockException if the recipe was changed or removed by another client.
+	 * @throws SQLException            if a database access error occurs.
 	 */
 
-	static void editDBRecipeCategory(String title, String category) throws SQLException {
-
-		try (Connection connection = dataSource.getConnection(); PreparedStatement updateRecipe = connection.prepareStatement("UPDATE recipe SET " + "category=?" + " WHERE title=?")) {
-			updateRecipe.setString(1, category);
-			updateRecipe.setString(2, title);
-			updateRecipe.executeUpdate();
-		} catch (SQLIntegrityConstraintViolationException ignored) {
+	static void editDBRecipeCategory(RecipeVersion recipe, String category) throws SQLException {
+		DatabaseMetrics.timed("editDBRecipeCategory", () -> {
+			try (Connection connection = getConnection();
+				 PreparedStatement updateRecipe = SQLStatement.EDIT_RECIPE_CATEGORY.prepare(connection)) {
+				updateRecipe.setString(1, category);
+				setRecipeVersion(updateRecipe, 2, recipe);
+				if (updateRecipe.executeUpdate() == 0) {
+					throw recipeConflict(recipe);
+				}
+			} catch (SQLIntegrityConstraintViolationException ignored) {
 
-		}
+			}
+		});
 	}
 
 	/**
 	 * Edits the unit of a recipe in the database.
 	 *
-	 * @param title the title of the recipe.
-	 * @param unit  the new unit of the recipe.
-	 * @throws SQLException if a database access error occurs.
+	 * @param recipe the recipe, at the version that was read.
+	 * @param unit   the new unit of the recipe.
+	 * @throws OptimisticLockException if the recipe was changed or removed by another client.
+	 * @throws SQLException            if a database access error occurs.
 	 */
 
-	static void editDBRecipeUnit(String title, int unit) throws SQLException {
-
-		try (Connection connection = dataSource.getConnection(); PreparedStatement updateRecipe = connection.prepareStatement("UPDATE recipe SET " + "unit=?" + " WHERE title=?")) {
-			updateRecipe.setInt(1, unit);
-			updateRecipe.setString(2, title);
-			updateRecipe.executeUpdate();
-		} catch (SQLIntegrityConstraintViolationException ignored) {
+	static void editDBRecipeUnit(RecipeVersion recipe, int unit) throws SQLException {
+		DatabaseMetrics.timed("editDBRecipeUnit", () -> {
+			try (Connection connection = getConnection();
+				 PreparedStatement updateRecipe = SQLStatement.EDIT_RECIPE_UNIT.prepare(connection)) {
+				updateRecipe.setInt(1, unit);
+				setRecipeVersion(updateRecipe, 2, recipe);
+				if (updateRecipe.executeUpdate() == 0) {
+					throw recipeConflict(recipe);
+				}
+			} catch (SQLIntegrityConstraintViolationException ignored) {
 
-		}
+			}
+		});
 	}
 
 	/**
 	 * Edits the duration of a recipe in the database.
 	 *
-	 * @param title    the title of the recipe.
+	 * @param recipe   the recipe, at the version that was read.
 	 * @param duration the new duration of the recipe.
-	 * @throws SQLException if a database access error occurs.
+	 * @throws OptimisticLockException if the recipe was changed or removed by another client.
+	 * @throws SQLException            if a database access error occurs.
 	 */
 
-	static void editDBRecipeDuration(String title, double duration) throws SQLException {
-
-		try (Connection connection = dataSource.getConnection(); PreparedStatement updateRecipe = connection.prepareStatement("UPDATE recipe SET " + "duration=?" + " WHERE title=?")) {
-			updateRecipe.setDouble(1, duration);
-			updateRecipe.setString(2, title);
-			updateRecipe.executeUpdate();
-		} catch (SQLIntegrityConstraintViolationException ignored) {
+	static void editDBRecipeDuration(RecipeVersion recipe, double duration) throws SQLException {
+		DatabaseMetrics.timed("editDBRecipeDuration", () -> {
+			try (Connection connection = getConnection();
+				 PreparedStatement updateRecipe = SQLStatement.EDIT_RECIPE_DURATION.prepare(connection)) {
+				updateRecipe.setDouble(1, duration);
+				setRecipeVersion(updateRecipe, 2, recipe);
+				if (updateRecipe.executeUpdate() == 0) {
+					throw recipeConflict(recipe);
+				}
+			} catch (SQLIntegrityConstraintViolationException ignored) {
 
-		}
+			}
+		});
 	}
 
 	/**
 	 * Edits the portion size of a recipe in the database.
 	 *
-	 * @param title    the title of the recipe.
+	 * @param recipe   the recipe, at the version that was read.
 	 * @param portions the new portion size of the recipe.
-	 * @throws SQLException if a database access error occurs.
+	 * @throws OptimisticLockException if the recipe was changed or removed by another client.
+	 * @throws SQLException            if a database access error occurs.
 	 */
 
-	static void editDBRecipePortion(String title, int portions) throws SQLException {
-
-		try (Connection connection = dataSource.getConnection(); PreparedStatement updateRecipe = connection.prepareStatement("UPDATE recipe SET " + "portions=?" + " WHERE title=?")) {
-			updateRecipe.setInt(1, portions);
-			updateRecipe.setString(2, title);
-			updateRecipe.executeUpdate();
-		} catch (SQLIntegrityConstraintViolationException ignored) {
+	static void editDBRecipePortion(RecipeVersion recipe, int portions) throws SQLException {
+		DatabaseMetrics.timed("editDBRecipePortion", () -> {
+			try (Connection connection = getConnection();
+				 PreparedStatement updateRecipe = SQLStatement.EDIT_RECIPE_PORTIONS.prepare(connection)) {
+				updateRecipe.setInt(1, portions);
+				setRecipeVersion(updateRecipe, 2, recipe);
+				if (updateRecipe.executeUpdate() == 0) {
+					throw recipeConflict(recipe);
+				}
+			} catch (SQLIntegrityConstraintViolationException ignored) {
 
-		}
+			}
+		});
 	}
 
 	/**
 	 * Edits the steps of a recipe in the database.
 	 *
-	 * @param title the title of the recipe.
-	 * @param steps the new steps of the recipe.
-	 * @throws SQLException if a database access error occurs.
+	 * @param recipe the recipe, at the version that was read.
+	 * @param steps  the new steps of the recipe.
+	 * @throws OptimisticLockException if the recipe was changed or removed by another client.
+	 * @throws SQLException            if a database access error occurs.
+	 */
+
+	static void editDBRecipeSteps(RecipeVersion recipe, String steps) throws SQLException {
+		DatabaseMetrics.timed("editDBRecipeSteps", () -> {
+			try (Connection connection = getConnection();
+				 PreparedStatement updateRecipe = SQLStatement.EDIT_RECIPE_STEPS.prepare(connection)) {
+				updateRecipe.setString(1, steps);
+				setRecipeVersion(updateRecipe, 2, recipe);
+				if (updateRecipe.executeUpdate() == 0) {
+					throw recipeConflict(recipe);
+				}
+			} catch (SQLIntegrityConstraintViolationException ignored) {
+
+			}
+		});
+	}
+
+	/**
+	 * Renames a recipe in the database.
+	 * Ingredients and tags reference the recipe by its numeric id, so only the recipe row is updated. For the other
+	 * clients the old title is recorded as removed.
+	 *
+	 * @param recipe   the recipe, with its current title, at the version that was read.
+	 * @param newTitle the new title of the recipe.
+	 * @return {@code true} if the recipe was renamed, {@code false} if no recipe has the old title.
+	 * @throws OptimisticLockException if the recipe was changed by another client.
+	 * @throws SQLException            if a database access error occurs.
+	 */
+
+	static boolean editDBRecipeTitle(RecipeVersion recipe, String newTitle) throws SQLException {
+		return DatabaseMetrics.timed("editDBRecipeTitle", () -> {
+			try (UnitOfWork work = beginUnitOfWork()) {
+				if (!editDBRecipeTitle(work.getConnection(), recipe, newTitle)) {
+					return false;
+				}
+				work.commit();
+				return true;
+			}
+		});
+	}
+
+	/**
+	 * Edits the title of a recipe using the given connection, and records the old title as removed for the other
+	 * clients.
+	 *
+	 * @param connection the connection to be used.
+	 * @param recipe     the recipe, with its current title, at the version that was read.
+	 * @param newTitle   the new title of the recipe.
+	 * @return {@code true} if the recipe was renamed, {@code false} if no recipe has the old title.
+	 * @throws OptimisticLockException if the recipe was changed by another client.
+	 * @throws SQLException            if a database access error occurs.
 	 */
 
-	static void editDBRecipeSteps(String title, String steps) throws SQLException {
+	static boolean editDBRecipeTitle(Connection connection, RecipeVersion recipe, String newTitle) throws SQLException {
+		try (PreparedStatement updateRecipe = SQLStatement.EDIT_RECIPE_TITLE.prepare(connection)) {
+			updateRecipe.setString(1, newTitle);
+			setRecipeVersion(updateRecipe, 2, recipe);
+			if (updateRecipe.executeUpdate() == 0) {
+				if (existsDBRecipe(connection, recipe.title())) {
+					throw recipeConflict(recipe);
+				}
+				return false;
+			}
+		}
+
+		recordDBRecipeDeletion(connection, recipe.title());
+		return true;
+	}
 
-		try (Connection connection = dataSource.getConnection(); PreparedStatement updateRecipe = connection.prepareStatement("UPDATE recipe SET " + "steps=?" + " WHERE title=?")) {
-			updateRecipe.setString(1, steps);
-			updateRecipe.setString(2, title);
-			updateRecipe.executeUpdate();
-		} catch (SQLIntegrityConstraintViolationException ignored) {
+	/**
+	 * Checks whether a recipe with the given title is stored, using the given connection.
+	 *
+	 * @param connection the connection to be used.
+	 * @param title      the title of the recipe.
+	 * @return {@code true} if the recipe is stored, {@code false} otherwise.
+	 * @throws SQLException if a database access error occurs.
+	 */
 
+	private static boolean existsDBRecipe(Connection connection, String title) throws SQLException {
+		try (PreparedStatement existsRecipe = SQLStatement.EXISTS_RECIPE.prepare(connection)) {
+			existsRecipe.setString(1, title);
+			try (ResultSet rs = existsRecipe.executeQuery()) {
+				return rs.next();
+			}
 		}
 	}
 
 	/**
 	 * Removes a recipe from the database.
+	 * The recipe row is deleted, together with its tags and ingredients, in a single unit of work.
 	 *
 	 * @param title the title of the recipe to be removed.
 	 * @throws SQLException if a database access error occurs.
 	 */
 
 	static void removeDBRecipe(String title) throws SQLException {
-		try (Connection connection = dataSource.getConnection(); PreparedStatement removeRecipe = connection.prepareStatement("DELETE FROM TAG " + " WHERE title=?")) {
-			removeRecipe.setString(1, title);
-			removeRecipe.executeUpdate();
-		} catch (SQLIntegrityConstraintViolationException ignored) {
+		DatabaseMetrics.timed("removeDBRecipe", () -> {
+			try (UnitOfWork work = beginUnitOfWork()) {
+				removeDBRecipe(work.getConnection(), title);
+				work.commit();
+			}
+		});
+	}
 
-		}
+	/**
+	 * Removes a recipe together with its tags and ingredients using the given connection.
+	 * Tags and ingredients reference the recipe with {@code ON DELETE CASCADE} foreign keys, so deleting the recipe
+	 * row deletes them.
+	 *
+	 * @param connection the connection to be used.
+	 * @param title      the title of the recipe to be removed.
+	 * @throws SQLException if a database access error occurs.
+	 */
 
-		try (Connection connection = dataSource.getConnection(); PreparedStatement removeRecipe = connection.prepareStatement("DELETE FROM CONSIST " + " WHERE title=?")) {
+	static void removeDBRecipe(Connection connection, String title) throws SQLException {
+		try (PreparedStatement removeRecipe = SQLStatement.REMOVE_RECIPE.prepare(connection)) {
 			removeRecipe.setString(1, title);
-			removeRecipe.executeUpdate();
-		} catch (SQLIntegrityConstraintViolationException ignored) {
+			if (removeRecipe.executeUpdate() > 0) {
+				recordDBRecipeDeletion(connection, title);
+			}
+		}
+	}
 
+	/**
+	 * Records the removal of a recipe title for the other clients using the given connection.
+	 *
+	 * @param connection the connection to be used.
+	 * @param title      the removed title.
+	 * @throws SQLException if a database access error occurs.
+	 */
+
+	private static void recordDBRecipeDeletion(Connection connection, String title) throws SQLException {
+		try (PreparedStatement recordDeletion = SQLStatement.INSERT_DELETED_RECIPE.prepare(connection)) {
+			recordDeletion.setString(1, title);
+			recordDeletion.executeUpdate();
 		}
+	}
 
-		try (Connection connection = dataSource.getConnection(); PreparedStatement removeRecipe = connection.prepareStatement("DELETE FROM RECIPE " + " WHERE title=?")) {
-			removeRecipe.setString(1, title);
-			removeRecipe.executeUpdate();
-		} catch (SQLIntegrityConstraintViolationException ignored) {
+	/**
+	 * Marks a recipe as changed, before an edit of its ingredients or tags, using the given connection.
+	 * The recipe row stays locked until the transaction ends, so the edit applies to the version that was checked.
+	 *
+	 * @param connection the connection to be used.
+	 * @param recipe     the recipe, at the version that was read.
+	 * @throws OptimisticLockException if the recipe was changed or removed by another client.
+	 * @throws SQLException            if a database access error occurs.
+	 */
 
+	static void touchDBRecipe(Connection connection, RecipeVersion recipe) throws SQLException {
+		try (PreparedStatement touchRecipe = SQLStatement.TOUCH_RECIPE.prepare(connection)) {
+			setRecipeVersion(touchRecipe, 1, recipe);
+			if (touchRecipe.executeUpdate() == 0) {
+				throw recipeConflict(recipe);
+			}
 		}
 	}
 
+	/**
+	 * Sets the parameters that end every statement writing a recipe row: the writer, the title, the version that was
+	 * read and the writer again.
+	 *
+	 * @param statement the statement.
+	 * @param first     the position of the first of the four parameters.
+	 * @param recipe    the recipe, at the version that was read.
+	 * @throws SQLException if a database access error occurs.
+	 */
+
+	private static void setRecipeVersion(PreparedStatement statement, int first, RecipeVersion recipe) throws
+		SQLException {
+		statement.setString(first, recipe.writer());
+		statement.setString(first + 1, recipe.title());
+		statement.setLong(first + 2, recipe.version());
+		statement.setString(first + 3, recipe.writer());
+	}
+
+	/**
+	 * Builds the exception reporting that a write of a recipe found it changed or removed by another client.
+	 *
+	 * @param recipe the recipe, at the version that was read.
+	 * @return the exception.
+	 */
+
+	static OptimisticLockException recipeConflict(RecipeVersion recipe) {
+		return new OptimisticLockException("Recipe " + recipe.title() + " was changed by another client");
+	}
+
 	/**
 	 * Inserts a new recipe into the database.
+	 * The recipe row, its ingredients and its tags are written on a single connection and in a single transaction,
+	 * which is rolled back if any of the statements fails.
 	 *
 	 * @param recipe the recipe object to be inserted.
 	 * @throws SQLException if a database access error occurs.
 	 */
 
 	static void insertDBRecipe(Recipe recipe) throws SQLException {
+		DatabaseMetrics.timed("insertDBRecipe", () -> {
+			try (UnitOfWork work = beginUnitOfWork()) {
+				insertDBRecipe(work.getConnection(), recipe, RecipeVersion.WRITER);
+				work.commit();
+			}
+		});
+	}
+
+	/**
+	 * Inserts a new recipe, its ingredients and its tags using the given connection.
+	 * Ingredients and tags are sent as JDBC batches; transaction handling is left to the caller.
+	 *
+	 * @param connection the connection to be used.
+	 * @param recipe     the recipe object to be inserted.
+	 * @param writer     the identifier of the client inserting the recipe, which may then edit it at version 0.
+	 * @throws SQLException if a database access error occurs.
+	 */
+
+	static void insertDBRecipe(Connection connection, Recipe recipe, String writer) throws SQLException {
 		String title = recipe.getTitle();
 
-		try (Connection connection = dataSource.getConnection(); PreparedStatement insertRecipe = connection.prepareStatement("INSERT INTO recipe (title, duration, unit, portions, category, steps) VALUES " + "(?,?,?,?,?,?)")) {
+		try (PreparedStatement insertRecipe = SQLStatement.INSERT_RECIPE.prepare(connection)) {
 			insertRecipe.setString(1, title);
 			insertRecipe.setDouble(2, recipe.getDuration());
 			insertRecipe.setInt(3, switch (recipe.getUnit()) {
@@ -384,29 +881,99 @@ public class UtilsDB {
 			insertRecipe.setInt(4, recipe.getPortions());
 			insertRecipe.setString(5, recipe.getCategory());
 			insertRecipe.setString(6, recipe.getSteps());
+			insertRecipe.setString(7, writer);
 			insertRecipe.executeUpdate();
 		}
 
-		for (Ingredient ingredient : recipe.getIngredientList()) {
-			insertDBIngredient(title, ingredient);
+		insertDBIngredients(connection, title, recipe.getIngredientList());
+		insertDBTags(connection, title, recipe.getTagList());
+	}
+
+	/**
+	 * Inserts the ingredients of a recipe as a single batch using the given connection.
+	 *
+	 * @param connection  the connection to be used.
+	 * @param title       the title of the recipe.
+	 * @param ingredients the ingredients to be inserted.
+	 * @throws SQLException if a database access error occurs.
+	 */
+
+	static void insertDBIngredients(Connection connection, String title, List<Ingredient> ingredients) throws
+		SQLException {
+		if (ingredients.isEmpty()) {
+			return;
 		}
 
-		for (String tag : recipe.getTagList()) {
-			insertDBTag(title, tag);
+		try (PreparedStatement insertIngredient = SQLStatement.INSERT_INGREDIENT.prepare(connection)) {
+			for (Ingredient ingredient : ingredients) {
+				insertIngredient.setString(1, title);
+				insertIngredient.setString(2, ingredient.getIngredient());
+				insertIngredient.setDouble(3, ingredient.getQuantity());
+				insertIngredient.setString(4, ingredient.getUnit_of_measurement());
+				insertIngredient.addBatch();
+			}
+			insertIngredient.executeBatch();
 		}
 	}
 
 	/**
-	 * Inserts a new ingredient into the database for a specific recipe.
+	 * Inserts the tags of a recipe as a single batch using the given connection.
 	 *
+	 * @param connection the connection to be used.
 	 * @param title      the title of the recipe.
-	 * @param ingredient the ingredient object to be inserted.
+	 * @param tags       the tags to be inserted.
 	 * @throws SQLException if a database access error occurs.
 	 */
 
-	static void insertDBIngredient(String title, Ingredient ingredient) throws SQLException {
-		try (Connection connection = dataSource.getConnection(); PreparedStatement insertIngredient = connection.prepareStatement("INSERT INTO CONSIST (title, ingredient, quantity, unit_of_measurement) VALUES " + "(?,?,?,?)")) {
-			insertIngredient.setString(1, title);
+	static void insertDBTags(Connection connection, String title, List<String> tags) throws SQLException {
+		if (tags.isEmpty()) {
+			return;
+		}
+
+		try (PreparedStatement insertTag = SQLStatement.INSERT_TAG.prepare(connection)) {
+			for (String tag : tags) {
+				insertTag.setString(1, title);
+				insertTag.setString(2, tag);
+				insertTag.addBatch();
+			}
+			insertTag.executeBatch();
+		}
+	}
+
+	/**
+	 * Inserts a new ingredient into the database for a specific recipe.
+	 *
+	 * @param recipe     the recipe, at the version that was read.
+	 * @param ingredient the ingredient object to be inserted.
+	 * @throws OptimisticLockException if the recipe was changed or removed by another client.
+	 * @throws SQLException            if a database access error occurs.
+	 */
+
+	static void insertDBIngredient(RecipeVersion recipe, Ingredient ingredient) throws SQLException {
+		DatabaseMetrics.timed("insertDBIngredient", () -> {
+			try (UnitOfWork work = beginUnitOfWork()) {
+				insertDBIngredient(work.getConnection(), recipe, ingredient);
+				work.commit();
+			}
+		});
+	}
+
+	/**
+	 * Inserts a new ingredient for a specific recipe using the given connection.
+	 *
+	 * @param connection the connection to be used.
+	 * @param recipe     the recipe, at the version that was read.
+	 * @param ingredient the ingredient object to be inserted.
+	 * @throws OptimisticLockException if the recipe was changed or removed by another client.
+	 * @throws SQLException            if a database access error occurs.
+	 */
+
+	static void insertDBIngredient(Connection connection, RecipeVersion recipe, Ingredient ingredient) throws
+		SQLException {
+		touchDBRecipe(connection, recipe);
+
+		try (PreparedStatement insertIngredient = SQLStatement.INSERT_INGREDIENT.prepare(connection)) {
+			insertIngredient.setString(1, recipe.title());
 			insertIngredient.setString(2, ingredient.getIngredient());
 			insertIngredient.setDouble(3, ingredient.getQuantity());
 			insertIngredient.setString(4, ingredient.getUnit_of_measurement());
@@ -417,14 +984,36 @@ public class UtilsDB {
 	/**
 	 * Inserts a new tag into the database for a specific recipe.
 	 *
-	 * @param title the title of the recipe.
-	 * @param tag   the tag to be inserted.
-	 * @throws SQLException if a database access error occurs.
+	 * @param recipe the recipe, at the version that was read.
+	 * @param tag    the tag to be inserted.
+	 * @throws OptimisticLockException if the recipe was changed or removed by another client.
+	 * @throws SQLException            if a database access error occurs.
+	 */
+
+	static void insertDBTag(RecipeVersion recipe, String tag) throws SQLException {
+		DatabaseMetrics.timed("insertDBTag", () -> {
+			try (UnitOfWork work = beginUnitOfWork()) {
+				insertDBTag(work.getConnection(), recipe, tag);
+				work.commit();
+			}
+		});
+	}
+
+	/**
+	 * Inserts a new tag for a specific recipe using the given connection.
+	 *
+	 * @param connection the connection to be used.
+	 * @param recipe     the recipe, at the version that was read.
+	 * @param tag        the tag to be inserted.
+	 * @throws OptimisticLockException if the recipe was changed or removed by another client.
+	 * @throws SQLException            if a database access error occurs.
 	 */
 
-	static void insertDBTag(String title, String tag) throws SQLException {
-		try (Connection connection = dataSource.getConnection(); PreparedStatement insertTag = connection.prepareStatement("INSERT INTO tag (title, tag) VALUES (?, ?)")) {
-			insertTag.setString(1, title);
+	static void insertDBTag(Connection connection, RecipeVersion recipe, String tag) throws SQLException {
+		touchDBRecipe(connection, recipe);
+
+		try (PreparedStatement insertTag = SQLStatement.INSERT_TAG.prepare(connection)) {
+			insertTag.setString(1, recipe.title());
 			insertTag.setString(2, tag);
 			insertTag.executeUpdate();
 		}
@@ -433,52 +1022,221 @@ public class UtilsDB {
 	/**
 	 * Updates an existing ingredient in the database for a specific recipe.
 	 *
-	 * @param title      the title of the recipe.
+	 * @param recipe     the recipe, at the version that was read.
 	 * @param ingredient the updated ingredient object.
-	 * @throws SQLException if a database access error occurs.
+	 * @throws OptimisticLockException if the recipe was changed or removed by another client.
+	 * @throws SQLException            if a database access error occurs.
 	 */
 
-	static void updateDBIngredient(String title, Ingredient ingredient) throws SQLException {
-		try (Connection connection = dataSource.getConnection(); PreparedStatement insertIngredient = connection.prepareStatement("UPDATE CONSIST SET quantity=?, unit_of_measurement=? WHERE title=? AND ingredient=?")) {
-			insertIngredient.setDouble(1, ingredient.getQuantity());
-			insertIngredient.setString(2, ingredient.getUnit_of_measurement());
-			insertIngredient.setString(3, title);
-			insertIngredient.setString(4, ingredient.getIngredient());
-			insertIngredient.executeUpdate();
-		}
+	static void updateDBIngredient(RecipeVersion recipe, Ingredient ingredient) throws SQLException {
+		DatabaseMetrics.timed("updateDBIngredient", () -> {
+			try (UnitOfWork work = beginUnitOfWork()) {
+				touchDBRecipe(work.getConnection(), recipe);
+
+				try (PreparedStatement updateIngredient = SQLStatement.UPDATE_INGREDIENT.prepare(work.getConnection())) {
+					updateIngredient.setDouble(1, ingredient.getQuantity());
+					updateIngredient.setString(2, ingredient.getUnit_of_measurement());
+					updateIngredient.setString(3, recipe.title());
+					updateIngredient.setString(4, ingredient.getIngredient());
+					updateIngredient.executeUpdate();
+				}
+				work.commit();
+			}
+		});
 	}
 
 	/**
 	 * Removes an ingredient from the database for a specific recipe.
 	 *
-	 * @param title      the title of the recipe.
+	 * @param recipe     the recipe, at the version that was read.
 	 * @param ingredient the ingredient to be removed.
-	 * @throws SQLException if a database access error occurs.
+	 * @throws OptimisticLockException if the recipe was changed or removed by another client.
+	 * @throws SQLException            if a database access error occurs.
 	 */
-	static void removeDBIngredient(String title, Ingredient ingredient) throws SQLException {
-		try (Connection connection = dataSource.getConnection(); PreparedStatement deleteIngredient = connection.prepareStatement("DELETE FROM CONSIST WHERE title=? AND ingredient=?")) {
-			deleteIngredient.setString(1, title);
+	static void removeDBIngredient(RecipeVersion recipe, Ingredient ingredient) throws SQLException {
+		DatabaseMetrics.timed("removeDBIngredient", () -> {
+			try (UnitOfWork work = beginUnitOfWork()) {
+				removeDBIngredient(work.getConnection(), recipe, ingredient);
+				work.commit();
+			}
+		});
+	}
+
+	/**
+	 * Removes an ingredient for a specific recipe using the given connection.
+	 *
+	 * @param connection the connection to be used.
+	 * @param recipe     the recipe, at the version that was read.
+	 * @param ingredient the ingredient to be removed.
+	 * @throws OptimisticLockException if the recipe was changed or removed by another client.
+	 * @throws SQLException            if a database access error occurs.
+	 */
+
+	static void removeDBIngredient(Connection connection, RecipeVersion recipe, Ingredient ingredient) throws
+		SQLException {
+		touchDBRecipe(connection, recipe);
+
+		try (PreparedStatement deleteIngredient = SQLStatement.REMOVE_INGREDIENT.prepare(connection)) {
+			deleteIngredient.setString(1, recipe.title());
 			deleteIngredient.setString(2, ingredient.getIngredient());
 			deleteIngredient.executeUpdate();
 		}
 	}
 
 	/**
-	 * Retrieves all tags from the database.
+	 * Retrieves all tags from the database, with the number of recipes using each of them.
 	 *
-	 * @return a set of tags.
+	 * @return a map from each tag to the number of recipes using it.
 	 * @throws SQLException if a database access error occurs.
 	 */
 
-	static Set<String> getAllTags() throws SQLException {
-		Set<String> tags = new HashSet<>();
+	static Map<String, Integer> getTagCounts() throws SQLException {
+		Map<String, Integer> counts = new HashMap<>();
 
-		try (Connection connection = dataSource.getConnection(); PreparedStatement getTags = connection.prepareStatement("SELECT tag FROM tag"); ResultSet rs = getTags.executeQuery()) {
-			while (rs.next()) {
-				tags.add(rs.getString("tag"));
+		DatabaseMetrics.timed("getTagCounts", () -> {
+			try (Connection connection = getConnection();
+				 PreparedStatement getTags = SQLStatement.GET_TAG_COUNTS.prepare(connection);
+				 ResultSet rs = getTags.executeQuery()) {
+				while (rs.next()) {
+					counts.put(rs.getString("tag"), rs.getInt("recipes"));
+				}
 			}
+		});
+
+		return counts;
+	}
+
+	/**
+	 * Reads the current time of the database clock, used as the synchronization token of a change set.
+	 *
+	 * @return the current database time.
+	 * @throws SQLException if a database access error occurs.
+	 */
+
+	static Timestamp getSyncToken() throws SQLException {
+		return DatabaseMetrics.timed("getSyncToken", () -> {
+			try (Connection connection = getConnection()) {
+				return getSyncToken(connection);
+			}
+		});
+	}
+
+	/**
+	 * Reads the current time of the database clock using the given connection.
+	 *
+	 * @param connection the connection to be used.
+	 * @return the current database time.
+	 * @throws SQLException if a database access error occurs.
+	 */
+
+	static Timestamp getSyncToken(Connection connection) throws SQLException {
+		try (PreparedStatement getToken = SQLStatement.GET_SYNC_TOKEN.prepare(connection); ResultSet rs = getToken.executeQuery()) {
+			rs.next();
+			return rs.getTimestamp(1);
 		}
+	}
+
+	/**
+	 * Retrieves the products and recipes changed or removed after the given time.
+	 * The token of the returned change set is read before the changes, so a change committed while they are read is
+	 * returned again by the next call instead of being lost.
+	 *
+	 * @param since the time after which the changes are read.
+	 * @return the change set.
+	 * @throws SQLException if a database access error occurs.
+	 */
+
+	static ChangeSet getChanges(Timestamp since) throws SQLException {
+		List<Product> products = new ArrayList<>();
+		Set<ProductKey> deletedProducts = new HashSet<>();
+		Set<String> recipes = new HashSet<>();
+		Set<String> deletedRecipes = new HashSet<>();
+
+		Timestamp token = DatabaseMetrics.timed("getChanges", () -> {
+			try (Connection connection = getConnection()) {
+				Timestamp read = getSyncToken(connection);
+
+				try (PreparedStatement getProducts = SQLStatement.GET_CHANGED_PRODUCTS.prepare(connection)) {
+					getProducts.setTimestamp(1, since);
+					try (ResultSet rs = getProducts.executeQuery()) {
+						while (rs.next()) {
+							products.add(readProduct(rs));
+						}
+					}
+				}
+
+				try (PreparedStatement getDeleted = SQLStatement.GET_DELETED_PRODUCTS.prepare(connection)) {
+					getDeleted.setTimestamp(1, since);
+					try (ResultSet rs = getDeleted.executeQuery()) {
+						while (rs.next()) {
+							deletedProducts.add(new ProductKey(rs.getString("productName"), convertSQLDateToLocalDate(rs.getDate("expirationDate"))));
+						}
+					}
+				}
+
+				try (PreparedStatement getRecipes = SQLStatement.GET_CHANGED_RECIPE_TITLES.prepare(connection)) {
+					getRecipes.setTimestamp(1, since);
+					try (ResultSet rs = getRecipes.executeQuery()) {
+						while (rs.next()) {
+							recipes.add(rs.getString("title"));
+						}
+					}
+				}
+
+				try (PreparedStatement getDeleted = SQLStatement.GET_DELETED_RECIPE_TITLES.prepare(connection)) {
+					getDeleted.setTimestamp(1, since);
+					try (ResultSet rs = getDeleted.executeQuery()) {
+						while (rs.next()) {
+							deletedRecipes.add(rs.getString("title"));
+						}
+					}
+				}
+
+				return read;
+			}
+		});
+
+		products.forEach(product -> deletedProducts.remove(ProductKey.of(product)));
+		deletedRecipes.removeAll(recipes);
+
+		return new ChangeSet(token, products, deletedProducts, recipes, deletedRecipes);
+	}
+
+	/**
+	 * Removes the records of the products and recipes removed, and of the journal entries applied, before the given
+	 * time.
+	 *
+	 * @param before the time before which the records are removed.
+	 * @throws SQLException if a database access error occurs.
+	 */
 
-		return tags;
+	static void pruneDeletionRecords(Timestamp before) throws SQLException {
+		DatabaseMetrics.timed("pruneDeletionRecords", () -> {
+			try (UnitOfWork work = beginUnitOfWork()) {
+				for (SQLStatement prune : List.of(SQLStatement.PRUNE_DELETED_PRODUCTS, SQLStatement.PRUNE_DELETED_RECIPES, SQLStatement.PRUNE_APPLIED_JOURNAL_ENTRIES)) {
+					try (PreparedStatement pruneDeleted = prune.prepare(work.getConnection())) {
+						pruneDeleted.setTimestamp(1, before);
+						pruneDeleted.executeUpdate();
+					}
+				}
+				work.commit();
+			}
+		});
+	}
+
+	/**
+	 * Marks a journal entry as applied using the given connection, within the transaction that applies it.
+	 *
+	 * @param connection the connection to be used.
+	 * @param id         the identifier of the journal entry.
+	 * @return {@code true} if the entry is marked now, {@code false} if it was already applied.
+	 * @throws SQLException if a database access error occurs.
+	 */
+
+	static boolean markDBJournalEntryApplied(Connection connection, String id) throws SQLException {
+		try (PreparedStatement markApplied = SQLStatement.INSERT_APPLIED_JOURNAL_ENTRY.prepare(connection)) {
+			markApplied.setString(1, id);
+			return markApplied.executeUpdate() > 0;
+		}
 	}
 }
@@ -0,0 +1,482 @@
+package com.napolitanoveroni.expirationdate;
+
+import javafx.application.Platform;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Writes of the pantry and of the recipes that survive an outage of the database.
+ * <p>Writes are {@linkplain #submit(JournalEntry) submitted} as {@link JournalEntry journal entries}. While the
+ * database is {@linkplain DatabaseHealth reachable} and no earlier entry is waiting, an entry is applied at once.
+ * Otherwise, or if applying it fails with a connection error, it is appended to a local journal file, one JSON line
+ * per entry, and the write completes with the {@linkplain JournalEntry#provisionalResult() provisional result} of
+ * the entry, so the user interface goes on as if the write succeeded.</p>
+ * <p>Once the database is back, the journal is replayed in order, {@link #REPLAY_BATCH_SIZE} entries per transaction.
+ * An entry that can no longer be applied, because another client changed the same product meanwhile, is skipped,
+ * moved to a {@linkplain #quarantinePath(Path) quarantine file} and reported to the
+ * {@linkplain #addListener(Consumer) listeners}; the others are applied at most once, as their identifiers are
+ * recorded by the transaction applying them. If a batch cannot be committed, its transaction is rolled back as a whole
+ * and its entries are replayed again one per transaction, so a single bad entry cannot hold back the rest of the
+ * journal. The journal file is rewritten after each replayed batch, and replayed again on the next start if the
+ * application is closed before the database is back.</p>
+ * <p>Entries are applied and replayed through {@link AsyncUtilsDB#write(AsyncUtilsDB.SQLCallable)}, so they keep the
+ * order of every other write.</p>
+ *
+ * @author SaverioNapolitano, MatteV02
+ * @version 2023.07.10
+ */
+public class WriteJournal {
+	/**
+	 * The system property that sets the path of the journal file.
+	 */
+	static final String PATH_PROPERTY = "expirationdate.journal.path";
+
+	/**
+	 * The number of entries replayed in a single transaction.
+	 */
+	static final int REPLAY_BATCH_SIZE = 100;
+
+	private static final System.Logger logger = System.getLogger(WriteJournal.class.getName());
+	private static final List<Consumer<ReplayResult>> listeners = new CopyOnWriteArrayList<>();
+	private static final Deque<JournalEntry> pending = new ArrayDeque<>();
+
+	private static Path path;
+
+	private WriteJournal() {
+	}
+
+	/**
+	 * Loads the journal file left by the previous run, if any, and starts replaying it whenever the database becomes
+	 * reachable.
+	 * Does nothing if the journal is already started.
+	 */
+
+	static synchronized void start() {
+		if (path != null) {
+			return;
+		}
+
+		open(defaultPath());
+		DatabaseHealth.addListener(online -> {
+			if (online) {
+				replay();
+			}
+		});
+
+		if (!pending.isEmpty()) {
+			logger.log(System.Logger.Level.INFO, "Replaying {0} journaled writes", pending.size());
+			replay();
+		}
+	}
+
+	/**
+	 * Uses the given journal file, replacing the journaled entries with the ones it holds.
+	 *
+	 * @param file the journal file.
+	 */
+
+	static synchronized void open(Path file) {
+		path = file;
+		pending.clear();
+		pending.addAll(load(file));
+	}
+
+	/**
+	 * Returns the path of the journal file: the value of {@link #PATH_PROPERTY} if it is set, a file in the
+	 * {@code .expirationdate} directory of the user home otherwise.
+	 *
+	 * @return the path of the journal file.
+	 */
+
+	static Path defaultPath() {
+		String path = System.getProperty(PATH_PROPERTY);
+		if (path != null && !path.isBlank()) {
+			return Path.of(path);
+		}
+		return Path.of(System.getProperty("user.home"), ".expirationdate", "write-journal.jsonl");
+	}
+
+	/**
+	 * Returns the path of the file the entries skipped by a replay are moved to, next to the journal file.
+	 *
+	 * @param journal the path of the journal file.
+	 * @return the path of the quarantine file.
+	 */
+
+	static Path quarantinePath(Path journal) {
+		return journal.resolveSibling(journal.getFileName() + ".quarantine");
+	}
+
+	/**
+	 * Returns the number of entries waiting to be replayed.
+	 *
+	 * @return the number of journaled entries.
+	 */
+
+	static synchronized int size() {
+		return pending.size();
+	}
+
+	/**
+	 * Registers a listener notified after each replay that applied or skipped any entry.
+	 *
+	 * @param listener the listener, called on the JavaFX application thread.
+	 */
+
+	static void addListener(Consumer<ReplayResult> listener) {
+		listeners.add(listener);
+	}
+
+	/**
+	 * Unregisters a listener.
+	 *
+	 * @param listener the listener.
+	 */
+
+	static void removeListener(Consumer<ReplayResult> listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Submits a write, applying it if the database is reachable and journaling it otherwise.
+	 *
+	 * @param entry the write.
+	 * @return a future completed, on the JavaFX application thread, with the result of the entry: the product as
+	 * stored in the database if the entry was applied, its provisional result if it was journaled.
+	 */
+
+	static CompletableFuture<Product> submit(JournalEntry entry) {
+		return AsyncUtilsDB.write(() -> {
+			if (DatabaseHealth.isOnline()) {
+				try {
+					replayPending();
+					if (size() == 0) {
+						return applyNow(entry);
+					}
+				} catch (SQLException e) {
+					if (!DatabaseHealth.isConnectionFailure(e)) {
+						throw e;
+					}
+					DatabaseHealth.markOffline();
+				}
+			}
+
+			append(entry);
+			return entry.provisionalResult();
+		});
+	}
+
+	/**
+	 * Replays the journal in the background, after every write submitted before.
+	 *
+	 * @return a future completed, on the JavaFX application thread, when the replay is done.
+	 */
+
+	static CompletableFuture<Void> replay() {
+		return AsyncUtilsDB.write(() -> {
+			try {
+				replayPending();
+			} catch (SQLException e) {
+				if (!DatabaseHealth.isConnectionFailure(e)) {
+					throw e;
+				}
+				DatabaseHealth.markOffline();
+			}
+		});
+	}
+
+	/**
+	 * Applies an entry in its own transaction.
+	 *
+	 * @param entry the entry.
+	 * @return the result of the entry.
+	 * @throws SQLException if a database access error occurs.
+	 */
+
+	private static Product applyNow(JournalEntry entry) throws SQLException {
+		return DatabaseMetrics.timed("applyJournalEntry", () -> {
+			try (UnitOfWork work = UtilsDB.beginUnitOfWork()) {
+				UtilsDB.markDBJournalEntryApplied(work.getConnection(), entry.id());
+				Product result = entry.apply(work.getConnection(), new HashMap<>());
+				work.commit();
+				return result;
+			}
+		});
+	}
+
+	/**
+	 * Replays the journaled entries in order, in batches of {@link #REPLAY_BATCH_SIZE} entries per transaction.
+	 * Within a batch, an entry failing for any reason other than a connection error is rolled back alone and
+	 * skipped. If the batch itself fails, because rolling back an entry or committing the transaction fails, the
+	 * whole transaction is rolled back and the entries of the batch are replayed one per transaction instead.
+	 * Connection errors stop the replay, leaving the current batch in the journal.
+	 *
+	 * @throws SQLException if the database cannot be reached.
+	 */
+
+	static void replayPending() throws SQLException {
+		List<JournalEntry> batch = nextBatch();
+		if (batch.isEmpty()) {
+			return;
+		}
+
+		int replayed = 0;
+		int skipped = 0;
+		try {
+			while (!batch.isEmpty()) {
+				try {
+					ReplayResult result = replayBatch(batch);
+					replayed += result.replayed();
+					skipped += result.skipped();
+				} catch (SQLException | RuntimeException e) {
+					if (DatabaseHealth.isConnectionFailure(e)) {
+						throw e;
+					}
+					logger.log(System.Logger.Level.WARNING, "Replaying " + batch.size() + " journaled writes one at a time", e);
+					for (JournalEntry entry : batch) {
+						ReplayResult result = replayEntry(entry);
+						replayed += result.replayed();
+						skipped += result.skipped();
+					}
+				}
+
+				removeReplayed(batch.size());
+				batch = nextBatch();
+			}
+		} finally {
+			notifyReplayed(new ReplayResult(replayed, skipped, size()));
+		}
+	}
+
+	/**
+	 * Replays a batch of entries in a single transaction, rolling back and skipping the entries that fail.
+	 * The skipped entries are quarantined once the transaction is committed.
+	 *
+	 * @param batch the entries, in order.
+	 * @return the number of entries of the batch applied and skipped.
+	 * @throws SQLException if the batch cannot be replayed as a whole.
+	 */
+
+	private static ReplayResult replayBatch(List<JournalEntry> batch) throws SQLException {
+		List<JournalEntry> skipped = new ArrayList<>();
+		Map<ProductKey, Long> versions = new HashMap<>();
+
+		int replayed = DatabaseMetrics.timed("replayJournal", () -> {
+			try (UnitOfWork work = UtilsDB.beginUnitOfWork()) {
+				int applied = 0;
+				for (JournalEntry entry : batch) {
+					Savepoint savepoint = work.getConnection().setSavepoint();
+					try {
+						if (UtilsDB.markDBJournalEntryApplied(work.getConnection(), entry.id())) {
+							entry.apply(work.getConnection(), versions);
+							applied++;
+						}
+					} catch (SQLException | RuntimeException e) {
+						if (DatabaseHealth.isConnectionFailure(e)) {
+							throw e;
+						}
+						work.getConnection().rollback(savepoint);
+						skipped.add(entry);
+						logger.log(System.Logger.Level.WARNING, "Skipping journaled " + entry.operation() + " " + entry.id(), e);
+					}
+				}
+				work.commit();
+				return applied;
+			}
+		});
+
+		skipped.forEach(WriteJournal::quarantine);
+		return new ReplayResult(replayed, skipped.size(), 0);
+	}
+
+	/**
+	 * Replays a single entry in its own transaction, moving it to the quarantine file if it fails for any reason
+	 * other than a connection error.
+	 *
+	 * @param entry the entry.
+	 * @return whether the entry was applied or skipped.
+	 * @throws SQLException if the database cannot be reached.
+	 */
+
+	private static ReplayResult replayEntry(JournalEntry entry) throws SQLException {
+		return DatabaseMetrics.timed("replayJournal", () -> {
+			try (UnitOfWork work = UtilsDB.beginUnitOfWork()) {
+				int replayed = 0;
+				if (UtilsDB.markDBJournalEntryApplied(work.getConnection(), entry.id())) {
+					entry.apply(work.getConnection(), new HashMap<>());
+					replayed++;
+				}
+				work.commit();
+				return new ReplayResult(replayed, 0, 0);
+			} catch (SQLException | RuntimeException e) {
+				if (DatabaseHealth.isConnectionFailure(e)) {
+					throw e;
+				}
+				quarantine(entry);
+				logger.log(System.Logger.Level.WARNING, "Skipping journaled " + entry.operation() + " " + entry.id(), e);
+				return new ReplayResult(0, 1, 0);
+			}
+		});
+	}
+
+	/**
+	 * Appends a skipped entry to the quarantine file, so that it can be inspected or submitted again by hand.
+	 *
+	 * @param entry the skipped entry.
+	 */
+
+	private static synchronized void quarantine(JournalEntry entry) {
+		Path file = quarantinePath(path != null ? path : defaultPath());
+		try {
+			Files.createDirectories(file.toAbsolutePath().getParent());
+			Files.writeString(file, JournalEntry.mapper.writeValueAsString(entry) + System.lineSeparator(), StandardCharsets.UTF_8,
+				StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+		} catch (IOException e) {
+			logger.log(System.Logger.Level.WARNING, "Could not quarantine journaled " + entry.operation() + " " + entry.id(), e);
+		}
+	}
+
+	/**
+	 * Returns the first journaled entries, without removing them.
+	 *
+	 * @return up to {@link #REPLAY_BATCH_SIZE} entries, in order.
+	 */
+
+	private static synchronized List<JournalEntry> nextBatch() {
+		return pending.stream().limit(REPLAY_BATCH_SIZE).toList();
+	}
+
+	/**
+	 * Removes the first replayed entries from the journal and rewrites the journal file.
+	 *
+	 * @param count the number of entries replayed.
+	 */
+
+	private static synchronized void removeReplayed(int count) {
+		for (int i = 0; i < count; i++) {
+			pending.removeFirst();
+		}
+
+		try {
+			rewrite();
+		} catch (IOException e) {
+			// the replayed entries left in the file are skipped by the next replay, as they are marked as applied
+			logger.log(System.Logger.Level.WARNING, "Could not rewrite the write journal " + path, e);
+		}
+	}
+
+	/**
+	 * Appends an entry to the journal, writing it to the journal file before returning.
+	 *
+	 * @param entry the entry.
+	 * @throws UncheckedIOException if the journal file cannot be written.
+	 */
+
+	private static synchronized void append(JournalEntry entry) {
+		Path file = path != null ? path : defaultPath();
+		try {
+			Files.createDirectories(file.toAbsolutePath().getParent());
+			Files.writeString(file, JournalEntry.mapper.writeValueAsString(entry) + System.lineSeparator(), StandardCharsets.UTF_8,
+				StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.DSYNC);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Could not write the write journal " + file, e);
+		}
+		pending.addLast(entry);
+	}
+
+	/**
+	 * Replaces the journal file with the entries still waiting, or deletes it if there are none.
+	 *
+	 * @throws IOException if the file cannot be written.
+	 */
+
+	private static void rewrite() throws IOException {
+		Path file = path != null ? path : defaultPath();
+		if (pending.isEmpty()) {
+			Files.deleteIfExists(file);
+			return;
+		}
+
+		Path temporary = Files.createTempFile(file.toAbsolutePath().getParent(), "write-journal", ".tmp");
+		try {
+			List<String> lines = new ArrayList<>();
+			for (JournalEntry entry : pending) {
+				lines.add(JournalEntry.mapper.writeValueAsString(entry));
+			}
+			Files.write(temporary, lines, StandardCharsets.UTF_8, StandardOpenOption.DSYNC);
+			Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(temporary);
+		}
+	}
+
+	/**
+	 * Reads the entries of a journal file. A line that cannot be read, such as the last line of a journal whose
+	 * writing was interrupted, is logged and skipped.
+	 *
+	 * @param file the journal file.
+	 * @return the entries, in order.
+	 */
+
+	private static List<JournalEntry> load(Path file) {
+		List<JournalEntry> entries = new ArrayList<>();
+		if (Files.notExists(file)) {
+			return entries;
+		}
+
+		try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.isBlank()) {
+					continue;
+				}
+				try {
+					entries.add(JournalEntry.mapper.readValue(line, JournalEntry.class));
+				} catch (IOException e) {
+					logger.log(System.Logger.Level.WARNING, "Skipping unreadable write journal line: " + line, e);
+				}
+			}
+		} catch (IOException e) {
+			logger.log(System.Logger.Level.WARNING, "Could not read the write journal " + file, e);
+		}
+		return entries;
+	}
+
+	/**
+	 * Notifies the listeners of a replay that applied or skipped any entry.
+	 *
+	 * @param result the outcome of the replay.
+	 */
+
+	private static void notifyReplayed(ReplayResult result) {
+		if (result.replayed() > 0 || result.skipped() > 0) {
+			logger.log(System.Logger.Level.INFO, "Replayed {0} journaled writes, skipped {1}, {2} left", result.replayed(), result.skipped(), result.remaining());
+			if (!listeners.isEmpty()) {
+				Platform.runLater(() -> listeners.forEach(listener -> listener.accept(result)));
+			}
+		}
+	}
+
+	/**
+	 * The outcome of a replay of the journal.
+	 *
+	 * @param replayed  the number of entries applied.
+	 * @param skipped   the number of entries that could not be applied and were moved to the quarantine file.
+	 * @param remaining the number of entries still waiting, because the database became unreachable again.
+	 */
+	record ReplayResult(int replayed, int skipped, int remaining) {
+	}
+}
@@ -0,0 +1,31 @@
+CREATE TABLE IF NOT EXISTS products (
+	productName    VARCHAR(255) NOT NULL,
+	expirationDate DATE         NOT NULL,
+	categoryName   VARCHAR(255),
+	quantity       INT,
+	price          DOUBLE,
+	PRIMARY KEY (productName, expirationDate)
+);
+
+CREATE TABLE IF NOT EXISTS recipe (
+	title    VARCHAR(255) NOT NULL PRIMARY KEY,
+	duration DOUBLE,
+	unit     INT,
+	portions INT,
+	category VARCHAR(255),
+	steps    TEXT
+);
+
+CREATE TABLE IF NOT EXISTS consist (
+	title               VARCHAR(255) NOT NULL,
+	ingredient          VARCHAR(255) NOT NULL,
+	quantity            DOUBLE,
+	unit_of_measurement VARCHAR(255),
+	PRIMARY KEY (title, ingredient)
+);
+
+CREATE TABLE IF NOT EXISTS tag (
+	title VARCHAR(255) NOT NULL,
+	tag   VARCHAR(255) NOT NULL,
+	PRIMARY KEY (title, tag)
+);
@@ -0,0 +1,5 @@
+CREATE INDEX idx_products_expiration ON products (expirationDate, productName);
+
+CREATE INDEX idx_consist_ingredient ON consist (ingredient);
+
+CREATE INDEX idx_tag_tag ON tag (tag);
@@ -0,0 +1,52 @@
+CREATE TABLE IF NOT EXISTS recipe_v3 (
+	id       INT          NOT NULL AUTO_INCREMENT PRIMARY KEY,
+	title    VARCHAR(255) NOT NULL,
+	duration DOUBLE,
+	unit     INT,
+	portions INT,
+	category VARCHAR(255),
+	steps    TEXT,
+	CONSTRAINT uq_recipe_title UNIQUE (title)
+);
+
+INSERT INTO recipe_v3 (title, duration, unit, portions, category, steps)
+SELECT title, duration, unit, portions, category, steps FROM recipe r
+WHERE NOT EXISTS (SELECT 1 FROM recipe_v3 v WHERE v.title = r.title) ORDER BY title;
+
+CREATE TABLE IF NOT EXISTS consist_v3 (
+	recipe_id           INT          NOT NULL,
+	ingredient          VARCHAR(255) NOT NULL,
+	quantity            DOUBLE,
+	unit_of_measurement VARCHAR(255),
+	PRIMARY KEY (recipe_id, ingredient)
+);
+
+INSERT INTO consist_v3 (recipe_id, ingredient, quantity, unit_of_measurement)
+SELECT r.id, c.ingredient, c.quantity, c.unit_of_measurement FROM consist c JOIN recipe_v3 r ON r.title = c.title
+WHERE NOT EXISTS (SELECT 1 FROM consist_v3 v WHERE v.recipe_id = r.id AND v.ingredient = c.ingredient);
+
+CREATE TABLE IF NOT EXISTS tag_v3 (
+	recipe_id INT          NOT NULL,
+	tag       VARCHAR(255) NOT NULL,
+	PRIMARY KEY (recipe_id, tag)
+);
+
+INSERT INTO tag_v3 (recipe_id, tag)
+SELECT r.id, t.tag FROM tag t JOIN recipe_v3 r ON r.title = t.title
+WHERE NOT EXISTS (SELECT 1 FROM tag_v3 v WHERE v.recipe_id = r.id AND v.tag = t.tag);
+
+DROP TABLE IF EXISTS tag;
+
+DROP TABLE IF EXISTS consist;
+
+DROP TABLE IF EXISTS recipe;
+
+ALTER TABLE recipe_v3 RENAME TO recipe;
+
+ALTER TABLE consist_v3 RENAME TO consist;
+
+ALTER TABLE tag_v3 RENAME TO tag;
+
+CREATE INDEX idx_consist_ingredient ON consist (ingredient);
+
+CREATE INDEX idx_tag_tag ON tag (tag);
@@ -0,0 +1,28 @@
+ALTER TABLE products ADD COLUMN version BIGINT NOT NULL DEFAULT 1;
+
+ALTER TABLE products ADD COLUMN updated_at TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3);
+
+ALTER TABLE recipe ADD COLUMN version BIGINT NOT NULL DEFAULT 1;
+
+ALTER TABLE recipe ADD COLUMN updated_at TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3);
+
+CREATE INDEX idx_products_updated_at ON products (updated_at);
+
+CREATE INDEX idx_recipe_updated_at ON recipe (updated_at);
+
+CREATE TABLE IF NOT EXISTS deleted_products (
+	id             BIGINT       NOT NULL AUTO_INCREMENT PRIMARY KEY,
+	productName    VARCHAR(255) NOT NULL,
+	expirationDate DATE         NOT NULL,
+	deleted_at     TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3)
+);
+
+CREATE INDEX idx_deleted_products_deleted_at ON deleted_products (deleted_at);
+
+CREATE TABLE IF NOT EXISTS deleted_recipes (
+	id         BIGINT       NOT NULL AUTO_INCREMENT PRIMARY KEY,
+	title      VARCHAR(255) NOT NULL,
+	deleted_at TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3)
+);
+
+CREATE INDEX idx_deleted_recipes_deleted_at ON deleted_recipes (deleted_at);
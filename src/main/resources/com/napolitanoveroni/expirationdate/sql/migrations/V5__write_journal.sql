@@ -0,0 +1,6 @@
+CREATE TABLE IF NOT EXISTS applied_journal_entries (
+	id         CHAR(36)     NOT NULL PRIMARY KEY,
+	applied_at TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3)
+);
+
+CREATE INDEX idx_applied_journal_entries_applied_at ON applied_journal_entries (applied_at);
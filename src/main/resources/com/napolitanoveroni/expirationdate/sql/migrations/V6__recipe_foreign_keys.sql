@@ -0,0 +1,7 @@
+DELETE FROM consist WHERE NOT EXISTS (SELECT 1 FROM recipe r WHERE r.id = consist.recipe_id);
+
+DELETE FROM tag WHERE NOT EXISTS (SELECT 1 FROM recipe r WHERE r.id = tag.recipe_id);
+
+ALTER TABLE consist ADD CONSTRAINT fk_consist_recipe FOREIGN KEY (recipe_id) REFERENCES recipe (id) ON DELETE CASCADE;
+
+ALTER TABLE tag ADD CONSTRAINT fk_tag_recipe FOREIGN KEY (recipe_id) REFERENCES recipe (id) ON DELETE CASCADE;
@@ -0,0 +1 @@
+ALTER TABLE recipe ADD COLUMN updated_by CHAR(36) NULL;
@@ -0,0 +1,88 @@
+package com.napolitanoveroni.expirationdate;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks which operation the statements run on the embedded backend are recorded under.
+ *
+ * @author SaverioNapolitano, MatteV02
+ * @version 2023.07.10
+ */
+class DatabaseMetricsTest {
+	@TempDir
+	Path directory;
+
+	@BeforeEach
+	void startDatabase() throws SQLException {
+		TestDatabase.start(directory);
+	}
+
+	@AfterEach
+	void stopDatabase() {
+		TestDatabase.stop();
+	}
+
+	@Test
+	void entryPointIsRecordedOnce() throws SQLException {
+		long merges = count("mergeDBProduct");
+		long statements = count(SQLStatement.MERGE_PRODUCT.name());
+
+		UtilsDB.mergeDBProduct(new Product("milk", LocalDate.of(2030, 1, 1), "dairy", 1, 1));
+
+		assertEquals(merges + 1, count("mergeDBProduct"));
+		assertEquals(statements, count(SQLStatement.MERGE_PRODUCT.name()));
+	}
+
+	@Test
+	void nestedOperationsBelongToOuterOne() throws SQLException {
+		long counts = count("countProducts");
+
+		DatabaseMetrics.timed("outer", () -> {
+			UtilsDB.countProducts();
+			UtilsDB.countProducts();
+		});
+
+		assertEquals(1, count("outer"));
+		assertEquals(counts, count("countProducts"));
+	}
+
+	@Test
+	void statementOutsideOperationIsRecordedUnderItsName() throws SQLException {
+		long statements = count(SQLStatement.GET_SYNC_TOKEN.name());
+
+		try (Connection connection = UtilsDB.getConnection()) {
+			UtilsDB.getSyncToken(connection);
+		}
+
+		assertEquals(statements + 1, count(SQLStatement.GET_SYNC_TOKEN.name()));
+	}
+
+	@Test
+	void redactedParametersHoldTypesOnly() {
+		assertEquals(List.of("String", "Date", "null"), DatabaseMetrics.redact(Arrays.asList("milk", Date.valueOf("2030-01-01"), null)));
+	}
+
+	/**
+	 * Returns the number of recorded runs of an operation.
+	 *
+	 * @param operation the name of the operation.
+	 * @return the number of runs.
+	 */
+
+	private static long count(String operation) {
+		return DatabaseMetrics.getLatency(operation).getCount();
+	}
+}
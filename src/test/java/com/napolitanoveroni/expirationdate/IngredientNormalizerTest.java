@@ -0,0 +1,55 @@
+package com.napolitanoveroni.expirationdate;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks the singular rules and the normalization of {@link IngredientNormalizer}.
+ *
+ * @author SaverioNapolitano, MatteV02
+ * @version 2023.07.10
+ */
+class IngredientNormalizerTest {
+	@Test
+	void suffixRulesSingulariseRegularPlurals() {
+		assertEquals("cherry", IngredientNormalizer.singular("cherries"));
+		assertEquals("tomato", IngredientNormalizer.singular("tomatoes"));
+		assertEquals("peach", IngredientNormalizer.singular("peaches"));
+		assertEquals("radish", IngredientNormalizer.singular("radishes"));
+		assertEquals("glass", IngredientNormalizer.singular("glasses"));
+		assertEquals("box", IngredientNormalizer.singular("boxes"));
+		assertEquals("egg", IngredientNormalizer.singular("eggs"));
+		assertEquals("pea", IngredientNormalizer.singular("peas"));
+	}
+
+	@Test
+	void wordsThatAreNotPluralsAreKept() {
+		assertEquals("gas", IngredientNormalizer.singular("gas"));
+		assertEquals("couscous", IngredientNormalizer.singular("couscous"));
+		assertEquals("hummus", IngredientNormalizer.singular("hummus"));
+		assertEquals("anis", IngredientNormalizer.singular("anis"));
+		assertEquals("grass", IngredientNormalizer.singular("grass"));
+	}
+
+	@Test
+	void irregularPluralsAreLookedUp() {
+		assertEquals("leaf", IngredientNormalizer.singular("leaves"));
+		assertEquals("cookie", IngredientNormalizer.singular("cookies"));
+		assertEquals("goose", IngredientNormalizer.singular("geese"));
+		assertEquals("gas", IngredientNormalizer.singular("gases"));
+		assertEquals("bus", IngredientNormalizer.singular("buses"));
+	}
+
+	@Test
+	void namesAreFoldedSingularisedAndMappedToSynonyms() {
+		assertEquals("tomato", IngredientNormalizer.normalize("  TOMATOES "));
+		assertEquals("creme fraiche", IngredientNormalizer.normalize("Cr\u00e8me-Fra\u00eeche"));
+		assertEquals("eggplant", IngredientNormalizer.normalize("Aubergines"));
+		assertEquals("spring onion", IngredientNormalizer.normalize("green onions"));
+		assertEquals("", IngredientNormalizer.normalize("--"));
+		assertEquals(List.of("cherry", "tomato"), IngredientNormalizer.words("Cherry tomatoes"));
+	}
+}
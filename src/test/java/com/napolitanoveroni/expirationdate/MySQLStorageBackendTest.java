@@ -0,0 +1,68 @@
+package com.napolitanoveroni.expirationdate;
+
+import com.zaxxer.hikari.HikariConfig;
+import org.junit.jupiter.api.Test;
+
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks the pool configuration {@link MySQLStorageBackend} sets, without a MySQL server.
+ *
+ * @author SaverioNapolitano, MatteV02
+ * @version 2023.07.10
+ */
+class MySQLStorageBackendTest {
+	@Test
+	void configuresDriverAndUrl() {
+		HikariConfig config = configure();
+
+		assertEquals(PersonalConfigDB.JDBC_Driver, config.getDriverClassName());
+		assertEquals(PersonalConfigDB.JDBC_URL, config.getJdbcUrl());
+	}
+
+	@Test
+	void enablesStatementCachesAndBatchRewrite() {
+		Properties properties = configure().getDataSourceProperties();
+
+		assertEquals("true", properties.getProperty("cachePrepStmts"));
+		assertEquals("true", properties.getProperty("useServerPrepStmts"));
+		assertEquals("250", properties.getProperty("prepStmtCacheSize"));
+		assertEquals("2048", properties.getProperty("prepStmtCacheSqlLimit"));
+		assertEquals("true", properties.getProperty("rewriteBatchedStatements"));
+	}
+
+	@Test
+	void everyPropertyIsKnownToDriver() throws SQLException {
+		HikariConfig config = configure();
+		Properties properties = config.getDataSourceProperties();
+
+		Map<String, String> known = new HashMap<>();
+		for (DriverPropertyInfo info : DriverManager.getDriver(config.getJdbcUrl()).getPropertyInfo(config.getJdbcUrl(), properties)) {
+			known.put(info.name, info.value);
+		}
+
+		for (String name : properties.stringPropertyNames()) {
+			assertTrue(known.containsKey(name), name + " is not a property of the driver");
+			assertEquals(properties.getProperty(name), known.get(name), name);
+		}
+	}
+
+	/**
+	 * Builds a pool configuration for the MySQL backend.
+	 *
+	 * @return the configuration.
+	 */
+
+	private static HikariConfig configure() {
+		HikariConfig config = new HikariConfig();
+		new MySQLStorageBackend().configure(config);
+		return config;
+	}
+}
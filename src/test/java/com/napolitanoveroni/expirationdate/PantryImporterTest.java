@@ -0,0 +1,103 @@
+package com.napolitanoveroni.expirationdate;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Writes pantry imports to the embedded backend.
+ *
+ * @author SaverioNapolitano, MatteV02
+ * @version 2023.07.10
+ */
+class PantryImporterTest {
+	private static final LocalDate DATE = LocalDate.of(2030, 1, 1);
+
+	@TempDir
+	Path directory;
+
+	@BeforeEach
+	void startDatabase() throws SQLException {
+		TestDatabase.start(directory);
+	}
+
+	@AfterEach
+	void stopDatabase() {
+		TestDatabase.stop();
+	}
+
+	@Test
+	void writeReportsProgressAfterEachBatch() throws SQLException {
+		PantryImporter importer = importer(PantryImporter.BATCH_SIZE + 1);
+
+		List<Integer> progress = new ArrayList<>();
+		assertEquals(PantryImporter.BATCH_SIZE + 1, importer.write((written, total) -> progress.add(written)));
+
+		assertEquals(List.of(PantryImporter.BATCH_SIZE, PantryImporter.BATCH_SIZE + 1), progress);
+		assertEquals(PantryImporter.BATCH_SIZE + 1, UtilsDB.countProducts());
+	}
+
+	@Test
+	void failedImportKeepsCommittedBatchesAndResumes() throws SQLException {
+		PantryImporter importer = importer(PantryImporter.BATCH_SIZE);
+		Product invalid = new Product("x".repeat(256), DATE, "", 1, 0);
+		importer.add(invalid);
+
+		assertThrows(SQLException.class, () -> importer.write((written, total) -> {}));
+		assertEquals(PantryImporter.BATCH_SIZE, importer.getWritten());
+		assertEquals(PantryImporter.BATCH_SIZE, UtilsDB.countProducts());
+
+		invalid.setProductName("last");
+		assertEquals(1, importer.write((written, total) -> {}));
+		assertEquals(PantryImporter.BATCH_SIZE + 1, UtilsDB.countProducts());
+		assertTrue(UtilsDB.getProductPage(null, PantryImporter.BATCH_SIZE + 1).stream().allMatch(product -> product.getQuantity() == 1));
+	}
+
+	@Test
+	void committedBatchIsNotWrittenTwice() throws SQLException {
+		UUID id = UUID.randomUUID();
+		importer(id, 2).write((written, total) -> {});
+
+		PantryImporter retry = importer(id, 2);
+		assertEquals(2, retry.write((written, total) -> {}));
+		assertEquals(2, UtilsDB.countProducts());
+		assertTrue(UtilsDB.getProductPage(null, 2).stream().allMatch(product -> product.getQuantity() == 1));
+	}
+
+	/**
+	 * Builds an importer holding distinct products with a quantity of one.
+	 *
+	 * @param size the number of products.
+	 * @return the importer.
+	 */
+
+	private static PantryImporter importer(int size) {
+		return importer(UUID.randomUUID(), size);
+	}
+
+	/**
+	 * Builds an importer with the given identifier holding distinct products with a quantity of one.
+	 *
+	 * @param id   the identifier of the import.
+	 * @param size the number of products.
+	 * @return the importer.
+	 */
+
+	private static PantryImporter importer(UUID id, int size) {
+		PantryImporter importer = new PantryImporter(id);
+		for (int i = 0; i < size; i++) {
+			importer.add(new Product("product " + i, DATE, "", 1, 0));
+		}
+		return importer;
+	}
+}
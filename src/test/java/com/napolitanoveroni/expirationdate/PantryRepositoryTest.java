@@ -0,0 +1,62 @@
+package com.napolitanoveroni.expirationdate;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that {@link PantryRepository} keeps its list and its search index in step.
+ *
+ * @author SaverioNapolitano, MatteV02
+ * @version 2023.07.10
+ */
+class PantryRepositoryTest {
+	private static final LocalDate DATE = LocalDate.of(2030, 1, 1);
+
+	@Test
+	void replaceReindexesCategory() {
+		PantryRepository pantry = new PantryRepository();
+		Product milk = new Product("milk", DATE, "dairy", 1, 1.5);
+		Product butter = new Product("butter", DATE.plusDays(1), "dairy", 1, 2);
+		pantry.add(milk);
+		pantry.add(butter);
+
+		Product updated = new Product(milk);
+		updated.setCategoryName("drinks");
+		updated.setQuantity(3);
+		pantry.replace(milk, updated);
+
+		assertEquals(List.of(butter), pantry.search("dairy"));
+		assertEquals(List.of(updated), pantry.search("drinks"));
+		assertSame(updated, pantry.getView().get(0));
+		assertEquals(2, pantry.size());
+	}
+
+	@Test
+	void replaceRejectsProductNotListed() {
+		PantryRepository pantry = new PantryRepository();
+		Product milk = new Product("milk", DATE, "dairy", 1, 1.5);
+		pantry.add(milk);
+
+		assertThrows(IllegalArgumentException.class, () -> pantry.replace(new Product(milk), new Product(milk)));
+		assertThrows(IllegalArgumentException.class, () -> pantry.replace(milk, new Product("milk", DATE.plusDays(1), "dairy", 1, 1.5)));
+	}
+
+	@Test
+	void searchSkipsKeysNoLongerListed() {
+		PantryRepository pantry = new PantryRepository();
+		Product milk = new Product("milk", DATE, "dairy", 1, 1.5);
+		Product butter = new Product("butter", DATE.plusDays(1), "dairy", 1, 2);
+		pantry.add(milk);
+		pantry.add(butter);
+
+		milk.setCategoryName("drinks");
+		pantry.remove(ProductKey.of(milk));
+
+		assertEquals(List.of(butter), pantry.search("dairy"));
+		assertEquals(List.of(), pantry.search("milk"));
+	}
+}
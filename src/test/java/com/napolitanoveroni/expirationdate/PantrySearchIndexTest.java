@@ -0,0 +1,116 @@
+package com.napolitanoveroni.expirationdate;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks the prefix and typo-tolerant matching of {@link PantrySearchIndex}.
+ *
+ * @author SaverioNapolitano, MatteV02
+ * @version 2023.07.10
+ */
+class PantrySearchIndexTest {
+	private static final LocalDate DATE = LocalDate.of(2030, 1, 1);
+
+	@Test
+	void distanceCountsAdjacentTranspositionAsOneEdit() {
+		assertEquals(0, PantrySearchIndex.distance("milk", "milk"));
+		assertEquals(3, PantrySearchIndex.distance("", "tea"));
+		assertEquals(3, PantrySearchIndex.distance("kitten", "sitting"));
+		assertEquals(1, PantrySearchIndex.distance("milk", "mlik"));
+		assertEquals(2, PantrySearchIndex.distance("milk", "imkl"));
+	}
+
+	@Test
+	void toleratedTyposGrowWithTermLength() {
+		assertEquals(0, PantrySearchIndex.maxTypos("tea"));
+		assertEquals(1, PantrySearchIndex.maxTypos("milk"));
+		assertEquals(1, PantrySearchIndex.maxTypos("avocado"));
+		assertEquals(2, PantrySearchIndex.maxTypos("chocolate"));
+	}
+
+	@Test
+	void shortTermsOnlyMatchAsPrefixes() {
+		Product milk = product("milk", "dairy");
+		PantrySearchIndex index = index(milk);
+
+		assertEquals(Set.of(ProductKey.of(milk)), index.search("mil"));
+		assertTrue(index.search("mik").isEmpty());
+	}
+
+	@Test
+	void termsMatchWordsWithinToleratedTypos() {
+		Product milk = product("milk", "dairy");
+		Product chocolate = product("dark chocolate", "sweets");
+		PantrySearchIndex index = index(milk, chocolate);
+
+		assertEquals(Set.of(ProductKey.of(milk)), index.search("mlik"));
+		assertTrue(index.search("mxyk").isEmpty());
+		assertEquals(Set.of(ProductKey.of(chocolate)), index.search("chcolatte"));
+		assertTrue(index.search("chclatte").isEmpty());
+	}
+
+	@Test
+	void termsMatchPrefixesWithinToleratedTypos() {
+		Product yogurt = product("yogurt", "dairy");
+		PantrySearchIndex index = index(yogurt);
+
+		assertEquals(Set.of(ProductKey.of(yogurt)), index.search("yohu"));
+		assertTrue(index.search("yohh").isEmpty());
+	}
+
+	@Test
+	void everyTermMustMatchNameOrCategory() {
+		Product milk = product("milk", "dairy");
+		Product soyMilk = product("soy milk", "drinks");
+		PantrySearchIndex index = index(milk, soyMilk);
+
+		assertEquals(Set.of(ProductKey.of(milk), ProductKey.of(soyMilk)), index.search("Milk"));
+		assertEquals(Set.of(ProductKey.of(milk)), index.search("milk, dairy"));
+		assertEquals(Set.of(ProductKey.of(milk), ProductKey.of(soyMilk)), index.search("  "));
+	}
+
+	@Test
+	void removedProductsNoLongerMatch() {
+		Product milk = product("milk", "dairy");
+		Product cream = product("cream", "dairy");
+		PantrySearchIndex index = index(milk, cream);
+
+		index.remove(milk);
+
+		assertTrue(index.search("milk").isEmpty());
+		assertTrue(index.search("mlik").isEmpty());
+		assertEquals(Set.of(ProductKey.of(cream)), index.search("dairy"));
+	}
+
+	/**
+	 * Builds a product with a quantity of one.
+	 *
+	 * @param name     the name of the product.
+	 * @param category the category of the product.
+	 * @return the product.
+	 */
+
+	private static Product product(String name, String category) {
+		return new Product(name, DATE, category, 1, 1);
+	}
+
+	/**
+	 * Builds an index of the given products.
+	 *
+	 * @param products the products.
+	 * @return the index.
+	 */
+
+	private static PantrySearchIndex index(Product... products) {
+		PantrySearchIndex index = new PantrySearchIndex();
+		for (Product product : products) {
+			index.add(product);
+		}
+		return index;
+	}
+}
@@ -0,0 +1,138 @@
+package com.napolitanoveroni.expirationdate;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks the lot and expiration bookkeeping of {@link RecipeCoverageIndex}.
+ *
+ * @author SaverioNapolitano, MatteV02
+ * @version 2023.07.10
+ */
+class RecipeCoverageIndexTest {
+	private static final LocalDate TODAY = LocalDate.of(2030, 1, 1);
+
+	@Test
+	void coverageCountsDistinctAvailableIngredients() {
+		RecipeCoverageIndex index = index();
+		index.setLots(List.of(lot("Milk", 5), lot("eggs", 2), lot("egg", 4)));
+
+		assertEquals(new RecipeCoverageIndex.Coverage("pancakes", 2, 3), index.getCoverage("pancakes").orElseThrow());
+		assertEquals(new RecipeCoverageIndex.Coverage("omelette", 1, 1), index.getCoverage("omelette").orElseThrow());
+		assertEquals(List.of("omelette", "pancakes", "bread"), index.ranking().stream().map(RecipeCoverageIndex.Coverage::title).toList());
+	}
+
+	@Test
+	void ingredientStaysAvailableUntilItsLastLotExpires() {
+		RecipeCoverageIndex index = index();
+		index.setLots(List.of(lot("eggs", 2), lot("eggs", 4)));
+
+		index.expire(TODAY.plusDays(2));
+		assertEquals(1, available(index, "omelette"));
+
+		index.expire(TODAY.plusDays(1));
+		index.addLot(lot("eggs", 2));
+		assertEquals(1, available(index, "omelette"));
+
+		index.expire(TODAY.plusDays(4));
+		assertEquals(0, available(index, "omelette"));
+	}
+
+	@Test
+	void removingExpiredOrUnknownLotsChangesNothing() {
+		RecipeCoverageIndex index = index();
+		index.setLots(List.of(lot("eggs", 2), lot("eggs", 4)));
+
+		index.expire(TODAY.plusDays(2));
+		index.removeLot(lot("eggs", 2));
+		index.removeLot(lot("flour", 3));
+		assertEquals(1, available(index, "omelette"));
+
+		index.removeLot(lot("eggs", 4));
+		index.removeLot(lot("eggs", 4));
+		assertEquals(0, available(index, "omelette"));
+
+		index.addLot(lot("eggs", 4));
+		assertEquals(1, available(index, "omelette"));
+	}
+
+	@Test
+	void lotsAreCountedOnce() {
+		RecipeCoverageIndex index = index();
+
+		index.addLot(lot("flour", 3));
+		index.addLot(lot("flour", 3));
+		index.removeLot(lot("flour", 3));
+
+		assertEquals(0, available(index, "pancakes"));
+		assertEquals(0, available(index, "bread"));
+	}
+
+	@Test
+	void setLotsReplacesThePantry() {
+		RecipeCoverageIndex index = index();
+		index.setLots(List.of(lot("milk", 3), lot("flour", 3)));
+
+		index.setLots(List.of(lot("flour", 3), lot("yeast", 0)));
+
+		assertEquals(1, available(index, "pancakes"));
+		assertEquals(1, available(index, "bread"));
+	}
+
+	@Test
+	void recipesPutAfterTheLotsCountThem() {
+		RecipeCoverageIndex index = index();
+		index.setLots(List.of(lot("milk", 3)));
+
+		index.putRecipe("latte", List.of("Milk", "coffee"));
+		index.removeRecipe("omelette");
+
+		assertEquals(new RecipeCoverageIndex.Coverage("latte", 1, 2), index.getCoverage("latte").orElseThrow());
+		assertTrue(index.getCoverage("omelette").isEmpty());
+		assertEquals(3, index.recipeCount());
+	}
+
+	/**
+	 * Builds an index of three recipes and an empty pantry.
+	 *
+	 * @return the index.
+	 */
+
+	private static RecipeCoverageIndex index() {
+		RecipeCoverageIndex index = new RecipeCoverageIndex(TODAY);
+		index.setRecipes(Map.of(
+			"pancakes", List.of("milk", "flour", "eggs"),
+			"omelette", List.of("eggs"),
+			"bread", List.of("flour", "yeast", "water", "salt")));
+		return index;
+	}
+
+	/**
+	 * Builds the key of a lot.
+	 *
+	 * @param name the name of the product.
+	 * @param days the days from today to the expiration date of the lot.
+	 * @return the key of the lot.
+	 */
+
+	private static ProductKey lot(String name, int days) {
+		return new ProductKey(name, TODAY.plusDays(days));
+	}
+
+	/**
+	 * Returns the number of available ingredients of a recipe.
+	 *
+	 * @param index the index.
+	 * @param title the title of the recipe.
+	 * @return the number of available ingredients.
+	 */
+
+	private static int available(RecipeCoverageIndex index, String title) {
+		return index.getCoverage(title).orElseThrow().available();
+	}
+}
@@ -0,0 +1,139 @@
+package com.napolitanoveroni.expirationdate;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks the ranking, field filters, prefix matching and incremental updates of {@link RecipeSearchIndex}.
+ *
+ * @author SaverioNapolitano, MatteV02
+ * @version 2023.07.10
+ */
+class RecipeSearchIndexTest {
+	@Test
+	void titleOutranksSteps() {
+		RecipeSearchIndex index = RecipeSearchIndex.of(List.of(
+			recipe("pasta al pomodoro", "first course", "add the tomato sauce", List.of("pasta", "tomato sauce"), List.of()),
+			recipe("tomato soup", "first course", "blend", List.of("tomatoes"), List.of())));
+
+		assertEquals(List.of("tomato soup", "pasta al pomodoro"), titles(index.search("tomato", 10)));
+	}
+
+	@Test
+	void rarerTermsWeighMore() {
+		RecipeSearchIndex index = RecipeSearchIndex.of(List.of(
+			recipe("green salad", "side dish", "toss", List.of("lettuce"), List.of()),
+			recipe("potato salad", "side dish", "boil", List.of("potatoes"), List.of()),
+			recipe("egg salad", "side dish", "boil", List.of("eggs"), List.of()),
+			recipe("boiled potato", "side dish", "boil", List.of("potatoes"), List.of())));
+
+		List<RecipeSearchIndex.Hit> hits = index.search("salad potato", 10);
+		assertEquals(List.of("potato salad"), titles(hits));
+
+		double salad = index.search("salad", 10).get(0).score();
+		double green = index.search("green", 10).get(0).score();
+		assertTrue(green > salad);
+	}
+
+	@Test
+	void fieldFiltersOnlyMatchTheirField() {
+		RecipeSearchIndex index = RecipeSearchIndex.of(List.of(
+			recipe("lentil stew", "second course", "cook", List.of("lentils"), List.of("vegan")),
+			recipe("vegan cake", "dessert", "bake", List.of("flour"), List.of()),
+			recipe("parmigiana", "side dish", "fry and bake", List.of("eggplant"), List.of())));
+
+		assertEquals(List.of("lentil stew"), titles(index.search("tag:vegan", 10)));
+		assertEquals(List.of("parmigiana"), titles(index.search("ingredient:aubergines", 10)));
+		assertEquals(List.of("parmigiana"), titles(index.search("category:\"side dish\"", 10)));
+		assertEquals(List.of("vegan cake"), titles(index.search("title:vegan", 10)));
+		assertTrue(index.search("tag:cake", 10).isEmpty());
+	}
+
+	@Test
+	void onlyTheTrailingTermMatchesAsPrefix() {
+		RecipeSearchIndex index = RecipeSearchIndex.of(List.of(
+			recipe("tomato soup", "first course", "blend", List.of("tomatoes"), List.of()),
+			recipe("tom yum", "first course", "simmer", List.of("shrimps"), List.of())));
+
+		assertEquals(List.of("tom yum", "tomato soup"), titles(index.search("tom", 10)));
+		assertEquals(List.of("tom yum"), titles(index.search("tom ", 10)));
+		assertEquals(List.of("tom yum"), titles(index.search("\"tom\"", 10)));
+		assertTrue(index.search("tom soup", 10).isEmpty());
+		assertTrue(index.search("t", 10).isEmpty());
+	}
+
+	@Test
+	void queriesAreParsedIntoTerms() {
+		assertEquals(List.of(
+				new RecipeSearchIndex.Term(RecipeSearchIndex.Field.TAG, "quick", false),
+				new RecipeSearchIndex.Term(null, "foo", false),
+				new RecipeSearchIndex.Term(null, "bar", false),
+				new RecipeSearchIndex.Term(RecipeSearchIndex.Field.INGREDIENT, "chickpea", true)),
+			RecipeSearchIndex.parse("TAG:quick foo:bar ingredient:garbanzos"));
+	}
+
+	@Test
+	void putReplacesThePreviousVersion() {
+		RecipeSearchIndex index = RecipeSearchIndex.of(List.of(
+			recipe("pancakes", "dessert", "mix and fry", List.of("milk", "flour"), List.of("breakfast"))));
+
+		index.put(recipe("pancakes", "dessert", "mix and bake", List.of("oat milk", "flour"), List.of("vegan")));
+
+		assertEquals(1, index.size());
+		assertTrue(index.search("breakfast", 10).isEmpty());
+		assertTrue(index.search("fry ", 10).isEmpty());
+		assertEquals(List.of("pancakes"), titles(index.search("tag:vegan oat", 10)));
+	}
+
+	@Test
+	void removeKeepsTheOtherRecipesSearchable() {
+		RecipeSearchIndex index = RecipeSearchIndex.of(List.of(
+			recipe("pancakes", "dessert", "fry", List.of("milk"), List.of()),
+			recipe("latte", "drink", "steam", List.of("milk"), List.of()),
+			recipe("porridge", "breakfast", "boil", List.of("milk"), List.of())));
+
+		// removing the first recipe moves the last one into its position in the postings of "milk"
+		index.remove("pancakes");
+		index.remove("porridge");
+		index.remove("porridge");
+
+		assertEquals(1, index.size());
+		assertEquals(List.of("latte"), titles(index.search("milk", 10)));
+
+		index.put(recipe("milkshake", "drink", "blend", List.of("milk"), List.of()));
+		assertEquals(List.of("latte", "milkshake"), titles(index.search("ingredient:milk ", 10)).stream().sorted().toList());
+		assertEquals(List.of("milkshake"), titles(index.search("milk", 1)));
+	}
+
+	/**
+	 * Builds a recipe with the given fields.
+	 *
+	 * @param title       the title.
+	 * @param category    the category.
+	 * @param steps       the steps.
+	 * @param ingredients the ingredient names.
+	 * @param tags        the tags.
+	 * @return the recipe.
+	 */
+
+	private static Recipe recipe(String title, String category, String steps, List<String> ingredients, List<String> tags) {
+		ArrayList<Ingredient> ingredientList = new ArrayList<>();
+		ingredients.forEach(ingredient -> ingredientList.add(new Ingredient(ingredient, 1, "pieces")));
+		return new Recipe(title, 10, durationUnit.MIN, 2, category, steps, ingredientList, new ArrayList<>(tags));
+	}
+
+	/**
+	 * Returns the titles of the hits of a search.
+	 *
+	 * @param hits the hits.
+	 * @return the titles, in order.
+	 */
+
+	private static List<String> titles(List<RecipeSearchIndex.Hit> hits) {
+		return hits.stream().map(RecipeSearchIndex.Hit::title).toList();
+	}
+}
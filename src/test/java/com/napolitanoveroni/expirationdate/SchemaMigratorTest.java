@@ -0,0 +1,228 @@
+package com.napolitanoveroni.expirationdate;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the migration scripts on the embedded backend, from an empty database and from a database left at the first
+ * schema version by an older release of the application.
+ *
+ * @author SaverioNapolitano, MatteV02
+ * @version 2023.07.10
+ */
+class SchemaMigratorTest {
+	@TempDir
+	Path directory;
+
+	@AfterEach
+	void stopDatabase() {
+		TestDatabase.stop();
+	}
+
+	@Test
+	void migratesEmptyDatabaseToLatestVersion() throws SQLException {
+		TestDatabase.start(directory);
+
+		try (Connection connection = UtilsDB.getConnection()) {
+			assertEquals(SchemaMigrator.getLatestVersion(), SchemaMigrator.getVersion(connection));
+			for (String table : List.of("products", "recipe", "consist", "tag", "deleted_products", "deleted_recipes", "applied_journal_entries")) {
+				assertTrue(hasTable(connection, table), table);
+			}
+			assertTrue(hasColumn(connection, "products", "version"));
+			assertTrue(hasColumn(connection, "recipe", "id"));
+			assertTrue(hasColumn(connection, "consist", "recipe_id"));
+		}
+	}
+
+	@Test
+	void migrateOnUpToDateDatabaseAppliesNothing() throws SQLException {
+		TestDatabase.start(directory);
+
+		try (Connection connection = UtilsDB.getConnection()) {
+			assertEquals(SchemaMigrator.getLatestVersion(), SchemaMigrator.migrate(connection));
+			assertEquals(SchemaMigrator.getLatestVersion(), count(connection, "SELECT COUNT(*) FROM schema_version"));
+		}
+	}
+
+	@Test
+	void keepsRecipesOfFirstVersionSchema() throws SQLException {
+		try (HikariDataSource legacy = TestDatabase.open(directory); Connection connection = legacy.getConnection(); Statement statement = connection.createStatement()) {
+			SchemaMigrator.migrate(connection, 1);
+			insertFirstVersionRows(statement);
+			assertEquals(1, SchemaMigrator.getVersion(connection));
+		}
+
+		TestDatabase.start(directory);
+
+		assertFirstVersionRowsKept();
+	}
+
+	@Test
+	void resumesInterruptedMigrationAtRecordedStatement() throws SQLException {
+		try (HikariDataSource legacy = TestDatabase.open(directory); Connection connection = legacy.getConnection(); Statement statement = connection.createStatement()) {
+			SchemaMigrator.migrate(connection, 2);
+			insertFirstVersionRows(statement);
+
+			// the client stops after renaming recipe_v3, before recording that statement
+			List<String> script = SchemaMigrator.statements(SchemaMigrator.MIGRATIONS.get(2));
+			int renamed = script.indexOf("ALTER TABLE recipe_v3 RENAME TO recipe");
+			for (int i = 0; i <= renamed; i++) {
+				statement.execute(script.get(i));
+			}
+			statement.execute("INSERT INTO schema_migration_progress (version, statements) VALUES (3, " + renamed + ")");
+		}
+
+		TestDatabase.start(directory);
+
+		assertFirstVersionRowsKept();
+		try (Connection connection = UtilsDB.getConnection()) {
+			assertEquals(0, count(connection, "SELECT COUNT(*) FROM schema_migration_progress"));
+		}
+	}
+
+	@Test
+	void executesStatementsOfInterruptedScriptsAgain() throws SQLException {
+		try (HikariDataSource legacy = TestDatabase.open(directory); Connection connection = legacy.getConnection(); Statement statement = connection.createStatement()) {
+			SchemaMigrator.migrate(connection, 1);
+			insertFirstVersionRows(statement);
+
+			// the whole of V2 and the copies of V3 were executed, but no progress was recorded
+			for (String sql : SchemaMigrator.statements(SchemaMigrator.MIGRATIONS.get(1))) {
+				statement.execute(sql);
+			}
+			List<String> script = SchemaMigrator.statements(SchemaMigrator.MIGRATIONS.get(2));
+			for (String sql : script.subList(0, script.indexOf("DROP TABLE IF EXISTS tag"))) {
+				statement.execute(sql);
+			}
+		}
+
+		TestDatabase.start(directory);
+
+		assertFirstVersionRowsKept();
+		try (Connection connection = UtilsDB.getConnection()) {
+			assertEquals(SchemaMigrator.getLatestVersion(), SchemaMigrator.getVersion(connection));
+			assertEquals(1, count(connection, "SELECT COUNT(*) FROM recipe"));
+		}
+	}
+
+	@Test
+	void foreignKeysDropOrphansAndCascade() throws SQLException {
+		try (HikariDataSource legacy = TestDatabase.open(directory); Connection connection = legacy.getConnection(); Statement statement = connection.createStatement()) {
+			SchemaMigrator.migrate(connection, 5);
+			statement.execute("INSERT INTO recipe (title) VALUES ('pancakes')");
+			statement.execute("INSERT INTO consist (recipe_id, ingredient) SELECT id, 'milk' FROM recipe WHERE title = 'pancakes'");
+			statement.execute("INSERT INTO tag (recipe_id, tag) SELECT id, 'sweet' FROM recipe WHERE title = 'pancakes'");
+			statement.execute("INSERT INTO consist (recipe_id, ingredient) VALUES (999, 'eggs')");
+			statement.execute("INSERT INTO tag (recipe_id, tag) VALUES (999, 'savoury')");
+
+			// the whole of V6 was executed, but no progress was recorded
+			for (String sql : SchemaMigrator.statements(SchemaMigrator.MIGRATIONS.get(5))) {
+				statement.execute(sql);
+			}
+		}
+
+		TestDatabase.start(directory);
+
+		try (Connection connection = UtilsDB.getConnection(); Statement statement = connection.createStatement()) {
+			assertEquals(1, count(connection, "SELECT COUNT(*) FROM consist"));
+			assertEquals(1, count(connection, "SELECT COUNT(*) FROM tag"));
+
+			statement.execute("DELETE FROM recipe WHERE title = 'pancakes'");
+			assertEquals(0, count(connection, "SELECT COUNT(*) FROM consist"));
+			assertEquals(0, count(connection, "SELECT COUNT(*) FROM tag"));
+
+			assertThrows(SQLException.class, () -> statement.execute("INSERT INTO tag (recipe_id, tag) VALUES (999, 'savoury')"));
+		}
+	}
+
+	/**
+	 * Inserts a product and a recipe, with its ingredients and tag, into a database at the first schema version.
+	 *
+	 * @param statement the statement the rows are inserted with.
+	 * @throws SQLException if a database access error occurs.
+	 */
+
+	private static void insertFirstVersionRows(Statement statement) throws SQLException {
+		statement.execute("INSERT INTO products (productName, expirationDate, categoryName, quantity, price) VALUES ('milk', '2030-01-01', 'dairy', 2, 1.5)");
+		statement.execute("INSERT INTO recipe (title, duration, unit, portions, category, steps) VALUES ('pancakes', 20, 0, 4, 'dessert', 'mix and fry')");
+		statement.execute("INSERT INTO consist (title, ingredient, quantity, unit_of_measurement) VALUES ('pancakes', 'milk', 250, 'ml')");
+		statement.execute("INSERT INTO consist (title, ingredient, quantity, unit_of_measurement) VALUES ('pancakes', 'flour', 200, 'g')");
+		statement.execute("INSERT INTO tag (title, tag) VALUES ('pancakes', 'breakfast')");
+	}
+
+	/**
+	 * Checks that the rows of {@link #insertFirstVersionRows(Statement)} are read back after the migration.
+	 *
+	 * @throws SQLException if a database access error occurs.
+	 */
+
+	private static void assertFirstVersionRowsKept() throws SQLException {
+		Recipe pancakes = UtilsDB.getRecipe("pancakes").orElseThrow();
+		assertEquals("dessert", pancakes.getCategory());
+		assertEquals(4, pancakes.getPortions());
+		assertEquals(Set.of(new Ingredient("milk", 250, "ml"), new Ingredient("flour", 200, "g")), Set.copyOf(pancakes.getIngredientList()));
+		assertEquals(List.of("breakfast"), pancakes.getTagList());
+		assertEquals(1, UtilsDB.countProducts());
+	}
+
+	/**
+	 * Checks whether a table exists.
+	 *
+	 * @param connection the connection to be used.
+	 * @param table      the name of the table.
+	 * @return {@code true} if the table exists, {@code false} otherwise.
+	 * @throws SQLException if a database access error occurs.
+	 */
+
+	private static boolean hasTable(Connection connection, String table) throws SQLException {
+		try (ResultSet rs = connection.getMetaData().getTables(null, null, table, null)) {
+			return rs.next();
+		}
+	}
+
+	/**
+	 * Checks whether a table has a column.
+	 *
+	 * @param connection the connection to be used.
+	 * @param table      the name of the table.
+	 * @param column     the name of the column.
+	 * @return {@code true} if the column exists, {@code false} otherwise.
+	 * @throws SQLException if a database access error occurs.
+	 */
+
+	private static boolean hasColumn(Connection connection, String table, String column) throws SQLException {
+		DatabaseMetaData metaData = connection.getMetaData();
+		try (ResultSet rs = metaData.getColumns(null, null, table, column)) {
+			return rs.next();
+		}
+	}
+
+	/**
+	 * Runs a counting query.
+	 *
+	 * @param connection the connection to be used.
+	 * @param query      the query, returning a single number.
+	 * @return the number returned by the query.
+	 * @throws SQLException if a database access error occurs.
+	 */
+
+	private static int count(Connection connection, String query) throws SQLException {
+		try (Statement statement = connection.createStatement(); ResultSet rs = statement.executeQuery(query)) {
+			rs.next();
+			return rs.getInt(1);
+		}
+	}
+}
@@ -0,0 +1,40 @@
+package com.napolitanoveroni.expirationdate;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Keeps a {@link TagDictionary} up to date with local edits and with the counts read from the database.
+ *
+ * @author SaverioNapolitano, MatteV02
+ * @version 2023.07.10
+ */
+class TagDictionaryTest {
+	@Test
+	void tagsFollowLocalEdits() {
+		TagDictionary dictionary = new TagDictionary(Map.of("sweet", 1));
+
+		dictionary.add("breakfast");
+		dictionary.add("sweet");
+		dictionary.remove("sweet");
+		assertEquals(List.of("breakfast", "sweet"), dictionary.getTags());
+
+		dictionary.remove("sweet");
+		assertEquals(List.of("breakfast"), dictionary.getTags());
+	}
+
+	@Test
+	void replaceAppliesCountsReadFromDatabase() {
+		TagDictionary dictionary = new TagDictionary(Map.of("breakfast", 2, "sweet", 1));
+
+		dictionary.replace(Map.of("breakfast", 1, "savoury", 1));
+		assertEquals(List.of("breakfast", "savoury"), dictionary.getTags());
+
+		dictionary.remove("breakfast");
+		assertEquals(List.of("savoury"), dictionary.getTags());
+	}
+}
@@ -0,0 +1,54 @@
+package com.napolitanoveroni.expirationdate;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import java.nio.file.Path;
+import java.sql.SQLException;
+
+/**
+ * Starts the application connection pool on a fresh {@linkplain EmbeddedStorageBackend embedded database}, so the
+ * tests and benchmarks run without a MySQL server.
+ *
+ * @author SaverioNapolitano, MatteV02
+ * @version 2023.07.10
+ */
+final class TestDatabase {
+	private TestDatabase() {
+	}
+
+	/**
+	 * Starts the connection pool on an empty database stored in the given directory, closing the running pool first.
+	 * The schema is migrated to the latest version as the pool starts.
+	 *
+	 * @param directory the directory of the database file, usually a JUnit temporary directory.
+	 * @throws SQLException if the pool could not be started.
+	 */
+
+	static void start(Path directory) throws SQLException {
+		ConnectionPool.close();
+		ConnectionPool.setBackend(new EmbeddedStorageBackend(directory.resolve("expirationdate")));
+		ConnectionPool.getDataSource();
+	}
+
+	/**
+	 * Opens a data source on the database stored in the given directory without migrating its schema, closing the
+	 * running pool first, so a test can prepare the database as an older version of the application left it.
+	 *
+	 * @param directory the directory of the database file.
+	 * @return the data source, to be closed by the caller before the pool is started.
+	 */
+
+	static HikariDataSource open(Path directory) {
+		ConnectionPool.close();
+		ConnectionPool.setBackend(new EmbeddedStorageBackend(directory.resolve("expirationdate")));
+		return new HikariDataSource(ConnectionPool.createHikariConfig());
+	}
+
+	/**
+	 * Closes the connection pool, releasing the database file.
+	 */
+
+	static void stop() {
+		ConnectionPool.close();
+	}
+}
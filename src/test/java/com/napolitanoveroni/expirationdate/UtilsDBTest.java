@@ -0,0 +1,242 @@
+package com.napolitanoveroni.expirationdate;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the product and recipe operations of {@link UtilsDB} on the embedded backend.
+ *
+ * @author SaverioNapolitano, MatteV02
+ * @version 2023.07.10
+ */
+class UtilsDBTest {
+	private static final LocalDate DATE = LocalDate.of(2030, 1, 1);
+
+	@TempDir
+	Path directory;
+
+	@BeforeEach
+	void startDatabase() throws SQLException {
+		TestDatabase.start(directory);
+	}
+
+	@AfterEach
+	void stopDatabase() {
+		TestDatabase.stop();
+	}
+
+	@Test
+	void mergeAddsQuantityOfStoredProduct() throws SQLException {
+		Product first = UtilsDB.mergeDBProduct(new Product("milk", DATE, "dairy", 2, 1.5));
+		Product merged = UtilsDB.mergeDBProduct(new Product("milk", DATE, "dairy", 3, 1.5));
+
+		assertEquals(2, first.getQuantity());
+		assertEquals(5, merged.getQuantity());
+		assertEquals(first.getVersion() + 1, merged.getVersion());
+		assertEquals(1, UtilsDB.countProducts());
+	}
+
+	@Test
+	void mergeReplacesCategoryAndPriceOfStoredProduct() throws SQLException {
+		UtilsDB.mergeDBProduct(new Product("milk", DATE, "dairy", 2, 1.5));
+		Product merged = UtilsDB.mergeDBProduct(new Product("milk", DATE, "drinks", 1, 1.8));
+
+		assertEquals(3, merged.getQuantity());
+		assertEquals("drinks", merged.getCategoryName());
+		assertEquals(1.8, merged.getPrice());
+		assertEquals(merged.getCategoryName(), UtilsDB.getProductPage(null, 1).get(0).getCategoryName());
+	}
+
+	@Test
+	void replaceOntoStoredProductAddsQuantities() throws SQLException {
+		Product milk = UtilsDB.mergeDBProduct(new Product("milk", DATE, "dairy", 2, 1.5));
+		UtilsDB.mergeDBProduct(new Product("cream", DATE, "dairy", 3, 1.5));
+
+		Product renamed = new Product(milk);
+		renamed.setProductName("cream");
+		Product stored = UtilsDB.replaceDBProduct(milk, renamed);
+
+		assertEquals(5, stored.getQuantity());
+		assertEquals(1, UtilsDB.countProducts());
+		assertEquals(Set.of("cream"), UtilsDB.getNotExpiredProductNames(DATE.minusDays(1)));
+	}
+
+	@Test
+	void removeOfStaleProductFails() throws SQLException {
+		Product stale = UtilsDB.mergeDBProduct(new Product("milk", DATE, "dairy", 2, 1.5));
+		Product current = UtilsDB.mergeDBProduct(new Product("milk", DATE, "dairy", 1, 1.5));
+
+		assertThrows(OptimisticLockException.class, () -> UtilsDB.removeDBProduct(stale));
+		assertEquals(1, UtilsDB.countProducts());
+
+		UtilsDB.removeDBProduct(current);
+		assertEquals(0, UtilsDB.countProducts());
+	}
+
+	@Test
+	void pagesFollowExpirationDateThenName() throws SQLException {
+		UtilsDB.mergeDBProduct(new Product("eggs", DATE.plusDays(1), "dairy", 1, 1));
+		UtilsDB.mergeDBProduct(new Product("milk", DATE, "dairy", 1, 1));
+		UtilsDB.mergeDBProduct(new Product("bread", DATE.plusDays(2), "bakery", 1, 1));
+		UtilsDB.mergeDBProduct(new Product("butter", DATE, "dairy", 1, 1));
+		UtilsDB.mergeDBProduct(new Product("apples", DATE.plusDays(1), "fruit", 1, 1));
+
+		List<String> names = new ArrayList<>();
+		List<Integer> sizes = new ArrayList<>();
+		Product after = null;
+		List<Product> page;
+		do {
+			page = UtilsDB.getProductPage(after, 2);
+			sizes.add(page.size());
+			for (Product product : page) {
+				names.add(product.getProductName());
+				after = product;
+			}
+		} while (page.size() == 2);
+
+		assertEquals(List.of("butter", "milk", "apples", "eggs", "bread"), names);
+		assertEquals(List.of(2, 2, 1), sizes);
+		assertEquals(5, UtilsDB.countProducts());
+	}
+
+	@Test
+	void notExpiredProductNamesExcludeExpiredProducts() throws SQLException {
+		UtilsDB.mergeDBProduct(new Product("milk", DATE, "dairy", 1, 1));
+		UtilsDB.mergeDBProduct(new Product("eggs", DATE.plusDays(3), "dairy", 1, 1));
+
+		assertEquals(Set.of("milk", "eggs"), UtilsDB.getNotExpiredProductNames(DATE.minusDays(1)));
+		assertEquals(Set.of("eggs"), UtilsDB.getNotExpiredProductNames(DATE));
+	}
+
+	@Test
+	void notExpiredProductKeysHoldEveryLot() throws SQLException {
+		UtilsDB.mergeDBProduct(new Product("milk", DATE, "dairy", 1, 1));
+		UtilsDB.mergeDBProduct(new Product("milk", DATE.plusDays(3), "dairy", 1, 1));
+		UtilsDB.mergeDBProduct(new Product("eggs", DATE.minusDays(1), "dairy", 1, 1));
+
+		assertEquals(Set.of(new ProductKey("milk", DATE), new ProductKey("milk", DATE.plusDays(3))), Set.copyOf(UtilsDB.getNotExpiredProductKeys(DATE.minusDays(1))));
+		assertEquals(List.of(new ProductKey("milk", DATE.plusDays(3))), UtilsDB.getNotExpiredProductKeys(DATE));
+	}
+
+	@Test
+	void insertedRecipeIsReadBack() throws SQLException {
+		Recipe pancakes = pancakes();
+		UtilsDB.insertDBRecipe(pancakes);
+
+		Recipe stored = UtilsDB.getRecipe("pancakes").orElseThrow();
+		assertEquals(pancakes.getDuration(), stored.getDuration());
+		assertEquals(pancakes.getPortions(), stored.getPortions());
+		assertEquals(pancakes.getCategory(), stored.getCategory());
+		assertEquals(pancakes.getSteps(), stored.getSteps());
+		assertEquals(Set.copyOf(pancakes.getIngredientList()), Set.copyOf(stored.getIngredientList()));
+		assertEquals(Set.copyOf(pancakes.getTagList()), Set.copyOf(stored.getTagList()));
+		assertEquals(List.of("pancakes"), UtilsDB.getRecipeTitles());
+	}
+
+	@Test
+	void renamedRecipeKeepsIngredientsAndTags() throws SQLException {
+		UtilsDB.insertDBRecipe(pancakes());
+
+		assertTrue(UtilsDB.editDBRecipeTitle(RecipeVersion.of("pancakes", 0), "crepes"));
+		assertFalse(UtilsDB.editDBRecipeTitle(RecipeVersion.of("pancakes", 0), "waffles"));
+
+		assertTrue(UtilsDB.getRecipe("pancakes").isEmpty());
+		Recipe crepes = UtilsDB.getRecipe("crepes").orElseThrow();
+		assertEquals(2, crepes.getIngredientList().size());
+		assertEquals(Set.of("breakfast", "sweet"), Set.copyOf(crepes.getTagList()));
+	}
+
+	@Test
+	void removedRecipeTakesItsIngredientsAndTags() throws SQLException {
+		UtilsDB.insertDBRecipe(pancakes());
+
+		UtilsDB.removeDBRecipe("pancakes");
+
+		assertTrue(UtilsDB.getRecipe("pancakes").isEmpty());
+		assertTrue(UtilsDB.getRecipeTitles().isEmpty());
+		assertTrue(UtilsDB.getTagCounts().isEmpty());
+		assertTrue(UtilsDB.getRecipeIngredients().isEmpty());
+	}
+
+	@Test
+	void tagCountsFollowTagEdits() throws SQLException {
+		UtilsDB.insertDBRecipe(pancakes());
+		Recipe omelette = new Recipe("omelette", 10, durationUnit.MIN, 1, "second course", "beat and cook", new ArrayList<>(List.of(new Ingredient("eggs", 3, "pieces"))), new ArrayList<>(List.of("breakfast")));
+		UtilsDB.insertDBRecipe(omelette);
+
+		assertEquals(2, UtilsDB.getTagCounts().get("breakfast"));
+		assertEquals(1, UtilsDB.getTagCounts().get("sweet"));
+
+		UtilsDB.removeDBTag(RecipeVersion.of("omelette", 0), "breakfast");
+		UtilsDB.insertDBTag(RecipeVersion.of("omelette", 0), "savoury");
+
+		assertEquals(1, UtilsDB.getTagCounts().get("breakfast"));
+		assertEquals(1, UtilsDB.getTagCounts().get("savoury"));
+	}
+
+	@Test
+	void recipeWriteAfterAnotherClientConflicts() throws SQLException {
+		UtilsDB.insertDBRecipe(pancakes());
+		long read = UtilsDB.getRecipe("pancakes").orElseThrow().getVersion();
+
+		UtilsDB.editDBRecipePortion(RecipeVersion.of("pancakes", read), 6);
+		UtilsDB.editDBRecipeSteps(RecipeVersion.of("pancakes", read), "mix, rest and fry");
+		assertEquals(read + 2, UtilsDB.getRecipe("pancakes").orElseThrow().getVersion());
+
+		RecipeVersion other = new RecipeVersion("pancakes", read, "other client");
+		assertThrows(OptimisticLockException.class, () -> UtilsDB.editDBRecipeCategory(other, "first course"));
+		assertThrows(OptimisticLockException.class, () -> UtilsDB.insertDBTag(other, "savoury"));
+		assertThrows(OptimisticLockException.class, () -> UtilsDB.editDBRecipeTitle(other, "crepes"));
+
+		Recipe stored = UtilsDB.getRecipe("pancakes").orElseThrow();
+		assertEquals("dessert", stored.getCategory());
+		assertEquals(Set.of("breakfast", "sweet"), Set.copyOf(stored.getTagList()));
+
+		UtilsDB.editDBRecipeCategory(new RecipeVersion("pancakes", stored.getVersion(), "other client"), "first course");
+		assertThrows(OptimisticLockException.class, () -> UtilsDB.editDBRecipePortion(RecipeVersion.of("pancakes", read), 2));
+		assertEquals(6, UtilsDB.getRecipe("pancakes").orElseThrow().getPortions());
+	}
+
+	@Test
+	void changesAreReadAfterToken() throws SQLException, InterruptedException {
+		Product removed = UtilsDB.mergeDBProduct(new Product("eggs", DATE, "dairy", 1, 1));
+		UtilsDB.insertDBRecipe(pancakes());
+		Timestamp token = UtilsDB.getSyncToken();
+		Thread.sleep(10);
+
+		UtilsDB.mergeDBProduct(new Product("milk", DATE, "dairy", 1, 1));
+		UtilsDB.removeDBProduct(removed);
+		UtilsDB.editDBRecipeTitle(RecipeVersion.of("pancakes", 0), "crepes");
+
+		ChangeSet changes = UtilsDB.getChanges(token);
+		assertEquals(List.of("milk"), changes.products().stream().map(Product::getProductName).toList());
+		assertEquals(Set.of(new ProductKey("eggs", DATE)), changes.deletedProducts());
+		assertEquals(Set.of("crepes"), changes.recipes());
+		assertEquals(Set.of("pancakes"), changes.deletedRecipes());
+		assertTrue(UtilsDB.getChanges(changes.token()).isEmpty());
+	}
+
+	/**
+	 * Builds a recipe with two ingredients and two tags.
+	 *
+	 * @return the recipe.
+	 */
+
+	private static Recipe pancakes() {
+		return new Recipe("pancakes", 20, durationUnit.MIN, 4, "dessert", "mix and fry",
+			new ArrayList<>(List.of(new Ingredient("milk", 250, "ml"), new Ingredient("flour", 200, "g"))),
+			new ArrayList<>(List.of("breakfast", "sweet")));
+	}
+}
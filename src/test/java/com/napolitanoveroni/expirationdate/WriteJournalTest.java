@@ -0,0 +1,117 @@
+package com.napolitanoveroni.expirationdate;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Replays journal files on the embedded backend.
+ *
+ * @author SaverioNapolitano, MatteV02
+ * @version 2023.07.10
+ */
+class WriteJournalTest {
+	private static final LocalDate DATE = LocalDate.of(2030, 1, 1);
+
+	@TempDir
+	Path directory;
+
+	@BeforeEach
+	void startDatabase() throws SQLException {
+		TestDatabase.start(directory);
+	}
+
+	@AfterEach
+	void stopDatabase() {
+		TestDatabase.stop();
+	}
+
+	@Test
+	void entryReplayedTwiceIsAppliedOnce() throws IOException, SQLException {
+		JournalEntry merge = JournalEntry.mergeProduct(new Product("milk", DATE, "dairy", 2, 1.5));
+		Path journal = directory.resolve("write-journal.jsonl");
+
+		// the journal file was not rewritten after the entry was replayed, and the entry was journaled twice
+		writeJournal(journal, merge, merge);
+		WriteJournal.open(journal);
+		WriteJournal.replayPending();
+		writeJournal(journal, merge);
+		WriteJournal.open(journal);
+		WriteJournal.replayPending();
+
+		assertEquals(0, WriteJournal.size());
+		assertEquals(1, countApplied(merge.id()));
+		assertEquals(2, UtilsDB.getProductPage(null, 1).get(0).getQuantity());
+	}
+
+	@Test
+	void failingEntryIsQuarantined() throws IOException, SQLException {
+		Product stale = UtilsDB.mergeDBProduct(new Product("milk", DATE, "dairy", 2, 1.5));
+		UtilsDB.mergeDBProduct(new Product("milk", DATE, "dairy", 1, 1.5));
+		JournalEntry remove = JournalEntry.removeProduct(stale);
+		JournalEntry merge = JournalEntry.mergeProduct(new Product("eggs", DATE, "dairy", 6, 2));
+		Path journal = directory.resolve("write-journal.jsonl");
+
+		writeJournal(journal, remove, merge);
+		WriteJournal.open(journal);
+		WriteJournal.replayPending();
+
+		assertEquals(0, WriteJournal.size());
+		assertEquals(2, UtilsDB.countProducts());
+		assertEquals(0, countApplied(remove.id()));
+		assertEquals(1, countApplied(merge.id()));
+		List<String> quarantined = Files.readAllLines(WriteJournal.quarantinePath(journal), StandardCharsets.UTF_8);
+		assertEquals(1, quarantined.size());
+		assertTrue(quarantined.get(0).contains(remove.id()));
+	}
+
+	/**
+	 * Writes a journal file holding the given entries.
+	 *
+	 * @param journal the journal file.
+	 * @param entries the entries, in order.
+	 * @throws IOException if the file cannot be written.
+	 */
+
+	private static void writeJournal(Path journal, JournalEntry... entries) throws IOException {
+		List<String> lines = new ArrayList<>();
+		for (JournalEntry entry : entries) {
+			lines.add(JournalEntry.mapper.writeValueAsString(entry));
+		}
+		Files.write(journal, lines, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Counts the rows recording an entry as applied.
+	 *
+	 * @param id the identifier of the entry.
+	 * @return the number of rows.
+	 * @throws SQLException if a database access error occurs.
+	 */
+
+	private static int countApplied(String id) throws SQLException {
+		try (Connection connection = UtilsDB.getConnection();
+			 PreparedStatement count = connection.prepareStatement("SELECT COUNT(*) FROM applied_journal_entries WHERE id = ?")) {
+			count.setString(1, id);
+			try (ResultSet rs = count.executeQuery()) {
+				rs.next();
+				return rs.getInt(1);
+			}
+		}
+	}
+}
@@ -0,0 +1,173 @@
+package com.napolitanoveroni.expirationdate;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Times the product and recipe write paths on the embedded backend, to show the per-call saving of the
+ * {@link SQLStatement} registry and of the batched recipe inserts.
+ * <p>The registry sends the same SQL text on every call, with the values as parameters, so the engine reuses the
+ * statement it already parsed, as the prepared-statement caches of the MySQL driver and server do on that backend.
+ * The product path is timed through {@link UtilsDB#mergeDBProduct(Connection, Product)}, adding new products, and
+ * with the same statement written with its values inlined, whose text changes on every call and is parsed every time.
+ * The recipe path is timed with the ingredients and tags sent as batches, as
+ * {@link UtilsDB#insertDBRecipe(Connection, Recipe, String)} does, and one statement per row.</p>
+ * <p>Both variants run in one transaction, so the commits of the engine do not hide the cost of the statements, and
+ * alternate for a few rounds, the best of which is reported. The timings are logged rather than asserted, as they
+ * depend on the machine; the test only checks that both variants write the same rows. Being slow, the benchmark is
+ * tagged {@code benchmark} and left out of the {@code test} task: it runs with {@code gradle benchmark}.</p>
+ *
+ * @author SaverioNapolitano, MatteV02
+ * @version 2023.07.10
+ */
+@Tag("benchmark")
+class WritePathBenchmarkTest {
+	private static final System.Logger logger = System.getLogger(WritePathBenchmarkTest.class.getName());
+	private static final int ROUNDS = 5;
+	private static final int CALLS = 500;
+	private static final int RECIPE_CHILDREN = 10;
+
+	@TempDir
+	Path directory;
+
+	@BeforeEach
+	void startDatabase() throws SQLException {
+		TestDatabase.start(directory);
+	}
+
+	@AfterEach
+	void stopDatabase() {
+		TestDatabase.stop();
+	}
+
+	@Test
+	void productWritePath() throws SQLException {
+		try (Connection connection = UtilsDB.getConnection()) {
+			connection.setAutoCommit(false);
+
+			double cached = Double.MAX_VALUE;
+			double parsed = Double.MAX_VALUE;
+			for (int round = 0; round < ROUNDS; round++) {
+				long start = System.nanoTime();
+				for (int i = 0; i < CALLS; i++) {
+					UtilsDB.mergeDBProduct(connection, product("cached " + round, i));
+				}
+				cached = Math.min(cached, (System.nanoTime() - start) / 1_000.0 / CALLS);
+
+				start = System.nanoTime();
+				for (int i = 0; i < CALLS; i++) {
+					mergeProductInlined(connection, product("parsed " + round, i));
+				}
+				parsed = Math.min(parsed, (System.nanoTime() - start) / 1_000.0 / CALLS);
+			}
+
+			report("product merge", "registered statement", cached, "inlined values", parsed);
+			assertEquals(UtilsDB.getDBProduct(connection, "cached 0 0", LocalDate.of(2030, 1, 1)),
+				UtilsDB.getDBProduct(connection, "parsed 0 0", LocalDate.of(2030, 1, 1)).map(product -> {
+					product.setProductName("cached 0 0");
+					return product;
+				}));
+			connection.rollback();
+		}
+	}
+
+	@Test
+	void recipeWritePath() throws SQLException {
+		try (Connection connection = UtilsDB.getConnection()) {
+			connection.setAutoCommit(false);
+
+			double batched = Double.MAX_VALUE;
+			double rowByRow = Double.MAX_VALUE;
+			for (int round = 0; round < ROUNDS; round++) {
+				long start = System.nanoTime();
+				for (int i = 0; i < CALLS; i++) {
+					UtilsDB.insertDBRecipe(connection, recipe("batched " + round + " " + i), RecipeVersion.WRITER);
+				}
+				batched = Math.min(batched, (System.nanoTime() - start) / 1_000.0 / CALLS);
+
+				start = System.nanoTime();
+				for (int i = 0; i < CALLS; i++) {
+					insertRecipeRowByRow(connection, recipe("row by row " + round + " " + i));
+				}
+				rowByRow = Math.min(rowByRow, (System.nanoTime() - start) / 1_000.0 / CALLS);
+			}
+			connection.commit();
+
+			report("recipe insert", "batched children", batched, "one statement per row", rowByRow);
+			assertEquals(UtilsDB.getRecipe("batched 0 0").orElseThrow().getIngredientList().size(),
+				UtilsDB.getRecipe("row by row 0 0").orElseThrow().getIngredientList().size());
+		}
+	}
+
+	/**
+	 * Merges a product with the statement of {@link SQLStatement#MERGE_PRODUCT} written with its values inlined, and
+	 * reads it back, like {@link UtilsDB#mergeDBProduct(Connection, Product)}.
+	 *
+	 * @param connection the connection.
+	 * @param product    the product.
+	 * @throws SQLException if a database access error occurs.
+	 */
+
+	private static void mergeProductInlined(Connection connection, Product product) throws SQLException {
+		String values = "'" + product.getProductName() + "', DATE '" + product.getExpirationDate() + "', '" +
+			product.getCategoryName() + "', " + product.getQuantity() + ", " + product.getPrice();
+		try (Statement statement = connection.createStatement()) {
+			statement.executeUpdate(SQLStatement.MERGE_PRODUCT.getSql().replace("?, ?, ?, ?, ?", values));
+			statement.executeQuery("SELECT productName, expirationDate, categoryName, quantity, price, version FROM products " +
+				"WHERE productName='" + product.getProductName() + "' AND expirationDate=DATE '" + product.getExpirationDate() + "'").close();
+		}
+	}
+
+	/**
+	 * Inserts a recipe sending one statement per ingredient and per tag, as the recipe writes did before the batches.
+	 *
+	 * @param connection the connection.
+	 * @param recipe     the recipe.
+	 * @throws SQLException if a database access error occurs.
+	 */
+
+	private static void insertRecipeRowByRow(Connection connection, Recipe recipe) throws SQLException {
+		Recipe withoutChildren = new Recipe(recipe.getTitle(), recipe.getDuration(), recipe.getUnit(), recipe.getPortions(),
+			recipe.getCategory(), recipe.getSteps(), new ArrayList<>(), new ArrayList<>());
+		UtilsDB.insertDBRecipe(connection, withoutChildren, RecipeVersion.WRITER);
+		for (Ingredient ingredient : recipe.getIngredientList()) {
+			UtilsDB.insertDBIngredient(connection, RecipeVersion.of(recipe.getTitle(), 0), ingredient);
+		}
+		for (String tag : recipe.getTagList()) {
+			UtilsDB.insertDBTag(connection, RecipeVersion.of(recipe.getTitle(), 0), tag);
+		}
+	}
+
+	private static Product product(String prefix, int i) {
+		return new Product(prefix + " " + (i % 100), LocalDate.of(2030, 1, 1).plusDays(i / 100), "benchmark", 1, 1.5);
+	}
+
+	private static Recipe recipe(String title) {
+		List<Ingredient> ingredients = new ArrayList<>();
+		List<String> tags = new ArrayList<>();
+		for (int i = 0; i < RECIPE_CHILDREN; i++) {
+			ingredients.add(new Ingredient("ingredient " + i, i, "g"));
+			tags.add("tag " + i);
+		}
+		return new Recipe(title, 30, durationUnit.MIN, 2, "first course", "Mix and cook.", ingredients, tags);
+	}
+
+	private static void report(String path, String optimized, double optimizedMicros, String baseline, double baselineMicros) {
+		logger.log(System.Logger.Level.INFO, "{0}: {1} {2} us/call, {3} {4} us/call ({5}x)", path, optimized,
+			String.format("%.1f", optimizedMicros), baseline, String.format("%.1f", baselineMicros),
+			String.format("%.1f", baselineMicros / optimizedMicros));
+	}
+}